@@ -18,12 +18,25 @@ package com.gentlyweb.utils;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.InvocationTargetException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.StringTokenizer;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * This class is used to perform access into a Java object using a 
  * String value with a specific notation.
@@ -108,15 +121,34 @@ import java.util.StringTokenizer;
  * Note: we have had to add the 3rd type to allow for methods that don't follow
  * JavaBeans conventions (there are loads in the standard Java APIs which makes 
  * accessing impossible otherwise).
+ * <p>
+ * Once the fields and methods have been found each is converted to a {@link Function} (generated
+ * via a {@link MethodHandle}) so that getting the value doesn't incur the cost of a reflective
+ * call (the access checks, argument array and so on) and can be inlined by the JIT.  If a 
+ * function cannot be created for a field or method then reflection is used instead.
+ * <p>
+ * When a field or method in the chain (other than the last) is declared as returning
+ * <code>java.lang.Object</code> the rest of the chain cannot be found until the value is known, in
+ * that case the rest of the chain is found using the class of the value when the value is got (and
+ * is kept for each class).  So for a class with method: <code>Object getValue ()</code> the notation
+ * <b>value.name</b> can be used provided that the object returned has a <b>name</b> field or method.
  */
 public class Getter
 {
 
+    private static final MethodType HANDLE_TYPE = MethodType.methodType (Object.class,
+									 Object.class);
+
     private List chain = new ArrayList ();
+    private Function[] funcs = null;
+    private boolean[] methods = null;
+    private ToDoubleFunction dfunc = null;
 
     private Class clazz = null;
     private int cs = 0;
     private String acc = null;
+    private String rest = null;
+    private Map restGetters = null;
 
     /**
      * Get the getter associated with the named reference.  Return
@@ -150,6 +182,30 @@ public class Getter
 
 	    String tok = t.nextToken ();
 
+	    if ((c == Object.class)
+		&&
+		(this.chain.size () > 0)
+	       )
+	    {
+
+		// The type of the value isn't known until the value is got.
+		StringBuffer b = new StringBuffer (tok);
+
+		while (t.hasMoreTokens ())
+		{
+
+		    b.append ('.');
+		    b.append (t.nextToken ());
+
+		}
+
+		this.rest = b.toString ();
+		this.restGetters = new ConcurrentHashMap ();
+
+		break;
+
+	    }
+
 	    String index = "";
 
 	    // Get the Fields.
@@ -221,6 +277,303 @@ public class Getter
 
 	this.cs = this.chain.size ();
 
+	this.initHandles ();
+
+    }
+
+    private void initHandles ()
+    {
+
+	this.funcs = new Function[this.cs];
+	this.methods = new boolean[this.cs];
+
+	for (int i = 0; i < this.cs; i++)
+	{
+
+	    Object o = this.chain.get (i);
+
+	    Function f = null;
+
+	    try
+	    {
+
+		if (o instanceof Method)
+		{
+
+		    this.methods[i] = true;
+
+		    f = Getter.createFunction ((Method) o);
+
+		} else {
+
+		    f = Getter.createFunction ((Field) o);
+
+		}
+
+	    } catch (Throwable e) {
+
+		// Can't access it this way, fall back to reflection.
+		f = null;
+
+	    }
+
+	    this.funcs[i] = f;
+
+	}
+
+	// For a single field/method that returns a primitive number also create a function
+	// that returns the primitive.
+	if ((this.cs == 1)
+	    &&
+	    (this.rest == null)
+	   )
+	{
+
+	    try
+	    {
+
+		this.dfunc = Getter.createDoubleFunction (this.chain.get (0));
+
+	    } catch (Throwable e) {
+
+		// Just use the object value.
+		this.dfunc = null;
+
+	    }
+
+	}
+
+    }
+
+    private static ToDoubleFunction createDoubleFunction (Object o)
+	                                                throws Throwable
+    {
+
+	Class c = null;
+	MethodHandle h = null;
+	boolean isStatic = false;
+
+	if (o instanceof Method)
+	{
+
+	    Method m = (Method) o;
+
+	    c = m.getReturnType ();
+	    isStatic = Modifier.isStatic (m.getModifiers ());
+
+	    if (!Getter.isPrimitiveNumber (c))
+	    {
+
+		return null;
+
+	    }
+
+	    if (!isStatic)
+	    {
+
+		try
+		{
+
+		    MethodHandles.Lookup l = MethodHandles.privateLookupIn (m.getDeclaringClass (),
+									    MethodHandles.lookup ());
+
+		    h = l.unreflect (m);
+
+		    CallSite cs = LambdaMetafactory.metafactory (l,
+								 "applyAsDouble",
+								 MethodType.methodType (ToDoubleFunction.class),
+								 MethodType.methodType (Double.TYPE,
+											Object.class),
+								 h,
+								 h.type ().changeReturnType (Double.TYPE));
+
+		    return (ToDoubleFunction) cs.getTarget ().invokeExact ();
+
+		} catch (Exception e) {
+
+		    // Use the handle instead.
+
+		}
+
+	    }
+
+	    h = MethodHandles.lookup ().unreflect (m);
+
+	} else {
+
+	    Field f = (Field) o;
+
+	    c = f.getType ();
+	    isStatic = Modifier.isStatic (f.getModifiers ());
+
+	    if (!Getter.isPrimitiveNumber (c))
+	    {
+
+		return null;
+
+	    }
+
+	    h = MethodHandles.lookup ().unreflectGetter (f);
+
+	}
+
+	if (isStatic)
+	{
+
+	    h = MethodHandles.dropArguments (h,
+					     0,
+					     Object.class);
+
+	}
+
+	final MethodHandle mh = h.asType (MethodType.methodType (Double.TYPE,
+								 Object.class));
+
+	return new ToDoubleFunction ()
+	{
+
+	    public double applyAsDouble (Object o)
+	    {
+
+		try
+		{
+
+		    return (double) mh.invokeExact (o);
+
+		} catch (RuntimeException e) {
+
+		    throw e;
+
+		} catch (Throwable e) {
+
+		    throw new RuntimeException (e);
+
+		}
+
+	    }
+
+	};
+
+    }
+
+    private static boolean isPrimitiveNumber (Class c)
+    {
+
+	return (c.isPrimitive ())
+	       &&
+	       (c != Boolean.TYPE)
+	       &&
+	       (c != Character.TYPE)
+	       &&
+	       (c != Void.TYPE);
+
+    }
+
+    /**
+     * Create a function that calls the method.  Where possible the function is generated
+     * via the {@link LambdaMetafactory} so that it calls the method directly, otherwise (for
+     * instance when the class is in a module that isn't open to us) it uses a handle.
+     */
+    private static Function createFunction (Method m)
+	                                    throws Throwable
+    {
+
+	MethodHandle h = null;
+
+	if (!Modifier.isStatic (m.getModifiers ()))
+	{
+
+	    try
+	    {
+
+		MethodHandles.Lookup l = MethodHandles.privateLookupIn (m.getDeclaringClass (),
+									MethodHandles.lookup ());
+
+		h = l.unreflect (m);
+
+		CallSite cs = LambdaMetafactory.metafactory (l,
+							     "apply",
+							     MethodType.methodType (Function.class),
+							     Getter.HANDLE_TYPE,
+							     h,
+							     h.type ().wrap ());
+
+		return (Function) cs.getTarget ().invokeExact ();
+
+	    } catch (Exception e) {
+
+		// Use the handle instead.
+
+	    }
+
+	}
+
+	// The method has been made accessible so this won't do any access checks.
+	h = MethodHandles.lookup ().unreflect (m);
+
+	if (Modifier.isStatic (m.getModifiers ()))
+	{
+
+	    // Static methods ignore the object.
+	    h = MethodHandles.dropArguments (h,
+					     0,
+					     Object.class);
+
+	}
+
+	return Getter.createFunction (h);
+
+    }
+
+    private static Function createFunction (Field f)
+	                                    throws Throwable
+    {
+
+	MethodHandle h = MethodHandles.lookup ().unreflectGetter (f);
+
+	if (Modifier.isStatic (f.getModifiers ()))
+	{
+
+	    h = MethodHandles.dropArguments (h,
+					     0,
+					     Object.class);
+
+	}
+
+	return Getter.createFunction (h);
+
+    }
+
+    private static Function createFunction (MethodHandle h)
+    {
+
+	final MethodHandle mh = h.asType (Getter.HANDLE_TYPE);
+
+	return new Function ()
+	{
+
+	    public Object apply (Object o)
+	    {
+
+		try
+		{
+
+		    return mh.invokeExact (o);
+
+		} catch (RuntimeException e) {
+
+		    throw e;
+
+		} catch (Throwable e) {
+
+		    throw new RuntimeException (e);
+
+		}
+
+	    }
+
+	};
+
     }
 
     public Class getBaseClass ()
@@ -239,6 +592,13 @@ public class Getter
     public Class getType ()
     {
 
+	if (this.rest != null)
+	{
+
+	    return Object.class;
+
+	}
+
 	Object o = this.chain.get (this.chain.size () - 1);
 
 	// See what type the accessor is...
@@ -278,29 +638,22 @@ public class Getter
 
 	}
 
-	// For our accessor chain, use the Field and Methods
-	// to get the actual value.
+	// For our accessor chain, use the handles (or the Field and Methods
+	// when there is no handle) to get the actual value.
 	Object retdata = obj;
 	
 	for (int i = 0; i < this.cs; i++)
 	{
 
-	    Object o = this.chain.get (i);
+	    Function f = this.funcs[i];
 
-	    // See what type the accessor is...
-	    if (o instanceof Method)
+	    if (f != null)
 	    {
-		
-		Method m = (Method) o;
-		
-		Object[] parms = {};
-		
-		// Invoke the method...
+
 		try
 		{
 
-		    retdata = m.invoke (retdata,
-					parms);
+		    retdata = f.apply (retdata);
 
 		} catch (Exception e) {
 
@@ -308,36 +661,35 @@ public class Getter
 					 e);
 
 		}
-		
-		if (retdata == null)
-		{
-		    
-		    return null;
-		    
-		}
-				
+
+	    } else {
+
+		retdata = this.getReflectedValue (this.chain.get (i),
+						  retdata,
+						  obj);
+
 	    }
-	    
-	    if (o instanceof Field)
+
+	    // A null from a method ends the chain.
+	    if ((retdata == null)
+		&&
+		(this.methods[i])
+	       )
 	    {
-		
-		// It's a field...so...
-		Field f = (Field) o;
-		
-		// Now get the value...
-		try
-		{
 
-		    retdata = f.get (retdata);
+		return null;
 
-		} catch (Exception e) {
+	    }
 
-		    this.throwException (obj,
-					 e);
+	}
 
-		}
-		
-	    }
+	if ((this.rest != null)
+	    &&
+	    (retdata != null)
+	   )
+	{
+
+	    retdata = this.getRestGetter (retdata.getClass ()).getValue (retdata);
 
 	}
 	
@@ -345,6 +697,118 @@ public class Getter
 	
     }
 
+    /**
+     * Get the getter for the rest of the chain for values of the specified class.
+     */
+    private Getter getRestGetter (Class c)
+    {
+
+	Getter g = (Getter) this.restGetters.get (c);
+
+	if (g == null)
+	{
+
+	    g = new Getter (this.rest,
+			    c);
+
+	    this.restGetters.put (c,
+				  g);
+
+	}
+
+	return g;
+
+    }
+
+    /**
+     * Return whether the value is a primitive number got directly from the object, i.e.
+     * the accessor is a single field or method, if so then {@link #getDouble(Object)} can
+     * be used to get the value without creating an object.
+     *
+     * @return <code>true</code> if {@link #getDouble(Object)} can be used.
+     */
+    public boolean isDirectNumber ()
+    {
+
+	return this.dfunc != null;
+
+    }
+
+    /**
+     * Get the value as a <b>double</b>, only valid when {@link #isDirectNumber()} returns
+     * <code>true</code>.
+     *
+     * @param obj The object to get the value from, must not be <code>null</code>.
+     * @return The value.
+     */
+    public double getDouble (Object obj)
+    {
+
+	try
+	{
+
+	    return this.dfunc.applyAsDouble (obj);
+
+	} catch (Exception e) {
+
+	    this.throwException (obj,
+				 e);
+
+	}
+
+	return 0;
+
+    }
+
+    private Object getReflectedValue (Object o,
+				      Object retdata,
+				      Object obj)
+    {
+
+	// See what type the accessor is...
+	if (o instanceof Method)
+	{
+		
+	    Method m = (Method) o;
+		
+	    Object[] parms = {};
+		
+	    // Invoke the method...
+	    try
+	    {
+
+		return m.invoke (retdata,
+				 parms);
+
+	    } catch (Exception e) {
+
+		this.throwException (obj,
+				     e);
+
+	    }
+				
+	}
+	    
+	// It's a field...so...
+	Field f = (Field) o;
+		
+	// Now get the value...
+	try
+	{
+
+	    return f.get (retdata);
+
+	} catch (Exception e) {
+
+	    this.throwException (obj,
+				 e);
+
+	}
+
+	return null;
+
+    }
+
     private void throwException (Object    o,
 				 Exception e)
     {
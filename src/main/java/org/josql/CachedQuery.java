@@ -0,0 +1,179 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql;
+
+import java.util.List;
+import java.util.Map;
+
+import org.josql.expressions.Expression;
+
+import org.josql.internal.ExecutionContext;
+
+/**
+ * A read-only handle to a query held in a {@link QueryPlanCache}.  The parsed {@link Query}
+ * is shared by everyone that asks the cache for the same query so it isn't made available,
+ * only the methods that don't change it are.  Each call is given its own execution state,
+ * bind variables for a single execution are passed to {@link #execute(List,Map)}.
+ */
+public final class CachedQuery
+{
+
+    private Query q = null;
+
+    CachedQuery (Query q)
+    {
+
+	this.q = q;
+
+    }
+
+    /**
+     * Get the query text.
+     *
+     * @return The text.
+     */
+    public String getQuery ()
+    {
+
+	return this.q.getQuery ();
+
+    }
+
+    /**
+     * Execute the query against the objects.
+     *
+     * @param objs The objects.
+     * @return The results.
+     * @throws QueryExecutionException If the query cannot be executed.
+     */
+    public QueryResults execute (List objs)
+	                         throws QueryExecutionException
+    {
+
+	return this.q.execute (objs);
+
+    }
+
+    /**
+     * Execute the query against the objects, see: {@link Query#execute(List,Map)}.
+     *
+     * @param objs The objects.
+     * @param bindVars The bind variables to use for this execution, can be <code>null</code>.
+     * @return The results.
+     * @throws QueryExecutionException If the query cannot be executed.
+     */
+    public QueryResults execute (List objs,
+				 Map  bindVars)
+	                         throws QueryExecutionException
+    {
+
+	return this.q.execute (objs,
+			       bindVars);
+
+    }
+
+    /**
+     * Evaluate the WHERE clause of the query against the object.
+     *
+     * @param o The object.
+     * @return <code>true</code> if the query has no WHERE clause or the object matches it.
+     * @throws QueryExecutionException If the WHERE clause cannot be evaluated.
+     */
+    public boolean isWhereTrue (Object o)
+	                        throws QueryExecutionException
+    {
+
+	Expression w = this.q.getWhereClause ();
+
+	if (w == null)
+	{
+
+	    return true;
+
+	}
+
+	ExecutionContext prev = this.enter (o);
+
+	try
+	{
+
+	    return w.isTrue (o,
+			     this.q);
+
+	} finally {
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+    }
+
+    /**
+     * Get the value of the WHERE clause of the query for the object.
+     *
+     * @param o The object.
+     * @return The value or <code>null</code> if the query has no WHERE clause.
+     * @throws QueryExecutionException If the WHERE clause cannot be evaluated.
+     */
+    public Object getWhereValue (Object o)
+	                         throws QueryExecutionException
+    {
+
+	Expression w = this.q.getWhereClause ();
+
+	if (w == null)
+	{
+
+	    return null;
+
+	}
+
+	ExecutionContext prev = this.enter (o);
+
+	try
+	{
+
+	    return w.getValue (o,
+			       this.q);
+
+	} finally {
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+    }
+
+    /**
+     * Give the current thread its own context for evaluating an expression against the object.
+     *
+     * @return The context the thread had before, to be restored afterwards.
+     */
+    private ExecutionContext enter (Object o)
+    {
+
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	ExecutionContext ctx = new ExecutionContext ();
+
+	ctx.setCurrentObject (o);
+
+	this.q.setExecutionContext (ctx);
+
+	return prev;
+
+    }
+
+}
@@ -0,0 +1,995 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.josql.expressions.Expression;
+
+import org.josql.internal.ExecutionContext;
+import org.josql.internal.ListExpressionComparator;
+import org.josql.internal.GroupAggregator;
+import org.josql.internal.GroupKey;
+import org.josql.internal.Limit;
+import org.josql.internal.Selection;
+
+/**
+ * The results of a query that are kept up to date as objects are added to, removed from or
+ * changed in the collection that the query is over, rather than by executing the query again.
+ * Reading the results is cheap, the results are only rebuilt (from the maintained state) the
+ * first time they are read after a change.
+ * <p>
+ * The following types of query can be maintained:
+ * <ul>
+ *   <li>Queries with a WHERE, HAVING, ORDER BY and LIMIT clause, any SELECT columns are
+ *       only evaluated for the objects within the LIMIT.</li>
+ *   <li>GROUP BY queries whose columns are group by expressions or the <code>sum</code>, 
+ *       <code>avg</code>, <code>count</code>, <code>min</code> or <code>max</code> functions
+ *       (of a value of the object), but without a GROUP BY ORDER, GROUP BY LIMIT or LIMIT
+ *       clause.  Adding an object to the end of a group updates the totals of the group, removing
+ *       or changing an object recalculates only the group it was in.</li>
+ * </ul>
+ * EXECUTE ON functions and DISTINCT results (other than for GROUP BY queries) are not supported,
+ * nor are expressions that use all the objects (i.e. the <code>:_allobjs</code> special bind
+ * variable).
+ * <p>
+ * Objects are identified by identity (as for <code>==</code>), adding an object that is already
+ * present is the same as calling {@link #changed(Object)}.  The results are in the order that
+ * executing the query against a list of the objects (in the order they were added) would give,
+ * <code>null</code> ORDER BY values are ordered before any other value and the groups of a 
+ * GROUP BY query are in the order of the first object in each group.
+ * <p>
+ * When an object changes in a way that affects the query it <b>must</b> be signalled via
+ * {@link #changed(Object)}, if the bind variables of the query are changed then call
+ * {@link #refresh()}.  Values that are calculated once per execution, such as the results
+ * of sub-queries, are kept until {@link #refresh()} is called.
+ * <p>
+ * The methods that change the results are synchronized, the results can be read by any number
+ * of threads at the same time.
+ * <p>
+ * Usage:
+ * <pre>
+ *   Query q = new Query ();
+ *   q.parse ("SELECT * FROM Order WHERE status = 'open' ORDER BY value DESC LIMIT 1, 10");
+ *
+ *   LiveQueryResults lqr = new LiveQueryResults (q,
+ *                                                orders);
+ *
+ *   // Later...
+ *   lqr.add (newOrder);
+ *   lqr.changed (updatedOrder);
+ *   lqr.remove (closedOrder);
+ *
+ *   List top10 = lqr.getResults ();
+ * </pre>
+ */
+public class LiveQueryResults
+{
+
+    private static final Comparator SEQ_COMPARATOR = new Comparator ()
+    {
+
+	public int compare (Object o1,
+			    Object o2)
+	{
+
+	    long s1 = ((Entry) o1).seq;
+	    long s2 = ((Entry) o2).seq;
+
+	    return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+
+	}
+
+    };
+
+    private Query q = null;
+    private Expression where = null;
+    private Expression having = null;
+    private ListExpressionComparator orderByComp = null;
+    private GroupAggregator groupAggregator = null;
+    private ExecutionContext ctx = null;
+    private Map entries = new IdentityHashMap ();
+    private List matches = new ArrayList ();
+    private Map groups = new LinkedHashMap ();
+    private long nextSeq = 0;
+    private Comparator entryComp = null;
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * Create new (empty) results for the query.
+     *
+     * @param q The Query, must have been parsed.
+     * @throws QueryParseException If the query is not parsed or is of a type whose results
+     *                             cannot be maintained.
+     */
+    public LiveQueryResults (Query  q)
+	                     throws QueryParseException
+    {
+
+	if (!q.parsed ())
+	{
+
+	    throw new QueryParseException ("Query must be parsed before its results can be maintained.");
+
+	}
+
+	Map eo = q.getExecuteOnFunctions ();
+
+	if (eo != null)
+	{
+
+	    Iterator iter = eo.values ().iterator ();
+
+	    while (iter.hasNext ())
+	    {
+
+		List l = (List) iter.next ();
+
+		if ((l != null)
+		    &&
+		    (l.size () > 0)
+		   )
+		{
+
+		    throw new QueryParseException ("Results of queries with EXECUTE ON functions cannot be maintained since the functions require all the objects.");
+
+		}
+
+	    }
+
+	}
+
+	this.q = q;
+	this.where = q.getWhereClause ();
+	this.having = q.getHavingClause ();
+
+	if (q.getGroupByColumns () != null)
+	{
+
+	    this.groupAggregator = q.getGroupAggregator ();
+
+	    if (this.groupAggregator == null)
+	    {
+
+		throw new QueryParseException ("Results of GROUP BY queries can only be maintained when the columns are group by expressions or the functions: sum, avg, count, min or max.");
+
+	    }
+
+	    if ((q.getGroupByOrderComparator () != null)
+		||
+		(q.getGroupByLimit () != null)
+		||
+		(q.getLimit () != null)
+	       )
+	    {
+
+		throw new QueryParseException ("Results of GROUP BY queries with a GROUP BY ORDER, GROUP BY LIMIT or LIMIT clause cannot be maintained.");
+
+	    }
+
+	} else {
+
+	    if (q.isWantDistinctResults ())
+	    {
+
+		throw new QueryParseException ("DISTINCT results cannot be maintained.");
+
+	    }
+
+	    this.orderByComp = (ListExpressionComparator) q.getOrderByComparator ();
+
+	}
+
+	final ListExpressionComparator lec = this.orderByComp;
+
+	this.entryComp = new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		if (lec != null)
+		{
+
+		    int c = lec.compareSortValues (((Entry) o1).sortVals,
+						   ((Entry) o2).sortVals);
+
+		    if (c != 0)
+		    {
+
+			return c;
+
+		    }
+
+		}
+
+		// Equal objects stay in the order they were added.
+		return LiveQueryResults.SEQ_COMPARATOR.compare (o1,
+								o2);
+
+	    }
+
+	};
+
+	this.ctx = LiveQueryResults.createContext ();
+
+    }
+
+    /**
+     * Create new results for the query and add the objects.
+     *
+     * @param q The Query, must have been parsed.
+     * @param objs The objects.
+     * @throws QueryParseException If the query is not parsed or is of a type whose results
+     *                             cannot be maintained.
+     * @throws QueryExecutionException If the query cannot be evaluated against one of the objects.
+     */
+    public LiveQueryResults (Query      q,
+			     Collection objs)
+	                     throws     QueryParseException,
+					QueryExecutionException
+    {
+
+	this (q);
+
+	this.addAll (objs);
+
+    }
+
+    private static ExecutionContext createContext ()
+    {
+
+	ExecutionContext c = new ExecutionContext ();
+
+	c.setResults (new QueryResults ());
+
+	return c;
+
+    }
+
+    public Query getQuery ()
+    {
+
+	return this.q;
+
+    }
+
+    /**
+     * Get the results, these are the same as: {@link QueryResults#getResults()} would be
+     * if the query was executed.  For a GROUP BY query this is the List of the group by keys.
+     *
+     * @return The results, the List cannot be modified.
+     * @throws QueryExecutionException If the value of a column cannot be got.
+     */
+    public List getResults ()
+	                   throws QueryExecutionException
+    {
+
+	return this.getSnapshot ().results;
+
+    }
+
+    /**
+     * Get the results for each group of a GROUP BY query, these are the same as:
+     * {@link QueryResults#getGroupByResults()} would be if the query was executed.
+     *
+     * @return The Map of group by key to the List of rows for the group, or <code>null</code>
+     *         if this isn't a GROUP BY query.  The Map cannot be modified.
+     * @throws QueryExecutionException Not thrown for a GROUP BY query.
+     */
+    public Map getGroupByResults ()
+	                         throws QueryExecutionException
+    {
+
+	return this.getSnapshot ().groupByResults;
+
+    }
+
+    /**
+     * Add an object.
+     *
+     * @param o The object.
+     * @throws QueryExecutionException If the query cannot be evaluated against the object.
+     */
+    public synchronized void add (Object o)
+	                          throws QueryExecutionException
+    {
+
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	this.q.setExecutionContext (this.ctx);
+
+	try
+	{
+
+	    this.addObject (o);
+
+	} finally {
+
+	    this.snapshot = null;
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+    }
+
+    /**
+     * Add the objects, in the order they are returned by the collection's iterator.
+     *
+     * @param objs The objects.
+     * @throws QueryExecutionException If the query cannot be evaluated against one of the objects.
+     */
+    public synchronized void addAll (Collection objs)
+	                             throws     QueryExecutionException
+    {
+
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	this.q.setExecutionContext (this.ctx);
+
+	try
+	{
+
+	    Iterator iter = objs.iterator ();
+
+	    while (iter.hasNext ())
+	    {
+
+		this.addObject (iter.next ());
+
+	    }
+
+	} finally {
+
+	    this.snapshot = null;
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+    }
+
+    /**
+     * Remove an object.
+     *
+     * @param o The object.
+     * @return <code>true</code> if the object was present.
+     * @throws QueryExecutionException If the totals of the group the object was in cannot be
+     *                                 recalculated.
+     */
+    public synchronized boolean remove (Object o)
+	                                throws QueryExecutionException
+    {
+
+	Entry e = (Entry) this.entries.remove (o);
+
+	if (e == null)
+	{
+
+	    return false;
+
+	}
+
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	this.q.setExecutionContext (this.ctx);
+
+	try
+	{
+
+	    this.removeEntry (e);
+
+	} finally {
+
+	    this.snapshot = null;
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+	return true;
+
+    }
+
+    /**
+     * Signal that an object has changed, the query is evaluated against the object again.  The
+     * object keeps its position relative to the other objects.
+     *
+     * @param o The object.
+     * @return <code>true</code> if the object is present, <code>false</code> if it isn't (and
+     *         nothing is done).
+     * @throws QueryExecutionException If the query cannot be evaluated against the object.
+     */
+    public synchronized boolean changed (Object o)
+	                                 throws QueryExecutionException
+    {
+
+	Entry e = (Entry) this.entries.get (o);
+
+	if (e == null)
+	{
+
+	    return false;
+
+	}
+
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	this.q.setExecutionContext (this.ctx);
+
+	try
+	{
+
+	    this.removeEntry (e);
+
+	    this.insertEntry (e);
+
+	} finally {
+
+	    this.snapshot = null;
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+	return true;
+
+    }
+
+    /**
+     * Remove all the objects.
+     */
+    public synchronized void clear ()
+    {
+
+	this.entries.clear ();
+	this.matches.clear ();
+	this.groups.clear ();
+	this.nextSeq = 0;
+
+	this.snapshot = null;
+
+    }
+
+    /**
+     * Evaluate the query against all the objects again, use this when the bind variables of
+     * the query have changed.
+     *
+     * @throws QueryExecutionException If the query cannot be evaluated against one of the objects.
+     */
+    public synchronized void refresh ()
+	                             throws QueryExecutionException
+    {
+
+	List es = new ArrayList (this.entries.values ());
+
+	Collections.sort (es,
+			  LiveQueryResults.SEQ_COMPARATOR);
+
+	this.matches.clear ();
+	this.groups.clear ();
+
+	// Values calculated once per execution (such as the items of an IN list) may have changed.
+	this.ctx = LiveQueryResults.createContext ();
+
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	this.q.setExecutionContext (this.ctx);
+
+	try
+	{
+
+	    for (int i = 0; i < es.size (); i++)
+	    {
+
+		Entry e = (Entry) es.get (i);
+
+		e.matched = false;
+
+		this.insertEntry (e);
+
+	    }
+
+	} finally {
+
+	    this.snapshot = null;
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+    }
+
+    private void addObject (Object o)
+	                    throws QueryExecutionException
+    {
+
+	Entry e = (Entry) this.entries.get (o);
+
+	if (e != null)
+	{
+
+	    this.removeEntry (e);
+
+	} else {
+
+	    e = new Entry (o,
+			   this.nextSeq++);
+
+	    this.entries.put (o,
+			      e);
+
+	}
+
+	this.insertEntry (e);
+
+    }
+
+    private void insertEntry (Entry e)
+	                      throws QueryExecutionException
+    {
+
+	Object o = e.obj;
+
+	// The object may have changed since any function values were shared for it.
+	this.ctx.clearSharedValues ();
+
+	this.ctx.setCurrentObject (o);
+
+	if ((this.where != null)
+	    &&
+	    (!this.where.isTrue (o,
+				 this.q))
+	   )
+	{
+
+	    return;
+
+	}
+
+	if (this.having != null)
+	{
+
+	    this.ctx.setCurrentObject (o);
+
+	    if (!this.having.isTrue (o,
+				     this.q))
+	    {
+
+		return;
+
+	    }
+
+	}
+
+	if (this.groupAggregator != null)
+	{
+
+	    this.addToGroup (e);
+
+	    e.matched = true;
+
+	    return;
+
+	}
+
+	if (this.orderByComp != null)
+	{
+
+	    e.sortVals = this.orderByComp.getSortValues (o);
+
+	}
+
+	e.rows = null;
+
+	int i = Collections.binarySearch (this.matches,
+					  e,
+					  this.entryComp);
+
+	this.matches.add (-(i + 1),
+			  e);
+
+	e.matched = true;
+
+    }
+
+    private void removeEntry (Entry e)
+	                      throws QueryExecutionException
+    {
+
+	if (!e.matched)
+	{
+
+	    return;
+
+	}
+
+	e.matched = false;
+
+	if (this.groupAggregator != null)
+	{
+
+	    this.removeFromGroup (e);
+
+	    return;
+
+	}
+
+	// The entry still has the sort values it was inserted with.
+	int i = Collections.binarySearch (this.matches,
+					  e,
+					  this.entryComp);
+
+	if ((i < 0)
+	    ||
+	    (this.matches.get (i) != e))
+	{
+
+	    // A custom object comparator may not order the sort values consistently.
+	    i = -1;
+
+	    for (int j = 0; j < this.matches.size (); j++)
+	    {
+
+		if (this.matches.get (j) == e)
+		{
+
+		    i = j;
+
+		    break;
+
+		}
+
+	    }
+
+	}
+
+	if (i > -1)
+	{
+
+	    this.matches.remove (i);
+
+	}
+
+    }
+
+    private void addToGroup (Entry e)
+	                     throws QueryExecutionException
+    {
+
+	List objs = new ArrayList (1);
+
+	objs.add (e.obj);
+
+	Map t = this.groupAggregator.aggregate (objs,
+						0,
+						1);
+
+	if (t == null)
+	{
+
+	    throw new QueryExecutionException ("Unable to calculate group by values for object: " +
+					       e.obj);
+
+	}
+
+	e.key = (GroupKey) t.keySet ().iterator ().next ();
+
+	Group g = (Group) this.groups.get (e.key);
+
+	if (g == null)
+	{
+
+	    g = new Group ();
+
+	    g.members.add (e);
+	    g.totals = t;
+
+	    this.groups.put (e.key,
+			     g);
+
+	    return;
+
+	}
+
+	int i = -(Collections.binarySearch (g.members,
+					    e,
+					    LiveQueryResults.SEQ_COMPARATOR) + 1);
+
+	g.members.add (i,
+		       e);
+
+	g.rows = null;
+
+	// The totals can only be added to when the object is the last in the group.
+	if ((i == g.members.size () - 1)
+	    &&
+	    (this.groupAggregator.merge (g.totals,
+					 t))
+	   )
+	{
+
+	    return;
+
+	}
+
+	this.recalculate (g);
+
+    }
+
+    private void removeFromGroup (Entry e)
+	                          throws QueryExecutionException
+    {
+
+	Group g = (Group) this.groups.get (e.key);
+
+	if (g == null)
+	{
+
+	    return;
+
+	}
+
+	int i = Collections.binarySearch (g.members,
+					  e,
+					  LiveQueryResults.SEQ_COMPARATOR);
+
+	if (i > -1)
+	{
+
+	    g.members.remove (i);
+
+	}
+
+	if (g.members.size () == 0)
+	{
+
+	    this.groups.remove (e.key);
+
+	    return;
+
+	}
+
+	g.rows = null;
+
+	this.recalculate (g);
+
+    }
+
+    private void recalculate (Group g)
+	                      throws QueryExecutionException
+    {
+
+	int s = g.members.size ();
+
+	List objs = new ArrayList (s);
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    objs.add (((Entry) g.members.get (i)).obj);
+
+	}
+
+	Map t = this.groupAggregator.aggregate (objs,
+						0,
+						s);
+
+	if ((t == null)
+	    ||
+	    (t.size () != 1)
+	   )
+	{
+
+	    throw new QueryExecutionException ("Unable to recalculate group by values, an object may have changed without being signalled.");
+
+	}
+
+	g.totals = t;
+
+    }
+
+    private Snapshot getSnapshot ()
+	                         throws QueryExecutionException
+    {
+
+	Snapshot s = this.snapshot;
+
+	if (s != null)
+	{
+
+	    return s;
+
+	}
+
+	return this.createSnapshot ();
+
+    }
+
+    private synchronized Snapshot createSnapshot ()
+	                                         throws QueryExecutionException
+    {
+
+	if (this.snapshot != null)
+	{
+
+	    return this.snapshot;
+
+	}
+
+	Snapshot s = new Snapshot ();
+
+	if (this.groupAggregator != null)
+	{
+
+	    List keys = new ArrayList (this.groups.size ());
+
+	    Map gres = new LinkedHashMap ();
+
+	    // As when the query is executed the groups are in the order of the first object
+	    // in each group.
+	    List gs = new ArrayList (this.groups.entrySet ());
+
+	    Collections.sort (gs,
+			      new Comparator ()
+			      {
+
+				  public int compare (Object o1,
+						      Object o2)
+				  {
+
+				      return LiveQueryResults.SEQ_COMPARATOR.compare (((Group) ((Map.Entry) o1).getValue ()).members.get (0),
+										      ((Group) ((Map.Entry) o2).getValue ()).members.get (0));
+
+				  }
+
+			      });
+
+	    Iterator iter = gs.iterator ();
+
+	    while (iter.hasNext ())
+	    {
+
+		Map.Entry en = (Map.Entry) iter.next ();
+
+		Group g = (Group) en.getValue ();
+
+		if (g.rows == null)
+		{
+
+		    g.rows = (List) this.groupAggregator.getResults (g.totals).values ().iterator ().next ();
+
+		}
+
+		keys.add (en.getKey ());
+
+		gres.put (en.getKey (),
+			  g.rows);
+
+	    }
+
+	    s.results = Collections.unmodifiableList (keys);
+	    s.groupByResults = Collections.unmodifiableMap (gres);
+
+	    this.snapshot = s;
+
+	    return s;
+
+	}
+
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	this.q.setExecutionContext (this.ctx);
+
+	try
+	{
+
+	    List es = this.matches;
+
+	    Limit l = this.q.getLimit ();
+
+	    if (l != null)
+	    {
+
+		// The same as when the query is executed.
+		es = l.getSubSelection (es,
+					this.q);
+
+	    }
+
+	    int si = es.size ();
+
+	    List res = new ArrayList (si);
+
+	    for (int i = 0; i < si; i++)
+	    {
+
+		Entry e = (Entry) es.get (i);
+
+		// The columns are only needed for the objects that are in the results.
+		if (e.rows == null)
+		{
+
+		    e.rows = this.q.getSelectRows (e.obj);
+
+		}
+
+		res.addAll (e.rows);
+
+	    }
+
+	    s.results = Collections.unmodifiableList (res);
+
+	} finally {
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+	this.snapshot = s;
+
+	return s;
+
+    }
+
+    private static class Entry
+    {
+
+	private Object obj = null;
+	private long seq = 0;
+	private boolean matched = false;
+	private Object[] sortVals = null;
+	private List rows = null;
+	private GroupKey key = null;
+
+	private Entry (Object o,
+		       long   seq)
+	{
+
+	    this.obj = o;
+	    this.seq = seq;
+
+	}
+
+    }
+
+    private static class Group
+    {
+
+	private List members = new ArrayList ();
+	private Map totals = null;
+	private List rows = null;
+
+    }
+
+    private static class Snapshot
+    {
+
+	private List results = null;
+	private Map groupByResults = null;
+
+    }
+
+}
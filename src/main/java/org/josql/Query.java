@@ -16,6 +16,7 @@ package org.josql;
 
 import java.io.StringReader;
 import java.io.BufferedReader;
+import java.io.File;
 
 import java.util.Map;
 import java.util.HashMap;
@@ -28,6 +29,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.BitSet;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.josql.parser.JoSQLParser;
 
@@ -39,6 +45,11 @@ import org.josql.internal.*;
 
 import org.josql.events.*;
 
+import org.josql.utils.IndexedCollection;
+import org.josql.utils.ColumnarSnapshot;
+import org.josql.utils.SortValueSerializer;
+import org.josql.utils.DefaultSortValueSerializer;
+
 /** 
  * This class provides the ability for a developer to apply an arbitrary SQL statement
  * (using suitable syntax) to a collection of Java objects.
@@ -131,6 +142,7 @@ public class Query
     private Comparator orderByComp = null;
     private Comparator groupOrderByComp = null;
     private Grouper grouper = null;
+    private GroupAggregator groupAggregator = null;
     private List orderBys = null;
     private List groupOrderBys = null;
     private List cols = null;
@@ -140,6 +152,16 @@ public class Query
     private Map bindVars = null;
     private String query = null;
     private boolean wantTimings = false;
+    private boolean wantParallel = false;
+    private boolean wantCompiled = false;
+    private boolean wantOptimized = false;
+    private boolean wantBatch = false;
+    private long orderByMemLimit = 0;
+    private SortValueSerializer sortValueSer = new DefaultSortValueSerializer ();
+    private File sortDir = null;
+    private ExpressionOptimizer optimizer = null;
+    private int parallelChunkSize = 0;
+    private ForkJoinPool forkJoinPool = null;
     private List functionHandlers = null;
     private int anonVarIndex = 1;
     private Expression from = null;
@@ -151,14 +173,19 @@ public class Query
     private boolean distinctResults = false;
     private ClassLoader classLoader = null;
     private Query parent = null;
+    private List parentRefs = null;
     private Map listeners = new HashMap ();
 
-    // Execution data.
-    private transient Object currentObject = null;
-    private transient List allObjects = null;
-    private transient List currGroupBys = null;
+    // Execution data, one context per executing thread.
+    private transient ThreadLocal execContext = new ThreadLocal ();
 
-    private QueryResults qd = null;
+    // Used when the query is used outside of an execution, for instance by a comparator or
+    // filter, so that a thread doesn't get a context that outlives the call.
+    private transient ExecutionContext detachedContext = new ExecutionContext ();
+
+    // The number of executions in progress against a ColumnarSnapshot, the context is
+    // only checked for a snapshot when there are any.
+    private AtomicInteger snapshotExecs = new AtomicInteger ();
 
     /**
      * Return the WHERE clause expression.
@@ -390,6 +417,13 @@ public class Query
 
     }
 
+    public Limit getGroupByLimit ()
+    {
+
+	return this.groupByLimit;
+
+    }
+
     public void setGroupByOrderColumns (List cols)
     {
 
@@ -468,6 +502,317 @@ public class Query
 
     }
 
+    /**
+     * Indicate whether the query should be executed in parallel where possible.  When
+     * set the WHERE clause is evaluated against chunks of the objects by the threads in the
+     * {@link #getForkJoinPool() fork/join pool}, the results are in the same order as 
+     * if the query was executed sequentially.  Large sets of results are also ordered by
+     * the threads in the pool, see: {@link java.util.Arrays#parallelSort(Object[],Comparator)}.
+     * Only worth using for large lists of objects and where the WHERE clause has no
+     * side-effects (i.e. it doesn't rely on the order in which the objects are evaluated).
+     * Each chunk has its own save values, those set by the chunks are copied back in order
+     * once they have all been evaluated.  Queries with user-defined function handlers are
+     * never executed in parallel since the handlers may keep state between calls.
+     *
+     * @param v Set to <code>true</code> to execute in parallel.
+     */
+    public void setWantParallelExecution (boolean v)
+    {
+
+	this.wantParallel = v;
+
+    }
+
+    public boolean isWantParallelExecution ()
+    {
+
+	return this.wantParallel;
+
+    }
+
+    /**
+     * Return whether the specified number of objects should be evaluated by the threads in
+     * the fork/join pool.  User-defined function handlers are ordinary objects that may keep
+     * state between calls so when there are any the query is always executed by the calling
+     * thread.
+     */
+    private boolean isParallel (int s)
+    {
+
+	if (!this.wantParallel)
+	{
+
+	    return false;
+
+	}
+
+	List fhs = this.getFunctionHandlers ();
+
+	if ((fhs != null)
+	    &&
+	    (fhs.size () > 0)
+	   )
+	{
+
+	    return false;
+
+	}
+
+	return s > this.getParallelChunkSize (s);
+
+    }
+
+    /**
+     * Indicate whether the WHERE and HAVING clauses should be evaluated against batches of
+     * objects (of {@link Expression#BATCH_SIZE} objects) rather than one object at a time, see:
+     * {@link Expression#select(Object[],int[],int,int[],Query)}.  The results are the same
+     * either way but the expressions within a clause are called for the objects in a different
+     * order, so like parallel execution this is only suitable when the clauses have no
+     * side-effects.
+     *
+     * @param v Set to <code>true</code> to evaluate in batches.
+     */
+    public void setWantBatchEvaluation (boolean v)
+    {
+
+	this.wantBatch = v;
+
+    }
+
+    public boolean isWantBatchEvaluation ()
+    {
+
+	return this.wantBatch;
+
+    }
+
+    /**
+     * Set the approximate memory, in bytes, that ordering the results may use for the values
+     * of the ORDER BY expressions.  When there are more results than can be ordered within the
+     * limit they are ordered a "run" at a time, each run is written to a temporary file and the
+     * runs are then merged.  This allows very large sets of results to be ordered but is much
+     * slower than ordering in memory.  The values are written using the 
+     * {@link #setSortValueSerializer(SortValueSerializer) sort value serializer}.  
+     * The objects themselves are not written, an index for each object is always held in memory.
+     * <p>
+     * Note: the ORDER BY values must be writable by the serializer, for the default serializer 
+     * this means they must be <code>Serializable</code> (or a string, primitive wrapper or date).
+     * Otherwise ordering results that exceed the limit fails with a 
+     * {@link QueryExecutionException} even though ordering them in memory would succeed, so 
+     * either don't set a limit for such queries or provide a serializer for the values.
+     *
+     * @param bytes The limit, <code>0</code> (the default) means no limit.
+     */
+    public void setOrderByMemoryLimit (long bytes)
+    {
+
+	this.orderByMemLimit = bytes;
+
+    }
+
+    public long getOrderByMemoryLimit ()
+    {
+
+	return this.orderByMemLimit;
+
+    }
+
+    /**
+     * Set the serializer used to write the values of the ORDER BY expressions to temporary files,
+     * see: {@link #setOrderByMemoryLimit(long)}.
+     *
+     * @param s The serializer, if <code>null</code> then a {@link DefaultSortValueSerializer} is used.
+     */
+    public void setSortValueSerializer (SortValueSerializer s)
+    {
+
+	if (s == null)
+	{
+
+	    s = new DefaultSortValueSerializer ();
+
+	}
+
+	this.sortValueSer = s;
+
+    }
+
+    public SortValueSerializer getSortValueSerializer ()
+    {
+
+	return this.sortValueSer;
+
+    }
+
+    /**
+     * Set the directory that the temporary files used to order the results are created in, see:
+     * {@link #setOrderByMemoryLimit(long)}.
+     *
+     * @param d The directory, if <code>null</code> (the default) then the default temporary 
+     *          directory is used.
+     */
+    public void setSortDirectory (File d)
+    {
+
+	this.sortDir = d;
+
+    }
+
+    public File getSortDirectory ()
+    {
+
+	return this.sortDir;
+
+    }
+
+    /**
+     * Indicate whether the WHERE and HAVING clauses should be compiled once the query
+     * has been parsed.  Compiling replaces the common predicates, such as an accessor compared
+     * to a constant, with specialized expressions that avoid the general type dispatch
+     * performed by the interpreted expressions, see: {@link ExpressionCompiler} for details.
+     * The operands of AND/OR chains may also be reordered based on their cost and results.
+     * The results are the same either way.  If the query has already been parsed then the 
+     * clauses are compiled straight away.
+     *
+     * @param v Set to <code>true</code> to compile the expressions.
+     */
+    public void setWantCompiledExpressions (boolean v)
+    {
+
+	this.wantCompiled = v;
+
+	if ((v)
+	    &&
+	    (this.isParsed)
+	   )
+	{
+
+	    this.compileExpressions ();
+
+	}
+
+    }
+
+    public boolean isWantCompiledExpressions ()
+    {
+
+	return this.wantCompiled;
+
+    }
+
+    /**
+     * Indicate whether the WHERE and HAVING clauses should be optimized once the query
+     * has been parsed, this must be set before the query is parsed.  Optimizing rewrites the
+     * clauses into expressions that give the same results but are cheaper to evaluate, such as
+     * folding constants and merging equality checks of an accessor into an IN, see:
+     * {@link ExpressionOptimizer} for details.  Function calls that are made more than once
+     * with the same arguments are also only made once whilst an object is being evaluated (for 
+     * example twice in the WHERE clause or in each of the ORDER BY expressions), the values
+     * are not kept once the next object is evaluated.  If the expressions are also to be compiled
+     * then the optimized expressions are compiled.
+     *
+     * @param v Set to <code>true</code> to optimize the expressions.
+     */
+    public void setWantOptimizedExpressions (boolean v)
+    {
+
+	this.wantOptimized = v;
+
+    }
+
+    public boolean isWantOptimizedExpressions ()
+    {
+
+	return this.wantOptimized;
+
+    }
+
+    /**
+     * Get the optimizer used when the expressions are to be optimized, see:
+     * {@link #setWantOptimizedExpressions(boolean)}.  Rules can be added to the optimizer
+     * before the query is parsed.
+     *
+     * @return The optimizer.
+     */
+    public ExpressionOptimizer getExpressionOptimizer ()
+    {
+
+	if (this.optimizer == null)
+	{
+
+	    this.optimizer = new ExpressionOptimizer ();
+
+	}
+
+	return this.optimizer;
+
+    }
+
+    /**
+     * Set the maximum number of objects that are evaluated by a single task when the
+     * query is executed in parallel.  Lists with no more objects than this are always
+     * evaluated sequentially.
+     *
+     * @param s The chunk size, use a value less than 1 to have the size determined
+     *          from the number of objects and the parallelism of the pool.
+     */
+    public void setParallelChunkSize (int s)
+    {
+
+	this.parallelChunkSize = s;
+
+    }
+
+    /**
+     * Get the number of objects that will be evaluated by a single task when executing
+     * in parallel over the specified number of objects.
+     *
+     * @param size The number of objects.
+     * @return The chunk size.
+     */
+    public int getParallelChunkSize (int size)
+    {
+
+	if (this.parallelChunkSize > 0)
+	{
+
+	    return this.parallelChunkSize;
+
+	}
+
+	// Aim for a few chunks per thread, but not so small that the task overhead
+	// outweighs the evaluation.
+	return Math.max (1024,
+			 size / (this.getForkJoinPool ().getParallelism () * 4));
+
+    }
+
+    /**
+     * Set the pool used when executing in parallel.
+     *
+     * @param p The pool, if <code>null</code> then the common pool is used.
+     */
+    public void setForkJoinPool (ForkJoinPool p)
+    {
+
+	this.forkJoinPool = p;
+
+    }
+
+    public ForkJoinPool getForkJoinPool ()
+    {
+
+	if (this.forkJoinPool == null)
+	{
+
+	    return ForkJoinPool.commonPool ();
+
+	}
+
+	return this.forkJoinPool;
+
+    }
+
     protected void addTiming (String id,
 			      double time)
     {
@@ -475,22 +820,24 @@ public class Query
 	if (this.wantTimings)
 	{
 
-	    if (this.qd == null)
+	    QueryResults qd = this.getQueryResults ();
+
+	    if (qd == null)
 	    {
 
 		return;
 
 	    }
 
-	    if (this.qd.timings == null)
+	    if (qd.timings == null)
 	    {
 
-		this.qd.timings = new LinkedHashMap ();
+		qd.timings = new LinkedHashMap ();
 
 	    }
 
-	    this.qd.timings.put (id,
-				 new Double (time));
+	    qd.timings.put (id,
+			    Double.valueOf (time));
 
 	}
 
@@ -566,14 +913,30 @@ public class Query
 
 	}
 
-	if (this.bindVars == null)
+	Object v = null;
+
+	Map ebv = this.getExecutionContext ().getBindVariables ();
+
+	if ((ebv != null)
+	    &&
+	    (ebv.containsKey (n))
+	   )
 	{
 
-	    return Object.class;
+	    v = ebv.get (n);
 
-	}
+	} else {
+
+	    if (this.bindVars == null)
+	    {
+
+		return Object.class;
 
-	Object v = (Object) this.bindVars.get (n);
+	    }
+
+	    v = this.bindVars.get (n);
+
+	}
 
 	if (v == null)
 	{
@@ -596,10 +959,12 @@ public class Query
     {
 
 	// Get the current group bys.
-	if (this.currGroupBys != null)
+	List gbs = this.getExecutionContext ().getCurrentGroupByObjects ();
+
+	if (gbs != null)
 	{
 
-	    return this.currGroupBys.get (ind - 1);
+	    return gbs.get (ind - 1);
 
 	}
 
@@ -645,7 +1010,7 @@ public class Query
 	{
 
 	    // May be null if we aren't processing a while/having expression.
-	    return this.currentObject;
+	    return this.getCurrentObject ();
 
 	}
 
@@ -653,7 +1018,7 @@ public class Query
 	{
 
 	    // May change depending upon when it is called.
-	    return this.allObjects;
+	    return this.getAllObjects ();
 
 	}
 
@@ -664,6 +1029,19 @@ public class Query
 
 	}
 
+	// Bind variables passed to the current execution take precedence.
+	Map ebv = this.getExecutionContext ().getBindVariables ();
+
+	if ((ebv != null)
+	    &&
+	    (ebv.containsKey (n))
+	   )
+	{
+
+	    return ebv.get (n);
+
+	}
+
 	if (this.bindVars == null)
 	{
 
@@ -856,7 +1234,7 @@ public class Query
 	{
 
 	    // Set the "all objects".
-	    this.allObjects = l;
+	    this.setAllObjects (l);
 
 	    long s = System.currentTimeMillis ();
 
@@ -898,77 +1276,191 @@ public class Query
     }
 
     /**
-     * This method will be called at the end of a query execution to clean up the
-     * transient objects used throughout execution.
+     * Get the execution context for the current thread.  Each thread executing this query has
+     * its own context so that a single parsed Query can be executed by multiple threads at the
+     * same time.  If the current thread isn't executing the query (the query is being used by a
+     * comparator or filter for instance) then a context held by the query is returned, this
+     * isn't stored for the thread and, as with any other query setting, isn't safe to use from
+     * multiple threads at once.
+     *
+     * @return The execution context.
      */
-    private void clearResults ()
+    public ExecutionContext getExecutionContext ()
     {
 
-	this.qd = null;
+	ExecutionContext ctx = (ExecutionContext) this.execContext.get ();
+
+	if (ctx == null)
+	{
+
+	    return this.detachedContext;
+
+	}
 
-	this.currentObject = null;
-	this.allObjects = null;
-        this.currGroupBys = null;
+	return ctx;
 
     }
 
     /**
-     * Execute this query on the specified objects provided by the iterator.  It should be noted that the iterator
-     * is first traversed and the objects it returns converted to a List and then passed to the {@link #execute(List)} method for execution.
+     * Get the execution context for the current thread without creating one, use this to keep
+     * the current context so that it can be restored with {@link #setExecutionContext(ExecutionContext)},
+     * this way a thread that had no context (such as a pool thread) is left without one.
      *
-     * @param iter The iterator to use to get the objects.
-     * @return The list of objects that match the query.
-     * @throws QueryExecutionException If the query cannot be executed.
+     * @return The execution context or <code>null</code> if the current thread doesn't have one.
      */
-    public QueryResults execute (Iterator iter)
-	                         throws   QueryExecutionException
+    public ExecutionContext peekExecutionContext ()
     {
 
-	if ((iter == null)
-	    &&
-	    (this.objClass != null)
-	   )
-	{
-
-	    throw new QueryExecutionException ("Iterator must be non-null when an object class is specified.");
-
-	}
-		
-        List l = new ArrayList ();
-        
-        while (iter.hasNext ())
-        {
-            
-            l.add (iter.next ());
-            
-        }
-                
-	return this.execute (l);
+	return (ExecutionContext) this.execContext.get ();
 
     }
 
     /**
-     * Execute this query on the specified objects.  It should be noted that the collection
-     * is first converted to a List and then passed to the {@link #execute(List)} method for execution.
+     * Get the snapshot that the current thread is executing this query against, see:
+     * {@link ColumnarSnapshot}.
      *
-     * @param objs The collection of objects to execute the query on.
-     * @return The list of objects that match the query.
-     * @throws QueryExecutionException If the query cannot be executed.
+     * @return The snapshot or <code>null</code> if the query is not being executed against one.
      */
-    public QueryResults execute (Collection objs)
-	                         throws     QueryExecutionException
+    public ColumnarSnapshot getColumnarSnapshot ()
     {
 
-	if ((objs == null)
-	    &&
-	    (this.objClass != null)
-	   )
+	if (this.snapshotExecs.get () == 0)
 	{
 
-	    throw new QueryExecutionException ("Collection of objects must be non-null when an object class is specified.");
+	    return null;
 
 	}
-		
+
+	return this.getExecutionContext ().getColumnarSnapshot ();
+
+    }
+
+    /**
+     * Set the execution context for the current thread.
+     * Caution: do NOT use this method unless you are sure about what you are doing!
+     *
+     * @param ctx The context, pass <code>null</code> to remove the current thread's context.
+     */
+    public void setExecutionContext (ExecutionContext ctx)
+    {
+
+	if (ctx == null)
+	{
+
+	    this.execContext.remove ();
+
+	    return;
+
+	}
+
+	this.execContext.set (ctx);
+
+    }
+
+    /**
+     * Convert the bind variables passed to {@link #execute(List,Map)} into the form used
+     * internally, i.e. lower-cased names and indexed bind variables prefixed.
+     */
+    private Map normaliseBindVariables (Map bVars)
+    {
+
+	Map m = new HashMap ();
+
+        Iterator iter = bVars.keySet ().iterator ();
+        
+        while (iter.hasNext ())
+        {
+            
+            Object k = iter.next ();
+
+	    String n = null;
+            
+            if (k instanceof Number)
+            {
+
+		n = Query.INT_BIND_VAR_PREFIX + ((Number) k).intValue ();
+                
+            } else {
+
+		n = k.toString ();
+
+		if (n.startsWith (":"))
+		{
+
+		    n = n.substring (1);
+
+		}
+
+		n = n.toLowerCase ();
+                
+            }
+
+	    m.put (n,
+		   bVars.get (k));
+            
+        }
+
+	return m;
+
+    }
+
+    /**
+     * Execute this query on the specified objects provided by the iterator.  It should be noted that the iterator
+     * is first traversed and the objects it returns converted to a List and then passed to the {@link #execute(List)} method for execution.
+     *
+     * @param iter The iterator to use to get the objects.
+     * @return The list of objects that match the query.
+     * @throws QueryExecutionException If the query cannot be executed.
+     */
+    public QueryResults execute (Iterator iter)
+	                         throws   QueryExecutionException
+    {
+
+	if ((iter == null)
+	    &&
+	    (this.objClass != null)
+	   )
+	{
+
+	    throw new QueryExecutionException ("Iterator must be non-null when an object class is specified.");
+
+	}
+		
+        List l = new ArrayList ();
+        
+        while (iter.hasNext ())
+        {
+            
+            l.add (iter.next ());
+            
+        }
+                
+	return this.execute (l);
+
+    }
+
+    /**
+     * Execute this query on the specified objects.  It should be noted that the collection
+     * is first converted to a List and then passed to the {@link #execute(List)} method for execution.
+     *
+     * @param objs The collection of objects to execute the query on.
+     * @return The list of objects that match the query.
+     * @throws QueryExecutionException If the query cannot be executed.
+     */
+    public QueryResults execute (Collection objs)
+	                         throws     QueryExecutionException
+    {
+
+	if ((objs == null)
+	    &&
+	    (this.objClass != null)
+	   )
+	{
+
+	    throw new QueryExecutionException ("Collection of objects must be non-null when an object class is specified.");
+
+	}
+		
         List l = new ArrayList (objs.size ());
         l.addAll (objs);
                 
@@ -987,6 +1479,29 @@ public class Query
 	                         throws QueryExecutionException
     {
 
+	return this.execute (objs,
+			     null);
+
+    }
+
+    /**
+     * Execute this query on the specified objects using the bind variables passed in.
+     * The bind variables only apply to this execution and take precedence over any
+     * set via: {@link #setVariable(String,Object)}.  Since the bind variables (and all
+     * other execution state) are held per execution, a single parsed Query can be
+     * executed concurrently by multiple threads using this method.
+     *
+     * @param objs The list of objects to execute the query on.
+     * @param bindVars The bind variables, keyed on name (a String) or index (a Number), 
+     *                 may be <code>null</code>.
+     * @return The list of objects that match the query.
+     * @throws QueryExecutionException If the query cannot be executed.
+     */
+    public QueryResults execute (List   objs,
+				 Map    bindVars)
+	                         throws QueryExecutionException
+    {
+
 	if ((objs == null)
 	    &&
 	    (this.objClass != null)
@@ -997,93 +1512,417 @@ public class Query
 
 	}
 
-	this.qd = new QueryResults ();
+	// Keep any context we are "inside" of so it can be restored.
+	ExecutionContext prev = this.peekExecutionContext ();
 
-	if ((this.objClass == null)
-	    &&
-	    (objs == null)
-	   )
+	ExecutionContext ctx = new ExecutionContext ();
+
+	ctx.setResults (new QueryResults ());
+
+	if (bindVars != null)
 	{
 
-	    objs = Query.nullQueryList;
+	    ctx.setBindVariables (this.normaliseBindVariables (bindVars));
 
 	}
 
-	this.allObjects = objs;
+	this.execContext.set (ctx);
 
-	// See if we have any expressions that are to be executed on 
-	// the complete set.
-	this.doExecuteOn (objs,
-		          Query.ALL);
+	if (objs instanceof ColumnarSnapshot)
+	{
 
-        this.evalWhereClause ();
+	    ctx.setColumnarSnapshot ((ColumnarSnapshot) objs);
 
-	// See if we have any functions that are to be executed on 
-	// the results...
-        this.doExecuteOn (this.qd.results,
-                          Query.RESULTS);
+	    this.snapshotExecs.incrementAndGet ();
 
-	// If we have a "having" clause execute it here...
-        this.evalHavingClause ();
+	}
 
-	// Now perform the group by operation.
-        if (this.grouper != null)
-        {
+	try
+	{
+
+	    if ((this.objClass == null)
+		&&
+		(objs == null)
+	       )
+	    {
+
+		objs = Query.nullQueryList;
+
+	    }
+
+	    ctx.setAllObjects (objs);
+
+	    // See if we have any expressions that are to be executed on 
+	    // the complete set.
+	    this.doExecuteOn (objs,
+			      Query.ALL);
+
+	    // See if the ORDER BY and LIMIT can be done as the WHERE clause is evaluated.
+	    int topN = this.getTopNSize (ctx);
+
+	    if (topN > -1)
+	    {
+
+		this.evalTopNClause (ctx,
+				     topN);
+
+		this.evalSelectClause (ctx);
+
+		return ctx.getResults ();
+
+	    }
+
+	    this.evalWhereClause (ctx);
+
+	    // See if we have any functions that are to be executed on 
+	    // the results...
+	    this.doExecuteOn (ctx.getResults ().results,
+			      Query.RESULTS);
+
+	    // If we have a "having" clause execute it here...
+	    this.evalHavingClause (ctx);
+
+	    // Now perform the group by operation.
+	    if (this.grouper != null)
+	    {
             
-            this.evalGroupByClause ();
+		this.evalGroupByClause (ctx);
             
-            return this.qd;
+		return ctx.getResults ();
         
-        }
+	    }
 
-	// Now perform the order by.
-        this.evalOrderByClause ();
+	    // Now perform the order by.
+	    this.evalOrderByClause (ctx);
 
-	// Finally, if we have a limit clause, restrict the set of objects returned...
-        this.evalLimitClause ();
+	    // Finally, if we have a limit clause, restrict the set of objects returned...
+	    this.evalLimitClause (ctx);
 
-        this.evalSelectClause ();
+	    this.evalSelectClause (ctx);
 
-	try
-	{
-
-	    return this.qd;
+	    return ctx.getResults ();
 
 	} finally {
 
+	    if (ctx.getColumnarSnapshot () != null)
+	    {
+
+		this.snapshotExecs.decrementAndGet ();
+
+	    }
+
 	    // Clean up ;)
-	    this.clearResults ();
+	    this.setExecutionContext (prev);
 
 	}
 
     }
 
-    private void evalSelectClause ()
-                                   throws QueryExecutionException
+    /**
+     * Return whether this query can be executed in a streaming fashion, see: 
+     * {@link #iterate(Iterator,Map)}.  This is only possible when the query has no
+     * ORDER BY, GROUP BY or EXECUTE ON clauses and doesn't require distinct results, since
+     * all of these require the complete set of objects to be available.
+     *
+     * @return <code>true</code> if the query can be streamed.
+     */
+    public boolean isStreamable ()
     {
-        
-	boolean retNewObjs = false;
 
-	// See if we are a single column of new objects.
-	if (!this.retObjs)
+	if ((this.orderByComp != null)
+	    ||
+	    (this.grouper != null)
+	    ||
+	    (this.distinctResults)
+	   )
 	{
 
-	    if (this.cols.size () == 1)
+	    return false;
+
+	}
+
+	if (this.executeOn != null)
+	{
+
+	    Iterator iter = this.executeOn.values ().iterator ();
+
+	    while (iter.hasNext ())
 	    {
 
-		SelectItemExpression sei = (SelectItemExpression) this.cols.get (0);
-		
-		if (sei.getExpression () instanceof NewObjectExpression)
+		List l = (List) iter.next ();
+
+		if ((l != null)
+		    &&
+		    (l.size () > 0)
+		   )
 		{
 
-		    retNewObjs = true;
-		    
+		    return false;
+
 		}
 
 	    }
 
 	}
 
+	return true;
+
+    }
+
+    /**
+     * Execute this query on the objects provided by the iterator, returning the results as
+     * they are found.  See: {@link #iterate(Iterator,Map)} for details.
+     *
+     * @param iter The iterator to use to get the objects.
+     * @return An iterator over the results.
+     * @throws QueryExecutionException If the query cannot be streamed, see: {@link #isStreamable()}
+     *                                 or if the LIMIT clause cannot be evaluated.
+     */
+    public QueryResultsIterator iterate (Iterator iter)
+	                                 throws   QueryExecutionException
+    {
+
+	return this.iterate (iter,
+			     null);
+
+    }
+
+    /**
+     * Execute this query on the objects provided by the iterator, returning the results as
+     * they are found.  Unlike {@link #execute(Iterator)} the objects are never collected into
+     * a List, an object is only taken from the source iterator when the next result
+     * is required and once the LIMIT clause (if present) has been satisfied no more objects
+     * are taken.  This makes it possible to query a source that is too large to hold
+     * in memory or that never ends.
+     * <p>
+     * Only queries that are {@link #isStreamable() streamable} can be executed this way.
+     * Also note that since the complete set of objects is never available the value of the
+     * <code>:_allobjs</code> special bind variable is <code>null</code>.
+     *
+     * @param iter The iterator to use to get the objects.
+     * @param bindVars The bind variables for this execution, see: {@link #execute(List,Map)}, 
+     *                 may be <code>null</code>.
+     * @return An iterator over the results.
+     * @throws QueryExecutionException If the query cannot be streamed, see: {@link #isStreamable()}
+     *                                 or if the LIMIT clause cannot be evaluated.
+     */
+    public QueryResultsIterator iterate (Iterator iter,
+					 Map      bindVars)
+	                                 throws   QueryExecutionException
+    {
+
+	if (!this.isParsed)
+	{
+
+	    throw new QueryExecutionException ("Query has not been initialised.");
+
+	}
+
+	if (!this.isStreamable ())
+	{
+
+	    throw new QueryExecutionException ("Query: " +
+					       this +
+					       " cannot be streamed, only queries without ORDER BY, GROUP BY, EXECUTE ON or DISTINCT can be streamed.");
+
+	}
+
+	if (iter == null)
+	{
+
+	    if (this.objClass != null)
+	    {
+
+		throw new QueryExecutionException ("Iterator must be non-null when an object class is specified.");
+
+	    }
+
+	    iter = Query.nullQueryList.iterator ();
+
+	}
+
+	ExecutionContext ctx = new ExecutionContext ();
+
+	ctx.setResults (new QueryResults ());
+
+	if (bindVars != null)
+	{
+
+	    ctx.setBindVariables (this.normaliseBindVariables (bindVars));
+
+	}
+
+	int start = 0;
+	int rows = -1;
+
+	if (this.limit != null)
+	{
+
+	    // The limit values may use bind variables so evaluate them in the context.
+	    ExecutionContext prev = this.peekExecutionContext ();
+
+	    this.execContext.set (ctx);
+
+	    try
+	    {
+
+		start = Math.max (0,
+				  this.limit.getStart (this));
+		rows = this.limit.getRowsCount (this);
+
+	    } finally {
+
+		this.setExecutionContext (prev);
+
+	    }
+
+	}
+
+	return new QueryResultsIterator (this,
+					 iter,
+					 ctx,
+					 start,
+					 rows);
+
+    }
+
+    /**
+     * Determine whether the results can be gained by selecting the first N objects
+     * (according to the ORDER BY) as the WHERE clause is evaluated rather than sorting
+     * all the objects that match and then applying the LIMIT.  This is only possible
+     * when there is an ORDER BY and a LIMIT with a rows count but no HAVING, GROUP BY or
+     * EXECUTE ON RESULTS clauses since they require all the WHERE clause results.
+     *
+     * @return The number of objects to select (the LIMIT start plus the rows count) or -1 
+     *         if the results should be gained by sorting.
+     */
+    private int getTopNSize (ExecutionContext ctx)
+	                     throws           QueryExecutionException
+    {
+
+	if ((this.orderByComp == null)
+	    ||
+	    (!(this.orderByComp instanceof ListExpressionComparator))
+	    ||
+	    (this.limit == null)
+	    ||
+	    (this.having != null)
+	    ||
+	    (this.grouper != null)
+	   )
+	{
+
+	    return -1;
+
+	}
+
+	if ((this.executeOn != null)
+	    &&
+	    (this.executeOn.get (Query.RESULTS) != null)
+	   )
+	{
+
+	    return -1;
+
+	}
+
+	int rows = this.limit.getRowsCount (this);
+
+	if (rows < 1)
+	{
+
+	    return -1;
+
+	}
+
+	int n = Math.max (0,
+			  this.limit.getStart (this)) + rows;
+
+	if (n >= ctx.getAllObjects ().size ())
+	{
+
+	    // No benefit, the whole list is needed anyway.
+	    return -1;
+
+	}
+
+	return n;
+
+    }
+
+    /**
+     * Evaluate the WHERE clause and keep only the first <b>n</b> objects according to
+     * the ORDER BY, then apply the LIMIT start.  The WHERE clause is evaluated as usual,
+     * so indexes, columns, parallel and batch evaluation are all used, its results are
+     * the indexes of the matching objects, only the ordering of all of them is avoided.
+     */
+    private void evalTopNClause (ExecutionContext ctx,
+				 int              n)
+	                         throws           QueryExecutionException
+    {
+
+	QueryResults qd = ctx.getResults ();
+
+	ListExpressionComparator lec = (ListExpressionComparator) this.orderByComp;
+
+	TopNSelector sel = new TopNSelector (lec,
+					     n);
+
+	this.evalWhereClause (ctx);
+
+	long s = System.currentTimeMillis ();
+
+	List objs = qd.results;
+
+	int si = objs.size ();
+
+	for (int i = 0; i < si; i++)
+	{
+
+	    sel.add (objs.get (i));
+
+	}
+
+	List res = sel.getResults ();
+
+	int start = Math.max (0,
+			      this.limit.getStart (this));
+
+	if (start > 0)
+	{
+
+	    if (start < res.size ())
+	    {
+
+		res = new ArrayList (res.subList (start,
+						  res.size ()));
+
+	    } else {
+
+		res = new ArrayList ();
+
+	    }
+
+	}
+
+	ctx.setAllObjects (res);
+
+	qd.results = res;
+
+	this.addTiming ("Total time to select first: " + n + " ordered results",
+			System.currentTimeMillis () - s);
+
+    }
+
+    private void evalSelectClause (ExecutionContext ctx)
+                                   throws QueryExecutionException
+    {
+
+	QueryResults qd = ctx.getResults ();
+        
+	// See if we are a single column of new objects.
+	boolean retNewObjs = this.isSingleNewObjectColumn ();
+
 	long s = System.currentTimeMillis ();
 
 	// Now get the columns if necessary, we do this here to get the minimum
@@ -1099,26 +1938,26 @@ public class Query
 	    if (!this.distinctResults)
 	    {
 
-		resC = new ArrayList (this.qd.results.size ());
+		resC = new ArrayList (qd.results.size ());
 
 	    } else {
 
-		resC = new LinkedHashSet (this.qd.results.size ());
+		resC = new LinkedHashSet (qd.results.size ());
 
 	    }
 
 	    // Get the column values.
-	    this.getColumnValues (this.qd.results,
+	    this.getColumnValues (qd.results,
 				  resC);
 
 	    if (this.distinctResults)
 	    {
 
-		this.qd.results = new ArrayList (resC);
+		qd.results = new ArrayList (resC);
 
 	    } else {
 
-		this.qd.results = (List) resC;
+		qd.results = (List) resC;
 
 	    }
 
@@ -1135,11 +1974,21 @@ public class Query
 
 		    s = System.currentTimeMillis ();
 		    
-		    this.qd.results = ((CollectionFunctions) this.getFunctionHandler (CollectionFunctions.HANDLER_ID)).unique (this.qd.results);
+		    qd.results = ((CollectionFunctions) this.getFunctionHandler (CollectionFunctions.HANDLER_ID)).unique (qd.results);
 		    
 		    this.addTiming ("Collecting unique results took",
 				    (double) (System.currentTimeMillis () - s));
 
+		} else {
+
+		    if (qd.results instanceof Selection)
+		    {
+
+			// This is the only copy of the objects made.
+			qd.results = ((Selection) qd.results).toList ();
+
+		    }
+
 		}
 
 	    }
@@ -1148,7 +1997,7 @@ public class Query
 	    if (retNewObjs)
 	    {
 
-		this.qd.results = this.getNewObjectSingleColumnValues (this.qd.results);
+		qd.results = this.getNewObjectSingleColumnValues (qd.results);
 
 	    }
 
@@ -1156,11 +2005,13 @@ public class Query
         
     }
 
-    private void evalOrderByClause ()
+    private void evalOrderByClause (ExecutionContext ctx)
                                     throws QueryExecutionException
     {
+
+	QueryResults qd = ctx.getResults ();
         
-	if ((this.qd.results.size () > 1)
+	if ((qd.results.size () > 1)
 	    &&
 	    (this.orderByComp != null)
 	   )
@@ -1168,39 +2019,94 @@ public class Query
 
 	    long s = System.currentTimeMillis ();
 
-	    // It should be noted here that the comparator will set the
-	    // "current object" so that it can be used in the order by
-	    // clause.
-	    Collections.sort (this.qd.results,
-			      this.orderByComp);
+	    int si = qd.results.size ();
 
-	    this.addTiming ("Total time to order results",
-			    System.currentTimeMillis () - s);	
+	    ListExpressionComparator lec = (ListExpressionComparator) this.orderByComp;
 
-	}
+	    ExternalSorter es = null;
 
-	if (this.orderByComp != null)
-	{
+	    if (this.orderByMemLimit > 0)
+	    {
 
-	    ListExpressionComparator lec = (ListExpressionComparator) this.orderByComp;
+		es = new ExternalSorter (lec,
+					 this.sortValueSer,
+					 this.sortDir,
+					 this.orderByMemLimit);
+
+		if (si <= es.getRunSize ())
+		{
+
+		    // Can be done in memory.
+		    es = null;
 
-	    if (lec.getException () != null)
+		}
+
+	    }
+
+	    int[] rows = null;
+
+	    // The order by expressions are evaluated once for each object (the keys 
+	    // will set the "current object" so that it can be used in the order by
+	    // clause), then the indexes of the objects are sorted, so the list the
+	    // query was executed on isn't reordered.
+	    if (es != null)
 	    {
 
-		throw new QueryExecutionException ("Unable to order results",
-						   lec.getException ());
+		try
+		{
+
+		    rows = es.sort (qd.results);
+
+		} catch (QueryExecutionException e) {
+
+		    throw new QueryExecutionException ("Unable to order results",
+						       e);
+
+		}
+
+		this.addTiming ("Total time to order results using temporary files, runs of: " + es.getRunSize () + " objects",
+				System.currentTimeMillis () - s);
+
+	    } else {
+
+		SortKeys keys = null;
+
+		try
+		{
+
+		    keys = new SortKeys (lec,
+					 qd.results);
+
+		} catch (QueryExecutionException e) {
+
+		    throw new QueryExecutionException ("Unable to order results",
+						       e);
+
+		}
+
+		this.addTiming ("Total time to get order by values",
+				System.currentTimeMillis () - s);	
+
+		rows = keys.sort (this.isParallel (si) ? this.getForkJoinPool () : null);
 
 	    }
 
-	    lec.clearCache ();
+	    qd.results = Selection.select (qd.results,
+					   rows,
+					   si);
+
+	    this.addTiming ("Total time to order results",
+			    System.currentTimeMillis () - s);	
 
 	}
         
     }
 
-    private void evalGroupByClause ()
+    private void evalGroupByClause (ExecutionContext ctx)
                                     throws QueryExecutionException
     {
+
+	QueryResults qd = ctx.getResults ();
      
         long s = System.currentTimeMillis ();
      
@@ -1210,134 +2116,216 @@ public class Query
 
             s = System.currentTimeMillis ();
 
-            // Group the objects.
-            Map mres = this.grouper.group (this.qd.results);
+            Map origSvs = qd.saveValues;
 
-            this.qd.groupByResults = mres;
+            Map mres = null;
 
-            List grpBys = new ArrayList (mres.keySet ());
+            int os = qd.results.size ();
 
-            // Convert the keys in the group by to a List.
-            Map origSvs = this.qd.saveValues;
+            boolean parallel = (this.isParallel (os))
+                               &&
+                               (qd.results instanceof RandomAccess);
 
-            Map nres = new LinkedHashMap ();
+            if (this.groupAggregator != null)
+            {
 
-            int gs = grpBys.size ();
+                // Try and group and calculate the columns in a single pass.
+                if (parallel)
+                {
+
+                    mres = this.groupParallel (ctx,
+                                               qd.results,
+                                               this.groupAggregator);
+
+                    if (mres != null)
+                    {
+
+                        mres = this.groupAggregator.getResults (mres);
+
+                    }
+
+                } else {
+
+                    mres = this.groupAggregator.aggregate (qd.results);
+
+                }
+
+            }
 
-            // Now for each "group by" list, do:
-            // 1. Execute the functions for the GROUP_BY_RESULTS type.
-            // 2. Sort the group by results according to the ORDER BY clause.
-            // 3. Limit the group by results according to the LIMIT clause.
-            for (int i = 0; i < gs; i++)
+            List grpBys = null;
+
+            Map nres = null;
+
+            if (mres != null)
             {
 
-                List l = (List) grpBys.get (i);
+                grpBys = new ArrayList (mres.keySet ());
 
-                List lr = (List) mres.get (l);
+                nres = mres;
+
+                if (qd.groupBySaveValues == null)
+                {
 
-                this.allObjects = lr;
-                this.currGroupBys = l;
+                    qd.groupBySaveValues = new HashMap ();
 
-                // Now set the save values for the group bys.
-                if (this.qd.groupBySaveValues == null)
+                }
+
+                // Each group gets its own copy of the save values.
+                for (int i = 0; i < grpBys.size (); i++)
                 {
 
-                    this.qd.groupBySaveValues = new HashMap ();
+                    Map svs = new HashMap ();
+
+                    if (origSvs != null)
+                    {
+
+                        svs.putAll (origSvs);
+
+                    }
+
+                    qd.groupBySaveValues.put (grpBys.get (i),
+                                              svs);
 
                 }
 
-                this.qd.saveValues = new HashMap ();
+            } else {
 
-                if (origSvs != null)
+                // Group the objects.
+                if (parallel)
                 {
 
-                    this.qd.saveValues.putAll (origSvs);
-                    
+                    mres = this.groupParallel (ctx,
+                                               qd.results,
+                                               null);
+
+                } else {
+
+                    mres = this.grouper.group (qd.results);
+
                 }
 
-                this.qd.groupBySaveValues.put (l,
-                                               this.qd.saveValues);
+                qd.groupByResults = mres;
+
+                grpBys = new ArrayList (mres.keySet ());
+
+                nres = new LinkedHashMap ();
 
-                // Now execute all (any) group by results functions.
-                this.doExecuteOn (lr,
-                                  Query.GROUP_BY_RESULTS);
+                int gs = grpBys.size ();
 
-                // Now sort these according to the order by (if any).
-                if ((lr.size () > 1)
-                    &&
-                    (this.orderByComp != null)
-                   )
+                // Now for each "group by" list, do:
+                // 1. Execute the functions for the GROUP_BY_RESULTS type.
+                // 2. Sort the group by results according to the ORDER BY clause.
+                // 3. Limit the group by results according to the LIMIT clause.
+                for (int i = 0; i < gs; i++)
                 {
 
-                    Collections.sort (lr,
-                                      this.orderByComp);
+                    List l = (List) grpBys.get (i);
 
-                    ListExpressionComparator lec = (ListExpressionComparator) this.orderByComp;
+                    List lr = (List) mres.get (l);
 
-                    if (lec.getException () != null)
+                    ctx.setAllObjects (lr);
+                    ctx.setCurrentGroupByObjects (l);
+
+                    // Now set the save values for the group bys.
+                    if (qd.groupBySaveValues == null)
                     {
 
-                        throw new QueryExecutionException ("Unable to order group by results",
-                                                           lec.getException ());
+                        qd.groupBySaveValues = new HashMap ();
 
                     }
 
-                    lec.clearCache ();
+                    qd.saveValues = new HashMap ();
 
-                }
+                    if (origSvs != null)
+                    {
 
-                if (!this.retObjs)
-                {
+                        qd.saveValues.putAll (origSvs);
+                    
+                    }
+
+                    qd.groupBySaveValues.put (l,
+                                              qd.saveValues);
 
-                    // Now collect the values...
-                    Collection res = null;
+                    // Now execute all (any) group by results functions.
+                    this.doExecuteOn (lr,
+                                      Query.GROUP_BY_RESULTS);
 
-                    if (!this.distinctResults)
+                    // Now sort these according to the order by (if any).
+                    if ((lr.size () > 1)
+                        &&
+                        (this.orderByComp != null)
+                       )
                     {
 
-                        res = new ArrayList ();
+                        try
+                        {
 
-                    } else {
+                            SortKeys.sort ((ListExpressionComparator) this.orderByComp,
+                                           lr);
+
+                        } catch (QueryExecutionException e) {
+
+                            throw new QueryExecutionException ("Unable to order group by results",
+                                                               e);
+
+                        }
+
+                    }
+
+                    if (!this.retObjs)
+                    {
+
+                        // Now collect the values...
+                        Collection res = null;
+
+                        if (!this.distinctResults)
+                        {
+
+                            res = new ArrayList ();
+
+                        } else {
+
+                            res = new LinkedHashSet ();
 
-                        res = new LinkedHashSet ();
+                        }
 
-                    }
+                        this.getColumnValues (lr,
+                                              res);
 
-                    this.getColumnValues (lr,
-                                          res);
+                        if (this.distinctResults)
+                        {
 
-                    if (this.distinctResults)
-                    {
+                            lr = new ArrayList (res);
 
-                        lr = new ArrayList (res);
+                        } else {
 
-                    } else {
+                            lr = (List) res;
 
-                        lr = (List) res;
+                        }
 
-                    }
+                    } else {
 
-                } else {
+                        if (this.distinctResults)
+                        {
 
-                    if (this.distinctResults)
-                    {
+                            qd.results = ((CollectionFunctions) this.getFunctionHandler (CollectionFunctions.HANDLER_ID)).unique (qd.results);
 
-                        this.qd.results = ((CollectionFunctions) this.getFunctionHandler (CollectionFunctions.HANDLER_ID)).unique (this.qd.results);
+                        }
 
                     }
 
-                }
+                    nres.put (l,
+                              lr);
 
-                nres.put (l,
-                          lr);
+                }
 
             }
 
             // Restore the save values.
-            this.qd.saveValues = origSvs;
+            qd.saveValues = origSvs;
 
             // Set the group by results.
-            this.qd.groupByResults = nres;
+            qd.groupByResults = nres;
 
             long t = System.currentTimeMillis ();
 
@@ -1350,13 +2338,13 @@ public class Query
             if (this.groupOrderByComp != null)
             {
 
-                origSvs = this.qd.saveValues;
+                origSvs = qd.saveValues;
 
                 Collections.sort (grpBys,
                                   this.groupOrderByComp);
 
                 // "Restore" the save values.
-                this.qd.saveValues = origSvs;
+                qd.saveValues = origSvs;
 
                 GroupByExpressionComparator lec = (GroupByExpressionComparator) this.groupOrderByComp;
 
@@ -1393,7 +2381,7 @@ public class Query
                     {
                         
                         // Remove.
-                        this.qd.groupByResults.remove (l);
+                        qd.groupByResults.remove (l);
                         
                     }
                     
@@ -1408,9 +2396,9 @@ public class Query
                             (double) (System.currentTimeMillis () - s));
 
             // "Restore" the save values.
-            this.qd.saveValues = origSvs;
+            qd.saveValues = origSvs;
 
-            this.qd.results = grpBys;
+            qd.results = grpBys;
             
             // NOW limit the group by results to a certain size, this needs
             // to be done last so that the group by limit clause can make use of the size of the
@@ -1418,27 +2406,27 @@ public class Query
             if (this.limit != null)
             {
                 
-                for (int i = 0; i < this.qd.results.size (); i++)
+                for (int i = 0; i < qd.results.size (); i++)
                 {
 
-                    List l = (List) this.qd.results.get (i);
+                    List l = (List) qd.results.get (i);
 
-                    List lr = (List) this.qd.groupByResults.get (l);
+                    List lr = (List) qd.groupByResults.get (l);
 
-                    this.allObjects = lr;
-                    this.currGroupBys = l;
+                    ctx.setAllObjects (lr);
+                    ctx.setCurrentGroupByObjects (l);
             
-                    this.qd.saveValues = (Map) this.qd.groupBySaveValues.get (l);
+                    qd.saveValues = (Map) qd.groupBySaveValues.get (l);
                         
-                    this.qd.groupByResults.put (l,
-                                                this.limit.getSubList (lr,
-                                                                       this));
+                    qd.groupByResults.put (l,
+                                           this.limit.getSubList (lr,
+                                                                  this));
                 
                 }            
 
             }
 
-            this.qd.saveValues = origSvs;
+            qd.saveValues = origSvs;
 
         } catch (Exception e) {
 
@@ -1449,53 +2437,108 @@ public class Query
                                    
     }                                    
 
-    private void evalHavingClause ()
+    /**
+     * Group the objects using the fork/join pool, each worker groups a chunk of the objects
+     * and the groups are then merged.  If an aggregator is provided the result is the running
+     * totals for each group (or <code>null</code> if the aggregator cannot handle the objects)
+     * otherwise it is the objects in each group.
+     */
+    private Map groupParallel (ExecutionContext ctx,
+                               List             objs,
+                               GroupAggregator  ga)
+                               throws           QueryExecutionException
+    {
+
+	GroupByTask t = new GroupByTask (this,
+					 this.grouper,
+					 ga,
+					 ctx,
+					 objs,
+					 this.getParallelChunkSize (objs.size ()));
+
+	Map res = (Map) this.getForkJoinPool ().invoke (t);
+
+	if (t.getEvaluationException () != null)
+	{
+
+	    throw t.getEvaluationException ();
+
+	}
+
+	// Each chunk set save values in its own results.
+	t.getWorkerResults ().merge (ctx.getResults ());
+
+	return res;
+
+    }
+
+    private void evalHavingClause (ExecutionContext ctx)
                                    throws QueryExecutionException
     {
+
+	QueryResults qd = ctx.getResults ();
     
     	if (this.having != null)
 	{
 
-	    int si = this.qd.results.size (); 
+	    if (this.wantBatch)
+	    {
 
-	    this.qd.havingResults = new ArrayList (si);
+		qd.havingResults = this.selectBatched (this.having,
+						       qd.results);
 
-	    for (int i = 0; i < si; i++)
-	    {
+	    } else {
 
-		Object o = this.qd.results.get (i);
+		int si = qd.results.size (); 
 
-		this.currentObject = o;
+		int[] rows = new int[si];
 
-		if (this.having.isTrue (o,
-					this))
+		int c = 0;
+
+		for (int i = 0; i < si; i++)
 		{
 
-		    this.qd.havingResults.add (o);
+		    Object o = qd.results.get (i);
+
+		    ctx.setCurrentObject (o);
+
+		    if (this.having.isTrue (o,
+					    this))
+		    {
+
+			rows[c++] = i;
+
+		    }
 
 		}
 
-	    }	    
+		qd.havingResults = Selection.select (qd.results,
+						     rows,
+						     c);
+
+	    }
 
-	    this.qd.results = this.qd.havingResults;
+	    qd.results = qd.havingResults;
 
 	    // Future proofing...
-	    this.allObjects = this.qd.results;
+	    ctx.setAllObjects (qd.results);
 
 	}
         
     }
 
-    private void evalLimitClause ()
+    private void evalLimitClause (ExecutionContext ctx)
                                   throws QueryExecutionException
     {
+
+	QueryResults qd = ctx.getResults ();
         
         if (this.limit != null)
 	{
 
 	    long s = System.currentTimeMillis ();
 
-	    this.qd.results = this.limit.getSubList (this.qd.results,
+	    qd.results = this.limit.getSubSelection (qd.results,
 						     this);
 
 	    this.addTiming ("Total time to limit results size",
@@ -1504,47 +2547,154 @@ public class Query
 	}
     }
 
-    private void evalWhereClause ()
+    private void evalWhereClause (ExecutionContext ctx)
                                   throws QueryExecutionException
     {
+
+	QueryResults qd = ctx.getResults ();
         
         long s = System.currentTimeMillis ();
         
-        int si = this.allObjects.size ();
-        
+	List objs = ctx.getAllObjects ();
+
+        int si = objs.size ();
+
         if (this.where != null)
 	{
 
-	    // Create the where results with "about" half the size of the input collection.
-	    // Further optimizations may be possible here if some statistics are collected
-	    // about how many objects match/fail the where clause and then increase the
-	    // capacity of the where results list as required, i.e. to cut down on the number
-	    // of array copy and allocation operations performed.  For now though half will do ;)
-	    this.qd.whereResults = new ArrayList (si / 2);
+	    if (!(objs instanceof RandomAccess))
+	    {
+
+		// The results are a selection of the objects by index.
+		objs = new ArrayList (objs);
 
-	    for (int i = 0; i < si; i++)
+	    }
+
+	    if (objs instanceof IndexedCollection)
 	    {
 
-		Object o = this.allObjects.get (i);
+		// Only the objects found using the indexes need to be checked, the where
+		// clause still sees all the objects.
+		List cands = IndexPlanner.getCandidates ((IndexedCollection) objs,
+							 this.where,
+							 this);
 
-		this.currentObject = o;
+		if (cands != null)
+		{
 
-		boolean res = this.where.isTrue (o,
-						 this);
+		    this.addTiming ("Index candidates for Where clause: " + cands.size () + " of: " + si + " objects",
+				    (double) System.currentTimeMillis () - (double) s);
+
+		    objs = cands;
+
+		    si = objs.size ();
+
+		}
+
+	    }
+
+	    List matches = null;
+
+	    if (objs instanceof ColumnarSnapshot)
+	    {
+
+		ColumnarSnapshot cs = (ColumnarSnapshot) objs;
+
+		// See if the where clause can be evaluated a column at a time.
+		BitSet rows = ColumnPlanner.getMatches (cs,
+							this.where,
+							this);
+
+		if (rows != null)
+		{
+
+		    matches = Selection.select (cs,
+						rows);
+
+		    this.addTiming ("Where clause evaluated using columns, matches: " + matches.size () + " of: " + si + " objects",
+				    (double) System.currentTimeMillis () - (double) s);
+
+		} else {
+
+		    // Otherwise only the rows that match the parts that can be evaluated using
+		    // the columns need to be checked.
+		    rows = ColumnPlanner.getCandidates (cs,
+							this.where,
+							this);
+
+		    if (rows != null)
+		    {
+
+			objs = Selection.select (cs,
+						 rows);
+
+			this.addTiming ("Column candidates for Where clause: " + objs.size () + " of: " + si + " objects",
+					(double) System.currentTimeMillis () - (double) s);
+
+			si = objs.size ();
+
+		    }
+
+		}
+
+	    }
+
+	    if (matches != null)
+	    {
+
+		qd.whereResults = matches;
+
+	    } else if ((this.isParallel (si))
+		&&
+		(objs instanceof RandomAccess)
+	       )
+	    {
+
+		qd.whereResults = this.evalWhereClauseParallel (ctx,
+								objs);
+
+	    } else if (this.wantBatch) {
 
-		if (res)
+		qd.whereResults = this.selectBatched (this.where,
+						      objs);
+
+	    } else {
+
+		// The where results are the indexes of the matching objects rather than a
+		// copy of them.
+		int[] rows = new int[si];
+
+		int c = 0;
+
+		for (int i = 0; i < si; i++)
 		{
 
-		    this.qd.whereResults.add (o);
+		    Object o = objs.get (i);
+
+		    ctx.setCurrentObject (o);
+
+		    boolean res = this.where.isTrue (o,
+						     this);
+
+		    if (res)
+		    {
+
+			rows[c++] = i;
+
+		    }
 
 		}
 
+		qd.whereResults = Selection.select (objs,
+						    rows,
+						    c);
+
 	    }
 
 	} else {
 
 	    // No limiting where clause so what's passed in is what comes out.
-	    this.qd.whereResults = this.allObjects;
+	    qd.whereResults = objs;
 
 	}
 
@@ -1555,17 +2705,123 @@ public class Query
 	this.addTiming ("Where took average over: " + si + " objects",
 			wet / (double) si);
 
-	this.allObjects = this.qd.whereResults;
+	ctx.setAllObjects (qd.whereResults);
 
 	// The results here are the result of executing the where clause, if present.
-	this.qd.results = this.qd.whereResults;
+	qd.results = qd.whereResults;
+
+    }
+
+    /**
+     * Get the objects that the expression is true for, evaluating it a batch at a time.
+     */
+    private Selection selectBatched (Expression exp,
+				     List       objs)
+	                             throws     QueryExecutionException
+    {
+
+	int si = objs.size ();
+
+	Object[] arr = new Object[Math.min (Expression.BATCH_SIZE,
+					    si)];
+
+	int[] sel = new int[arr.length];
+	int[] res = new int[arr.length];
+
+	int[] rows = new int[si];
+
+	int m = 0;
+
+	for (int b = 0; b < si; b += Expression.BATCH_SIZE)
+	{
+
+	    int n = Math.min (Expression.BATCH_SIZE,
+			      si - b);
+
+	    for (int i = 0; i < n; i++)
+	    {
+
+		arr[i] = objs.get (b + i);
+		sel[i] = i;
+
+	    }
+
+	    int c = exp.select (arr,
+				sel,
+				n,
+				res,
+				this);
+
+	    for (int i = 0; i < c; i++)
+	    {
+
+		rows[m++] = b + res[i];
+
+	    }
+
+	}
+
+	return Selection.select (objs,
+				 rows,
+				 m);
+
+    }
+
+    private Selection evalWhereClauseParallel (ExecutionContext ctx,
+					       List             objs)
+	                                  throws           QueryExecutionException
+    {
+
+	QueryResults qd = ctx.getResults ();
+
+	int si = objs.size ();
+
+	WhereClauseTask t = new WhereClauseTask (this,
+						 this.where,
+						 ctx,
+						 objs,
+						 this.getParallelChunkSize (si));
+
+	this.getForkJoinPool ().invoke (t);
+
+	if (t.getEvaluationException () != null)
+	{
+
+	    throw t.getEvaluationException ();
+
+	}
+
+	// Each chunk set save values in its own results.
+	t.getWorkerResults ().merge (qd);
+
+	boolean[] m = t.getMatches ();
+
+	int[] rows = new int[si];
+
+	int c = 0;
+
+	for (int i = 0; i < si; i++)
+	{
+
+	    if (m[i])
+	    {
+
+		rows[c++] = i;
+
+	    }
+
+	}
+
+	return Selection.select (objs,
+				 rows,
+				 c);
 
     }
 
     public void setCurrentGroupByObjects (List objs)
     {
 
-	this.currGroupBys = objs;
+	this.getExecutionContext ().setCurrentGroupByObjects (objs);
 
     }
 
@@ -1579,21 +2835,21 @@ public class Query
     public List getAllObjects ()
     {
 
-	return this.allObjects;
+	return this.getExecutionContext ().getAllObjects ();
 
     }
 
     public void setAllObjects (List objs)
     {
 
-	this.allObjects = objs;
+	this.getExecutionContext ().setAllObjects (objs);
 
     }
 
     public void setCurrentObject (Object o)
     {
 
-	this.currentObject = o;
+	this.getExecutionContext ().setCurrentObject (o);
 
     }
 
@@ -1606,7 +2862,7 @@ public class Query
     public Object getCurrentObject ()
     {
 
-	return this.currentObject;
+	return this.getExecutionContext ().getCurrentObject ();
 
     }
 
@@ -1615,128 +2871,282 @@ public class Query
 	                          throws     QueryExecutionException
     {
 
-	int s = res.size ();
+	ExecutionContext ctx = this.getExecutionContext ();
+
+	int s = res.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    this.getColumnValues (res.get (i),
+				  i,
+				  ctx,
+				  rs);
+
+	}
+
+    }
+
+    private void getColumnValues (Object           o,
+				  int              i,
+				  ExecutionContext ctx,
+				  Collection       rs)
+	                          throws           QueryExecutionException
+    {
+
+	int cs = this.cols.size ();
+
+	boolean addItems = false;
+
+	ctx.setCurrentObject (o);
+
+	List sRes = new ArrayList (cs);
+
+	for (int j = 0; j < cs; j++)
+	{
+
+	    SelectItemExpression v = (SelectItemExpression) this.cols.get (j);
+
+	    try
+	    {
+
+		if (v.isAddItemsFromCollectionOrMap ())
+		{
+
+		    addItems = true;
+			    
+		}
+			
+		// Get the value from the object...
+		Object ov = v.getValue (o,
+					this);
+		    
+		if (addItems)
+		{
+			    
+		    rs.addAll (v.getAddItems (ov));
+			
+		} else {
+			
+		    sRes.add (ov);
+			
+		}
+		    
+		// Now since the expression can set the current object, put it
+		// back to rights after the call...
+		ctx.setCurrentObject (o);
+
+	    } catch (Exception e) {
+
+		throw new QueryExecutionException ("Unable to get value for column: " +
+						   j + 
+						   " for: " +
+						   v.toString () + 
+						   " from result: " +
+						   i + 
+						   " (" +
+						   o + 
+						   ")",
+						   e);
+							   
+	    }
+		
+	}
+
+	if (!addItems)
+	{
+
+	    rs.add (sRes);
+
+	}
+
+    }
+
+    /**
+     * Get the rows that the SELECT clause creates for a single object, this is usually a single
+     * row but a column that adds the items from a collection or map can create more.  The
+     * execution context for the current thread should already have been set.
+     *
+     * @param o The object.
+     * @return The rows.
+     * @throws QueryExecutionException If the value of a column cannot be got.
+     */
+    List getSelectRows (Object o)
+	                throws QueryExecutionException
+    {
+
+	List rows = new ArrayList (1);
+
+	if (this.retObjs)
+	{
+
+	    rows.add (o);
+
+	    return rows;
+
+	}
+
+	ExecutionContext ctx = this.getExecutionContext ();
+
+	if (this.isSingleNewObjectColumn ())
+	{
+
+	    rows.add (this.getNewObjectSingleColumnValue (o,
+							  0,
+							  ctx));
+
+	    return rows;
+
+	}
+
+	this.getColumnValues (o,
+			      0,
+			      ctx,
+			      rows);
+
+	return rows;
+
+    }
+
+    GroupAggregator getGroupAggregator ()
+    {
+
+	return this.groupAggregator;
+
+    }
+
+    Comparator getGroupByOrderComparator ()
+    {
+
+	return this.groupOrderByComp;
+
+    }
+
+    private List getNewObjectSingleColumnValues (List   rows)
+	                                         throws QueryExecutionException
+    {
+
+	ExecutionContext ctx = this.getExecutionContext ();
 
-	int cs = this.cols.size ();
+	int s = rows.size ();
 
-	boolean addItems = false;
+	List res = new ArrayList (s);
 
 	for (int i = 0; i < s; i++)
 	{
 
-	    Object o = res.get (i);
-
-	    this.currentObject = o;
+	    res.add (this.getNewObjectSingleColumnValue (rows.get (i),
+							 i,
+							 ctx));
 
-	    List sRes = new ArrayList (cs);
+	}
 
-	    for (int j = 0; j < cs; j++)
-	    {
+	return res;
 
-		SelectItemExpression v = (SelectItemExpression) this.cols.get (j);
+    }
 
-		try
-		{
+    private Object getNewObjectSingleColumnValue (Object           o,
+						  int              i,
+						  ExecutionContext ctx)
+	                                          throws           QueryExecutionException
+    {
 
-		    if (v.isAddItemsFromCollectionOrMap ())
-		    {
+	SelectItemExpression nsei = (SelectItemExpression) this.cols.get (0);
 
-			addItems = true;
-			    
-		    }
-			
-		    // Get the value from the object...
-		    Object ov = v.getValue (o,
-					    this);
-		    
-		    if (addItems)
-		    {
-			    
-			rs.addAll (v.getAddItems (ov));
-			
-		    } else {
-			
-			sRes.add (ov);
-			
-		    }
-		    
-		    // Now since the expression can set the current object, put it
-		    // back to rights after the call...
-		    this.currentObject = o;
+	ctx.setCurrentObject (o);
 
-		} catch (Exception e) {
+	try
+	{
 
-		    throw new QueryExecutionException ("Unable to get value for column: " +
-						       j + 
-						       " for: " +
-						       v.toString () + 
-						       " from result: " +
-						       i + 
-						       " (" +
-						       o + 
-						       ")",
-						       e);
-							   
-		}
-		
-	    }
+	    Object v = nsei.getValue (o,
+				      this);
 
-	    if (!addItems)
-	    {
+	    // Now since the expression can set the current object, put it
+	    // back to rights after the call...
+	    ctx.setCurrentObject (o);
 
-		rs.add (sRes);
+	    return v;
 
-	    }
+	} catch (Exception e) {
 
+	    throw new QueryExecutionException ("Unable to get value for column: " +
+					       1 + 
+					       " for: " +
+					       nsei.toString () + 
+					       " from result: " +
+					       i + 
+					       " (" +
+					       o + 
+					       ")",
+					       e);
+							   
 	}
 
     }
 
-    private List getNewObjectSingleColumnValues (List   rows)
-	                                         throws QueryExecutionException
+    /**
+     * Return whether the SELECT clause is a single column that creates a new object.
+     */
+    private boolean isSingleNewObjectColumn ()
     {
 
-	int s = rows.size ();
+	if ((this.retObjs)
+	    ||
+	    (this.cols.size () != 1)
+	   )
+	{
 
-	SelectItemExpression nsei = (SelectItemExpression) this.cols.get (0);
+	    return false;
 
-	List res = new ArrayList (s);
+	}
 
-	for (int i = 0; i < s; i++)
-	{
+	SelectItemExpression sei = (SelectItemExpression) this.cols.get (0);
 
-	    Object o = rows.get (i);
+	return sei.getExpression () instanceof NewObjectExpression;
 
-	    this.currentObject = o;
+    }
 
-	    try
-	    {
+    /**
+     * Add the value(s) that the SELECT clause produces for a single object to the passed in
+     * collection, i.e. the object itself, a new object or a List of the column values.
+     *
+     * @param o The object.
+     * @param i The index of the object, used for error reporting.
+     * @param ctx The execution context.
+     * @param rs The collection to add the value(s) to.
+     * @throws QueryExecutionException If the values cannot be gained.
+     */
+    void addSelectValues (Object           o,
+			  int              i,
+			  ExecutionContext ctx,
+			  Collection       rs)
+	                  throws           QueryExecutionException
+    {
 
-		res.add (nsei.getValue (o,
-					this));
+	if (this.retObjs)
+	{
 
-		// Now since the expression can set the current object, put it
-		// back to rights after the call...
-		this.currentObject = o;
+	    rs.add (o);
 
-	    } catch (Exception e) {
+	    return;
 
-		throw new QueryExecutionException ("Unable to get value for column: " +
-						   1 + 
-						   " for: " +
-						   nsei.toString () + 
-						   " from result: " +
-						   i + 
-						   " (" +
-						   o + 
-						   ")",
-						   e);
-							   
-	    }
+	}
+
+	if (this.isSingleNewObjectColumn ())
+	{
+
+	    rs.add (this.getNewObjectSingleColumnValue (o,
+							i,
+							ctx));
+
+	    return;
 
 	}
 
-	return res;
+	this.getColumnValues (o,
+			      i,
+			      ctx,
+			      rs);
 
     }
 
@@ -1746,13 +3156,13 @@ public class Query
 	if (this.parent != null)
 	{
 
-	    this.parent.qd.saveValues.putAll (s);
+	    this.parent.getQueryResults ().saveValues.putAll (s);
 
 	    return;
 
 	}
 
-	this.qd.saveValues = s;
+	this.getQueryResults ().saveValues = s;
 
     }
     
@@ -1770,7 +3180,9 @@ public class Query
 
 	}
 
-	if (this.qd == null)
+	QueryResults qd = this.getQueryResults ();
+
+	if (qd == null)
 	{
 
 	    return;
@@ -1784,9 +3196,9 @@ public class Query
 
 	}
 
-	Object old = this.qd.saveValues.get (id);
+	Object old = qd.saveValues.get (id);
 
-	this.qd.saveValues.put (id,
+	qd.saveValues.put (id,
 				value);
 
 	if (old != null)
@@ -1914,9 +3326,11 @@ public class Query
 
 	}
 
-	if ((this.qd == null)
+	QueryResults qd = this.getQueryResults ();
+
+	if ((qd == null)
 	    ||
-	    (this.qd.groupBySaveValues == null)
+	    (qd.groupBySaveValues == null)
 	   )
 	{
 
@@ -1924,7 +3338,7 @@ public class Query
 
 	}
 
-	return (Map) this.qd.groupBySaveValues.get (gbs);
+	return (Map) qd.groupBySaveValues.get (gbs);
 
     }
 
@@ -1943,9 +3357,11 @@ public class Query
 
 	}
 
-	if ((this.qd == null)
+	QueryResults qd = this.getQueryResults ();
+
+	if ((qd == null)
 	    ||
-	    (this.qd.saveValues == null)
+	    (qd.saveValues == null)
 	   )
 	{
 
@@ -1960,7 +3376,7 @@ public class Query
 
 	}
 
-	return this.qd.saveValues.get (id);
+	return qd.saveValues.get (id);
 
     }
 
@@ -2425,6 +3841,26 @@ public class Query
 
 	}
 
+	if (this.wantOptimized)
+	{
+
+	    ExpressionOptimizer opt = this.getExpressionOptimizer ();
+
+	    this.where = opt.optimize (this.where,
+				       this);
+
+	    this.having = opt.optimize (this.having,
+					this);
+
+	}
+
+	if (this.wantCompiled)
+	{
+
+	    this.compileExpressions ();
+
+	}
+
 	// See if we have order by columns, if so init the comparator.
 	this.initOrderByComparator ();
 
@@ -2454,11 +3890,88 @@ public class Query
 
         this.initExecuteOn ();
 
+        this.initGroupAggregator ();
+
+	if (this.wantOptimized)
+	{
+
+	    this.shareFunctions ();
+
+	}
+
 	this.addTiming ("Time to init Query objects",
 			System.currentTimeMillis () - s);
 
     }
 
+    /**
+     * Share the values of the function calls made more than once by the clauses that
+     * are evaluated for each object.
+     */
+    private void shareFunctions ()
+    {
+
+	List exps = new ArrayList ();
+
+	exps.add (this.where);
+	exps.add (this.having);
+
+	if (!this.retObjs)
+	{
+
+	    exps.addAll (this.cols);
+
+	}
+
+	if (this.orderBys != null)
+	{
+
+	    int si = this.orderBys.size ();
+
+	    for (int i = 0; i < si; i++)
+	    {
+
+		OrderBy ob = (OrderBy) this.orderBys.get (i);
+
+		Expression e = ob.getExpression ();
+
+		if (e == null)
+		{
+
+		    // A column index, already checked when the comparator was inited.
+		    e = (Expression) this.cols.get (ob.getIndex () - 1);
+
+		}
+
+		exps.add (e);
+
+	    }
+
+	}
+
+	if (this.grouper != null)
+	{
+
+	    exps.addAll (this.grouper.getExpressions ());
+
+	}
+
+	ExpressionOptimizer.shareFunctions (exps,
+					    this);
+
+    }
+
+    private void compileExpressions ()
+    {
+
+	this.where = ExpressionCompiler.compile (this.where,
+						 this);
+
+	this.having = ExpressionCompiler.compile (this.having,
+						  this);
+
+    }
+
     private void initSelect ()
                              throws QueryParseException
     {
@@ -2589,6 +4102,35 @@ public class Query
         
     }
 
+    private void initGroupAggregator ()
+    {
+
+        this.groupAggregator = null;
+
+        // The aggregator can't be used if the objects are required for the group by results
+        // functions or are to be returned.
+        if ((this.grouper == null)
+            ||
+            (this.retObjs)
+            ||
+            ((this.executeOn != null)
+             &&
+             (this.executeOn.get (Query.GROUP_BY_RESULTS) != null)
+            )
+           )
+        {
+
+            return;
+
+        }
+
+        this.groupAggregator = GroupAggregator.create (this,
+                                                       this.grouper,
+                                                       this.cols,
+                                                       this.distinctResults);
+
+    }
+
     private void initExecuteOn ()
                                 throws QueryParseException
     {
@@ -3011,6 +4553,13 @@ public class Query
 
     }
 
+    public boolean isWantDistinctResults ()
+    {
+
+	return this.distinctResults;
+
+    }
+
     /**
      * Get the results of {@link #execute(java.util.List) executing} this query.
      *
@@ -3019,7 +4568,7 @@ public class Query
     public QueryResults getQueryResults ()
     {
 
-	return this.qd;
+	return this.getExecutionContext ().getResults ();
 
     }
 
@@ -3056,6 +4605,121 @@ public class Query
 
     }
 
+    /**
+     * Add a reference to the <b>:_parent</b> special bind variable that is used by this query,
+     * this is called when the bind variable is inited.
+     * Caution: do NOT use this method unless you are sure about what you are doing!
+     *
+     * @param bv The bind variable.
+     */
+    public void addParentReference (BindVariable bv)
+    {
+
+	if (this.parentRefs == null)
+	{
+
+	    this.parentRefs = new ArrayList ();
+
+	}
+
+	if (!this.parentRefs.contains (bv))
+	{
+
+	    this.parentRefs.add (bv);
+
+	}
+
+    }
+
+    /**
+     * Get the references to the <b>:_parent</b> special bind variable that are used by this
+     * query (or by one of its sub-queries and refer to a query above this one), these are the
+     * values from outside of a sub-query that its results can depend upon.
+     *
+     * @return The {@link BindVariable} references, may be <code>null</code> if there are none.
+     */
+    public List getParentReferences ()
+    {
+
+	return this.parentRefs;
+
+    }
+
+    /**
+     * Get the expressions used in the clauses of this query, i.e. the FROM, the columns,
+     * the WHERE, the GROUP BYs, the HAVING, the ORDER BYs and the GROUP BY ORDER BYs.
+     * Caution: the expressions are not copied, do NOT modify them unless you are sure about
+     * what you are doing!
+     *
+     * @return The expressions, clauses that aren't present are not included.
+     */
+    public List getClauseExpressions ()
+    {
+
+	List exps = new ArrayList ();
+
+	if (this.from != null)
+	{
+
+	    exps.add (this.from);
+
+	}
+
+	if (this.cols != null)
+	{
+
+	    exps.addAll (this.cols);
+
+	}
+
+	if (this.where != null)
+	{
+
+	    exps.add (this.where);
+
+	}
+
+	this.addOrderByExpressions (this.groupBys,
+				    exps);
+
+	if (this.having != null)
+	{
+
+	    exps.add (this.having);
+
+	}
+
+	this.addOrderByExpressions (this.orderBys,
+				    exps);
+	this.addOrderByExpressions (this.groupOrderBys,
+				    exps);
+
+	return exps;
+
+    }
+
+    private void addOrderByExpressions (List obs,
+					List exps)
+    {
+
+	if (obs == null)
+	{
+
+	    return;
+
+	}
+
+	int s = obs.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    exps.add (((OrderBy) obs.get (i)).getExpression ());
+
+	}
+
+    }
+
     /**
      * Get the parent query.
      *
@@ -3158,16 +4822,24 @@ public class Query
 
     }
 
+    /**
+     * Parse and execute the query against the objects.  The parsed form of the query is
+     * held in the {@link QueryPlanCache#getDefault() shared cache} so repeated calls with
+     * the same query text only parse the query once.
+     *
+     * @param query The query text.
+     * @param objs The objects to execute the query against.
+     * @return The results.
+     * @throws QueryParseException If the query cannot be parsed.
+     * @throws QueryExecutionException If the query cannot be executed.
+     */
     public static QueryResults parseAndExec (String query,
                                              List   objs)
                                              throws QueryParseException,
                                                     QueryExecutionException
     {
         
-        Query q = new Query ();
-        q.parse (query);
-        
-        return q.execute (objs);
+        return QueryPlanCache.getDefault ().getQuery (query).execute (objs);
         
     }
 
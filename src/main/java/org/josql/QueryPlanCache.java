@@ -0,0 +1,529 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * A bounded cache of parsed and initialised {@link Query} objects, keyed on the query
+ * text, the class the query (or expression) is to be evaluated against and the
+ * <code>ClassLoader</code> used to load the classes in the query.
+ * <p>
+ * Parsing and initialising a query (loading the FROM class, finding the accessors and
+ * functions and so on) is generally far more expensive than executing it against a
+ * small number of objects.  Since a parsed Query can be executed by many threads at
+ * the same time the same Query is used for every request for the same text.  The
+ * shared Query itself is never handed out, instead a {@link CachedQuery} is returned
+ * that can only execute it (or evaluate its WHERE clause), use
+ * {@link CachedQuery#execute(java.util.List,Map)} to provide bind variables for a single
+ * execution.
+ * <p>
+ * When the cache is full the least recently used query is removed.  The number of
+ * hits, misses and evictions are recorded, these can be used to tune the maximum size.
+ * <p>
+ * The cache doesn't keep a ClassLoader (or the classes it loaded) from being garbage
+ * collected, the ClassLoader and class in the key are only weakly referenced and the
+ * queries, which reference them, are softly referenced so they are released when the
+ * garbage collector clears soft references (at the latest before running out of memory).
+ * Entries whose ClassLoader, class or query has been collected are removed when the
+ * cache is next used.
+ * <p>
+ * A single shared cache is available via {@link #getDefault()}, this is used by
+ * {@link Query#parseAndExec(String,java.util.List)} and the static methods in
+ * {@link org.josql.utils.ExpressionEvaluator}.
+ */
+public class QueryPlanCache
+{
+
+    /**
+     * The default maximum number of queries held by the shared cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private static final QueryPlanCache def = new QueryPlanCache (QueryPlanCache.DEFAULT_MAX_SIZE);
+
+    private Map queries = null;
+    private ReferenceQueue refs = new ReferenceQueue ();
+    private int maxSize = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize The maximum number of queries to hold, a value of 0 (or less) means
+     *                that no queries are cached.
+     */
+    public QueryPlanCache (int maxSize)
+    {
+
+	this.maxSize = maxSize;
+
+	final QueryPlanCache c = this;
+
+	// Access ordered so that the eldest entry is the least recently used.
+	this.queries = new LinkedHashMap (16,
+					  0.75f,
+					  true)
+	{
+
+	    protected boolean removeEldestEntry (Map.Entry e)
+	    {
+
+		if (this.size () > c.maxSize)
+		{
+
+		    c.evictions++;
+
+		    return true;
+
+		}
+
+		return false;
+
+	    }
+
+	};
+
+    }
+
+    /**
+     * Get the cache shared by all users of JoSQL in this process (or more correctly, all
+     * users of the ClassLoader that loaded this class).
+     *
+     * @return The shared cache.
+     */
+    public static QueryPlanCache getDefault ()
+    {
+
+	return QueryPlanCache.def;
+
+    }
+
+    /**
+     * Get a parsed Query for the query text, the classes are loaded by the current thread's
+     * context ClassLoader.
+     *
+     * @param query The query text.
+     * @return A read-only handle to the shared Query.
+     * @throws QueryParseException If the query cannot be parsed.
+     */
+    public CachedQuery getQuery (String query)
+	                         throws QueryParseException
+    {
+
+	return this.getQuery (query,
+			      null,
+			      Thread.currentThread ().getContextClassLoader ());
+
+    }
+
+    /**
+     * Get a parsed Query for the query text.  If the query isn't in the cache it is
+     * parsed and added, if parsing fails nothing is added.
+     *
+     * @param query The query text.
+     * @param fromClass The class that the query will be executed against, this is only used
+     *                  to distinguish classes with the same name from different ClassLoaders.
+     *                  Can be <code>null</code>.
+     * @param cl The ClassLoader used to load the classes referenced by the query, can be
+     *           <code>null</code> to use the default.
+     * @return A read-only handle to the shared Query.
+     * @throws QueryParseException If the query cannot be parsed.
+     */
+    public CachedQuery getQuery (String      query,
+				 Class       fromClass,
+				 ClassLoader cl)
+	                         throws      QueryParseException
+    {
+
+	Key k = new Key (query,
+			 fromClass,
+			 cl,
+			 this.refs);
+
+	synchronized (this)
+	{
+
+	    this.purge ();
+
+	    QueryRef r = (QueryRef) this.queries.get (k);
+
+	    if (r != null)
+	    {
+
+		CachedQuery q = (CachedQuery) r.get ();
+
+		if (q != null)
+		{
+
+		    this.hits++;
+
+		    return q;
+
+		}
+
+	    }
+
+	    this.misses++;
+
+	}
+
+	// Parse outside of the lock, if two threads parse the same query at the same time
+	// then the last one wins, both get a usable Query.
+	Query pq = new Query ();
+
+	if (cl != null)
+	{
+
+	    pq.setClassLoader (cl);
+
+	}
+
+	pq.parse (query);
+
+	CachedQuery q = new CachedQuery (pq);
+
+	synchronized (this)
+	{
+
+	    if (this.maxSize > 0)
+	    {
+
+		this.queries.put (k,
+				  new QueryRef (q,
+						k,
+						this.refs));
+
+	    }
+
+	}
+
+	return q;
+
+    }
+
+    /**
+     * Remove the entries whose ClassLoader, class or query has been garbage collected.
+     */
+    private void purge ()
+    {
+
+	Reference r = null;
+
+	while ((r = this.refs.poll ()) != null)
+	{
+
+	    Key k = null;
+
+	    if (r instanceof QueryRef)
+	    {
+
+		k = ((QueryRef) r).key;
+
+		// The key may since have been given a new query.
+		if (this.queries.get (k) != r)
+		{
+
+		    continue;
+
+		}
+
+	    } else {
+
+		k = ((KeyRef) r).key;
+
+	    }
+
+	    this.queries.remove (k);
+
+	}
+
+    }
+
+    /**
+     * Set the maximum number of queries to hold, if the cache currently holds more
+     * queries than this then the least recently used are removed.
+     *
+     * @param s The maximum size, 0 (or less) to prevent caching.
+     */
+    public synchronized void setMaxSize (int s)
+    {
+
+	this.maxSize = s;
+
+	while (this.queries.size () > Math.max (0,
+						s))
+	{
+
+	    this.queries.remove (this.queries.keySet ().iterator ().next ());
+
+	    this.evictions++;
+
+	}
+
+    }
+
+    public synchronized int getMaxSize ()
+    {
+
+	return this.maxSize;
+
+    }
+
+    /**
+     * Get the number of queries currently held.
+     *
+     * @return The size.
+     */
+    public synchronized int getSize ()
+    {
+
+	this.purge ();
+
+	return this.queries.size ();
+
+    }
+
+    /**
+     * Get the number of times a query was found in the cache.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHits ()
+    {
+
+	return this.hits;
+
+    }
+
+    /**
+     * Get the number of times a query was not found in the cache and had to be parsed.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMisses ()
+    {
+
+	return this.misses;
+
+    }
+
+    /**
+     * Get the number of queries that have been removed to keep the cache within its
+     * maximum size.
+     *
+     * @return The number of evictions.
+     */
+    public synchronized long getEvictions ()
+    {
+
+	return this.evictions;
+
+    }
+
+    /**
+     * Remove all the queries and reset the statistics.
+     */
+    public synchronized void clear ()
+    {
+
+	this.queries.clear ();
+	this.hits = 0;
+	this.misses = 0;
+	this.evictions = 0;
+
+    }
+
+    private static class Key
+    {
+
+	private String query = null;
+	private KeyRef fromClass = null;
+	private KeyRef cl = null;
+	private int hash = 0;
+
+	private Key (String         query,
+		     Class          fromClass,
+		     ClassLoader    cl,
+		     ReferenceQueue refs)
+	{
+
+	    this.query = query;
+
+	    this.hash = query.hashCode ();
+
+	    if (fromClass != null)
+	    {
+
+		this.fromClass = new KeyRef (fromClass,
+					     this,
+					     refs);
+
+		this.hash = (31 * this.hash) + fromClass.hashCode ();
+
+	    }
+
+	    if (cl != null)
+	    {
+
+		this.cl = new KeyRef (cl,
+				      this,
+				      refs);
+
+		this.hash = (31 * this.hash) + System.identityHashCode (cl);
+
+	    }
+
+	}
+
+	private static Object get (Reference r)
+	{
+
+	    if (r == null)
+	    {
+
+		return null;
+
+	    }
+
+	    return r.get ();
+
+	}
+
+	public int hashCode ()
+	{
+
+	    return this.hash;
+
+	}
+
+	public boolean equals (Object o)
+	{
+
+	    if (o == this)
+	    {
+
+		return true;
+
+	    }
+
+	    if (!(o instanceof Key))
+	    {
+
+		return false;
+
+	    }
+
+	    Key k = (Key) o;
+
+	    if ((this.hash != k.hash)
+		||
+		((this.fromClass == null) != (k.fromClass == null))
+		||
+		((this.cl == null) != (k.cl == null))
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	    Object fc = Key.get (this.fromClass);
+	    Object c = Key.get (this.cl);
+
+	    // Once collected the key can only be equal to itself.
+	    if (((this.fromClass != null)
+		 &&
+		 (fc == null)
+		)
+		||
+		((this.cl != null)
+		 &&
+		 (c == null)
+		)
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	    return (fc == Key.get (k.fromClass))
+		   &&
+		   (c == Key.get (k.cl))
+		   &&
+		   (this.query.equals (k.query));
+
+	}
+
+    }
+
+    /**
+     * A weak reference to the ClassLoader or class of a key, when it is collected the key
+     * is removed.
+     */
+    private static class KeyRef
+	extends WeakReference
+    {
+
+	private Key key = null;
+
+	private KeyRef (Object         o,
+			Key            key,
+			ReferenceQueue refs)
+	{
+
+	    super (o,
+		   refs);
+
+	    this.key = key;
+
+	}
+
+    }
+
+    /**
+     * A soft reference to a cached query, the query references the ClassLoader and class
+     * so holding it strongly would keep them.
+     */
+    private static class QueryRef
+	extends SoftReference
+    {
+
+	private Key key = null;
+
+	private QueryRef (CachedQuery    q,
+			  Key            key,
+			  ReferenceQueue refs)
+	{
+
+	    super (q,
+		   refs);
+
+	    this.key = key;
+
+	}
+
+    }
+
+}
\ No newline at end of file
@@ -135,7 +135,8 @@ public class QueryResults
     }    
 
     /**
-     * Get the having results.
+     * Get the having results.  This is a read-only view of the objects the query was executed
+     * on rather than a copy, the objects are in the order they were passed to the query.
      *
      * @return The having results.
      */
@@ -147,7 +148,9 @@ public class QueryResults
     }
 
     /**
-     * Get the where results.
+     * Get the where results.  This is a read-only view of the objects the query was executed
+     * on rather than a copy, the objects are in the order they were passed to the query.  If
+     * there is no WHERE clause then this is the list passed to the query.
      *
      * @return The where results.
      */
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.josql.expressions.Expression;
+
+import org.josql.internal.ExecutionContext;
+
+/**
+ * An iterator over the results of executing a {@link Query} in a streaming fashion, 
+ * see: {@link Query#iterate(Iterator,java.util.Map)}.  Objects are pulled from the source iterator
+ * only when a result is required, the WHERE and HAVING clauses are applied to each
+ * object in turn and the values from the SELECT clause are returned for those that match.
+ * <p>
+ * Since the {@link Iterator} interface doesn't allow checked exceptions, if an exception
+ * occurs whilst evaluating the query an <code>IllegalStateException</code> is thrown
+ * and the cause is available via: {@link #getException()}.  No more results are 
+ * returned once an exception has occurred.
+ */
+public class QueryResultsIterator implements Iterator
+{
+
+    private Query q = null;
+    private Iterator source = null;
+    private ExecutionContext ctx = null;
+    private int skip = 0;
+    private int rows = -1;
+    private int count = 0;
+    private int ind = 0;
+    private boolean done = false;
+    private List pending = new ArrayList ();
+    private int pendingInd = 0;
+    private QueryExecutionException exp = null;
+
+    QueryResultsIterator (Query            q,
+			  Iterator         source,
+			  ExecutionContext ctx,
+			  int              start,
+			  int              rows)
+    {
+
+	this.q = q;
+	this.source = source;
+	this.ctx = ctx;
+	this.skip = start;
+	this.rows = rows;
+
+    }
+
+    /**
+     * Get the exception that occurred whilst executing the query, if any.
+     *
+     * @return The exception.
+     */
+    public QueryExecutionException getException ()
+    {
+
+	return this.exp;
+
+    }
+
+    /**
+     * Get the results object that holds the save values set during execution so far.
+     *
+     * @return The results object.
+     */
+    public QueryResults getQueryResults ()
+    {
+
+	return this.ctx.getResults ();
+
+    }
+
+    public boolean hasNext ()
+    {
+
+	if (this.pendingInd < this.pending.size ())
+	{
+
+	    return true;
+
+	}
+
+	if (this.done)
+	{
+
+	    return false;
+
+	}
+
+	this.fill ();
+
+	return this.pendingInd < this.pending.size ();
+
+    }
+
+    public Object next ()
+    {
+
+	if (!this.hasNext ())
+	{
+
+	    throw new NoSuchElementException ();
+
+	}
+
+	return this.pending.get (this.pendingInd++);
+
+    }
+
+    public void remove ()
+    {
+
+	throw new UnsupportedOperationException ("Not supported for instances of: " +
+						 this.getClass ().getName ());
+
+    }
+
+    /**
+     * Pull objects from the source until one (or more, when the SELECT clause adds the items
+     * from a collection) result is available or the source/limit is exhausted.
+     */
+    private void fill ()
+    {
+
+	this.pending.clear ();
+	this.pendingInd = 0;
+
+	Expression having = this.q.getHavingClause ();
+
+	// The results may be consumed by a thread that is executing other queries, or this
+	// query, so always swap our context in and out.
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	this.q.setExecutionContext (this.ctx);
+
+	try
+	{
+
+	    while ((this.pending.size () == 0)
+		   &&
+		   (!this.done)
+		  )
+	    {
+
+		if ((this.rows > 0)
+		    &&
+		    (this.count >= this.rows)
+		   )
+		{
+
+		    // Limit reached, don't read any more from the source.
+		    this.done = true;
+
+		    break;
+
+		}
+
+		if (!this.source.hasNext ())
+		{
+
+		    this.done = true;
+
+		    break;
+
+		}
+
+		Object o = this.source.next ();
+
+		// The source may return the same object again with different values.
+		this.ctx.clearSharedValues ();
+
+		this.ctx.setCurrentObject (o);
+
+		if (!this.q.isWhereTrue (o))
+		{
+
+		    continue;
+
+		}
+
+		if ((having != null)
+		    &&
+		    (!having.isTrue (o,
+				     this.q))
+		   )
+		{
+
+		    continue;
+
+		}
+
+		if (this.skip > 0)
+		{
+
+		    this.skip--;
+
+		    continue;
+
+		}
+
+		this.count++;
+
+		this.q.addSelectValues (o,
+					this.ind++,
+					this.ctx,
+					this.pending);
+
+	    }
+
+	} catch (QueryExecutionException e) {
+
+	    this.exp = e;
+	    this.done = true;
+
+	    throw new IllegalStateException ("Unable to execute query: " +
+					     this.q +
+					     ", use: getException for details.",
+					     e);
+
+	} finally {
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+    }
+
+}
@@ -22,6 +22,8 @@ import org.josql.QueryParseException;
 
 import org.josql.internal.Utilities;
 
+import org.josql.utils.ColumnarSnapshot;
+
 /**
  * Represents an "accessor" into an object.  An accessor is basically a dot separated list
  * of method names, such as: <code>myObj.id.name</code>.
@@ -140,6 +142,25 @@ public class Accessor extends ValueExpression
 	                    throws QueryExecutionException
     {
 
+	ColumnarSnapshot cs = (q != null) ? q.getColumnarSnapshot () : null;
+
+	if (cs != null)
+	{
+
+	    // Read the value from the column, if the snapshot holds it and the object.
+	    ColumnarSnapshot.Column col = cs.getColumn (this.acc);
+
+	    int r = (col != null) ? cs.getRow (o) : -1;
+
+	    if (r > -1)
+	    {
+
+		return col.getValue (r);
+
+	    }
+
+	}
+
 	try
 	{
 
@@ -159,6 +180,155 @@ public class Accessor extends ValueExpression
 
     }
 
+    /**
+     * Return whether the accessor is a single field or method that returns a primitive
+     * number.
+     *
+     * @param q The Query object.
+     * @return <code>true</code> if the accessor is numeric.
+     */
+    public boolean isNumeric (Query q)
+    {
+
+	return this.get.isDirectNumber ();
+
+    }
+
+    public double getDouble (Object o,
+			     Query  q)
+	                     throws QueryExecutionException
+    {
+
+	ColumnarSnapshot cs = (q != null) ? q.getColumnarSnapshot () : null;
+
+	if (cs != null)
+	{
+
+	    ColumnarSnapshot.Column col = cs.getColumn (this.acc);
+
+	    int r = (col != null) ? cs.getRow (o) : -1;
+
+	    if (r > -1)
+	    {
+
+		return col.getDouble (r);
+
+	    }
+
+	}
+
+	try
+	{
+
+	    return this.get.getDouble (o);
+
+	} catch (Exception e) {
+
+	    throw new QueryExecutionException ("Unable to get value from: " +
+					       this + 
+					       " passed in object type: " +
+					       o.getClass ().getName () +
+					       " expecting: " +
+					       this.get.getType ().getName (),
+					       e);
+
+	}
+
+    }
+
+    /**
+     * Get the values for a batch of objects, when the query is being executed against a
+     * {@link ColumnarSnapshot} that holds this accessor the column is only looked up once
+     * for the batch.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The value for <code>objs[sel[i]]</code> is written to <code>res[i]</code>.
+     * @param q The Query object.
+     * @throws QueryExecutionException If the value cannot be gained for one of the objects.
+     */
+    public void getValues (Object[] objs,
+			   int[]    sel,
+			   int      n,
+			   Object[] res,
+			   Query    q)
+	                   throws   QueryExecutionException
+    {
+
+	ColumnarSnapshot cs = q.getColumnarSnapshot ();
+
+	ColumnarSnapshot.Column col = (cs != null) ? cs.getColumn (this.acc) : null;
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    Object o = objs[sel[i]];
+
+	    int r = (col != null) ? cs.getRow (o) : -1;
+
+	    if (r > -1)
+	    {
+
+		res[i] = col.getValue (r);
+
+		continue;
+
+	    }
+
+	    res[i] = this.evaluate (o,
+				    q);
+
+	}
+
+    }
+
+    /**
+     * Get the values as <b>double</b>s for a batch of objects, see:
+     * {@link #getValues(Object[],int[],int,Object[],Query)}.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The value for <code>objs[sel[i]]</code> is written to <code>res[i]</code>.
+     * @param q The Query object.
+     * @throws QueryExecutionException If the value cannot be gained for one of the objects.
+     */
+    public void getDoubles (Object[] objs,
+			    int[]    sel,
+			    int      n,
+			    double[] res,
+			    Query    q)
+	                    throws   QueryExecutionException
+    {
+
+	ColumnarSnapshot cs = q.getColumnarSnapshot ();
+
+	ColumnarSnapshot.Column col = (cs != null) ? cs.getColumn (this.acc) : null;
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    Object o = objs[sel[i]];
+
+	    int r = (col != null) ? cs.getRow (o) : -1;
+
+	    if (r > -1)
+	    {
+
+		res[i] = col.getDouble (r);
+
+		continue;
+
+	    }
+
+	    res[i] = this.getDouble (o,
+				     q);
+
+	}
+
+    }
+
     public boolean equals (Object o)
     {
 
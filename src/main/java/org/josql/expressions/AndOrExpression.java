@@ -149,6 +149,137 @@ public class AndOrExpression extends BinaryExpression
 
     }
 
+    /**
+     * Evaluate the expression against a batch of objects, the LHS is evaluated for all
+     * the objects and then the RHS is only evaluated for the objects that it would be by
+     * {@link #isTrue(Object,Query)}.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate, in ascending order.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The indexes of the objects for which the expression is <code>true</code>.
+     * @param q The Query object.
+     * @return The number of indexes written to <b>res</b>.
+     * @throws QueryExecutionException If the expression cannot be evaluated.
+     */
+    public int select (Object[] objs,
+		       int[]    sel,
+		       int      n,
+		       int[]    res,
+		       Query    q)
+	               throws   QueryExecutionException
+    {
+
+	if (this.and)
+	{
+
+	    int c = this.left.select (objs,
+				      sel,
+				      n,
+				      res,
+				      q);
+
+	    if (c == 0)
+	    {
+
+		return 0;
+
+	    }
+
+	    return this.right.select (objs,
+				      res,
+				      c,
+				      res,
+				      q);
+
+	}
+
+	int[] l = new int[n];
+
+	int lc = this.left.select (objs,
+				   sel,
+				   n,
+				   l,
+				   q);
+
+	if (lc == n)
+	{
+
+	    System.arraycopy (l,
+			      0,
+			      res,
+			      0,
+			      n);
+
+	    return n;
+
+	}
+
+	// The objects the LHS is false for.
+	int[] r = new int[n - lc];
+
+	int rc = 0;
+	int j = 0;
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    if ((j < lc)
+		&&
+		(l[j] == sel[i])
+	       )
+	    {
+
+		j++;
+
+		continue;
+
+	    }
+
+	    r[rc++] = sel[i];
+
+	}
+
+	rc = this.right.select (objs,
+				r,
+				rc,
+				r,
+				q);
+
+	// Merge the two, keeping the indexes in ascending order.
+	int c = 0;
+	int a = 0;
+	int b = 0;
+
+	while ((a < lc)
+	       ||
+	       (b < rc)
+	      )
+	{
+
+	    if ((b >= rc)
+		||
+		((a < lc)
+		 &&
+		 (l[a] < r[b])
+		)
+	       )
+	    {
+
+		res[c++] = l[a++];
+
+	    } else {
+
+		res[c++] = r[b++];
+
+	    }
+
+	}
+
+	return c;
+
+    }
+
     /**
      * Return a string version of this expression.
      * Note: any formatting of the statement (such as line breaks) will be removed.
@@ -41,6 +41,7 @@ public class ArithmeticExpression extends ValueExpression
     private ValueExpression right = null;
 
     private boolean fixedResult = false;
+    private boolean numeric = false;
 
     /**
      * Return the expected return type.  This just returns the result of calling this
@@ -135,6 +136,8 @@ public class ArithmeticExpression extends ValueExpression
 
 	this.fixedResult = this.left.hasFixedResult (q) && this.right.hasFixedResult (q);
 
+	this.numeric = this.left.isNumeric (q) && this.right.isNumeric (q);
+
     }
 
     /**
@@ -213,6 +216,17 @@ public class ArithmeticExpression extends ValueExpression
 	                    throws QueryExecutionException
     {
 
+	if ((this.numeric)
+	    &&
+	    (o != null)
+	   )
+	{
+
+	    return new Double (this.getDouble (o,
+					       q));
+
+	}
+
 	Object l = this.left.getValue (o,
 				       q);
 
@@ -253,52 +267,257 @@ public class ArithmeticExpression extends ValueExpression
 
 	}
 
-	double ld = Utilities.getDouble (l);
-	double rd = Utilities.getDouble (r);
+	if ((this.type < ArithmeticExpression.MULTIPLY)
+	    ||
+	    (this.type > ArithmeticExpression.MODULUS)
+	   )
+	{
+
+	    return null;
+
+	}
+
+	return new Double (this.calculate (Utilities.getDouble (l),
+					   Utilities.getDouble (r)));
+
+    }
+
+    /**
+     * Return whether both the LHS and RHS are numeric, in which case the result will
+     * always be a number.
+     *
+     * @param q The Query object.
+     * @return <code>true</code> if the expression is numeric.
+     */
+    public boolean isNumeric (Query q)
+    {
+
+	return this.numeric;
+
+    }
+
+    /**
+     * Evaluate the expression, when both the LHS and RHS are numeric (see: 
+     * {@link #isNumeric(Query)}) this is done without creating any objects.
+     *
+     * @param o The object to perform the expression on.
+     * @param q The Query object.
+     * @return The result of the expression.
+     * @throws QueryExecutionException If an error occurs during processing.
+     */
+    public double getDouble (Object o,
+			     Query  q)
+	                     throws QueryExecutionException
+    {
+
+	if (!this.numeric)
+	{
+
+	    return super.getDouble (o,
+				    q);
+
+	}
+
+	return this.calculate (this.left.getDouble (o,
+						    q),
+			       this.right.getDouble (o,
+						     q));
+
+    }
+
+    /**
+     * Get the values as <b>double</b>s for a batch of objects, when both sides are numeric
+     * the values of each side are got for the batch and then calculated.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The value for <code>objs[sel[i]]</code> is written to <code>res[i]</code>.
+     * @param q The Query object.
+     * @throws QueryExecutionException If the value cannot be gained for one of the objects.
+     */
+    public void getDoubles (Object[] objs,
+			    int[]    sel,
+			    int      n,
+			    double[] res,
+			    Query    q)
+	                    throws   QueryExecutionException
+    {
+
+	if (!this.numeric)
+	{
+
+	    super.getDoubles (objs,
+			      sel,
+			      n,
+			      res,
+			      q);
+
+	    return;
+
+	}
+
+	double[] r = new double[n];
+
+	this.left.getDoubles (objs,
+			      sel,
+			      n,
+			      res,
+			      q);
+	this.right.getDoubles (objs,
+			       sel,
+			       n,
+			       r,
+			       q);
 
 	if (this.type == ArithmeticExpression.ADDITION)
 	{
 
-	    return new Double (ld + rd);
+	    for (int i = 0; i < n; i++)
+	    {
+
+		res[i] += r[i];
+
+	    }
+
+	    return;
 
 	}
 
 	if (this.type == ArithmeticExpression.SUBTRACT)
 	{
 
-	    return new Double (ld - rd);
+	    for (int i = 0; i < n; i++)
+	    {
+
+		res[i] -= r[i];
+
+	    }
+
+	    return;
 
 	}
 
 	if (this.type == ArithmeticExpression.MULTIPLY)
 	{
 
-	    return new Double (ld * rd);
+	    for (int i = 0; i < n; i++)
+	    {
+
+		res[i] *= r[i];
+
+	    }
+
+	    return;
 
 	}
 
-	if (this.type == ArithmeticExpression.MODULUS)
+	for (int i = 0; i < n; i++)
 	{
 
-	    return new Double (ld % rd);
+	    res[i] = this.calculate (res[i],
+				     r[i]);
 
 	}
 
-	if (this.type == ArithmeticExpression.DIVIDE)
+    }
+
+    /**
+     * Get the values for a batch of objects, when both sides are numeric the values are
+     * calculated as <b>double</b>s for the batch, see:
+     * {@link #getDoubles(Object[],int[],int,double[],Query)}.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The value for <code>objs[sel[i]]</code> is written to <code>res[i]</code>.
+     * @param q The Query object.
+     * @throws QueryExecutionException If the value cannot be gained for one of the objects.
+     */
+    public void getValues (Object[] objs,
+			   int[]    sel,
+			   int      n,
+			   Object[] res,
+			   Query    q)
+	                   throws   QueryExecutionException
+    {
+
+	if ((!this.numeric)
+	    ||
+	    (Expression.hasNull (objs,
+				 sel,
+				 n))
+	   )
 	{
 
-	    if (rd == 0)
-	    {
+	    super.getValues (objs,
+			     sel,
+			     n,
+			     res,
+			     q);
 
-		return new Double (0);
+	    return;
 
-	    }
+	}
+
+	double[] d = new double[n];
+
+	this.getDoubles (objs,
+			 sel,
+			 n,
+			 d,
+			 q);
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    res[i] = new Double (d[i]);
+
+	}
+
+    }
+
+    private double calculate (double ld,
+			      double rd)
+    {
+
+	if (this.type == ArithmeticExpression.ADDITION)
+	{
+
+	    return ld + rd;
+
+	}
+
+	if (this.type == ArithmeticExpression.SUBTRACT)
+	{
+
+	    return ld - rd;
+
+	}
+
+	if (this.type == ArithmeticExpression.MULTIPLY)
+	{
+
+	    return ld * rd;
+
+	}
+
+	if (this.type == ArithmeticExpression.MODULUS)
+	{
+
+	    return ld % rd;
+
+	}
+
+	// Must be divide.
+	if (rd == 0)
+	{
 
-	    return new Double (ld / rd);
+	    return 0;
 
 	}
 
-	return null;
+	return ld / rd;
 
     }
 
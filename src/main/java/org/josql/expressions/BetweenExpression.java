@@ -35,6 +35,7 @@ public class BetweenExpression extends BinaryExpression
     private Object leftFRVal = null;
     private Object startFRVal = null;
     private Object endFRVal = null;
+    private boolean numeric = false;
 
     /**
      * Inits the expression.
@@ -55,6 +56,9 @@ public class BetweenExpression extends BinaryExpression
 	this.startFR = this.start.hasFixedResult (q);
 	this.endFR = this.end.hasFixedResult (q);
 
+	// When all the values are numeric they can be compared as primitives.
+	this.numeric = this.left.isNumeric (q) && this.start.isNumeric (q) && this.end.isNumeric (q);
+
     }
 
     /**
@@ -125,6 +129,33 @@ public class BetweenExpression extends BinaryExpression
 	                   throws QueryExecutionException
     {
 
+	if ((this.numeric)
+	    &&
+	    (o != null)
+	    &&
+	    (Utilities.getObjectComparator () == null)
+	   )
+	{
+
+	    double d = this.left.getDouble (o,
+					    q);
+
+	    boolean b = Utilities.matches (d,
+					   this.start.getDouble (o,
+								 q),
+					   Utilities.GTE,
+					   false)
+		        &&
+		        Utilities.matches (d,
+					   this.end.getDouble (o,
+							       q),
+					   Utilities.LTE,
+					   false);
+
+	    return b != this.not;
+
+	}
+
 	Object l = null;
 
 	if (this.leftFR)
@@ -260,6 +291,92 @@ public class BetweenExpression extends BinaryExpression
 
     }
 
+    /**
+     * Evaluate the expression against a batch of objects, when all the values are numeric
+     * they are got for the batch as primitives and then compared.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate, in ascending order.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The indexes of the objects for which the expression is <code>true</code>.
+     * @param q The Query object.
+     * @return The number of indexes written to <b>res</b>.
+     * @throws QueryExecutionException If the expression cannot be evaluated.
+     */
+    public int select (Object[] objs,
+		       int[]    sel,
+		       int      n,
+		       int[]    res,
+		       Query    q)
+	               throws   QueryExecutionException
+    {
+
+	if ((!this.numeric)
+	    ||
+	    (Utilities.getObjectComparator () != null)
+	    ||
+	    (Expression.hasNull (objs,
+				 sel,
+				 n))
+	   )
+	{
+
+	    return super.select (objs,
+				 sel,
+				 n,
+				 res,
+				 q);
+
+	}
+
+	double[] l = new double[n];
+	double[] s = new double[n];
+	double[] e = new double[n];
+
+	this.left.getDoubles (objs,
+			      sel,
+			      n,
+			      l,
+			      q);
+	this.start.getDoubles (objs,
+			       sel,
+			       n,
+			       s,
+			       q);
+	this.end.getDoubles (objs,
+			     sel,
+			     n,
+			     e,
+			     q);
+
+	int c = 0;
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    boolean b = Utilities.matches (l[i],
+					   s[i],
+					   Utilities.GTE,
+					   false)
+		        &&
+		        Utilities.matches (l[i],
+					   e[i],
+					   Utilities.LTE,
+					   false);
+
+	    if (b != this.not)
+	    {
+
+		res[c++] = sel[i];
+
+	    }
+
+	}
+
+	return c;
+
+    }
+
     /**
      * Returns a string version of this expression.
      * Will return the form:
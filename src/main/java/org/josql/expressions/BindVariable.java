@@ -349,6 +349,35 @@ public class BindVariable extends ValueExpression
 
 	}
 
+	if (n.equals (Query.PARENT_BIND_VAR_NAME))
+	{
+
+	    q.addParentReference (this);
+
+	    // Without an accessor the parent query itself is used, with an accessor
+	    // that starts with "parent" the value comes from further up, either way the
+	    // queries above depend upon it in ways that can't be tracked.
+	    if ((this.acc == null)
+		||
+		(this.acc.toLowerCase ().startsWith ("parent"))
+	       )
+	    {
+
+		Query p = q.getParent ();
+
+		while (p != null)
+		{
+
+		    p.addParentReference (this);
+
+		    p = p.getParent ();
+
+		}
+
+	    }
+
+	}
+
 	// See if we already have this bind variable set...
 	this.val = q.getVariable (this.name);
 
@@ -412,6 +441,23 @@ public class BindVariable extends ValueExpression
 
     }
 
+    /**
+     * Return whether this is one of the special bind variables, such as: <code>:_currobj</code>
+     * or <code>:_allobjs</code>, whose value is set by the Query as it executes.
+     *
+     * @return <code>true</code> if the bind variable is special.
+     */
+    public boolean isSpecial ()
+    {
+
+	return (!this.anon)
+	       &&
+	       (this.name != null)
+	       &&
+	       (this.name.startsWith (BindVariable.SPECIAL_NAME_PREFIX));
+
+    }
+
     public boolean isAnonymous ()
     {
 
@@ -14,6 +14,8 @@
  */
 package org.josql.expressions;
 
+import java.util.Arrays;
+
 import org.josql.Query;
 
 /**
@@ -140,6 +142,49 @@ public class ConstantExpression extends ValueExpression
      * @param q The Query object.
      * @return <code>true</code> always.
      */
+    public boolean isNumeric (Query q)
+    {
+
+	return this.val instanceof Number;
+
+    }
+
+    public double getDouble (Object o,
+			     Query  q)
+    {
+
+	return ((Number) this.val).doubleValue ();
+
+    }
+
+    public void getValues (Object[] objs,
+			   int[]    sel,
+			   int      n,
+			   Object[] res,
+			   Query    q)
+    {
+
+	Arrays.fill (res,
+		     0,
+		     n,
+		     this.val);
+
+    }
+
+    public void getDoubles (Object[] objs,
+			    int[]    sel,
+			    int      n,
+			    double[] res,
+			    Query    q)
+    {
+
+	Arrays.fill (res,
+		     0,
+		     n,
+		     ((Number) this.val).doubleValue ());
+
+    }
+
     public boolean hasFixedResult (Query q)
     {
 
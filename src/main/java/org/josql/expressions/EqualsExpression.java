@@ -14,16 +14,25 @@
  */
 package org.josql.expressions;
 
+import java.util.Collection;
+
 import org.josql.Query;
 import org.josql.QueryExecutionException;
+import org.josql.QueryParseException;
 
 import org.josql.internal.Utilities;
+import org.josql.internal.ValueSet;
 
 /**
  * This class represents an "=" or "!=" expression.  This class also provides the
  * ability for the developer to prefix the "=" or "!=" with "$" to indicate that a
  * case-insensitive comparison should be made, in which case the LHS and RHS
  * are converted to strings first.
+ * <p>
+ * When the RHS is a sub-query the LHS must equal every one of its results, for "!=" this means
+ * that it must not equal any of them (i.e. NOT IN) so the results are placed into a hash set
+ * (see: {@link ValueSet}) when the same results are seen again during an execution, rather than
+ * being scanned for each object.
  */
 public class EqualsExpression extends BinaryExpression
 {
@@ -32,6 +41,29 @@ public class EqualsExpression extends BinaryExpression
 
     public boolean ignoreCase = false;
 
+    private boolean numeric = false;
+
+    private boolean subQuery = false;
+
+    /**
+     * Init the expression, when both the LHS and RHS are numeric (see: 
+     * {@link Expression#isNumeric(Query)}) the values will be compared as primitives.
+     *
+     * @param q The Query object.
+     * @throws QueryParseException If the LHS or RHS cannot be inited.
+     */
+    public void init (Query  q)
+	              throws QueryParseException
+    {
+
+	super.init (q);
+
+	this.numeric = this.left.isNumeric (q) && this.right.isNumeric (q);
+
+	this.subQuery = this.right instanceof SubQueryExpression;
+
+    }
+
     public void setIgnoreCase (boolean v)
     {
 
@@ -74,6 +106,25 @@ public class EqualsExpression extends BinaryExpression
 	                   throws QueryExecutionException
     {
 
+	if ((this.numeric)
+	    &&
+	    (!this.ignoreCase)
+	    &&
+	    (o != null)
+	    &&
+	    (Utilities.getObjectComparator () == null)
+	   )
+	{
+
+	    return Utilities.matches (this.left.getDouble (o,
+							   q),
+				      this.right.getDouble (o,
+							    q),
+				      Utilities.EQ,
+				      this.not);
+
+	}
+
 	// Get the value for the lhs.
 	Object l = null;
 
@@ -107,6 +158,142 @@ public class EqualsExpression extends BinaryExpression
 
 	}	
 
+	return this.matches (l,
+			     r,
+			     q);
+
+    }
+
+    /**
+     * Evaluate the expression against a batch of objects, when both sides are numeric the
+     * values of each side are got for the batch as primitives and then compared.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate, in ascending order.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The indexes of the objects for which the expression is <code>true</code>.
+     * @param q The Query object.
+     * @return The number of indexes written to <b>res</b>.
+     * @throws QueryExecutionException If the expression cannot be evaluated.
+     */
+    public int select (Object[] objs,
+		       int[]    sel,
+		       int      n,
+		       int[]    res,
+		       Query    q)
+	               throws   QueryExecutionException
+    {
+
+	int c = 0;
+
+	if ((this.numeric)
+	    &&
+	    (!this.ignoreCase)
+	    &&
+	    (Utilities.getObjectComparator () == null)
+	    &&
+	    (!Expression.hasNull (objs,
+				  sel,
+				  n))
+	   )
+	{
+
+	    double[] l = new double[n];
+	    double[] r = new double[n];
+
+	    this.left.getDoubles (objs,
+				  sel,
+				  n,
+				  l,
+				  q);
+	    this.right.getDoubles (objs,
+				   sel,
+				   n,
+				   r,
+				   q);
+
+	    for (int i = 0; i < n; i++)
+	    {
+
+		if (Utilities.matches (l[i],
+				       r[i],
+				       Utilities.EQ,
+				       this.not))
+		{
+
+		    res[c++] = sel[i];
+
+		}
+
+	    }
+
+	    return c;
+
+	}
+
+	Object[] l = new Object[n];
+	Object[] r = new Object[n];
+
+	try
+	{
+
+	    this.left.getValues (objs,
+				 sel,
+				 n,
+				 l,
+				 q);
+
+	} catch (Exception e) {
+
+	    throw new QueryExecutionException ("Unable to get value for LHS of expression: " +
+					       this,
+					       e);
+
+	}
+
+	try
+	{
+
+	    this.right.getValues (objs,
+				  sel,
+				  n,
+				  r,
+				  q);
+
+	} catch (Exception e) {
+
+	    throw new QueryExecutionException ("Unable to get value for RHS of expression: " +
+					       this,
+					       e);
+
+	}
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    if (this.matches (l[i],
+			      r[i],
+			      q))
+	    {
+
+		res[c++] = sel[i];
+
+	    }
+
+	}
+
+	return c;
+
+    }
+
+    /**
+     * Compare the values of the LHS and RHS.
+     */
+    private boolean matches (Object l,
+			     Object r,
+			     Query  q)
+    {
+
 	if ((l == null)
 	    &&
 	    (r == null)
@@ -144,6 +331,38 @@ public class EqualsExpression extends BinaryExpression
 	}
 
 	// If we are here then both are NOT NULL.
+	if ((this.subQuery)
+	    &&
+	    (this.not)
+	    &&
+	    (!this.ignoreCase)
+	    &&
+	    (r instanceof Collection)
+	    &&
+	    (!(l instanceof Collection))
+	    &&
+	    (Utilities.getObjectComparator () == null)
+	   )
+	{
+
+	    ValueSet set = ValueSet.getExecutionSet (q,
+						     this,
+						     new Object[] { r },
+						     false);
+
+	    if ((set != null)
+		&&
+		(set.canCheck (l))
+	       )
+	    {
+
+		// Not equal to any of the results.
+		return !set.contains (l);
+
+	    }
+
+	}
+
 	return Utilities.matches (l,
 				  r,
 				  this.ignoreCase,
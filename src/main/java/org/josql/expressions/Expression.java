@@ -18,6 +18,8 @@ import org.josql.Query;
 import org.josql.QueryExecutionException;
 import org.josql.QueryParseException;
 
+import org.josql.internal.ExecutionContext;
+
 /**
  * The base class for all expressions.
  */
@@ -110,6 +112,220 @@ public abstract class Expression
 				     Query  q)
 	                             throws QueryExecutionException;
 
+    /**
+     * Return whether this expression will always evaluate to a number when passed a
+     * non-null object, in which case {@link #getDouble(Object,Query)} can be used to get
+     * the value without a <code>java.lang.Number</code> object being created.  This is only
+     * valid once the expression has been inited.  By default this returns <code>false</code>,
+     * sub-classes that can provide a primitive value should override it.
+     *
+     * @param q The Query object.
+     * @return <code>true</code> if the expression is numeric.
+     */
+    public boolean isNumeric (Query q)
+    {
+
+	return false;
+
+    }
+
+    /**
+     * Get the value of this expression as a <b>double</b>.  This should only be called when
+     * {@link #isNumeric(Query)} returns <code>true</code> and the object is not
+     * <code>null</code>.  By default this converts the result of calling:
+     * {@link #getValue(Object,Query)}.
+     *
+     * @param o The current object that the expression should be evaluated on.
+     * @param q The Query object.
+     * @return The value of the expression.
+     * @throws QueryExecutionException If something goes wrong with gaining the value or
+     *                                 the value is not a number.
+     */
+    public double getDouble (Object o,
+			     Query  q)
+	                     throws QueryExecutionException
+    {
+
+	Object v = this.getValue (o,
+				  q);
+
+	if (!(v instanceof Number))
+	{
+
+	    throw new QueryExecutionException ("Expression: " +
+					       this +
+					       " does not evaluate to a number, value is: " +
+					       v);
+
+	}
+
+	return ((Number) v).doubleValue ();
+
+    }
+
+    /**
+     * The number of objects that should be evaluated at a time by the batch methods, see:
+     * {@link #select(Object[],int[],int,int[],Query)}.
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    /**
+     * Evaluate the expression against a batch of objects and find those for which
+     * {@link #isTrue(Object,Query)} would return <code>true</code>.  The objects to evaluate are
+     * given by a selection vector, i.e. the indexes in <b>objs</b> of the objects, which must be
+     * in ascending order.  Evaluating a batch at a time allows a sub-class to get all the
+     * values it needs for the batch before comparing them, rather than calling its
+     * sub-expressions for each object in turn.  The expression must give the same result for
+     * each object as {@link #isTrue(Object,Query)}, although the sub-expressions may be called
+     * for the objects in a different order.  By default this sets the current object and calls
+     * {@link #isTrue(Object,Query)} for each object.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate, in ascending order.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The indexes of the objects for which the expression is <code>true</code> are
+     *            written here, in ascending order.  This may be the same array as <b>sel</b>.
+     * @param q The Query object.
+     * @return The number of indexes written to <b>res</b>.
+     * @throws QueryExecutionException If the expression cannot be evaluated for one of the
+     *                                 objects.
+     */
+    public int select (Object[] objs,
+		       int[]    sel,
+		       int      n,
+		       int[]    res,
+		       Query    q)
+	               throws   QueryExecutionException
+    {
+
+	ExecutionContext ctx = q.getExecutionContext ();
+
+	int c = 0;
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    Object o = objs[sel[i]];
+
+	    ctx.setCurrentObject (o);
+
+	    if (this.isTrue (o,
+			     q))
+	    {
+
+		res[c++] = sel[i];
+
+	    }
+
+	}
+
+	return c;
+
+    }
+
+    /**
+     * Get the values of this expression for a batch of objects, see:
+     * {@link #select(Object[],int[],int,int[],Query)} for how the objects are given.  By default
+     * this sets the current object and calls {@link #getValue(Object,Query)} for each object.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The value for <code>objs[sel[i]]</code> is written to <code>res[i]</code>.
+     * @param q The Query object.
+     * @throws QueryExecutionException If the value cannot be gained for one of the objects.
+     */
+    public void getValues (Object[] objs,
+			   int[]    sel,
+			   int      n,
+			   Object[] res,
+			   Query    q)
+	                   throws   QueryExecutionException
+    {
+
+	ExecutionContext ctx = q.getExecutionContext ();
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    Object o = objs[sel[i]];
+
+	    ctx.setCurrentObject (o);
+
+	    res[i] = this.getValue (o,
+				    q);
+
+	}
+
+    }
+
+    /**
+     * Get the values of this expression as <b>double</b>s for a batch of objects, this should
+     * only be called when {@link #isNumeric(Query)} returns <code>true</code> and none of the
+     * objects are <code>null</code>.  By default this sets the current object and calls
+     * {@link #getDouble(Object,Query)} for each object.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The value for <code>objs[sel[i]]</code> is written to <code>res[i]</code>.
+     * @param q The Query object.
+     * @throws QueryExecutionException If the value cannot be gained for one of the objects.
+     */
+    public void getDoubles (Object[] objs,
+			    int[]    sel,
+			    int      n,
+			    double[] res,
+			    Query    q)
+	                    throws   QueryExecutionException
+    {
+
+	ExecutionContext ctx = q.getExecutionContext ();
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    Object o = objs[sel[i]];
+
+	    ctx.setCurrentObject (o);
+
+	    res[i] = this.getDouble (o,
+				     q);
+
+	}
+
+    }
+
+    /**
+     * Return whether any of the selected objects is <code>null</code>, the primitive batch
+     * methods can't be used when one is.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @return <code>true</code> if one of the objects is <code>null</code>.
+     */
+    protected static boolean hasNull (Object[] objs,
+				      int[]    sel,
+				      int      n)
+    {
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    if (objs[sel[i]] == null)
+	    {
+
+		return true;
+
+	    }
+
+	}
+
+	return false;
+
+    }
+
     /**
      * Return a string representation of the expression, making this abstract forces
      * sub-classes to provide an implementation.
@@ -22,6 +22,10 @@ import java.util.TreeMap;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
 import com.gentlyweb.utils.Getter;
 
 import org.josql.Query;
@@ -29,6 +33,7 @@ import org.josql.QueryExecutionException;
 import org.josql.QueryParseException;
 
 import org.josql.internal.Utilities;
+import org.josql.internal.ExecutionContext;
 
 import org.josql.functions.NotFixedResults;
 
@@ -46,6 +51,40 @@ public class Function extends ValueExpression
     private Object fixedValue = null;
     private String acc = null;
     private Getter get = null;
+    private Expression[] paramExps = null;
+    private boolean[] passExps = null;
+    private MethodHandle invoker = null;
+    private Object sharedKey = null;
+
+    /**
+     * Get the key used to share the value of this function with other calls of the same
+     * function with the same arguments, see: {@link #setSharedKey(Object)}.
+     *
+     * @return The key, may be <code>null</code>.
+     */
+    public Object getSharedKey ()
+    {
+
+	return this.sharedKey;
+
+    }
+
+    /**
+     * Set the key used to share the value of this function, whilst the query is being executed
+     * the value calculated for an object is kept (see:
+     * {@link org.josql.internal.ExecutionContext#setSharedValue(Object,Object,Object)}) and
+     * any function with the same key will use it rather than call the function again for the
+     * same object.  This should only be set for functions that always return the same value
+     * for the same arguments.
+     *
+     * @param k The key, use <code>null</code> to not share the value.
+     */
+    public void setSharedKey (Object k)
+    {
+
+	this.sharedKey = k;
+
+    }
 
     public Getter getGetter ()
     {
@@ -54,6 +93,19 @@ public class Function extends ValueExpression
 
     }
 
+    /**
+     * Get the Java method that the function maps to, only available once the function
+     * has been inited.
+     *
+     * @return The method.
+     */
+    public Method getMethod ()
+    {
+
+	return this.function;
+
+    }
+
     public String getAccessor ()
     {
 
@@ -167,6 +219,8 @@ public class Function extends ValueExpression
 
 	}
 
+        this.initInvoker ();
+
 	// A function has/can have a fixed result if all it's arguments
 	// also have a fixed result, if there aren't any args then assume
 	// it won't have a fixed result.
@@ -253,6 +307,63 @@ public class Function extends ValueExpression
         
     }
 
+    /**
+     * Work out once how each parameter is passed to the method (either the expression itself
+     * or its value) and create the handle used to call the method.  For up to 3 parameters
+     * the handle takes the values directly so that no array is needed, for more parameters the
+     * handle takes an array.  If a handle cannot be created (for instance when the function
+     * handler class isn't public) then the method is called via reflection instead.
+     */
+    private void initInvoker ()
+    {
+
+	Class[] mpt = this.function.getParameterTypes ();
+
+	this.paramExps = new Expression[mpt.length];
+	this.passExps = new boolean[mpt.length];
+
+	for (int i = 0; i < mpt.length; i++)
+	{
+
+	    this.paramExps[i] = (Expression) this.params.get (i);
+
+	    this.passExps[i] = Expression.class.isAssignableFrom (mpt[i]);
+
+	}
+
+	try
+	{
+
+	    MethodHandle h = MethodHandles.publicLookup ().unreflect (this.function);
+
+	    if (!Modifier.isStatic (this.function.getModifiers ()))
+	    {
+
+		h = h.bindTo (this.handler);
+
+	    }
+
+	    h = h.asType (MethodType.genericMethodType (mpt.length));
+
+	    if (mpt.length > 3)
+	    {
+
+		h = h.asSpreader (Object[].class,
+				  mpt.length);
+
+	    }
+
+	    this.invoker = h;
+
+	} catch (Exception e) {
+
+	    // Use reflection instead.
+	    this.invoker = null;
+
+	}
+
+    }
+
     private void getMethodFromHandlers (Query q,
                                         List  handlers)
                                         throws QueryParseException
@@ -382,6 +493,49 @@ public class Function extends ValueExpression
 	                    throws QueryExecutionException
     {
 
+	if ((this.sharedKey != null)
+	    &&
+	    (o != null)
+	   )
+	{
+
+	    ExecutionContext ctx = q.getExecutionContext ();
+
+	    // Values are only shared whilst the query is being executed.
+	    if (ctx.getResults () != null)
+	    {
+
+		Object v = ctx.getSharedValue (this.sharedKey,
+					       o);
+
+		if (v == ExecutionContext.NO_VALUE)
+		{
+
+		    v = this.evaluateFunction (o,
+					       q);
+
+		    ctx.setSharedValue (this.sharedKey,
+					o,
+					v);
+
+		}
+
+		return v;
+
+	    }
+
+	}
+
+	return this.evaluateFunction (o,
+				      q);
+
+    }
+
+    private Object evaluateFunction (Object o,
+				     Query  q)
+	                             throws QueryExecutionException
+    {
+
 	// See if we have a fixed result.
 	if (this.fixedResult)
 	{
@@ -396,71 +550,125 @@ public class Function extends ValueExpression
 
 	}
 
-	// Get the values for the parameters... if any...
-	Object[] ps = null;
+	Object v = null;
 
-	if (this.params != null)
+	int s = this.paramExps.length;
+
+	if ((this.invoker != null)
+	    &&
+	    (s < 4)
+	   )
 	{
 
-	    int s = this.params.size ();
+	    // Get the values for the parameters directly, no need for an array.
+	    Object p0 = null;
+	    Object p1 = null;
+	    Object p2 = null;
 
-	    ps = new Object[s];
+	    if (s > 0)
+	    {
 
-	    for (int i = 0; i < s; i++)
+		p0 = this.getParameterValue (0,
+					     o,
+					     q);
+
+	    }
+
+	    if (s > 1)
 	    {
 
-		Expression exp = (Expression) this.params.get (i);
+		p1 = this.getParameterValue (1,
+					     o,
+					     q);
+
+	    }
+
+	    if (s > 2)
+	    {
+
+		p2 = this.getParameterValue (2,
+					     o,
+					     q);
 
-	        if (Expression.class.isAssignableFrom (this.function.getParameterTypes ()[i]))
+	    }
+
+	    try
+	    {
+
+		if (s == 0)
 		{
 
-		    // Leave this one alone.
-		    ps[i] = exp;
+		    v = this.invoker.invokeExact ();
 
-		} else {
+		}
 
-		    // Eval this expression.
-		    try
-		    {
+		if (s == 1)
+		{
 
-			ps[i] = exp.getValue (o,
-					      q);
+		    v = this.invoker.invokeExact (p0);
 
-		    } catch (Exception e) {
-			
-			throw new QueryExecutionException ("Unable to get parameter: " + 
-							   i + 
-							   " (\"" +
-							   exp.toString () + 
-							   "\") for function: " +
-							   this.name,
-							   e);
-			
-		    }
+		}
+
+		if (s == 2)
+		{
+
+		    v = this.invoker.invokeExact (p0,
+						  p1);
+
+		}
+
+		if (s == 3)
+		{
+
+		    v = this.invoker.invokeExact (p0,
+						  p1,
+						  p2);
 
 		}
 
+	    } catch (Throwable e) {
+
+		throw this.createExecutionException (Arrays.copyOf (new Object[] { p0, p1, p2 },
+								    s),
+						     e);
+
 	    }
 
-	}
+	} else {
 
-	Object v = null;
+	    // Get the values for the parameters... if any...
+	    Object[] ps = new Object[s];
 
-	try
-	{
+	    for (int i = 0; i < s; i++)
+	    {
 
-	    v = this.function.invoke (this.handler,
-				      ps);
+		ps[i] = this.getParameterValue (i,
+						o,
+						q);
 
-	} catch (Exception e) {
+	    }
 
-	    throw new QueryExecutionException ("Unable to execute function: " + 
-					       this.name + 
-					       " (\"" +
-					       this.toString () + 
-					       "\") with values: " +
-					       Arrays.asList (ps),
-					       e);
+	    try
+	    {
+
+		if (this.invoker != null)
+		{
+
+		    v = this.invoker.invokeExact (ps);
+
+		} else {
+
+		    v = this.function.invoke (this.handler,
+					      ps);
+
+		}
+
+	    } catch (Throwable e) {
+
+		throw this.createExecutionException (ps,
+						     e);
+
+	    }
 
 	}
 
@@ -529,6 +737,57 @@ public class Function extends ValueExpression
 
     }
 
+    private Object getParameterValue (int    i,
+				      Object o,
+				      Query  q)
+	                              throws QueryExecutionException
+    {
+
+	Expression exp = this.paramExps[i];
+
+	if (this.passExps[i])
+	{
+
+	    // Leave this one alone.
+	    return exp;
+
+	}
+
+	// Eval this expression.
+	try
+	{
+
+	    return exp.getValue (o,
+				 q);
+
+	} catch (Exception e) {
+			
+	    throw new QueryExecutionException ("Unable to get parameter: " + 
+					       i + 
+					       " (\"" +
+					       exp.toString () + 
+					       "\") for function: " +
+					       this.name,
+					       e);
+			
+	}
+
+    }
+
+    private QueryExecutionException createExecutionException (Object[]  ps,
+							      Throwable e)
+    {
+
+	return new QueryExecutionException ("Unable to execute function: " + 
+					    this.name + 
+					    " (\"" +
+					    this.toString () + 
+					    "\") with values: " +
+					    Arrays.asList (ps),
+					    e);
+
+    }
+
     /**
      * Return whether the evaluation of this function (see: {@link #evaluate(Object,Query)})
      * will result in a <code>true</code> value.
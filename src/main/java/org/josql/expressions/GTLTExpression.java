@@ -16,6 +16,7 @@ package org.josql.expressions;
 
 import org.josql.Query;
 import org.josql.QueryExecutionException;
+import org.josql.QueryParseException;
 
 import org.josql.internal.Utilities;
 
@@ -36,6 +37,24 @@ public class GTLTExpression extends BinaryExpression
 
     private int type = -1;
     private boolean ignoreCase = false;
+    private boolean numeric = false;
+
+    /**
+     * Init the expression, when both the LHS and RHS are numeric (see: 
+     * {@link Expression#isNumeric(Query)}) the values will be compared as primitives.
+     *
+     * @param q The Query object.
+     * @throws QueryParseException If the LHS or RHS cannot be inited.
+     */
+    public void init (Query  q)
+	              throws QueryParseException
+    {
+
+	super.init (q);
+
+	this.numeric = this.left.isNumeric (q) && this.right.isNumeric (q);
+
+    }
 
     public int getType ()
     {
@@ -86,6 +105,25 @@ public class GTLTExpression extends BinaryExpression
 	                   throws QueryExecutionException
     {
 
+	if ((this.numeric)
+	    &&
+	    (!this.ignoreCase)
+	    &&
+	    (o != null)
+	    &&
+	    (Utilities.getObjectComparator () == null)
+	   )
+	{
+
+	    return Utilities.matches (this.left.getDouble (o,
+							   q),
+				      this.right.getDouble (o,
+							    q),
+				      this.type,
+				      false);
+
+	}
+
 	// Get the lhs.
 	Object l = this.left.getValue (o,
 				       q);
@@ -93,6 +131,116 @@ public class GTLTExpression extends BinaryExpression
 	Object r = this.right.getValue (o,
 					q);
 
+	return this.matches (l,
+			     r);
+
+    }
+
+    /**
+     * Evaluate the expression against a batch of objects, when both sides are numeric the
+     * values of each side are got for the batch as primitives and then compared.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate, in ascending order.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The indexes of the objects for which the expression is <code>true</code>.
+     * @param q The Query object.
+     * @return The number of indexes written to <b>res</b>.
+     * @throws QueryExecutionException If the expression cannot be evaluated.
+     */
+    public int select (Object[] objs,
+		       int[]    sel,
+		       int      n,
+		       int[]    res,
+		       Query    q)
+	               throws   QueryExecutionException
+    {
+
+	int c = 0;
+
+	if ((this.numeric)
+	    &&
+	    (!this.ignoreCase)
+	    &&
+	    (Utilities.getObjectComparator () == null)
+	    &&
+	    (!Expression.hasNull (objs,
+				  sel,
+				  n))
+	   )
+	{
+
+	    double[] l = new double[n];
+	    double[] r = new double[n];
+
+	    this.left.getDoubles (objs,
+				  sel,
+				  n,
+				  l,
+				  q);
+	    this.right.getDoubles (objs,
+				   sel,
+				   n,
+				   r,
+				   q);
+
+	    for (int i = 0; i < n; i++)
+	    {
+
+		if (Utilities.matches (l[i],
+				       r[i],
+				       this.type,
+				       false))
+		{
+
+		    res[c++] = sel[i];
+
+		}
+
+	    }
+
+	    return c;
+
+	}
+
+	Object[] l = new Object[n];
+	Object[] r = new Object[n];
+
+	this.left.getValues (objs,
+			     sel,
+			     n,
+			     l,
+			     q);
+	this.right.getValues (objs,
+			      sel,
+			      n,
+			      r,
+			      q);
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    if (this.matches (l[i],
+			      r[i]))
+	    {
+
+		res[c++] = sel[i];
+
+	    }
+
+	}
+
+	return c;
+
+    }
+
+    /**
+     * Compare the values of the LHS and RHS.
+     */
+    private boolean matches (Object l,
+			     Object r)
+    {
+
 	if ((l == null)
 	    &&
 	    (r == null)
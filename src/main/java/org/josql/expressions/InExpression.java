@@ -25,6 +25,9 @@ import org.josql.QueryExecutionException;
 import org.josql.QueryParseException;
 
 import org.josql.internal.Utilities;
+import org.josql.internal.ExecutionContext;
+import org.josql.internal.LikeMatcher;
+import org.josql.internal.ValueSet;
 
 /**
  * This class represents in [ NOT ] IN [ LIKE ] [ ALL ] expression.
@@ -35,6 +38,16 @@ import org.josql.internal.Utilities;
  * Note: due to the way that the expression is designed it is POSSIBLE to have a binary expression
  * in the in list, however at this time that is not supported since it can lead to an ambiguous result,
  * for example: <code>true IN (true, false)</code> has no sensible meaning.
+ * <p>
+ * When all of the items are constants or (non-special) bind variables the values are placed into
+ * a hash set, so that finding whether the LHS is in the list doesn't require a scan of
+ * every value.  Constant items are hashed when the expression is inited, bind variables once
+ * per execution of the Query.  When some of the items are sub-queries the values are hashed
+ * the second time the same results are seen in an execution (the results of a sub-query that doesn't
+ * depend on the current object are only gathered once per execution), this makes
+ * <code>x IN ((SELECT ...))</code> a hash semi-join rather than a nested loop.  This is only done for
+ * non-LIKE, non-ALL expressions and when the LHS can be matched in the same way as
+ * {@link Utilities#isEquals(Object,Object)}, see: {@link ValueSet}.
  */
 public class InExpression extends BinaryExpression
 {
@@ -44,6 +57,9 @@ public class InExpression extends BinaryExpression
     private boolean doLike = false;
     private boolean all = false;
     private boolean ignoreCase = false;
+    private boolean fixedItems = false;
+    private boolean subQueryItems = false;
+    private ValueSet constItems = null;
 
     /**
      * Initialise the IN expression.  Init the LHS and then all of the values in the brackets.
@@ -68,6 +84,90 @@ public class InExpression extends BinaryExpression
 
 	}
 
+	this.fixedItems = false;
+	this.subQueryItems = false;
+	this.constItems = null;
+
+	if ((this.doLike)
+	    ||
+	    (this.all)
+	   )
+	{
+
+	    return;
+
+	}
+
+	boolean consts = true;
+	boolean subQuery = false;
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    Expression exp = (Expression) this.items.get (i);
+
+	    if (exp instanceof ConstantExpression)
+	    {
+
+		continue;
+
+	    }
+
+	    consts = false;
+
+	    if (exp instanceof SubQueryExpression)
+	    {
+
+		subQuery = true;
+
+		continue;
+
+	    }
+
+	    if ((exp instanceof BindVariable)
+		&&
+		(!((BindVariable) exp).isSpecial ())
+	       )
+	    {
+
+		continue;
+
+	    }
+
+	    // The value may change between objects.
+	    return;
+
+	}
+
+	if (subQuery)
+	{
+
+	    this.subQueryItems = true;
+
+	    return;
+
+	}
+
+	this.fixedItems = true;
+
+	if (consts)
+	{
+
+	    try
+	    {
+
+		this.constItems = this.createItemSet (null,
+						      q);
+
+	    } catch (Exception e) {
+
+		// Leave it to the execution to report.
+		this.fixedItems = false;
+
+	    }
+
+	}
+
     }
 
     public void setIgnoreCase (boolean v)
@@ -166,26 +266,65 @@ public class InExpression extends BinaryExpression
 	Object l = this.left.getValue (o,
 				       q);
 
-	String v = null;
-	String wc = String.valueOf (q.getWildcardCharacter ());
+	ValueSet set = this.getItemSet (o,
+					q);
 
-	if (this.doLike)
+	Object[] vals = null;
+
+	if ((set == null)
+	    &&
+	    (this.subQueryItems)
+	    &&
+	    (Utilities.getObjectComparator () == null)
+	   )
 	{
 
-	    if (l != null)
+	    // Evaluate the items once, they are also used below if the set can't be.
+	    vals = new Object[this.items.size ()];
+
+	    for (int i = 0; i < vals.length; i++)
 	    {
 
-		v = l.toString ();
+		vals[i] = ((Expression) this.items.get (i)).getValue (o,
+								     q);
 
-		if (this.ignoreCase)
-		{
+	    }
 
-		    v = v.toLowerCase ();
+	    set = ValueSet.getExecutionSet (q,
+					    this,
+					    vals,
+					    this.ignoreCase);
 
-		}
+	}
+
+	if ((set != null)
+	    &&
+	    (set.canCheck (l))
+	   )
+	{
+
+	    if (this.not)
+	    {
+
+		return !set.contains (l);
 
 	    }
 
+	    return set.contains (l);
+
+	}
+
+	String v = null;
+	char wc = q.getWildcardCharacter ();
+
+	if ((this.doLike)
+	    &&
+	    (l != null)
+	   )
+	{
+
+	    v = l.toString ();
+
 	}
 
 	int count = 0;
@@ -196,11 +335,22 @@ public class InExpression extends BinaryExpression
 	for (int i = 0; i < s; i++)
 	{
 
-	    Expression exp = (Expression) this.items.get (i);
+	    Object eo = null;
+
+	    if (vals != null)
+	    {
+
+		eo = vals[i];
 
-	    // Evaluate it.
-	    Object eo = exp.getValue (o,
-				      q);
+	    } else {
+
+		Expression exp = (Expression) this.items.get (i);
+
+		// Evaluate it.
+		eo = exp.getValue (o,
+				   q);
+
+	    }
 
 	    boolean eq = false;
 	    boolean proc = false;
@@ -298,10 +448,85 @@ public class InExpression extends BinaryExpression
 
     }
 
+    /**
+     * Get the hashed values of the items, if they can be used.
+     */
+    private ValueSet getItemSet (Object o,
+				 Query  q)
+	                         throws QueryExecutionException
+    {
+
+	if ((!this.fixedItems)
+	    ||
+	    (Utilities.getObjectComparator () != null)
+	   )
+	{
+
+	    return null;
+
+	}
+
+	ValueSet set = this.constItems;
+
+	if (set == null)
+	{
+
+	    ExecutionContext ctx = q.getExecutionContext ();
+
+	    // Only cache the bind variable values for the duration of an execution.
+	    if (ctx.getResults () == null)
+	    {
+
+		return null;
+
+	    }
+
+	    set = (ValueSet) ctx.getExecutionValue (this);
+
+	    if (set == null)
+	    {
+
+		set = this.createItemSet (o,
+					  q);
+
+		ctx.setExecutionValue (this,
+				       set);
+
+	    }
+
+	}
+
+	return set;
+
+    }
+
+    private ValueSet createItemSet (Object o,
+				    Query  q)
+	                            throws QueryExecutionException
+    {
+
+	ValueSet set = new ValueSet (this.ignoreCase);
+
+	int s = this.items.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    Expression exp = (Expression) this.items.get (i);
+
+	    set.addAll (exp.getValue (o,
+				      q));
+
+	}
+
+	return set;
+
+    }
+
     private boolean compareCollection (Object     o,
 				       Collection c,
 				       String     v,
-				       String     wc)
+				       char       wc)
     {
 
 	if (c instanceof List)
@@ -373,7 +598,7 @@ public class InExpression extends BinaryExpression
     private boolean compareList (Object o,
 				 List   l,
 				 String v,
-				 String wc)
+				 char   wc)
     {
 
 	int s = l.size ();
@@ -435,7 +660,7 @@ public class InExpression extends BinaryExpression
     private boolean compareItem (Object o,
 				 Object n,
 				 String v,
-				 String wc)
+				 char   wc)
     {
 
 	boolean eq = true;
@@ -460,20 +685,11 @@ public class InExpression extends BinaryExpression
 
 	    }
 
-	    String vn = n.toString ();
-
-	    if (this.ignoreCase)
-	    {
-
-		vn = vn.toLowerCase ();
-
-	    }
-
-	    List pat = Utilities.getLikePattern (vn,
-						 wc);
+	    LikeMatcher pat = LikeMatcher.getMatcher (n.toString (),
+						      wc);
 
-	    eq = Utilities.matchLikePattern (pat,
-					     v);
+	    eq = pat.matches (v,
+			      this.ignoreCase);
 
 	} else {
 
@@ -512,7 +728,7 @@ public class InExpression extends BinaryExpression
     private boolean compareMap (Object o,
 				Map    m,
 				String v,
-				String wc)
+				char   wc)
     {
 
 	Iterator i = m.keySet ().iterator ();
@@ -116,4 +116,50 @@ public class IsNullExpression extends BinaryExpression
 
     }
 
+    /**
+     * Evaluate the expression against a batch of objects, the values of the LHS are got
+     * for the batch and then checked.
+     *
+     * @param objs The objects.
+     * @param sel The indexes of the objects to evaluate, in ascending order.
+     * @param n The number of indexes in <b>sel</b> to use.
+     * @param res The indexes of the objects for which the expression is <code>true</code>.
+     * @param q The Query object.
+     * @return The number of indexes written to <b>res</b>.
+     * @throws QueryExecutionException If the expression cannot be evaluated.
+     */
+    public int select (Object[] objs,
+		       int[]    sel,
+		       int      n,
+		       int[]    res,
+		       Query    q)
+	               throws   QueryExecutionException
+    {
+
+	Object[] l = new Object[n];
+
+	this.left.getValues (objs,
+			     sel,
+			     n,
+			     l,
+			     q);
+
+	int c = 0;
+
+	for (int i = 0; i < n; i++)
+	{
+
+	    if ((l[i] == null) != this.not)
+	    {
+
+		res[c++] = sel[i];
+
+	    }
+
+	}
+
+	return c;
+
+    }
+
 }
@@ -14,13 +14,11 @@
  */
 package org.josql.expressions;
 
-import java.util.List;
-
 import org.josql.Query;
 import org.josql.QueryExecutionException;
 import org.josql.QueryParseException;
 
-import org.josql.internal.Utilities;
+import org.josql.internal.LikeMatcher;
 
 /**
  * Represents a LHS [ NOT ] [ $ ] LIKE RHS expression.
@@ -56,7 +54,7 @@ public class LikeExpression extends BinaryExpression
 
     private boolean not = false;
     private boolean ignoreCase = false;
-    private List pattern = null;
+    private LikeMatcher pattern = null;
 
     public boolean isIgnoreCase ()
     {
@@ -108,19 +106,8 @@ public class LikeExpression extends BinaryExpression
 
 	    }
 
-	    String rs = r.toString ();
-
-	    if (this.ignoreCase)
-	    {
-
-		rs = rs.toLowerCase ();
-
-	    }
-
-	    char wc = q.getWildcardCharacter ();
-
-	    this.pattern = Utilities.getLikePattern (rs,
-						     String.valueOf (wc));
+	    this.pattern = new LikeMatcher (r.toString (),
+					    q.getWildcardCharacter ());
 
 	}
 
@@ -171,10 +158,9 @@ public class LikeExpression extends BinaryExpression
 	if (this.pattern != null)
 	{
 
-	    return Utilities.matchLikePattern (this.pattern,
-					       l,
-					       this.not,
-					       this.ignoreCase);
+	    return this.pattern.matches (l,
+					 this.not,
+					 this.ignoreCase);
 
 	}
 
@@ -216,26 +202,13 @@ public class LikeExpression extends BinaryExpression
 
 	}
 
-	// Convert RHS to a string.
-	String rs = r.toString ();
-
-	if (this.ignoreCase)
-	{
-
-	    rs = rs.toLowerCase ();
-
-	}
-
-	// Now see if rs contains the wildcard character.
-	char wc = q.getWildcardCharacter ();
-
-	List pat = Utilities.getLikePattern (rs,
-					     String.valueOf (wc));
+	// The pattern changes so use the shared matchers.
+	LikeMatcher pat = LikeMatcher.getMatcher (r.toString (),
+						  q.getWildcardCharacter ());
 
-	return Utilities.matchLikePattern (pat,
-					   l,
-					   this.not,
-					   this.ignoreCase);
+	return pat.matches (l,
+			    this.not,
+			    this.ignoreCase);
 
     }
 
@@ -37,7 +37,6 @@ public class NewObjectExpression extends ValueExpression
     private List constructorArgs = null;
     private Map intoExps = null;
     private Constructor constructor = null;
-    private Object[] conParms = null;
     private int argsSize = -1;
 
     public void addIntoExpression (Expression exp,
@@ -56,6 +55,20 @@ public class NewObjectExpression extends ValueExpression
 
     }
 
+    public Map getIntoExpressions ()
+    {
+
+	return this.intoExps;
+
+    }
+
+    public List getConstructorArgs ()
+    {
+
+	return this.constructorArgs;
+
+    }
+
     public void setConstructorArgs (List exps)
     {
 
@@ -114,8 +127,6 @@ public class NewObjectExpression extends ValueExpression
 
 	    conTypes = new Class [this.constructorArgs.size ()];
 
-	    this.conParms = new Object[this.constructorArgs.size ()];
-
 	    for (int i = 0; i < this.constructorArgs.size (); i++)
 	    {
 
@@ -243,10 +254,16 @@ public class NewObjectExpression extends ValueExpression
 	                    throws QueryExecutionException
     {
 
+	// The parameters are created per call since the expression may be evaluated
+	// by several threads at once.
+	Object[] conParms = null;
+
 	// Need to create a new object.
 	if (this.constructorArgs != null)
 	{
 
+	    conParms = new Object[this.argsSize + 1];
+
 	    for (int i = this.argsSize; i > -1; i--)
 	    {
 
@@ -255,8 +272,8 @@ public class NewObjectExpression extends ValueExpression
 		try
 		{
 
-		    this.conParms[i] = exp.getValue (o,
-						     q);
+		    conParms[i] = exp.getValue (o,
+						q);
 
 		} catch (Exception e) {
 
@@ -276,7 +293,7 @@ public class NewObjectExpression extends ValueExpression
 	try
 	{
 
-	    obj = this.constructor.newInstance (Utilities.convertArgs (this.conParms,
+	    obj = this.constructor.newInstance (Utilities.convertArgs (conParms,
 								       this.constructor.getParameterTypes ()));
 
 	} catch (Exception e) {
@@ -286,7 +303,7 @@ public class NewObjectExpression extends ValueExpression
 					       " using constructor: " +
 					       this.constructor +
 					       ", passing parameters: " +
-					       this.conParms,
+					       conParms,
 					       e);
 
 	}
@@ -18,6 +18,9 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Date;
 
 import com.gentlyweb.utils.Getter;
 
@@ -28,12 +31,20 @@ import org.josql.QueryParseException;
 
 import org.josql.events.*;
 
+import org.josql.internal.ExecutionContext;
+import org.josql.internal.CompiledExpression;
+
 public class SubQueryExpression extends ValueExpression implements BindVariableChangedListener,
 						   	           SaveValueChangedListener
 {
 
+    /**
+     * The maximum number of results kept for a sub-query for an execution of the parent query.
+     */
+    public static final int MAX_CACHED_RESULTS = 1000;
+
     private Query q = null;
-    private boolean inited = false;
+    private volatile boolean inited = false;
     private String acc = null;
     private Getter get = null;
     private boolean nullQuery = false;
@@ -459,12 +470,203 @@ public class SubQueryExpression extends ValueExpression implements BindVariableC
 
 	}
 
+	// The references made by sub-queries of this one are only added when they are
+	// inited, i.e. when they are first evaluated, so add them now, otherwise the
+	// key for the results would be missing them until then.
+	this.addNestedParentReferences (this.q,
+					false);
+
 	this.inited = true;
 
     }
 
-    private List innerGetValue (Object o)
-	                        throws QueryExecutionException
+    /**
+     * Add the references to the <b>:_parent</b> bind variable made in the sub-queries of
+     * the query that refer to a query above this sub-query, see: {@link BindVariable#init(Query)}.
+     *
+     * @param q The query.
+     * @param nested Whether the query is a sub-query of this sub-query.
+     */
+    private void addNestedParentReferences (Query   q,
+					    boolean nested)
+    {
+
+	List exps = q.getClauseExpressions ();
+
+	int s = exps.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    this.addNestedParentReferences ((Expression) exps.get (i),
+					    nested);
+
+	}
+
+    }
+
+    private void addNestedParentReferences (Expression exp,
+					    boolean    nested)
+    {
+
+	if (exp == null)
+	{
+
+	    return;
+
+	}
+
+	if (exp instanceof SubQueryExpression)
+	{
+
+	    this.addNestedParentReferences (((SubQueryExpression) exp).getQuery (),
+					    true);
+
+	    return;
+
+	}
+
+	if (exp instanceof BindVariable)
+	{
+
+	    BindVariable bv = (BindVariable) exp;
+
+	    String a = bv.getAccessor ();
+
+	    if ((nested)
+		&&
+		(Query.PARENT_BIND_VAR_NAME.equalsIgnoreCase (bv.getName ()))
+		&&
+		((a == null)
+		 ||
+		 (a.toLowerCase ().startsWith ("parent"))
+		)
+	       )
+	    {
+
+		this.q.addParentReference (bv);
+
+	    }
+
+	    return;
+
+	}
+
+	List exps = new ArrayList ();
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exps.add (((CompiledExpression) exp).getSource ());
+
+	}
+
+	if (exp instanceof SelectItemExpression)
+	{
+
+	    exps.add (((SelectItemExpression) exp).getExpression ());
+
+	}
+
+	if (exp instanceof AliasedExpression)
+	{
+
+	    exps.add (((AliasedExpression) exp).getExpression ());
+
+	}
+
+	if (exp instanceof BinaryExpression)
+	{
+
+	    BinaryExpression be = (BinaryExpression) exp;
+
+	    exps.add (be.getLeft ());
+	    exps.add (be.getRight ());
+
+	}
+
+	if (exp instanceof BetweenExpression)
+	{
+
+	    BetweenExpression be = (BetweenExpression) exp;
+
+	    exps.add (be.getStart ());
+	    exps.add (be.getEnd ());
+
+	}
+
+	if (exp instanceof InExpression)
+	{
+
+	    exps.addAll (((InExpression) exp).getItems ());
+
+	}
+
+	if (exp instanceof ArithmeticExpression)
+	{
+
+	    ArithmeticExpression ae = (ArithmeticExpression) exp;
+
+	    exps.add (ae.getLeft ());
+	    exps.add (ae.getRight ());
+
+	}
+
+	if ((exp instanceof Function)
+	    &&
+	    (((Function) exp).getParameters () != null)
+	   )
+	{
+
+	    exps.addAll (((Function) exp).getParameters ());
+
+	}
+
+	if ((exp instanceof ExpressionList)
+	    &&
+	    (((ExpressionList) exp).getExpressions () != null)
+	   )
+	{
+
+	    exps.addAll (((ExpressionList) exp).getExpressions ());
+
+	}
+
+	if (exp instanceof NewObjectExpression)
+	{
+
+	    NewObjectExpression ne = (NewObjectExpression) exp;
+
+	    if (ne.getConstructorArgs () != null)
+	    {
+
+		exps.addAll (ne.getConstructorArgs ());
+
+	    }
+
+	    if (ne.getIntoExpressions () != null)
+	    {
+
+		exps.addAll (ne.getIntoExpressions ().keySet ());
+
+	    }
+
+	}
+
+	int s = exps.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    this.addNestedParentReferences ((Expression) exps.get (i),
+					    nested);
+
+	}
+
+    }
+
+    private Collection innerGetValue (Object o)
+	                              throws QueryExecutionException
     {
 
 	if (this.nullQuery)
@@ -512,21 +714,7 @@ public class SubQueryExpression extends ValueExpression implements BindVariableC
 
 	}
 
-	List l = null;
-
-	// Now, co-erce the collection to a List.
-	if (obj instanceof List)
-	{
-
-	    l = (List) obj;
-	    
-	} else {
-
-	    l = new ArrayList ((Collection) obj);
-
-	}
-
-	return l;
+	return (Collection) obj;
 
     }
 
@@ -540,41 +728,70 @@ public class SubQueryExpression extends ValueExpression implements BindVariableC
 	if (!this.inited)
 	{
 
-	    this.innerInit (o,
-			    q);
+	    // Initing changes the sub-query so only allow one thread to do it.
+	    synchronized (this)
+	    {
+
+		if (!this.inited)
+		{
+
+		    this.innerInit (o,
+				    q);
+
+		}
+
+	    }
 
 	} 
 
 	if (this.inited)
 	{
 
-	    List l = this.innerGetValue (o);
+	    Collection c = this.innerGetValue (o);
 
-	    QueryResults qr = this.q.execute (l);
+	    Map cache = null;
+	    Key k = this.getKey (c);
 
-	    if (this.get != null)
+	    if (k != null)
 	    {
 
-		try
+		cache = this.getResultsCache (q);
+
+	    }
+
+	    if (cache != null)
+	    {
+
+		synchronized (cache)
 		{
 
-		    return this.get.getValue (qr.getResults ());
+		    if (cache.containsKey (k))
+		    {
+
+			return cache.get (k);
+
+		    }
+
+		}
 
-		} catch (Exception e) {
+	    }
 
-		    throw new QueryExecutionException ("Unable to get value for accessor: " +
-						       this.acc +
-						       " from return type: " +
-						       ArrayList.class.getName () + 
-						       " after execution of sub-query: " +
-						       this,
-						       e);
+	    Object v = this.getResults (c);
+
+	    if (cache != null)
+	    {
+
+		synchronized (cache)
+		{
+
+		    cache.put (k,
+			       v);
 
 		}
 
-	    } 
+	    }
 
-	    return qr.getResults ();
+	    return v;
 
 	} 
 
@@ -582,6 +799,153 @@ public class SubQueryExpression extends ValueExpression implements BindVariableC
 
     }
 
+    /**
+     * Get the key for the results of executing the sub-query, the results depend upon the
+     * objects from the FROM clause and the values of any references to the parent query.
+     * So a sub-query that doesn't depend on the outer object is executed once and one that
+     * does is executed once for each distinct set of the values it uses.
+     *
+     * @return The key or <code>null</code> if the values the results depend upon aren't known.
+     */
+    private Key getKey (Collection c)
+    {
+
+	List refs = this.q.getParentReferences ();
+
+	int rs = (refs != null) ? refs.size () : 0;
+
+	Object[] vals = new Object[rs + 1];
+
+	vals[0] = c;
+
+	for (int i = 0; i < rs; i++)
+	{
+
+	    BindVariable bv = (BindVariable) refs.get (i);
+
+	    String a = bv.getAccessor ();
+
+	    if ((a == null)
+		||
+		(a.toLowerCase ().startsWith ("parent"))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    try
+	    {
+
+		vals[i + 1] = bv.getValue (null,
+					   this.q);
+
+	    } catch (Exception e) {
+
+		// Let the execution report it.
+		return null;
+
+	    }
+
+	}
+
+	return new Key (vals);
+
+    }
+
+    /**
+     * Get the results cache for the current execution of the parent query, the cache is
+     * limited in size with the least recently used results removed first.
+     */
+    private Map getResultsCache (Query q)
+    {
+
+	ExecutionContext ctx = q.getExecutionContext ();
+
+	// Outside of an execution there is nothing to tie the lifetime of the cache to.
+	if (ctx.getResults () == null)
+	{
+
+	    return null;
+
+	}
+
+	Map cache = (Map) ctx.getExecutionValue (this);
+
+	if (cache == null)
+	{
+
+	    // Another thread evaluating for the same execution may be creating it too.
+	    cache = new LinkedHashMap (16,
+				       0.75f,
+				       true)
+	    {
+
+		protected boolean removeEldestEntry (Map.Entry eldest)
+		{
+
+		    return this.size () > SubQueryExpression.MAX_CACHED_RESULTS;
+
+		}
+
+	    };
+
+	    cache = (Map) ctx.setExecutionValueIfAbsent (this,
+							 cache);
+
+	}
+
+	return cache;
+
+    }
+
+    private Object getResults (Collection c)
+	                       throws     QueryExecutionException
+    {
+
+	List l = null;
+
+	// Now, co-erce the collection to a List.
+	if (c instanceof List)
+	{
+
+	    l = (List) c;
+	    
+	} else {
+
+	    l = new ArrayList (c);
+
+	}
+
+	QueryResults qr = this.q.execute (l);
+
+	if (this.get != null)
+	{
+
+	    try
+	    {
+
+		return this.get.getValue (qr.getResults ());
+
+	    } catch (Exception e) {
+
+		throw new QueryExecutionException ("Unable to get value for accessor: " +
+						   this.acc +
+						   " from return type: " +
+						   ArrayList.class.getName () + 
+						   " after execution of sub-query: " +
+						   this,
+						   e);
+
+	    }
+
+	} 
+
+	return qr.getResults ();
+
+    }
+
     public String toString ()
     {
 
@@ -589,4 +953,122 @@ public class SubQueryExpression extends ValueExpression implements BindVariableC
  
     }
 
+    /**
+     * The key for the results of the sub-query.  The objects from the FROM clause and any
+     * values that aren't simple values (numbers, strings and so on) are compared by identity
+     * since the sub-query may use more of the object than its <code>equals</code> method does.
+     */
+    private static class Key
+    {
+
+	private Object[] vals = null;
+	private int hash = 0;
+
+	private Key (Object[] vals)
+	{
+
+	    this.vals = vals;
+
+	    int h = 1;
+
+	    for (int i = 0; i < vals.length; i++)
+	    {
+
+		Object v = vals[i];
+
+		int vh = 0;
+
+		if (v != null)
+		{
+
+		    vh = ((i > 0) && (Key.isValue (v))) ? v.hashCode () : System.identityHashCode (v);
+
+		}
+
+		h = (31 * h) + vh;
+
+	    }
+
+	    this.hash = h;
+
+	}
+
+	private static boolean isValue (Object v)
+	{
+
+	    return (v instanceof Number)
+		   ||
+		   (v instanceof String)
+		   ||
+		   (v instanceof Boolean)
+		   ||
+		   (v instanceof Character)
+		   ||
+		   (v instanceof Date)
+		   ||
+		   (v instanceof Enum);
+
+	}
+
+	public int hashCode ()
+	{
+
+	    return this.hash;
+
+	}
+
+	public boolean equals (Object o)
+	{
+
+	    if (!(o instanceof Key))
+	    {
+
+		return false;
+
+	    }
+
+	    Object[] ovals = ((Key) o).vals;
+
+	    if (ovals.length != this.vals.length)
+	    {
+
+		return false;
+
+	    }
+
+	    for (int i = 0; i < this.vals.length; i++)
+	    {
+
+		Object v = this.vals[i];
+		Object ov = ovals[i];
+
+		if (v == ov)
+		{
+
+		    continue;
+
+		}
+
+		if ((i == 0)
+		    ||
+		    (v == null)
+		    ||
+		    (!Key.isValue (v))
+		    ||
+		    (!v.equals (ov))
+		   )
+		{
+
+		    return false;
+
+		}
+
+	    }
+
+	    return true;
+
+	}
+
+    }
+
 }
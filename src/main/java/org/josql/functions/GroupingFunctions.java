@@ -652,6 +652,8 @@ public class GroupingFunctions extends AbstractFunctionHandler
 
 	int size = allobjs.size ();
 
+	boolean numeric = exp.isNumeric (this.q);
+
 	for (int i = 0; i < size; i++)
 	{
 
@@ -664,6 +666,20 @@ public class GroupingFunctions extends AbstractFunctionHandler
 	    try
 	    {
 
+		if ((numeric)
+		    &&
+		    (o != null)
+		   )
+		{
+
+		    // No need to create an object.
+		    total += exp.getDouble (o,
+					    this.q);
+
+		    continue;
+
+		}
+
 		n = (Number) exp.getValue (o,
 					   this.q);
 
@@ -822,6 +838,8 @@ public class GroupingFunctions extends AbstractFunctionHandler
 
 	double d = 0;
 
+	boolean numeric = exp.isNumeric (this.q);
+
 	for (int i = s; i > -1; i--)
 	{
 
@@ -834,6 +852,20 @@ public class GroupingFunctions extends AbstractFunctionHandler
 	    try
 	    {
 
+		if ((numeric)
+		    &&
+		    (o != null)
+		   )
+		{
+
+		    // No need to create an object.
+		    d += exp.getDouble (o,
+					this.q);
+
+		    continue;
+
+		}
+
 		v = exp.getValue (o,
 				  this.q);
 
@@ -0,0 +1,658 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import org.josql.Query;
+
+import org.josql.utils.ColumnarSnapshot;
+
+import org.josql.expressions.Expression;
+import org.josql.expressions.AndOrExpression;
+import org.josql.expressions.EqualsExpression;
+import org.josql.expressions.GTLTExpression;
+import org.josql.expressions.BetweenExpression;
+import org.josql.expressions.InExpression;
+import org.josql.expressions.IsNullExpression;
+import org.josql.expressions.Accessor;
+import org.josql.expressions.ConstantExpression;
+import org.josql.expressions.BindVariable;
+
+/**
+ * Evaluates a WHERE clause against the columns of a {@link ColumnarSnapshot}, a column at a
+ * time rather than an object at a time.
+ * <p>
+ * The following conditions can be evaluated using the columns, where the accessor is held
+ * by the snapshot and the value is a constant or a (non-special) bind variable:
+ * <ul>
+ *   <li><code>=</code> and <code>!=</code>, (not <code>$=</code>).</li>
+ *   <li><code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code>, <code>&gt;=</code> (either way round).</li>
+ *   <li><code>BETWEEN</code> and <code>NOT BETWEEN</code>.</li>
+ *   <li><code>IN</code>, (not <code>NOT IN</code>, <code>$IN</code>, <code>LIKE</code> or <code>ALL</code>).</li>
+ *   <li><code>IS NULL</code> and <code>IS NOT NULL</code>.</li>
+ *   <li><code>AND</code> and <code>OR</code> of any of the above.</li>
+ * </ul>
+ * The column must also be able to compare its values to the value, i.e. the column holds
+ * numbers and the value is a number, or the column holds strings and the value is a string.
+ */
+public class ColumnPlanner
+{
+
+    /**
+     * Get the rows that match the WHERE clause, this is only possible when all of the
+     * clause can be evaluated using the columns.
+     *
+     * @param objs The snapshot.
+     * @param where The WHERE clause.
+     * @param q The Query.
+     * @return The rows that match or <code>null</code> if the clause cannot be evaluated
+     *         using the columns.
+     */
+    public static BitSet getMatches (ColumnarSnapshot objs,
+				     Expression       where,
+				     Query            q)
+    {
+
+	// A custom comparator may not agree with the ordering of the columns.
+	if (Utilities.getObjectComparator () != null)
+	{
+
+	    return null;
+
+	}
+
+	try
+	{
+
+	    return ColumnPlanner.select (objs,
+					 where,
+					 q);
+
+	} catch (Exception e) {
+
+	    // Can't get a value, let the full evaluation report it.
+	    return null;
+
+	}
+
+    }
+
+    /**
+     * Get the rows that may match the WHERE clause, using the conditions ANDed with the
+     * rest of the clause that can be evaluated using the columns.  The WHERE clause must still
+     * be evaluated against each of the candidate objects.
+     *
+     * @param objs The snapshot.
+     * @param where The WHERE clause.
+     * @param q The Query.
+     * @return The candidate rows or <code>null</code> if all the rows must be checked.
+     */
+    public static BitSet getCandidates (ColumnarSnapshot objs,
+					Expression       where,
+					Query            q)
+    {
+
+	if (Utilities.getObjectComparator () != null)
+	{
+
+	    return null;
+
+	}
+
+	try
+	{
+
+	    return ColumnPlanner.getCandidatesForExpression (objs,
+							     where,
+							     q);
+
+	} catch (Exception e) {
+
+	    return null;
+
+	}
+
+    }
+
+    private static BitSet getCandidatesForExpression (ColumnarSnapshot objs,
+						      Expression       exp,
+						      Query            q)
+	                                              throws           Exception
+    {
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exp = ((CompiledExpression) exp).getSource ();
+
+	}
+
+	if ((exp instanceof AndOrExpression)
+	    &&
+	    (((AndOrExpression) exp).isAnd ())
+	   )
+	{
+
+	    AndOrExpression ao = (AndOrExpression) exp;
+
+	    BitSet l = ColumnPlanner.getCandidatesForExpression (objs,
+								 ao.getLeft (),
+								 q);
+
+	    if ((l != null)
+		&&
+		(l.isEmpty ())
+	       )
+	    {
+
+		return l;
+
+	    }
+
+	    BitSet r = ColumnPlanner.getCandidatesForExpression (objs,
+								 ao.getRight (),
+								 q);
+
+	    if (l == null)
+	    {
+
+		return r;
+
+	    }
+
+	    if (r != null)
+	    {
+
+		l.and (r);
+
+	    }
+
+	    return l;
+
+	}
+
+	return ColumnPlanner.select (objs,
+				     exp,
+				     q);
+
+    }
+
+    /**
+     * Get the rows that match the expression or <code>null</code> if the expression
+     * cannot be evaluated using the columns.
+     */
+    private static BitSet select (ColumnarSnapshot objs,
+				  Expression       exp,
+				  Query            q)
+	                          throws           Exception
+    {
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exp = ((CompiledExpression) exp).getSource ();
+
+	}
+
+	int s = objs.size ();
+
+	if (exp instanceof AndOrExpression)
+	{
+
+	    AndOrExpression ao = (AndOrExpression) exp;
+
+	    BitSet l = ColumnPlanner.select (objs,
+					     ao.getLeft (),
+					     q);
+
+	    if (l == null)
+	    {
+
+		return null;
+
+	    }
+
+	    BitSet r = ColumnPlanner.select (objs,
+					     ao.getRight (),
+					     q);
+
+	    if (r == null)
+	    {
+
+		return null;
+
+	    }
+
+	    if (ao.isAnd ())
+	    {
+
+		l.and (r);
+
+	    } else {
+
+		l.or (r);
+
+	    }
+
+	    return l;
+
+	}
+
+	if (exp instanceof EqualsExpression)
+	{
+
+	    EqualsExpression ee = (EqualsExpression) exp;
+
+	    if (ee.isIgnoreCase ())
+	    {
+
+		return null;
+
+	    }
+
+	    ColumnarSnapshot.Column col = ColumnPlanner.getColumn (objs,
+								   ee.getLeft ());
+	    Expression v = ee.getRight ();
+
+	    if (col == null)
+	    {
+
+		col = ColumnPlanner.getColumn (objs,
+					       ee.getRight ());
+		v = ee.getLeft ();
+
+	    }
+
+	    if ((col == null)
+		||
+		(!ColumnPlanner.isValue (v))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    Object val = v.getValue (null,
+				     q);
+
+	    BitSet res = new BitSet (s);
+
+	    if (val == null)
+	    {
+
+		// Two nulls are equal.
+		col.selectNull (res);
+
+	    } else {
+
+		if (!col.select (Utilities.EQ,
+				 val,
+				 res))
+		{
+
+		    return null;
+
+		}
+
+	    }
+
+	    if (ee.isNot ())
+	    {
+
+		// != is true for a null and a non-null value.
+		res.flip (0,
+			  s);
+
+	    }
+
+	    return res;
+
+	}
+
+	if (exp instanceof GTLTExpression)
+	{
+
+	    GTLTExpression ge = (GTLTExpression) exp;
+
+	    if (ge.isIgnoreCase ())
+	    {
+
+		return null;
+
+	    }
+
+	    int t = ge.getType ();
+
+	    ColumnarSnapshot.Column col = ColumnPlanner.getColumn (objs,
+								   ge.getLeft ());
+	    Expression v = ge.getRight ();
+
+	    if (col == null)
+	    {
+
+		col = ColumnPlanner.getColumn (objs,
+					       ge.getRight ());
+		v = ge.getLeft ();
+
+		// value < acc is the same as acc > value.
+		t = ColumnPlanner.reverse (t);
+
+	    }
+
+	    if ((col == null)
+		||
+		(!ColumnPlanner.isValue (v))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    Object val = v.getValue (null,
+				     q);
+
+	    if (val == null)
+	    {
+
+		return null;
+
+	    }
+
+	    BitSet res = new BitSet (s);
+
+	    if (!col.select (t,
+			     val,
+			     res))
+	    {
+
+		return null;
+
+	    }
+
+	    return res;
+
+	}
+
+	if (exp instanceof BetweenExpression)
+	{
+
+	    BetweenExpression be = (BetweenExpression) exp;
+
+	    ColumnarSnapshot.Column col = ColumnPlanner.getColumn (objs,
+								   be.getLeft ());
+
+	    if ((col == null)
+		||
+		(!ColumnPlanner.isValue (be.getStart ()))
+		||
+		(!ColumnPlanner.isValue (be.getEnd ()))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    Object st = be.getStart ().getValue (null,
+						 q);
+	    Object en = be.getEnd ().getValue (null,
+					       q);
+
+	    if ((st == null)
+		||
+		(en == null)
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    BitSet res = new BitSet (s);
+	    BitSet e = new BitSet (s);
+
+	    if ((!col.select (Utilities.GTE,
+			      st,
+			      res))
+		||
+		(!col.select (Utilities.LTE,
+			      en,
+			      e))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    res.and (e);
+
+	    if (be.isNot ())
+	    {
+
+		// A null is never between the values.
+		res.flip (0,
+			  s);
+
+	    }
+
+	    return res;
+
+	}
+
+	if (exp instanceof InExpression)
+	{
+
+	    InExpression ie = (InExpression) exp;
+
+	    ColumnarSnapshot.Column col = ColumnPlanner.getColumn (objs,
+								   ie.getLeft ());
+
+	    if ((ie.isNot ())
+		||
+		(ie.isDoLike ())
+		||
+		(ie.isAll ())
+		||
+		(ie.isIgnoreCase ())
+		||
+		(col == null)
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    List items = ie.getItems ();
+
+	    List vals = new ArrayList (items.size ());
+
+	    for (int i = 0; i < items.size (); i++)
+	    {
+
+		Expression it = (Expression) items.get (i);
+
+		if (!ColumnPlanner.isValue (it))
+		{
+
+		    return null;
+
+		}
+
+		Object val = it.getValue (null,
+					  q);
+
+		if (val == null)
+		{
+
+		    return null;
+
+		}
+
+		vals.add (val);
+
+	    }
+
+	    BitSet res = new BitSet (s);
+
+	    if (!col.selectIn (vals,
+			       res))
+	    {
+
+		return null;
+
+	    }
+
+	    return res;
+
+	}
+
+	if (exp instanceof IsNullExpression)
+	{
+
+	    IsNullExpression ine = (IsNullExpression) exp;
+
+	    ColumnarSnapshot.Column col = ColumnPlanner.getColumn (objs,
+								   ine.getLeft ());
+
+	    if (col == null)
+	    {
+
+		return null;
+
+	    }
+
+	    BitSet res = new BitSet (s);
+
+	    col.selectNull (res);
+
+	    if (ine.isNot ())
+	    {
+
+		res.flip (0,
+			  s);
+
+	    }
+
+	    return res;
+
+	}
+
+	return null;
+
+    }
+
+    private static int reverse (int t)
+    {
+
+	if (t == Utilities.GT)
+	{
+
+	    return Utilities.LT;
+
+	}
+
+	if (t == Utilities.GTE)
+	{
+
+	    return Utilities.LTE;
+
+	}
+
+	if (t == Utilities.LT)
+	{
+
+	    return Utilities.GT;
+
+	}
+
+	if (t == Utilities.LTE)
+	{
+
+	    return Utilities.GTE;
+
+	}
+
+	return t;
+
+    }
+
+    /**
+     * Get the column for the expression, if it is a plain accessor held by the snapshot.
+     */
+    private static ColumnarSnapshot.Column getColumn (ColumnarSnapshot objs,
+						      Expression       exp)
+    {
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exp = ((CompiledExpression) exp).getSource ();
+
+	}
+
+	if (exp instanceof Accessor)
+	{
+
+	    return objs.getColumn (((Accessor) exp).getAccessor ());
+
+	}
+
+	return null;
+
+    }
+
+    /**
+     * Return whether the expression has the same value for all the objects and can be
+     * evaluated before the objects are.
+     */
+    private static boolean isValue (Expression exp)
+    {
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exp = ((CompiledExpression) exp).getSource ();
+
+	}
+
+	if (exp instanceof ConstantExpression)
+	{
+
+	    return true;
+
+	}
+
+	if ((exp instanceof BindVariable)
+	    &&
+	    (!((BindVariable) exp).isSpecial ())
+	   )
+	{
+
+	    return true;
+
+	}
+
+	return false;
+
+    }
+
+}
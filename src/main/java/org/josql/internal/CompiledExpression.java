@@ -0,0 +1,92 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import org.josql.Query;
+import org.josql.QueryExecutionException;
+import org.josql.QueryParseException;
+
+import org.josql.expressions.Expression;
+
+/**
+ * Base class for the expressions created by the {@link ExpressionCompiler}.  A compiled
+ * expression stands in for an already initialised expression (the "source") and produces
+ * the same result, the source is used for the string representation, the expected return
+ * type and whether the result is fixed.
+ */
+public abstract class CompiledExpression extends Expression
+{
+
+    private Expression source = null;
+
+    protected CompiledExpression (Expression source)
+    {
+
+	this.source = source;
+
+    }
+
+    /**
+     * Get the expression that was compiled.
+     *
+     * @return The source expression.
+     */
+    public Expression getSource ()
+    {
+
+	return this.source;
+
+    }
+
+    public Class getExpectedReturnType (Query  q)
+	                                throws QueryParseException
+    {
+
+	return this.source.getExpectedReturnType (q);
+
+    }
+
+    public void init (Query  q)
+    {
+
+	// The source has already been inited.
+
+    }
+
+    public boolean hasFixedResult (Query q)
+    {
+
+	return this.source.hasFixedResult (q);
+
+    }
+
+    public Object getValue (Object o,
+			    Query  q)
+	                    throws QueryExecutionException
+    {
+
+	return Boolean.valueOf (this.isTrue (o,
+					     q));
+
+    }
+
+    public String toString ()
+    {
+
+	return this.source.toString ();
+
+    }
+
+}
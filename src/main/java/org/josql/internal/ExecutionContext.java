@@ -0,0 +1,312 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.josql.QueryResults;
+
+import org.josql.utils.ColumnarSnapshot;
+
+/**
+ * Holds the state for a single execution of a {@link org.josql.Query}, i.e. the
+ * "current object", the "all objects" list, the current group by values, the results
+ * being built and any bind variables that apply only to this execution.
+ * <p>
+ * The Query keeps one of these per executing thread, this means that once a Query
+ * has been parsed it can be executed by many threads at the same time, each thread
+ * sees its own execution state whilst the parsed form of the statement (the expressions,
+ * comparators and so on) is shared.
+ */
+public class ExecutionContext
+{
+
+    private Object currentObject = null;
+    private List allObjects = null;
+    private List currGroupBys = null;
+    private QueryResults results = null;
+    private Map bindVars = null;
+    private ConcurrentHashMap values = new ConcurrentHashMap ();
+    private ColumnarSnapshot snapshot = null;
+    private Object rowObject = null;
+    private Map rowValues = null;
+
+    /**
+     * Returned by {@link #getSharedValue(Object,Object)} when there is no value.
+     */
+    public static final Object NO_VALUE = new Object ();
+
+    public ExecutionContext ()
+    {
+
+    }
+
+    /**
+     * Create a new context that shares the results and bind variables of the passed in
+     * context but has its own current object.  This is used when an execution is split
+     * across several threads.
+     *
+     * @param ctx The context to copy.
+     */
+    public ExecutionContext (ExecutionContext ctx)
+    {
+
+	this.currentObject = ctx.currentObject;
+	this.allObjects = ctx.allObjects;
+	this.currGroupBys = ctx.currGroupBys;
+	this.results = ctx.results;
+	this.bindVars = ctx.bindVars;
+	this.values = ctx.values;
+	this.snapshot = ctx.snapshot;
+
+    }
+
+    public Object getCurrentObject ()
+    {
+
+	return this.currentObject;
+
+    }
+
+    public void setCurrentObject (Object o)
+    {
+
+	this.currentObject = o;
+
+    }
+
+    public List getAllObjects ()
+    {
+
+	return this.allObjects;
+
+    }
+
+    public void setAllObjects (List objs)
+    {
+
+	this.allObjects = objs;
+
+    }
+
+    public List getCurrentGroupByObjects ()
+    {
+
+	return this.currGroupBys;
+
+    }
+
+    public void setCurrentGroupByObjects (List objs)
+    {
+
+	this.currGroupBys = objs;
+
+    }
+
+    /**
+     * Get the snapshot that the query is being executed against, accessors held by the
+     * snapshot are read from it rather than from the objects.
+     *
+     * @return The snapshot or <code>null</code> if the query is not being executed against one.
+     */
+    public ColumnarSnapshot getColumnarSnapshot ()
+    {
+
+	return this.snapshot;
+
+    }
+
+    public void setColumnarSnapshot (ColumnarSnapshot s)
+    {
+
+	this.snapshot = s;
+
+    }
+
+    public QueryResults getResults ()
+    {
+
+	return this.results;
+
+    }
+
+    public void setResults (QueryResults qr)
+    {
+
+	this.results = qr;
+
+    }
+
+    /**
+     * Get the bind variables that apply only to this execution, keys are lower-cased
+     * names (indexed bind variables use: {@link org.josql.Query#INT_BIND_VAR_PREFIX} + index).
+     *
+     * @return The bind variables, may be <code>null</code>.
+     */
+    public Map getBindVariables ()
+    {
+
+	return this.bindVars;
+
+    }
+
+    public void setBindVariables (Map m)
+    {
+
+	this.bindVars = m;
+
+    }
+
+    /**
+     * Get a value that has been calculated once for this execution, for instance the
+     * values of an IN list whose items do not change between objects.  The values are shared
+     * with any contexts copied from this one.
+     *
+     * @param key The key, generally the expression that calculated the value.
+     * @return The value or <code>null</code> if there isn't one.
+     */
+    public Object getExecutionValue (Object key)
+    {
+
+	return this.values.get (key);
+
+    }
+
+    public void setExecutionValue (Object key,
+				   Object value)
+    {
+
+	this.values.put (key,
+			 value);
+
+    }
+
+    /**
+     * Set a value for this execution unless there already is one, this is atomic so that when
+     * contexts copied from this one are used by different threads they all get the same value.
+     *
+     * @param key The key.
+     * @param value The value to set.
+     * @return The value for the key, either the existing value or <b>value</b>.
+     */
+    public Object setExecutionValueIfAbsent (Object key,
+					     Object value)
+    {
+
+	Object v = this.values.putIfAbsent (key,
+					    value);
+
+	if (v != null)
+	{
+
+	    return v;
+
+	}
+
+	return value;
+
+    }
+
+    /**
+     * Get a value that has been shared for the object, see: {@link #setSharedValue(Object,Object,Object)}.
+     * A value is only found if it was set for the object by this context and no other object has
+     * been used since.
+     *
+     * @param key The key, generally the expression that calculated the value.
+     * @param o The object the value was calculated for.
+     * @return The value, which may be <code>null</code>, or {@link #NO_VALUE} if there isn't one.
+     */
+    public Object getSharedValue (Object key,
+				  Object o)
+    {
+
+	if ((this.rowObject == o)
+	    &&
+	    (this.rowValues != null)
+	   )
+	{
+
+	    Object v = this.rowValues.get (key);
+
+	    if ((v != null)
+		||
+		(this.rowValues.containsKey (key))
+	       )
+	    {
+
+		return v;
+
+	    }
+
+	}
+
+	return ExecutionContext.NO_VALUE;
+
+    }
+
+    /**
+     * Share a value calculated for the object so that the same calculation elsewhere in the
+     * query can use it whilst the object is being evaluated.  Only the values for the last object
+     * used are held, so the memory used doesn't grow with the number of objects.
+     *
+     * @param key The key, generally the expression that calculated the value.
+     * @param o The object the value was calculated for.
+     * @param v The value.
+     */
+    public void setSharedValue (Object key,
+				Object o,
+				Object v)
+    {
+
+	if (this.rowValues == null)
+	{
+
+	    this.rowValues = new HashMap ();
+
+	} else {
+
+	    if (this.rowObject != o)
+	    {
+
+		this.rowValues.clear ();
+
+	    }
+
+	}
+
+	this.rowObject = o;
+
+	this.rowValues.put (key,
+			    v);
+
+    }
+
+    /**
+     * Clear all the shared values, this is needed when objects may have changed since their
+     * values were shared.
+     */
+    public void clearSharedValues ()
+    {
+
+	this.rowObject = null;
+	this.rowValues = null;
+
+    }
+
+}
@@ -0,0 +1,1144 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.josql.Query;
+import org.josql.QueryExecutionException;
+
+import org.josql.expressions.Expression;
+import org.josql.expressions.Accessor;
+import org.josql.expressions.ConstantExpression;
+import org.josql.expressions.AndOrExpression;
+import org.josql.expressions.EqualsExpression;
+import org.josql.expressions.GTLTExpression;
+import org.josql.expressions.BetweenExpression;
+import org.josql.expressions.IsNullExpression;
+import org.josql.expressions.BinaryExpression;
+import org.josql.expressions.InExpression;
+import org.josql.expressions.ArithmeticExpression;
+import org.josql.expressions.BindVariable;
+import org.josql.expressions.BooleanExpression;
+
+/**
+ * Compiles an initialised expression tree into a tree of specialized expressions.
+ * <p>
+ * The interpreted expressions are general, for example an {@link EqualsExpression} has to
+ * cope with any type of value on either side, collections, case-insensitivity and so on.
+ * However the most common predicates compare an accessor with a constant, for those the
+ * type of the constant is known once the query has been parsed, so a specialized expression
+ * can call the getter directly and compare numbers as primitive <code>double</code>s (with the
+ * same semantics as {@link Utilities#compare(Object,Object)}).  Chains of AND/OR expressions are
+ * flattened into a single array of operands.
+ * <p>
+ * The operands of a flattened chain start in the order they were written, whilst the query is
+ * executed the time taken by each operand that is reached and how often it returns 
+ * <code>true</code> are sampled and periodically the operands are reordered so that those
+ * that are cheap and most likely to end the evaluation (<code>false</code> for AND, 
+ * <code>true</code> for OR) are evaluated first.  The samples are kept with the compiled 
+ * expression so they carry over to later executions of the same Query.  Only operands without
+ * side-effects (no functions, sub-queries or save values) are moved and never past an operand
+ * with side-effects, so those are evaluated exactly when they would be in the written order.
+ * If a moved operand throws an exception (it may rely on being guarded by an operand that is
+ * now after it) then the chain is evaluated again in the written order from that point.
+ * <p>
+ * Any expression that cannot be compiled is left as is, so the result is always a valid
+ * expression that returns exactly the same result as the original.  When the value returned
+ * at execution time isn't of the expected type (or an object comparator has been set via:
+ * {@link Utilities#setObjectComparator(java.util.Comparator)}) then the compiled expressions
+ * fall back to: {@link Utilities#matches(Object,Object,boolean,int,boolean)}.
+ */
+public class ExpressionCompiler
+{
+
+    /**
+     * Compile the expression, the expression (and all sub-expressions) must have been inited.
+     *
+     * @param exp The expression to compile.
+     * @param q The Query.
+     * @return The compiled expression or <b>exp</b> if it cannot be compiled.
+     */
+    public static Expression compile (Expression exp,
+				      Query      q)
+    {
+
+	if (exp == null)
+	{
+
+	    return null;
+
+	}
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    return exp;
+
+	}
+
+	if (exp instanceof AndOrExpression)
+	{
+
+	    AndOrExpression ao = (AndOrExpression) exp;
+
+	    List ops = new ArrayList ();
+
+	    ExpressionCompiler.flatten (ao,
+					ao.isAnd (),
+					ops);
+
+	    Expression[] exps = new Expression[ops.size ()];
+
+	    for (int i = 0; i < exps.length; i++)
+	    {
+
+		exps[i] = ExpressionCompiler.compile ((Expression) ops.get (i),
+						      q);
+
+	    }
+
+	    return new CompiledAndOr (ao,
+				      exps);
+
+	}
+
+	if (exp instanceof EqualsExpression)
+	{
+
+	    EqualsExpression ee = (EqualsExpression) exp;
+
+	    return ExpressionCompiler.compileComparison (ee,
+							 ee.getLeft (),
+							 ee.getRight (),
+							 Utilities.EQ,
+							 ee.isIgnoreCase (),
+							 ee.isNot (),
+							 true);
+
+	}
+
+	if (exp instanceof GTLTExpression)
+	{
+
+	    GTLTExpression ge = (GTLTExpression) exp;
+
+	    return ExpressionCompiler.compileComparison (ge,
+							 ge.getLeft (),
+							 ge.getRight (),
+							 ge.getType (),
+							 ge.isIgnoreCase (),
+							 false,
+							 false);
+
+	}
+
+	if (exp instanceof BetweenExpression)
+	{
+
+	    BetweenExpression be = (BetweenExpression) exp;
+
+	    Object s = ExpressionCompiler.getConstant (be.getStart ());
+	    Object e = ExpressionCompiler.getConstant (be.getEnd ());
+
+	    if ((be.getLeft () instanceof Accessor)
+		&&
+		(s instanceof Number)
+		&&
+		(e instanceof Number)
+	       )
+	    {
+
+		return new CompiledBetween (be,
+					    (Accessor) be.getLeft (),
+					    (Number) s,
+					    (Number) e,
+					    be.isNot ());
+
+	    }
+
+	    return exp;
+
+	}
+
+	if (exp instanceof IsNullExpression)
+	{
+
+	    IsNullExpression ie = (IsNullExpression) exp;
+
+	    if (ie.getLeft () instanceof Accessor)
+	    {
+
+		return new CompiledIsNull (ie,
+					   (Accessor) ie.getLeft (),
+					   ie.isNot ());
+
+	    }
+
+	}
+
+	return exp;
+
+    }
+
+    private static void flatten (Expression exp,
+				 boolean    and,
+				 List       ops)
+    {
+
+	if ((exp instanceof AndOrExpression)
+	    &&
+	    (((AndOrExpression) exp).isAnd () == and)
+	   )
+	{
+
+	    AndOrExpression ao = (AndOrExpression) exp;
+
+	    ExpressionCompiler.flatten (ao.getLeft (),
+					and,
+					ops);
+	    ExpressionCompiler.flatten (ao.getRight (),
+					and,
+					ops);
+
+	    return;
+
+	}
+
+	ops.add (exp);
+
+    }
+
+    private static Object getConstant (Expression exp)
+    {
+
+	if (exp instanceof ConstantExpression)
+	{
+
+	    return ((ConstantExpression) exp).getValue (null,
+							null);
+
+	}
+
+	return null;
+
+    }
+
+    private static Expression compileComparison (Expression exp,
+						 Expression left,
+						 Expression right,
+						 int        type,
+						 boolean    ignoreCase,
+						 boolean    not,
+						 boolean    equals)
+    {
+
+	Accessor acc = null;
+	Object c = null;
+	boolean swapped = false;
+
+	if (left instanceof Accessor)
+	{
+
+	    acc = (Accessor) left;
+	    c = ExpressionCompiler.getConstant (right);
+
+	} else {
+
+	    if (right instanceof Accessor)
+	    {
+
+		acc = (Accessor) right;
+		c = ExpressionCompiler.getConstant (left);
+		swapped = true;
+
+	    }
+
+	}
+
+	if ((acc == null)
+	    ||
+	    (c == null)
+	   )
+	{
+
+	    return exp;
+
+	}
+
+	if ((c instanceof Number)
+	    &&
+	    (!ignoreCase)
+	   )
+	{
+
+	    return new CompiledNumberCompare (exp,
+					      acc,
+					      (Number) c,
+					      type,
+					      not,
+					      equals,
+					      swapped);
+
+	}
+
+	if ((c instanceof String)
+	    &&
+	    (equals)
+	   )
+	{
+
+	    return new CompiledStringEquals (exp,
+					     acc,
+					     (String) c,
+					     ignoreCase,
+					     not,
+					     swapped);
+
+	}
+
+	return exp;
+
+    }
+
+    /**
+     * Return the type to use when the sides of a comparison are swapped, i.e.
+     * <code>c &lt; x</code> is the same as: <code>x &gt; c</code>.
+     */
+    private static int reverse (int type)
+    {
+
+	if (type == Utilities.GT)
+	{
+
+	    return Utilities.LT;
+
+	}
+
+	if (type == Utilities.GTE)
+	{
+
+	    return Utilities.LTE;
+
+	}
+
+	if (type == Utilities.LT)
+	{
+
+	    return Utilities.GT;
+
+	}
+
+	if (type == Utilities.LTE)
+	{
+
+	    return Utilities.GTE;
+
+	}
+
+	return type;
+
+    }
+
+    /**
+     * Determine whether the expression can be evaluated in a different order to the one it
+     * was written in without changing what the query does, i.e. it only uses accessors,
+     * constants, bind variables and comparisons or arithmetic of them.  Functions, sub-queries
+     * and save values may have side-effects (or count how often they are called) so they are
+     * always evaluated when, and only when, they would be in the written order.
+     */
+    private static boolean isReorderable (Expression exp)
+    {
+
+	if (exp == null)
+	{
+
+	    return true;
+
+	}
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    return ExpressionCompiler.isReorderable (((CompiledExpression) exp).getSource ());
+
+	}
+
+	if ((exp instanceof Accessor)
+	    ||
+	    (exp instanceof ConstantExpression)
+	    ||
+	    (exp instanceof BooleanExpression)
+	   )
+	{
+
+	    return true;
+
+	}
+
+	if (exp instanceof BindVariable)
+	{
+
+	    return !((BindVariable) exp).isSpecial ();
+
+	}
+
+	if (exp instanceof ArithmeticExpression)
+	{
+
+	    ArithmeticExpression ae = (ArithmeticExpression) exp;
+
+	    return ExpressionCompiler.isReorderable (ae.getLeft ())
+		   &&
+		   ExpressionCompiler.isReorderable (ae.getRight ());
+
+	}
+
+	if (exp instanceof BinaryExpression)
+	{
+
+	    BinaryExpression be = (BinaryExpression) exp;
+
+	    if ((!ExpressionCompiler.isReorderable (be.getLeft ()))
+		||
+		(!ExpressionCompiler.isReorderable (be.getRight ()))
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	    if (exp instanceof BetweenExpression)
+	    {
+
+		BetweenExpression bt = (BetweenExpression) exp;
+
+		return ExpressionCompiler.isReorderable (bt.getStart ())
+		       &&
+		       ExpressionCompiler.isReorderable (bt.getEnd ());
+
+	    }
+
+	    if (exp instanceof InExpression)
+	    {
+
+		List items = ((InExpression) exp).getItems ();
+
+		int s = items.size ();
+
+		for (int i = 0; i < s; i++)
+		{
+
+		    if (!ExpressionCompiler.isReorderable ((Expression) items.get (i)))
+		    {
+
+			return false;
+
+		    }
+
+		}
+
+	    }
+
+	    return true;
+
+	}
+
+	return false;
+
+    }
+
+    private static class CompiledAndOr extends CompiledExpression
+    {
+
+	/**
+	 * The operands are timed on every call whose number is a multiple of this.
+	 */
+	private static final int SAMPLE_INTERVAL = 64;
+
+	/**
+	 * The number of sampled calls between each reordering of the operands.
+	 */
+	private static final int REORDER_SAMPLES = 64;
+
+	private Expression[] exps = null;
+	private volatile Operand[] ops = null;
+	private volatile boolean reordered = false;
+	private boolean and = false;
+	private AtomicLong calls = new AtomicLong ();
+	private AtomicLong samples = new AtomicLong ();
+
+	private CompiledAndOr (AndOrExpression source,
+			       Expression[]    exps)
+	{
+
+	    super (source);
+
+	    this.exps = exps;
+	    this.and = source.isAnd ();
+
+	    this.ops = new Operand[exps.length];
+
+	    int start = 0;
+
+	    for (int i = 0; i < exps.length; i++)
+	    {
+
+		Operand op = new Operand (exps[i],
+					  i);
+
+		op.fixed = !ExpressionCompiler.isReorderable (exps[i]);
+
+		if (op.fixed)
+		{
+
+		    start = i + 1;
+
+		}
+
+		// The operands between two fixed operands can be reordered amongst themselves.
+		op.start = start;
+
+		this.ops[i] = op;
+
+	    }
+
+	}
+
+	public boolean isTrue (Object o,
+			       Query  q)
+	                       throws QueryExecutionException
+	{
+
+	    boolean sample = (this.calls.incrementAndGet () % CompiledAndOr.SAMPLE_INTERVAL) == 0;
+
+	    if ((!sample)
+		&&
+		(!this.reordered)
+	       )
+	    {
+
+		return CompiledAndOr.evaluate (this.exps,
+					       0,
+					       this.and,
+					       o,
+					       q);
+
+	    }
+
+	    Operand[] ops = this.ops;
+
+	    boolean res = this.and;
+
+	    for (int i = 0; i < ops.length; i++)
+	    {
+
+		Operand op = ops[i];
+
+		long s = (sample) ? System.nanoTime () : 0;
+
+		boolean r = false;
+
+		try
+		{
+
+		    r = op.exp.isTrue (o,
+				       q);
+
+		} catch (Exception e) {
+
+		    if ((op.fixed)
+			||
+			(op.index == i)
+		       )
+		    {
+
+			// Reached just as it would be in the written order.
+			CompiledAndOr.rethrow (e);
+
+		    }
+
+		    // It may be guarded by an operand that is now after it.
+		    op.errors.incrementAndGet ();
+
+		    // The operands before the group it is in are the same as in the written
+		    // order and none of them ended the evaluation, so the written order from the
+		    // start of the group decides.
+		    return CompiledAndOr.evaluate (this.exps,
+						   op.start,
+						   this.and,
+						   o,
+						   q);
+
+		}
+
+		if (sample)
+		{
+
+		    op.time.addAndGet (System.nanoTime () - s);
+		    op.evals.incrementAndGet ();
+
+		    if (r)
+		    {
+
+			op.trues.incrementAndGet ();
+
+		    }
+
+		}
+
+		if (r != this.and)
+		{
+
+		    res = r;
+
+		    break;
+
+		}
+
+	    }
+
+	    if ((sample)
+		&&
+		((this.samples.incrementAndGet () % CompiledAndOr.REORDER_SAMPLES) == 0)
+	       )
+	    {
+
+		this.reorder ();
+
+	    }
+
+	    return res;
+
+	}
+
+	/**
+	 * Order the operands by the average time taken to evaluate them divided by the
+	 * likelihood that they end the evaluation.  Only the operands between fixed operands
+	 * (see: {@link ExpressionCompiler#isReorderable(Expression)}) are reordered, amongst
+	 * themselves.  Operands that have not been evaluated, or that have recently thrown an
+	 * exception when evaluated before an operand that was written before them, are placed
+	 * after the rest of their group.  The counts are aged each time so that the order
+	 * follows changes in the objects.
+	 */
+	private synchronized void reorder ()
+	{
+
+	    Operand[] ops = this.ops.clone ();
+
+	    for (int i = 0; i < ops.length; i++)
+	    {
+
+		Operand op = ops[i];
+
+		long evals = op.evals.get ();
+		long trues = op.trues.get ();
+		long time = op.time.get ();
+		long errors = op.errors.get ();
+
+		op.evals.addAndGet (-(evals / 2));
+		op.trues.addAndGet (-(trues / 2));
+		op.time.addAndGet (-(time / 2));
+		op.errors.addAndGet (-((errors + 1) / 2));
+
+		if ((evals == 0)
+		    ||
+		    (errors > 0)
+		   )
+		{
+
+		    op.rank = Double.MAX_VALUE;
+
+		    continue;
+
+		}
+
+		double cost = (double) time / evals;
+		double end = (double) trues / evals;
+
+		if (this.and)
+		{
+
+		    end = 1 - end;
+
+		}
+
+		op.rank = cost / Math.max (end,
+					   0.001d);
+
+	    }
+
+	    int start = 0;
+
+	    for (int i = 0; i <= ops.length; i++)
+	    {
+
+		if ((i == ops.length)
+		    ||
+		    (ops[i].fixed)
+		   )
+		{
+
+		    Arrays.sort (ops,
+				 start,
+				 i,
+				 Operand.RANK_COMPARATOR);
+
+		    start = i + 1;
+
+		}
+
+	    }
+
+	    boolean written = true;
+
+	    for (int i = 0; i < ops.length; i++)
+	    {
+
+		if (ops[i].index != i)
+		{
+
+		    written = false;
+
+		}
+
+	    }
+
+	    this.ops = ops;
+	    this.reordered = !written;
+
+	}
+
+	private static void rethrow (Exception e)
+	                             throws    QueryExecutionException
+	{
+
+	    if (e instanceof QueryExecutionException)
+	    {
+
+		throw (QueryExecutionException) e;
+
+	    }
+
+	    throw (RuntimeException) e;
+
+	}
+
+	private static boolean evaluate (Expression[] exps,
+					 int          start,
+					 boolean      and,
+					 Object       o,
+					 Query        q)
+	                                 throws       QueryExecutionException
+	{
+
+	    if (and)
+	    {
+
+		for (int i = start; i < exps.length; i++)
+		{
+
+		    if (!exps[i].isTrue (o,
+					 q))
+		    {
+
+			return false;
+
+		    }
+
+		}
+
+		return true;
+
+	    }
+
+	    for (int i = start; i < exps.length; i++)
+	    {
+
+		if (exps[i].isTrue (o,
+				    q))
+		{
+
+		    return true;
+
+		}
+
+	    }
+
+	    return false;
+
+	}
+
+    }
+
+    /**
+     * An operand of an AND/OR chain with its sampled counts, the counts are updated by
+     * all the threads evaluating the chain.
+     */
+    private static class Operand
+    {
+
+	private static final Comparator RANK_COMPARATOR = new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		Operand op1 = (Operand) o1;
+		Operand op2 = (Operand) o2;
+
+		int c = Double.compare (op1.rank,
+					op2.rank);
+
+		if (c != 0)
+		{
+
+		    return c;
+
+		}
+
+		return op1.index - op2.index;
+
+	    }
+
+	};
+
+	private Expression exp = null;
+	private int index = 0;
+	private int start = 0;
+	private boolean fixed = false;
+	private AtomicLong time = new AtomicLong ();
+	private AtomicLong evals = new AtomicLong ();
+	private AtomicLong trues = new AtomicLong ();
+	private AtomicLong errors = new AtomicLong ();
+	private double rank = 0;
+
+	private Operand (Expression exp,
+			 int        index)
+	{
+
+	    this.exp = exp;
+	    this.index = index;
+
+	}
+
+    }
+
+    /**
+     * An accessor compared to a constant number with one of: =, !=, &gt;, &gt;=, &lt;, &lt;=.
+     */
+    private static class CompiledNumberCompare extends CompiledExpression
+    {
+
+	private Accessor acc = null;
+	private Number val = null;
+	private double dval = 0;
+	private int type = 0;
+	private int accType = 0;
+	private boolean not = false;
+	private boolean equals = false;
+	private boolean swapped = false;
+
+	private CompiledNumberCompare (Expression source,
+				       Accessor   acc,
+				       Number     val,
+				       int        type,
+				       boolean    not,
+				       boolean    equals,
+				       boolean    swapped)
+	{
+
+	    super (source);
+
+	    this.acc = acc;
+	    this.val = val;
+	    this.dval = val.doubleValue ();
+	    this.type = type;
+	    this.not = not;
+	    this.equals = equals;
+	    this.swapped = swapped;
+
+	    // The type to use when the accessor value is on the LHS.
+	    this.accType = type;
+
+	    if (swapped)
+	    {
+
+		this.accType = ExpressionCompiler.reverse (type);
+
+	    }
+
+	}
+
+	public boolean isTrue (Object o,
+			       Query  q)
+	                       throws QueryExecutionException
+	{
+
+	    Object v = this.acc.evaluate (o,
+					  q);
+
+	    if (v == null)
+	    {
+
+		if (this.equals)
+		{
+
+		    return this.not;
+
+		}
+
+		return false;
+
+	    }
+
+	    if ((v instanceof Number)
+		&&
+		(Utilities.getObjectComparator () == null)
+	       )
+	    {
+
+		return Utilities.matches (((Number) v).doubleValue (),
+					  this.dval,
+					  this.accType,
+					  this.not);
+
+	    }
+
+	    if (this.swapped)
+	    {
+
+		return Utilities.matches (this.val,
+					  v,
+					  false,
+					  this.type,
+					  this.not);
+
+	    }
+
+	    return Utilities.matches (v,
+				      this.val,
+				      false,
+				      this.type,
+				      this.not);
+
+	}
+
+    }
+
+    /**
+     * An accessor compared to a constant string with: = or != (optionally ignoring case).
+     */
+    private static class CompiledStringEquals extends CompiledExpression
+    {
+
+	private Accessor acc = null;
+	private String val = null;
+	private String cval = null;
+	private boolean ignoreCase = false;
+	private boolean not = false;
+	private boolean swapped = false;
+
+	private CompiledStringEquals (Expression source,
+				      Accessor   acc,
+				      String     val,
+				      boolean    ignoreCase,
+				      boolean    not,
+				      boolean    swapped)
+	{
+
+	    super (source);
+
+	    this.acc = acc;
+	    this.val = val;
+	    this.ignoreCase = ignoreCase;
+	    this.not = not;
+	    this.swapped = swapped;
+
+	    this.cval = val;
+
+	    if (ignoreCase)
+	    {
+
+		this.cval = val.toLowerCase ();
+
+	    }
+
+	}
+
+	public boolean isTrue (Object o,
+			       Query  q)
+	                       throws QueryExecutionException
+	{
+
+	    Object v = this.acc.evaluate (o,
+					  q);
+
+	    if (v == null)
+	    {
+
+		return this.not;
+
+	    }
+
+	    if ((v instanceof String)
+		&&
+		(Utilities.getObjectComparator () == null)
+	       )
+	    {
+
+		String s = (String) v;
+
+		if (this.ignoreCase)
+		{
+
+		    s = s.toLowerCase ();
+
+		}
+
+		return s.equals (this.cval) != this.not;
+
+	    }
+
+	    if (this.swapped)
+	    {
+
+		return Utilities.matches (this.val,
+					  v,
+					  this.ignoreCase,
+					  Utilities.EQ,
+					  this.not);
+
+	    }
+
+	    return Utilities.matches (v,
+				      this.val,
+				      this.ignoreCase,
+				      Utilities.EQ,
+				      this.not);
+
+	}
+
+    }
+
+    /**
+     * An accessor compared to constant numeric bounds with: [ NOT ] BETWEEN.
+     */
+    private static class CompiledBetween extends CompiledExpression
+    {
+
+	private Accessor acc = null;
+	private Number start = null;
+	private Number end = null;
+	private double dstart = 0;
+	private double dend = 0;
+	private boolean not = false;
+
+	private CompiledBetween (BetweenExpression source,
+				 Accessor          acc,
+				 Number            start,
+				 Number            end,
+				 boolean           not)
+	{
+
+	    super (source);
+
+	    this.acc = acc;
+	    this.start = start;
+	    this.end = end;
+	    this.dstart = start.doubleValue ();
+	    this.dend = end.doubleValue ();
+	    this.not = not;
+
+	}
+
+	public boolean isTrue (Object o,
+			       Query  q)
+	                       throws QueryExecutionException
+	{
+
+	    Object v = this.acc.evaluate (o,
+					  q);
+
+	    boolean b = false;
+
+	    if ((v instanceof Number)
+		&&
+		(Utilities.getObjectComparator () == null)
+	       )
+	    {
+
+		double d = ((Number) v).doubleValue ();
+
+		b = (Double.compare (d,
+				     this.dstart) >= 0)
+		    &&
+		    (Double.compare (d,
+				     this.dend) <= 0);
+
+	    } else {
+
+		b = Utilities.isGTEquals (v,
+					  this.start)
+		    &&
+		    Utilities.isLTEquals (v,
+					  this.end);
+
+	    }
+
+	    return b != this.not;
+
+	}
+
+    }
+
+    private static class CompiledIsNull extends CompiledExpression
+    {
+
+	private Accessor acc = null;
+	private boolean not = false;
+
+	private CompiledIsNull (IsNullExpression source,
+				Accessor         acc,
+				boolean          not)
+	{
+
+	    super (source);
+
+	    this.acc = acc;
+	    this.not = not;
+
+	}
+
+	public boolean isTrue (Object o,
+			       Query  q)
+	                       throws QueryExecutionException
+	{
+
+	    return (this.acc.evaluate (o,
+				       q) == null) != this.not;
+
+	}
+
+    }
+
+}
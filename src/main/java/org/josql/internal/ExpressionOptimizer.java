@@ -0,0 +1,1339 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import java.lang.reflect.Method;
+
+import org.josql.Query;
+import org.josql.QueryExecutionException;
+import org.josql.QueryParseException;
+
+import org.josql.expressions.Expression;
+import org.josql.expressions.ValueExpression;
+import org.josql.expressions.BinaryExpression;
+import org.josql.expressions.AndOrExpression;
+import org.josql.expressions.EqualsExpression;
+import org.josql.expressions.GTLTExpression;
+import org.josql.expressions.InExpression;
+import org.josql.expressions.BetweenExpression;
+import org.josql.expressions.ArithmeticExpression;
+import org.josql.expressions.ConstantExpression;
+import org.josql.expressions.BooleanExpression;
+import org.josql.expressions.BindVariable;
+import org.josql.expressions.Accessor;
+import org.josql.expressions.Function;
+import org.josql.expressions.SelectItemExpression;
+
+import org.josql.functions.NotFixedResults;
+import org.josql.functions.GroupingFunctions;
+import org.josql.functions.CollectionFunctions;
+import org.josql.functions.MiscellaneousFunctions;
+
+/**
+ * Rewrites the WHERE and HAVING clauses of a query, once they have been inited, into
+ * expressions that give the same results but are cheaper to evaluate.  The expression tree is
+ * rewritten bottom-up, each expression is passed to the rules in turn once its sub-expressions
+ * have been rewritten.  The default rules are:
+ * <ul>
+ *   <li>{@link #CONSTANT_FOLDING} - Arithmetic and predicates whose operands are all constants
+ *       are replaced with their value.  AND/OR expressions with a constant LHS are replaced
+ *       with the side that decides the result, as are <code>X AND true</code> and
+ *       <code>X OR false</code>.</li>
+ *   <li>{@link #OR_TO_IN} - Consecutive equality checks of the same accessor against constants
+ *       in an OR, such as <code>x = 1 OR x = 2</code>, are replaced with <code>x IN (1, 2)</code>
+ *       which can then hash the values.</li>
+ *   <li>{@link #RANGE_TO_BETWEEN} - A <code>&gt;=</code> check of an accessor against a constant
+ *       next to a <code>&lt;=</code> check of the same accessor in an AND, such as
+ *       <code>x &gt;= 1 AND x &lt;= 10</code>, is replaced with <code>x BETWEEN 1 AND 10</code>
+ *       which gets the accessor value once.</li>
+ * </ul>
+ * The rewrites only merge operands that are next to each other so that the operands are still
+ * evaluated in the order they are written.  Equality and range checks are only merged for
+ * accessors that return a simple value (a number, string, boolean or character) since the
+ * comparisons of collections differ between the expressions.
+ * <p>
+ * Separately {@link #shareFunctions(List,Query)} finds the function calls made more than once
+ * in a query with the same arguments so that their value can be shared for an object.
+ */
+public class ExpressionOptimizer
+{
+
+    /**
+     * Folds constant arithmetic and predicates, see the class description.
+     */
+    public static final OptimizerRule CONSTANT_FOLDING = new ConstantFolding ();
+
+    /**
+     * Merges equality checks in an OR into an IN, see the class description.
+     */
+    public static final OptimizerRule OR_TO_IN = new OrToIn ();
+
+    /**
+     * Merges range checks in an AND into a BETWEEN, see the class description.
+     */
+    public static final OptimizerRule RANGE_TO_BETWEEN = new RangeToBetween ();
+
+    private List rules = new ArrayList ();
+
+    /**
+     * Create a new optimizer with the default rules.
+     */
+    public ExpressionOptimizer ()
+    {
+
+	this.rules.add (ExpressionOptimizer.CONSTANT_FOLDING);
+	this.rules.add (ExpressionOptimizer.OR_TO_IN);
+	this.rules.add (ExpressionOptimizer.RANGE_TO_BETWEEN);
+
+    }
+
+    /**
+     * Add a rule, it is applied after the existing rules.
+     *
+     * @param r The rule.
+     */
+    public void addRule (OptimizerRule r)
+    {
+
+	this.rules.add (r);
+
+    }
+
+    /**
+     * Get the rules, the list can be modified to remove or reorder the rules.
+     *
+     * @return The rules, instances of {@link OptimizerRule}.
+     */
+    public List getRules ()
+    {
+
+	return this.rules;
+
+    }
+
+    /**
+     * Optimize the expression, the expression (and all sub-expressions) must have been inited.
+     * Function arguments and sub-queries are not rewritten.
+     *
+     * @param exp The expression.
+     * @param q The Query.
+     * @return The expression to use in place of <b>exp</b>, this may be <b>exp</b> itself.
+     * @throws QueryParseException If a rewritten expression cannot be inited.
+     */
+    public Expression optimize (Expression exp,
+				Query      q)
+	                        throws QueryParseException
+    {
+
+	if (exp == null)
+	{
+
+	    return null;
+
+	}
+
+	boolean changed = false;
+
+	if (exp instanceof BinaryExpression)
+	{
+
+	    BinaryExpression be = (BinaryExpression) exp;
+
+	    Expression l = this.optimize (be.getLeft (),
+					  q);
+
+	    if (l != be.getLeft ())
+	    {
+
+		be.setLeft (l);
+
+		changed = true;
+
+	    }
+
+	    Expression r = this.optimize (be.getRight (),
+					  q);
+
+	    if (r != be.getRight ())
+	    {
+
+		be.setRight (r);
+
+		changed = true;
+
+	    }
+
+	}
+
+	if (exp instanceof BetweenExpression)
+	{
+
+	    BetweenExpression be = (BetweenExpression) exp;
+
+	    Expression s = this.optimize (be.getStart (),
+					  q);
+
+	    if ((s != be.getStart ())
+		&&
+		(s instanceof ValueExpression)
+	       )
+	    {
+
+		be.setStart ((ValueExpression) s);
+
+		changed = true;
+
+	    }
+
+	    Expression e = this.optimize (be.getEnd (),
+					  q);
+
+	    if ((e != be.getEnd ())
+		&&
+		(e instanceof ValueExpression)
+	       )
+	    {
+
+		be.setEnd ((ValueExpression) e);
+
+		changed = true;
+
+	    }
+
+	}
+
+	if (exp instanceof InExpression)
+	{
+
+	    InExpression ie = (InExpression) exp;
+
+	    List items = ie.getItems ();
+
+	    List nitems = new ArrayList ();
+
+	    boolean itemChanged = false;
+
+	    int s = items.size ();
+
+	    for (int i = 0; i < s; i++)
+	    {
+
+		Expression e = (Expression) items.get (i);
+
+		Expression ne = this.optimize (e,
+					       q);
+
+		if (ne != e)
+		{
+
+		    itemChanged = true;
+
+		}
+
+		nitems.add (ne);
+
+	    }
+
+	    if (itemChanged)
+	    {
+
+		ie.setItems (nitems);
+
+		changed = true;
+
+	    }
+
+	}
+
+	if (exp instanceof ArithmeticExpression)
+	{
+
+	    ArithmeticExpression ae = (ArithmeticExpression) exp;
+
+	    Expression l = this.optimize (ae.getLeft (),
+					  q);
+
+	    if ((l != ae.getLeft ())
+		&&
+		(l instanceof ValueExpression)
+	       )
+	    {
+
+		ae.setLeft ((ValueExpression) l);
+
+		changed = true;
+
+	    }
+
+	    Expression r = this.optimize (ae.getRight (),
+					  q);
+
+	    if ((r != ae.getRight ())
+		&&
+		(r instanceof ValueExpression)
+	       )
+	    {
+
+		ae.setRight ((ValueExpression) r);
+
+		changed = true;
+
+	    }
+
+	}
+
+	if (changed)
+	{
+
+	    // Init again since the expression may depend upon what its sub-expressions are.
+	    exp.init (q);
+
+	}
+
+	int s = this.rules.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    OptimizerRule r = (OptimizerRule) this.rules.get (i);
+
+	    Expression n = r.rewrite (exp,
+				      q);
+
+	    if ((n != null)
+		&&
+		(n != exp)
+	       )
+	    {
+
+		n.init (q);
+
+		exp = n;
+
+	    }
+
+	}
+
+	return exp;
+
+    }
+
+    /**
+     * Find the function calls in the expressions that are made more than once with the same
+     * arguments and give them the same shared key (see: {@link Function#setSharedKey(Object)}),
+     * the key of any other function is cleared.  Only functions whose arguments are accessors,
+     * constants, non-special bind variables or other such functions (or arithmetic of them) are
+     * shared.  Functions that don't always return the same value (those from a handler that
+     * implements {@link NotFixedResults}) or that use the state of the query (those from
+     * {@link GroupingFunctions}, {@link CollectionFunctions} and {@link MiscellaneousFunctions}
+     * or that are passed an expression) are never shared.
+     *
+     * @param exps The expressions, a <code>null</code> entry is ignored.
+     * @param q The Query.
+     */
+    public static void shareFunctions (List  exps,
+				       Query q)
+    {
+
+	Map groups = new HashMap ();
+
+	int s = exps.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    ExpressionOptimizer.collectFunctions ((Expression) exps.get (i),
+						  q,
+						  groups);
+
+	}
+
+	Iterator iter = groups.values ().iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    List fs = (List) iter.next ();
+
+	    Object k = null;
+
+	    if (fs.size () > 1)
+	    {
+
+		k = new Object ();
+
+	    }
+
+	    int fsz = fs.size ();
+
+	    for (int i = 0; i < fsz; i++)
+	    {
+
+		((Function) fs.get (i)).setSharedKey (k);
+
+	    }
+
+	}
+
+    }
+
+    private static void collectFunctions (Expression exp,
+					  Query      q,
+					  Map        groups)
+    {
+
+	if (exp == null)
+	{
+
+	    return;
+
+	}
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    ExpressionOptimizer.collectFunctions (((CompiledExpression) exp).getSource (),
+						  q,
+						  groups);
+
+	    return;
+
+	}
+
+	if (exp instanceof SelectItemExpression)
+	{
+
+	    ExpressionOptimizer.collectFunctions (((SelectItemExpression) exp).getExpression (),
+						  q,
+						  groups);
+
+	    return;
+
+	}
+
+	if (exp instanceof Function)
+	{
+
+	    Function f = (Function) exp;
+
+	    List ps = f.getParameters ();
+
+	    if (ps != null)
+	    {
+
+		int s = ps.size ();
+
+		for (int i = 0; i < s; i++)
+		{
+
+		    ExpressionOptimizer.collectFunctions ((Expression) ps.get (i),
+							  q,
+							  groups);
+
+		}
+
+	    }
+
+	    if (ExpressionOptimizer.isShareable (f,
+						 q))
+	    {
+
+		String k = f.toString ();
+
+		List fs = (List) groups.get (k);
+
+		if (fs == null)
+		{
+
+		    fs = new ArrayList ();
+
+		    groups.put (k,
+				fs);
+
+		}
+
+		fs.add (f);
+
+	    }
+
+	    return;
+
+	}
+
+	if (exp instanceof BinaryExpression)
+	{
+
+	    BinaryExpression be = (BinaryExpression) exp;
+
+	    ExpressionOptimizer.collectFunctions (be.getLeft (),
+						  q,
+						  groups);
+	    ExpressionOptimizer.collectFunctions (be.getRight (),
+						  q,
+						  groups);
+
+	}
+
+	if (exp instanceof BetweenExpression)
+	{
+
+	    BetweenExpression be = (BetweenExpression) exp;
+
+	    ExpressionOptimizer.collectFunctions (be.getStart (),
+						  q,
+						  groups);
+	    ExpressionOptimizer.collectFunctions (be.getEnd (),
+						  q,
+						  groups);
+
+	}
+
+	if (exp instanceof InExpression)
+	{
+
+	    List items = ((InExpression) exp).getItems ();
+
+	    int s = items.size ();
+
+	    for (int i = 0; i < s; i++)
+	    {
+
+		ExpressionOptimizer.collectFunctions ((Expression) items.get (i),
+						      q,
+						      groups);
+
+	    }
+
+	}
+
+	if (exp instanceof ArithmeticExpression)
+	{
+
+	    ArithmeticExpression ae = (ArithmeticExpression) exp;
+
+	    ExpressionOptimizer.collectFunctions (ae.getLeft (),
+						  q,
+						  groups);
+	    ExpressionOptimizer.collectFunctions (ae.getRight (),
+						  q,
+						  groups);
+
+	}
+
+    }
+
+    private static boolean isShareable (Function f,
+					Query    q)
+    {
+
+	Method m = f.getMethod ();
+
+	List ps = f.getParameters ();
+
+	if ((m == null)
+	    ||
+	    (ps == null)
+	    ||
+	    (ps.size () == 0)
+	    ||
+	    (f.hasFixedResult (q))
+	   )
+	{
+
+	    return false;
+
+	}
+
+	Class dc = m.getDeclaringClass ();
+
+	if ((NotFixedResults.class.isAssignableFrom (dc))
+	    ||
+	    (GroupingFunctions.class.isAssignableFrom (dc))
+	    ||
+	    (CollectionFunctions.class.isAssignableFrom (dc))
+	    ||
+	    (MiscellaneousFunctions.class.isAssignableFrom (dc))
+	   )
+	{
+
+	    return false;
+
+	}
+
+	Class[] pts = m.getParameterTypes ();
+
+	for (int i = 0; i < pts.length; i++)
+	{
+
+	    if (Expression.class.isAssignableFrom (pts[i]))
+	    {
+
+		return false;
+
+	    }
+
+	}
+
+	int s = ps.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    if (!ExpressionOptimizer.isPure ((Expression) ps.get (i),
+					     q))
+	    {
+
+		return false;
+
+	    }
+
+	}
+
+	return true;
+
+    }
+
+    private static boolean isPure (Expression exp,
+				   Query      q)
+    {
+
+	if ((exp instanceof Accessor)
+	    ||
+	    (exp instanceof ConstantExpression)
+	    ||
+	    (exp instanceof BooleanExpression)
+	   )
+	{
+
+	    return true;
+
+	}
+
+	if (exp instanceof BindVariable)
+	{
+
+	    return !((BindVariable) exp).isSpecial ();
+
+	}
+
+	if (exp instanceof ArithmeticExpression)
+	{
+
+	    ArithmeticExpression ae = (ArithmeticExpression) exp;
+
+	    return ExpressionOptimizer.isPure (ae.getLeft (),
+					       q)
+		   &&
+		   ExpressionOptimizer.isPure (ae.getRight (),
+					       q);
+
+	}
+
+	if (exp instanceof Function)
+	{
+
+	    return ExpressionOptimizer.isShareable ((Function) exp,
+						    q);
+
+	}
+
+	return false;
+
+    }
+
+    private static boolean isConstant (Expression exp)
+    {
+
+	return (exp instanceof ConstantExpression)
+	       ||
+	       (exp instanceof BooleanExpression);
+
+    }
+
+    /**
+     * Return whether the expression is a constant whose value is not <code>null</code>.
+     */
+    private static boolean isNonNullConstant (Expression exp)
+    {
+
+	return (exp instanceof ConstantExpression)
+	       &&
+	       (((ConstantExpression) exp).getValue (null,
+						     null) != null);
+
+    }
+
+    /**
+     * Return whether the expression is an accessor that returns a simple value.
+     */
+    private static boolean isSimpleAccessor (Expression exp,
+					     Query      q)
+    {
+
+	if (!(exp instanceof Accessor))
+	{
+
+	    return false;
+
+	}
+
+	Class c = null;
+
+	try
+	{
+
+	    c = exp.getExpectedReturnType (q);
+
+	} catch (Exception e) {
+
+	    return false;
+
+	}
+
+	return (c != null)
+	       &&
+	       ((c.isPrimitive ())
+		||
+		(Number.class.isAssignableFrom (c))
+		||
+		(c == String.class)
+		||
+		(c == Boolean.class)
+		||
+		(c == Character.class)
+	       );
+
+    }
+
+    private static void flatten (Expression exp,
+				 boolean    and,
+				 List       ops)
+    {
+
+	if ((exp instanceof AndOrExpression)
+	    &&
+	    (((AndOrExpression) exp).isAnd () == and)
+	   )
+	{
+
+	    AndOrExpression ao = (AndOrExpression) exp;
+
+	    ExpressionOptimizer.flatten (ao.getLeft (),
+					 and,
+					 ops);
+	    ExpressionOptimizer.flatten (ao.getRight (),
+					 and,
+					 ops);
+
+	    return;
+
+	}
+
+	ops.add (exp);
+
+    }
+
+    /**
+     * Create a chain of AND/OR expressions from the operands, evaluated left to right.
+     */
+    private static Expression join (List       ops,
+				    boolean    and,
+				    Expression orig)
+    {
+
+	Expression exp = (Expression) ops.get (0);
+
+	int s = ops.size ();
+
+	for (int i = 1; i < s; i++)
+	{
+
+	    AndOrExpression ao = new AndOrExpression ();
+
+	    ao.setAnd (and);
+	    ao.setLeft (exp);
+	    ao.setRight ((Expression) ops.get (i));
+
+	    exp = ao;
+
+	}
+
+	if (s > 1)
+	{
+
+	    exp.setBracketed (orig.isBracketed ());
+
+	}
+
+	return exp;
+
+    }
+
+    private static class ConstantFolding implements OptimizerRule
+    {
+
+	public Expression rewrite (Expression exp,
+				   Query      q)
+	{
+
+	    if (exp instanceof ArithmeticExpression)
+	    {
+
+		ArithmeticExpression ae = (ArithmeticExpression) exp;
+
+		if ((!ExpressionOptimizer.isConstant (ae.getLeft ()))
+		    ||
+		    (!ExpressionOptimizer.isConstant (ae.getRight ()))
+		   )
+		{
+
+		    return exp;
+
+		}
+
+		try
+		{
+
+		    ConstantExpression c = new ConstantExpression ();
+
+		    c.setValue (ae.getValue (null,
+					     q));
+
+		    return c;
+
+		} catch (QueryExecutionException e) {
+
+		    // Leave it to the execution to report.
+		    return exp;
+
+		}
+
+	    }
+
+	    if (exp instanceof AndOrExpression)
+	    {
+
+		return this.simplify ((AndOrExpression) exp,
+				      q);
+
+	    }
+
+	    if ((!(exp instanceof BinaryExpression))
+		||
+		(Utilities.getObjectComparator () != null)
+		||
+		(!this.hasConstantOperands ((BinaryExpression) exp))
+	       )
+	    {
+
+		return exp;
+
+	    }
+
+	    try
+	    {
+
+		BooleanExpression b = new BooleanExpression ();
+
+		b.setValue (Boolean.valueOf (exp.isTrue (null,
+							 q)));
+
+		return b;
+
+	    } catch (QueryExecutionException e) {
+
+		// Leave it to the execution to report.
+		return exp;
+
+	    }
+
+	}
+
+	private Expression simplify (AndOrExpression ao,
+				     Query           q)
+	{
+
+	    Expression l = ao.getLeft ();
+	    Expression r = ao.getRight ();
+
+	    try
+	    {
+
+		if (l instanceof BooleanExpression)
+		{
+
+		    boolean lv = l.isTrue (null,
+					   q);
+
+		    // The LHS decides the result, the RHS is never evaluated.
+		    if (lv != ao.isAnd ())
+		    {
+
+			return l;
+
+		    }
+
+		    return r;
+
+		}
+
+		if (r instanceof BooleanExpression)
+		{
+
+		    boolean rv = r.isTrue (null,
+					   q);
+
+		    // X AND true and X OR false are just X.
+		    if (rv == ao.isAnd ())
+		    {
+
+			return l;
+
+		    }
+
+		}
+
+	    } catch (QueryExecutionException e) {
+
+		// Can't happen for a boolean.
+
+	    }
+
+	    return ao;
+
+	}
+
+	private boolean hasConstantOperands (BinaryExpression be)
+	{
+
+	    if (!ExpressionOptimizer.isConstant (be.getLeft ()))
+	    {
+
+		return false;
+
+	    }
+
+	    if ((be.getRight () != null)
+		&&
+		(!ExpressionOptimizer.isConstant (be.getRight ()))
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	    if (be instanceof BetweenExpression)
+	    {
+
+		BetweenExpression bt = (BetweenExpression) be;
+
+		return (ExpressionOptimizer.isConstant (bt.getStart ()))
+		       &&
+		       (ExpressionOptimizer.isConstant (bt.getEnd ()));
+
+	    }
+
+	    if (be instanceof InExpression)
+	    {
+
+		List items = ((InExpression) be).getItems ();
+
+		int s = items.size ();
+
+		for (int i = 0; i < s; i++)
+		{
+
+		    if (!ExpressionOptimizer.isConstant ((Expression) items.get (i)))
+		    {
+
+			return false;
+
+		    }
+
+		}
+
+	    }
+
+	    return true;
+
+	}
+
+    }
+
+    private static class OrToIn implements OptimizerRule
+    {
+
+	public Expression rewrite (Expression exp,
+				   Query      q)
+	                           throws QueryParseException
+	{
+
+	    if ((!(exp instanceof AndOrExpression))
+		||
+		(((AndOrExpression) exp).isAnd ())
+	       )
+	    {
+
+		return exp;
+
+	    }
+
+	    List ops = new ArrayList ();
+
+	    ExpressionOptimizer.flatten (exp,
+					 false,
+					 ops);
+
+	    List nops = new ArrayList ();
+
+	    boolean changed = false;
+
+	    int s = ops.size ();
+
+	    int i = 0;
+
+	    while (i < s)
+	    {
+
+		Expression op = (Expression) ops.get (i);
+
+		Accessor acc = this.getAccessor (op,
+						 q);
+
+		if (acc == null)
+		{
+
+		    nops.add (op);
+
+		    i++;
+
+		    continue;
+
+		}
+
+		List items = new ArrayList ();
+
+		this.addItems (op,
+			       items);
+
+		int j = i + 1;
+
+		while (j < s)
+		{
+
+		    Expression n = (Expression) ops.get (j);
+
+		    Accessor nacc = this.getAccessor (n,
+						      q);
+
+		    if ((nacc == null)
+			||
+			(!acc.equals (nacc))
+		       )
+		    {
+
+			break;
+
+		    }
+
+		    this.addItems (n,
+				   items);
+
+		    j++;
+
+		}
+
+		if (j - i > 1)
+		{
+
+		    InExpression ie = new InExpression ();
+
+		    ie.setLeft (acc);
+		    ie.setItems (items);
+
+		    nops.add (ie);
+
+		    changed = true;
+
+		} else {
+
+		    nops.add (op);
+
+		}
+
+		i = j;
+
+	    }
+
+	    if (!changed)
+	    {
+
+		return exp;
+
+	    }
+
+	    return ExpressionOptimizer.join (nops,
+					     false,
+					     exp);
+
+	}
+
+	/**
+	 * Get the accessor if the expression is an accessor equal to (or IN) constants.
+	 */
+	private Accessor getAccessor (Expression exp,
+				      Query      q)
+	{
+
+	    if (exp instanceof EqualsExpression)
+	    {
+
+		EqualsExpression ee = (EqualsExpression) exp;
+
+		if ((!ee.isNot ())
+		    &&
+		    (!ee.isIgnoreCase ())
+		    &&
+		    (ExpressionOptimizer.isSimpleAccessor (ee.getLeft (),
+							   q))
+		    &&
+		    (ExpressionOptimizer.isNonNullConstant (ee.getRight ()))
+		   )
+		{
+
+		    return (Accessor) ee.getLeft ();
+
+		}
+
+		return null;
+
+	    }
+
+	    if (exp instanceof InExpression)
+	    {
+
+		InExpression ie = (InExpression) exp;
+
+		if ((ie.isNot ())
+		    ||
+		    (ie.isIgnoreCase ())
+		    ||
+		    (ie.isAll ())
+		    ||
+		    (ie.isDoLike ())
+		    ||
+		    (!ExpressionOptimizer.isSimpleAccessor (ie.getLeft (),
+							    q))
+		   )
+		{
+
+		    return null;
+
+		}
+
+		List items = ie.getItems ();
+
+		int s = items.size ();
+
+		for (int i = 0; i < s; i++)
+		{
+
+		    if (!ExpressionOptimizer.isNonNullConstant ((Expression) items.get (i)))
+		    {
+
+			return null;
+
+		    }
+
+		}
+
+		return (Accessor) ie.getLeft ();
+
+	    }
+
+	    return null;
+
+	}
+
+	private void addItems (Expression exp,
+			       List       items)
+	{
+
+	    if (exp instanceof EqualsExpression)
+	    {
+
+		items.add (((EqualsExpression) exp).getRight ());
+
+	    } else {
+
+		items.addAll (((InExpression) exp).getItems ());
+
+	    }
+
+	}
+
+    }
+
+    private static class RangeToBetween implements OptimizerRule
+    {
+
+	public Expression rewrite (Expression exp,
+				   Query      q)
+	                           throws QueryParseException
+	{
+
+	    if ((!(exp instanceof AndOrExpression))
+		||
+		(!((AndOrExpression) exp).isAnd ())
+	       )
+	    {
+
+		return exp;
+
+	    }
+
+	    List ops = new ArrayList ();
+
+	    ExpressionOptimizer.flatten (exp,
+					 true,
+					 ops);
+
+	    List nops = new ArrayList ();
+
+	    boolean changed = false;
+
+	    int s = ops.size ();
+
+	    int i = 0;
+
+	    while (i < s)
+	    {
+
+		Expression op = (Expression) ops.get (i);
+
+		if (i + 1 < s)
+		{
+
+		    GTLTExpression a = this.getRange (op,
+						      q);
+		    GTLTExpression b = this.getRange ((Expression) ops.get (i + 1),
+						      q);
+
+		    if ((a != null)
+			&&
+			(b != null)
+			&&
+			(a.getType () != b.getType ())
+			&&
+			(a.getLeft ().equals (b.getLeft ()))
+		       )
+		    {
+
+			GTLTExpression start = a;
+			GTLTExpression end = b;
+
+			if (a.getType () == Utilities.LTE)
+			{
+
+			    start = b;
+			    end = a;
+
+			}
+
+			BetweenExpression be = new BetweenExpression ();
+
+			be.setLeft (a.getLeft ());
+			be.setStart ((ValueExpression) start.getRight ());
+			be.setEnd ((ValueExpression) end.getRight ());
+
+			nops.add (be);
+
+			changed = true;
+
+			i += 2;
+
+			continue;
+
+		    }
+
+		}
+
+		nops.add (op);
+
+		i++;
+
+	    }
+
+	    if (!changed)
+	    {
+
+		return exp;
+
+	    }
+
+	    return ExpressionOptimizer.join (nops,
+					     true,
+					     exp);
+
+	}
+
+	/**
+	 * Get the expression if it is an accessor &gt;= or &lt;= a constant.
+	 */
+	private GTLTExpression getRange (Expression exp,
+					 Query      q)
+	{
+
+	    if (!(exp instanceof GTLTExpression))
+	    {
+
+		return null;
+
+	    }
+
+	    GTLTExpression ge = (GTLTExpression) exp;
+
+	    if (((ge.getType () == Utilities.GTE)
+		 ||
+		 (ge.getType () == Utilities.LTE)
+		)
+		&&
+		(!ge.isIgnoreCase ())
+		&&
+		(ExpressionOptimizer.isSimpleAccessor (ge.getLeft (),
+						       q))
+		&&
+		(ExpressionOptimizer.isNonNullConstant (ge.getRight ()))
+	       )
+	    {
+
+		return ge;
+
+	    }
+
+	    return null;
+
+	}
+
+    }
+
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.josql.QueryExecutionException;
+
+import org.josql.utils.SortValueSerializer;
+
+/**
+ * Orders objects without holding all of their ORDER BY values in memory at once.  The objects
+ * are taken a "run" at a time, the values for the run are evaluated and sorted in memory 
+ * (see: {@link SortKeys}) then written, along with the index of each object, to a temporary 
+ * file.  The runs are then merged, reading a buffer's worth of each file at a time, to give 
+ * the indexes of all the objects in order.
+ * <p>
+ * The number of objects in a run is derived from the memory limit using an estimate of the
+ * memory needed for the values of each object, it is not exact.  The indexes of all the objects
+ * (an <code>int</code> each) are always held in memory.  The ordering is the same as that given 
+ * by {@link SortKeys}, objects from earlier runs are placed before objects with the same values
+ * from later runs so the sort is stable.
+ */
+public class ExternalSorter
+{
+
+    /**
+     * The estimated memory, in bytes, used by a sort value.
+     */
+    public static final int VALUE_SIZE = 48;
+
+    /**
+     * The estimated memory, in bytes, used per object regardless of the number of values.
+     */
+    public static final int ROW_SIZE = 32;
+
+    /**
+     * The minimum number of objects in a run.
+     */
+    public static final int MIN_RUN_SIZE = 1024;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private ListExpressionComparator comp = null;
+    private SortValueSerializer ser = null;
+    private File dir = null;
+    private int runSize = 0;
+
+    /**
+     * Create a new sorter.
+     *
+     * @param comp The comparator that holds the sort expressions.
+     * @param ser Used to write and read the values.
+     * @param dir The directory to create the temporary files in, if <code>null</code> then the
+     *            default temporary directory is used.
+     * @param memLimit The approximate memory, in bytes, that the values for a run can use.
+     */
+    public ExternalSorter (ListExpressionComparator comp,
+			   SortValueSerializer      ser,
+			   File                     dir,
+			   long                     memLimit)
+    {
+
+	this.comp = comp;
+	this.ser = ser;
+	this.dir = dir;
+
+	long s = memLimit / (ExternalSorter.ROW_SIZE + (ExternalSorter.VALUE_SIZE * comp.getSortItemsCount ()));
+
+	this.runSize = (int) Math.min (Integer.MAX_VALUE,
+				       Math.max (ExternalSorter.MIN_RUN_SIZE,
+						 s));
+
+    }
+
+    /**
+     * Get the number of objects sorted in memory at a time, if there are no more objects than
+     * this then they can be sorted in memory.
+     *
+     * @return The number of objects.
+     */
+    public int getRunSize ()
+    {
+
+	return this.runSize;
+
+    }
+
+    /**
+     * Get the indexes of the objects in sorted order.
+     *
+     * @param objs The objects.
+     * @return The indexes.
+     * @throws QueryExecutionException If a value cannot be evaluated or the temporary files
+     *                                 cannot be written or read.
+     */
+    public int[] sort (List objs)
+	               throws QueryExecutionException
+    {
+
+	int si = objs.size ();
+
+	List runs = new ArrayList ();
+
+	try
+	{
+
+	    try
+	    {
+
+		for (int s = 0; s < si; s += this.runSize)
+		{
+
+		    int e = (int) Math.min ((long) s + this.runSize,
+					    si);
+
+		    runs.add (this.writeRun (objs.subList (s,
+							   e),
+					     s));
+
+		}
+
+		return this.merge (runs,
+				   si);
+
+	    } finally {
+
+		for (int i = 0; i < runs.size (); i++)
+		{
+
+		    Files.deleteIfExists ((Path) runs.get (i));
+
+		}
+
+	    }
+
+	} catch (IOException e) {
+
+	    throw new QueryExecutionException ("Unable to order results using temporary files",
+					       e);
+
+	}
+
+    }
+
+    /**
+     * Sort the objects and write them to a new temporary file.
+     */
+    private Path writeRun (List objs,
+			   int  start)
+	                   throws QueryExecutionException,
+	                          IOException
+    {
+
+	SortKeys keys = new SortKeys (this.comp,
+				      objs);
+
+	int[] rows = keys.sort (null);
+
+	int c = this.comp.getSortItemsCount ();
+
+	Path p = null;
+
+	if (this.dir != null)
+	{
+
+	    p = Files.createTempFile (this.dir.toPath (),
+				      "josql-sort",
+				      ".run");
+
+	} else {
+
+	    p = Files.createTempFile ("josql-sort",
+				      ".run");
+
+	}
+
+	boolean written = false;
+
+	try
+	{
+
+	    DataOutputStream out = new DataOutputStream (new BufferedOutputStream (Files.newOutputStream (p,
+													 StandardOpenOption.WRITE,
+													 StandardOpenOption.TRUNCATE_EXISTING),
+										   ExternalSorter.BUFFER_SIZE));
+
+	    try
+	    {
+
+		for (int i = 0; i < rows.length; i++)
+		{
+
+		    int r = rows[i];
+
+		    out.writeInt (start + r);
+
+		    for (int j = 0; j < c; j++)
+		    {
+
+			this.ser.write (keys.getValue (j,
+						       r),
+					out);
+
+		    }
+
+		}
+
+	    } finally {
+
+		out.close ();
+
+	    }
+
+	    written = true;
+
+	} finally {
+
+	    // The file isn't a run yet so won't be deleted with the others.
+	    if (!written)
+	    {
+
+		Files.deleteIfExists (p);
+
+	    }
+
+	}
+
+	return p;
+
+    }
+
+    /**
+     * Merge the runs, each run is read in order and the run with the "lowest" next object
+     * is taken from.
+     */
+    private int[] merge (List runs,
+			 int  size)
+	                 throws IOException
+    {
+
+	final ListExpressionComparator c = this.comp;
+
+	PriorityQueue heads = new PriorityQueue (Math.max (1,
+							   runs.size ()),
+						 new Comparator ()
+						 {
+
+						     public int compare (Object o1,
+									 Object o2)
+						     {
+
+							 Run r1 = (Run) o1;
+							 Run r2 = (Run) o2;
+
+							 int v = c.compareSortValues (r1.vals,
+										      r2.vals);
+
+							 if (v != 0)
+							 {
+
+							     return v;
+
+							 }
+
+							 // Keep the sort stable.
+							 return r1.ind - r2.ind;
+
+						     }
+
+						 });
+
+	List open = new ArrayList ();
+
+	try
+	{
+
+	    for (int i = 0; i < runs.size (); i++)
+	    {
+
+		Run r = new Run (i,
+				 (Path) runs.get (i),
+				 Math.min (this.runSize,
+					   size - (i * this.runSize)));
+
+		open.add (r);
+
+		if (r.next ())
+		{
+
+		    heads.add (r);
+
+		}
+
+	    }
+
+	    int[] res = new int[size];
+
+	    int n = 0;
+
+	    while (!heads.isEmpty ())
+	    {
+
+		Run r = (Run) heads.poll ();
+
+		res[n++] = r.row;
+
+		if (r.next ())
+		{
+
+		    heads.add (r);
+
+		}
+
+	    }
+
+	    return res;
+
+	} finally {
+
+	    for (int i = 0; i < open.size (); i++)
+	    {
+
+		((Run) open.get (i)).close ();
+
+	    }
+
+	}
+
+    }
+
+    /**
+     * A run being read, holds the index and values of the next object.
+     */
+    private class Run
+    {
+
+	private int ind = 0;
+	private DataInputStream in = null;
+	private int left = 0;
+	private int row = 0;
+	private Object[] vals = null;
+
+	private Run (int  ind,
+		     Path p,
+		     int  size)
+	             throws IOException
+	{
+
+	    this.ind = ind;
+	    this.left = size;
+
+	    this.in = new DataInputStream (new BufferedInputStream (Files.newInputStream (p,
+											  StandardOpenOption.READ),
+								    ExternalSorter.BUFFER_SIZE));
+
+	}
+
+	private boolean next ()
+	                throws IOException
+	{
+
+	    if (this.left <= 0)
+	    {
+
+		return false;
+
+	    }
+
+	    this.row = this.in.readInt ();
+
+	    int c = ExternalSorter.this.comp.getSortItemsCount ();
+
+	    this.vals = new Object[c];
+
+	    for (int i = 0; i < c; i++)
+	    {
+
+		this.vals[i] = ExternalSorter.this.ser.read (this.in);
+
+	    }
+
+	    this.left--;
+
+	    return true;
+
+	}
+
+	private void close ()
+	                   throws IOException
+	{
+
+	    this.in.close ();
+
+	}
+
+    }
+
+}
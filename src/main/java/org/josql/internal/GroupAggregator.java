@@ -0,0 +1,923 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.Collections;
+
+import java.lang.reflect.Method;
+
+import org.josql.Query;
+import org.josql.QueryExecutionException;
+
+import org.josql.expressions.Expression;
+import org.josql.expressions.SelectItemExpression;
+import org.josql.expressions.Function;
+import org.josql.expressions.BindVariable;
+import org.josql.expressions.Accessor;
+import org.josql.expressions.ConstantExpression;
+import org.josql.expressions.ArithmeticExpression;
+import org.josql.expressions.BinaryExpression;
+import org.josql.expressions.BetweenExpression;
+import org.josql.expressions.EqualsExpression;
+import org.josql.expressions.GTLTExpression;
+import org.josql.expressions.AndOrExpression;
+import org.josql.expressions.IsNullExpression;
+
+import org.josql.functions.GroupingFunctions;
+import org.josql.functions.CollectionFunctions;
+
+/**
+ * Performs a GROUP BY in a single pass over the objects, calculating the values of the
+ * SELECT clause columns for each group as the objects are grouped rather than collecting
+ * the objects in each group and then evaluating the columns against each of them.
+ * <p>
+ * This is only possible when every column in the SELECT clause is either:
+ * <ul>
+ *   <li>One of the GROUP BY expressions (or a constant), this has the same value for every
+ *       object in the group.</li>
+ *   <li>One of the functions: <code>sum</code>, <code>avg</code>, <code>min</code>, <code>max</code>
+ *       or <code>count</code> from the built-in function handlers, called on the objects in the group
+ *       (i.e. <code>:_allobjs</code>, which is the default) with an expression that only refers to
+ *       the current object, for example: <code>sum(:_allobjs, price * quantity)</code>.</li>
+ * </ul>
+ * Since these columns have the same value for every object in the group each group has
+ * the same values for each of its rows, so only the running totals (and the number of
+ * objects) need to be kept for each group, the objects are not retained.
+ * <p>
+ * The values are the same as those calculated by the functions themselves.  Since the
+ * running total for <code>sum</code> is calculated in the order that the objects are
+ * encountered (<code>sum</code> itself totals the values from last to first) the total may differ in
+ * the least significant digits when the values aren't whole numbers.  If a value cannot be
+ * handled (for instance <code>null</code> for <code>avg</code>) then {@link #aggregate(List)} returns
+ * <code>null</code> so that the caller can use the full GROUP BY which will report the error
+ * in the usual way.
+ */
+public class GroupAggregator
+{
+
+    private static final int KEY = 0;
+    private static final int CONSTANT = 1;
+    private static final int SUM = 2;
+    private static final int AVG = 3;
+    private static final int COUNT = 4;
+    private static final int COUNT_ALL = 5;
+    private static final int MIN = 6;
+    private static final int MAX = 7;
+
+    private Query q = null;
+    private Grouper grouper = null;
+    private int[] types = null;
+    private int[] keyInds = null;
+    private Expression[] exps = null;
+    private boolean distinct = false;
+
+    private GroupAggregator (Query   q,
+			     Grouper grouper,
+			     int     cs)
+    {
+
+	this.q = q;
+	this.grouper = grouper;
+	this.types = new int[cs];
+	this.keyInds = new int[cs];
+	this.exps = new Expression[cs];
+
+    }
+
+    /**
+     * Create an aggregator for the query, the query must have been inited.
+     *
+     * @param q The Query.
+     * @param grouper The grouper for the GROUP BY expressions.
+     * @param cols The SELECT clause columns, a List of {@link SelectItemExpression}.
+     * @param distinct Whether only distinct rows should be returned for each group.
+     * @return The aggregator or <code>null</code> if the columns don't allow the GROUP BY to be
+     *         performed in a single pass.
+     */
+    public static GroupAggregator create (Query   q,
+					  Grouper grouper,
+					  List    cols,
+					  boolean distinct)
+    {
+
+	if ((cols == null)
+	    ||
+	    (grouper == null)
+	   )
+	{
+
+	    return null;
+
+	}
+
+	int cs = cols.size ();
+
+	GroupAggregator ga = new GroupAggregator (q,
+						  grouper,
+						  cs);
+
+	ga.distinct = distinct;
+
+	List gexps = grouper.getExpressions ();
+
+	for (int i = 0; i < cs; i++)
+	{
+
+	    SelectItemExpression sei = (SelectItemExpression) cols.get (i);
+
+	    if (sei.isAddItemsFromCollectionOrMap ())
+	    {
+
+		return null;
+
+	    }
+
+	    Expression exp = sei.getExpression ();
+
+	    int ind = GroupAggregator.indexOf (gexps,
+					       exp);
+
+	    if (ind > -1)
+	    {
+
+		ga.types[i] = GroupAggregator.KEY;
+		ga.keyInds[i] = ind;
+
+		continue;
+
+	    }
+
+	    if (exp instanceof ConstantExpression)
+	    {
+
+		ga.types[i] = GroupAggregator.CONSTANT;
+		ga.exps[i] = exp;
+
+		continue;
+
+	    }
+
+	    if (!(exp instanceof Function))
+	    {
+
+		return null;
+
+	    }
+
+	    if (!ga.initFunction (i,
+				  (Function) exp))
+	    {
+
+		return null;
+
+	    }
+
+	}
+
+	return ga;
+
+    }
+
+    private static int indexOf (List       gexps,
+				Expression exp)
+    {
+
+	for (int i = 0; i < gexps.size (); i++)
+	{
+
+	    Expression ge = (Expression) gexps.get (i);
+
+	    if ((ge == exp)
+		||
+		(ge.equals (exp))
+		||
+		(ge.toString ().equals (exp.toString ()))
+	       )
+	    {
+
+		return i;
+
+	    }
+
+	}
+
+	return -1;
+
+    }
+
+    private boolean initFunction (int      i,
+				  Function f)
+    {
+
+	Method m = f.getMethod ();
+
+	if ((m == null)
+	    ||
+	    (f.getAccessor () != null)
+	   )
+	{
+
+	    return false;
+
+	}
+
+	Class[] pts = m.getParameterTypes ();
+
+	List ps = f.getParameters ();
+
+	// Expect either: func (exp) or func (:_allobjs, exp).
+	if ((pts.length < 1)
+	    ||
+	    (pts.length > 2)
+	    ||
+	    (!Expression.class.equals (pts[pts.length - 1]))
+	   )
+	{
+
+	    return false;
+
+	}
+
+	if (pts.length == 2)
+	{
+
+	    if ((!List.class.equals (pts[0]))
+		||
+		(!GroupAggregator.isAllObjects ((Expression) ps.get (0)))
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	}
+
+	Expression exp = (Expression) ps.get (pts.length - 1);
+
+	Class c = m.getDeclaringClass ();
+	String n = m.getName ();
+
+	int t = -1;
+
+	if (c.equals (GroupingFunctions.class))
+	{
+
+	    if (n.equals ("sum"))
+	    {
+
+		t = GroupAggregator.SUM;
+
+	    }
+
+	    if (n.equals ("avg"))
+	    {
+
+		t = GroupAggregator.AVG;
+
+	    }
+
+	    if ((n.equals ("min"))
+		||
+		(n.equals ("least"))
+	       )
+	    {
+
+		t = GroupAggregator.MIN;
+
+	    }
+
+	    if ((n.equals ("max"))
+		||
+		(n.equals ("greatest"))
+	       )
+	    {
+
+		t = GroupAggregator.MAX;
+
+	    }
+
+	}
+
+	if ((c.equals (CollectionFunctions.class))
+	    &&
+	    (n.equals ("count"))
+	   )
+	{
+
+	    t = GroupAggregator.COUNT;
+
+	    // The list of objects is always "true".
+	    if (GroupAggregator.isAllObjects (exp))
+	    {
+
+		t = GroupAggregator.COUNT_ALL;
+
+	    }
+
+	}
+
+	if ((t == -1)
+	    ||
+	    ((t != GroupAggregator.COUNT_ALL)
+	     &&
+	     (!GroupAggregator.isObjectExpression (exp))
+	    )
+	   )
+	{
+
+	    return false;
+
+	}
+
+	this.types[i] = t;
+	this.exps[i] = exp;
+
+	return true;
+
+    }
+
+    private static boolean isAllObjects (Expression exp)
+    {
+
+	if (!(exp instanceof BindVariable))
+	{
+
+	    return false;
+
+	}
+
+	BindVariable bv = (BindVariable) exp;
+
+	return (!bv.isAnonymous ())
+	       &&
+	       (bv.getAccessor () == null)
+	       &&
+	       (Query.ALL_OBJS_VAR_NAME.equalsIgnoreCase (bv.getName ()));
+
+    }
+
+    /**
+     * Return whether the value of the expression depends only on the current object
+     * (and constants), i.e. it can be evaluated for an object outside of its group.
+     */
+    private static boolean isObjectExpression (Expression exp)
+    {
+
+	if ((exp instanceof Accessor)
+	    ||
+	    (exp instanceof ConstantExpression)
+	   )
+	{
+
+	    return true;
+
+	}
+
+	if (exp instanceof ArithmeticExpression)
+	{
+
+	    ArithmeticExpression ae = (ArithmeticExpression) exp;
+
+	    return GroupAggregator.isObjectExpression (ae.getLeft ())
+		   &&
+		   GroupAggregator.isObjectExpression (ae.getRight ());
+
+	}
+
+	if (exp instanceof BetweenExpression)
+	{
+
+	    BetweenExpression be = (BetweenExpression) exp;
+
+	    return GroupAggregator.isObjectExpression (be.getLeft ())
+		   &&
+		   GroupAggregator.isObjectExpression (be.getStart ())
+		   &&
+		   GroupAggregator.isObjectExpression (be.getEnd ());
+
+	}
+
+	if ((exp instanceof EqualsExpression)
+	    ||
+	    (exp instanceof GTLTExpression)
+	    ||
+	    (exp instanceof AndOrExpression)
+	    ||
+	    (exp instanceof IsNullExpression)
+	   )
+	{
+
+	    BinaryExpression be = (BinaryExpression) exp;
+
+	    return GroupAggregator.isObjectExpression (be.getLeft ())
+		   &&
+		   ((be.getRight () == null)
+		    ||
+		    (GroupAggregator.isObjectExpression (be.getRight ()))
+		   );
+
+	}
+
+	return false;
+
+    }
+
+    /**
+     * Group the objects and calculate the values of the columns for each group.
+     *
+     * @param objs The objects to group.
+     * @return A Map of {@link GroupKey} to a List of the rows for the group (a row for each
+     *         object in the group or a single row if distinct results are required, each row
+     *         being a List of the column values, the rows are all the same List), or <code>null</code>
+     *         if a value was found that cannot be handled.
+     * @throws QueryExecutionException Not thrown, any error results in <code>null</code> being
+     *                                 returned.
+     */
+    public Map aggregate (List   objs)
+	                  throws QueryExecutionException
+    {
+
+	Map groups = this.aggregate (objs,
+				     0,
+				     objs.size ());
+
+	if (groups == null)
+	{
+
+	    return null;
+
+	}
+
+	return this.getResults (groups);
+
+    }
+
+    /**
+     * Group the objects in the specified range of the list and calculate the running totals
+     * for each group.  The totals for different ranges can then be combined using
+     * {@link #merge(Map,Map)} and the rows created using {@link #getResults(Map)}.
+     *
+     * @param objs The objects.
+     * @param start The index of the first object.
+     * @param end The index after the last object.
+     * @return A Map of {@link GroupKey} to the totals for the group or <code>null</code> if
+     *         a value was found that cannot be handled.
+     */
+    public Map aggregate (List objs,
+			  int  start,
+			  int  end)
+    {
+
+	// The groups are in the order of their first object.
+	Map groups = new LinkedHashMap ();
+
+	try
+	{
+
+	    for (int i = start; i < end; i++)
+	    {
+
+		Object o = objs.get (i);
+
+		this.q.setCurrentObject (o);
+
+		GroupKey k = this.grouper.getKey (o);
+
+		Aggregates a = (Aggregates) groups.get (k);
+
+		if (a == null)
+		{
+
+		    a = this.createAggregates (o);
+
+		    groups.put (k,
+				a);
+
+		}
+
+		if (!this.add (a,
+			       o))
+		{
+
+		    return null;
+
+		}
+
+	    }
+
+	} catch (Exception e) {
+
+	    // Let the full group by report the error.
+	    return null;
+
+	}
+
+	return groups;
+
+    }
+
+    /**
+     * Merge the totals for a later range of objects into the totals for an earlier range.
+     * Where a minimum or maximum value is compared to <code>null</code> the result depends upon
+     * the order of the values so the totals cannot be merged.
+     *
+     * @param into The totals to merge into, as returned by {@link #aggregate(List,int,int)}.
+     * @param from The totals to merge.
+     * @return <code>true</code> if the totals were merged, <code>false</code> if they cannot be.
+     */
+    public boolean merge (Map into,
+			  Map from)
+    {
+
+	Iterator iter = from.entrySet ().iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    Map.Entry en = (Map.Entry) iter.next ();
+
+	    Aggregates f = (Aggregates) en.getValue ();
+
+	    Aggregates a = (Aggregates) into.get (en.getKey ());
+
+	    if (a == null)
+	    {
+
+		into.put (en.getKey (),
+			  f);
+
+		continue;
+
+	    }
+
+	    if ((a.nulls)
+		||
+		(f.nulls)
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	    a.size += f.size;
+
+	    for (int i = 0; i < this.types.length; i++)
+	    {
+
+		int t = this.types[i];
+
+		if ((t == GroupAggregator.SUM)
+		    ||
+		    (t == GroupAggregator.AVG)
+		    ||
+		    (t == GroupAggregator.COUNT)
+		   )
+		{
+
+		    a.totals[i] += f.totals[i];
+
+		}
+
+		if ((t == GroupAggregator.MIN)
+		    ||
+		    (t == GroupAggregator.MAX)
+		   )
+		{
+
+		    this.setExtreme (a,
+				     i,
+				     f.vals[i]);
+
+		}
+
+	    }
+
+	}
+
+	return true;
+
+    }
+
+    /**
+     * Create the rows for each group from the totals.
+     *
+     * @param groups The totals for each group, as returned by {@link #aggregate(List,int,int)}.
+     * @return A Map of {@link GroupKey} to a List of the rows for the group, see: {@link #aggregate(List)}.
+     */
+    public Map getResults (Map groups)
+    {
+
+	Map res = new LinkedHashMap ();
+
+	Iterator iter = groups.entrySet ().iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    Map.Entry en = (Map.Entry) iter.next ();
+
+	    GroupKey k = (GroupKey) en.getKey ();
+	    Aggregates a = (Aggregates) en.getValue ();
+
+	    int rs = a.size;
+
+	    // All the rows are the same.
+	    if (this.distinct)
+	    {
+
+		rs = 1;
+
+	    }
+
+	    res.put (k,
+		     Collections.nCopies (rs,
+					  this.getRow (k,
+						       a)));
+
+	}
+
+	return res;
+
+    }
+
+    /**
+     * Set up the aggregates for a new group, the constants are evaluated against the first
+     * object in the group.
+     */
+    private Aggregates createAggregates (Object o)
+	                                 throws QueryExecutionException
+    {
+
+	Aggregates a = new Aggregates (this.types.length);
+
+	for (int i = 0; i < this.types.length; i++)
+	{
+
+	    if (this.types[i] == GroupAggregator.CONSTANT)
+	    {
+
+		a.vals[i] = this.exps[i].getValue (o,
+						   this.q);
+
+	    }
+
+	}
+
+	return a;
+
+    }
+
+    private boolean add (Aggregates a,
+			 Object     o)
+	                 throws     QueryExecutionException
+    {
+
+	a.size++;
+
+	for (int i = 0; i < this.types.length; i++)
+	{
+
+	    int t = this.types[i];
+
+	    if ((t == GroupAggregator.KEY)
+		||
+		(t == GroupAggregator.CONSTANT)
+		||
+		(t == GroupAggregator.COUNT_ALL)
+	       )
+	    {
+
+		continue;
+
+	    }
+
+	    Expression exp = this.exps[i];
+
+	    if (t == GroupAggregator.COUNT)
+	    {
+
+		if (exp.isTrue (o,
+				this.q))
+		{
+
+		    a.totals[i]++;
+
+		}
+
+		continue;
+
+	    }
+
+	    if (((t == GroupAggregator.SUM)
+		 ||
+		 (t == GroupAggregator.AVG)
+		)
+		&&
+		(o != null)
+		&&
+		(exp.isNumeric (this.q))
+	       )
+	    {
+
+		a.totals[i] += exp.getDouble (o,
+					      this.q);
+
+		continue;
+
+	    }
+
+	    Object v = exp.getValue (o,
+				     this.q);
+
+	    if ((t == GroupAggregator.SUM)
+		||
+		(t == GroupAggregator.AVG)
+	       )
+	    {
+
+		if (v instanceof Number)
+		{
+
+		    a.totals[i] += ((Number) v).doubleValue ();
+
+		    continue;
+
+		}
+
+		// sum skips nulls, anything else is an error.
+		if ((v == null)
+		    &&
+		    (t == GroupAggregator.SUM)
+		   )
+		{
+
+		    continue;
+
+		}
+
+		return false;
+
+	    }
+
+	    // Must be min or max.
+	    if (v == null)
+	    {
+
+		a.nulls = true;
+
+	    }
+
+	    this.setExtreme (a,
+			     i,
+			     v);
+
+	}
+
+	return true;
+
+    }
+
+    private void setExtreme (Aggregates a,
+			     int        i,
+			     Object     v)
+    {
+
+	if (a.vals[i] == null)
+	{
+
+	    a.vals[i] = v;
+
+	    return;
+
+	}
+
+	int c = Utilities.compare (v,
+				   a.vals[i]);
+
+	if (((this.types[i] == GroupAggregator.MIN)
+	     &&
+	     (c < 0)
+	    )
+	    ||
+	    ((this.types[i] == GroupAggregator.MAX)
+	     &&
+	     (c > 0)
+	    )
+	   )
+	{
+
+	    a.vals[i] = v;
+
+	}
+
+    }
+
+    private List getRow (GroupKey   k,
+			 Aggregates a)
+    {
+
+	List row = new ArrayList (this.types.length);
+
+	for (int i = 0; i < this.types.length; i++)
+	{
+
+	    int t = this.types[i];
+
+	    Object v = null;
+
+	    if (t == GroupAggregator.KEY)
+	    {
+
+		v = k.get (this.keyInds[i]);
+
+	    }
+
+	    if ((t == GroupAggregator.CONSTANT)
+		||
+		(t == GroupAggregator.MIN)
+		||
+		(t == GroupAggregator.MAX)
+	       )
+	    {
+
+		v = a.vals[i];
+
+	    }
+
+	    if (t == GroupAggregator.SUM)
+	    {
+
+		v = Double.valueOf (a.totals[i]);
+
+	    }
+
+	    if (t == GroupAggregator.AVG)
+	    {
+
+		v = Double.valueOf (a.totals[i] / a.size);
+
+	    }
+
+	    if (t == GroupAggregator.COUNT)
+	    {
+
+		v = Integer.valueOf ((int) a.totals[i]);
+
+	    }
+
+	    if (t == GroupAggregator.COUNT_ALL)
+	    {
+
+		v = Integer.valueOf (a.size);
+
+	    }
+
+	    row.add (v);
+
+	}
+
+	return row;
+
+    }
+
+    /**
+     * The running totals for a group.
+     */
+    private static class Aggregates
+    {
+
+	private int size = 0;
+	private boolean nulls = false;
+	private double[] totals = null;
+	private Object[] vals = null;
+
+	private Aggregates (int cs)
+	{
+
+	    this.totals = new double[cs];
+	    this.vals = new Object[cs];
+
+	}
+
+    }
+
+}
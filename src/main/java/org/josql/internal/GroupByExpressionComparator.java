@@ -32,10 +32,12 @@ public class GroupByExpressionComparator implements Comparator
     private Query q = null;
     private int size = 0;
     private int count = 0;
-    private Exception exp = null;
     private Object nullObj = new Object ();
 
-    private Map cache = new HashMap ();
+    // The exception and cache are held per thread since the comparator is shared by
+    // all executions of the query.
+    private ThreadLocal exp = new ThreadLocal ();
+    private ThreadLocal cache = new ThreadLocal ();
     private boolean caching = false;
 
     public GroupByExpressionComparator (Query   q,
@@ -79,7 +81,26 @@ public class GroupByExpressionComparator implements Comparator
     public void clearCache ()
     {
 
-	this.cache.clear ();
+	this.cache.remove ();
+	this.exp.remove ();
+
+    }
+
+    private Map getCache ()
+    {
+
+	Map m = (Map) this.cache.get ();
+
+	if (m == null)
+	{
+
+	    m = new HashMap ();
+
+	    this.cache.set (m);
+
+	}
+
+	return m;
 
     }
 
@@ -145,8 +166,8 @@ public class GroupByExpressionComparator implements Comparator
 	    }
 
 	    // Compare them...
-	    int c = Utilities.compare (eo1,
-				       eo2);
+	    int c = ListExpressionComparator.compareValues (eo1,
+							    eo2);
 
 	    if (c == 0)
 	    {
@@ -179,6 +200,8 @@ public class GroupByExpressionComparator implements Comparator
 
 	this.count++;
 
+	Map cache = this.getCache ();
+
 	Map co = null;
 	boolean get = true;
 	Item it = null;
@@ -306,8 +329,8 @@ public class GroupByExpressionComparator implements Comparator
 	    }
 	    
 	    // Compare them...
-	    int c = Utilities.compare (eo1,
-				       eo2);
+	    int c = ListExpressionComparator.compareValues (eo1,
+							    eo2);
 
 	    if (c == 0)
 	    {
@@ -355,7 +378,7 @@ public class GroupByExpressionComparator implements Comparator
 
 	} catch (Exception e) {
 
-	    this.exp = e;
+	    this.exp.set (e);
 
 	    return 0;
 
@@ -366,7 +389,7 @@ public class GroupByExpressionComparator implements Comparator
     public Exception getException ()
     {
 
-	return this.exp;
+	return (Exception) this.exp.get ();
 
     }
 
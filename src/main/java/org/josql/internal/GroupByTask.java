@@ -0,0 +1,254 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.RecursiveTask;
+
+import org.josql.Query;
+import org.josql.QueryExecutionException;
+
+/**
+ * A fork/join task that groups a range of the objects in a list.  As with the
+ * {@link WhereClauseTask} the range is split in half until it is no larger than the chunk
+ * size, each chunk is then grouped by a worker thread using its own {@link ExecutionContext}
+ * and results (see: {@link WorkerResults}) into a map local to the task.  The maps of the two halves are then merged, the earlier
+ * half first, so the result is the same as grouping the objects in order.
+ * <p>
+ * If an aggregator is provided then the running totals are calculated for each group (see:
+ * {@link GroupAggregator#aggregate(List,int,int)}) and the result of the task is the totals,
+ * or <code>null</code> if the aggregator cannot handle the objects.  Otherwise the result is
+ * the objects in each group (see: {@link Grouper#group(List,int,int)}).
+ */
+public class GroupByTask extends RecursiveTask
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private Query q = null;
+    private Grouper grouper = null;
+    private GroupAggregator aggregator = null;
+    private ExecutionContext ctx = null;
+    private List objs = null;
+    private int start = 0;
+    private int end = 0;
+    private int chunkSize = 0;
+    private Errors errors = null;
+    private WorkerResults parts = null;
+
+    /**
+     * Create a new task that groups all the objects in the list.
+     *
+     * @param q The Query.
+     * @param grouper The grouper for the GROUP BY expressions.
+     * @param aggregator The aggregator to calculate the totals for each group, can be
+     *                   <code>null</code>.
+     * @param ctx The context of the thread that is executing the query.
+     * @param objs The objects.
+     * @param chunkSize The maximum number of objects that a single task should group.
+     */
+    public GroupByTask (Query            q,
+			Grouper          grouper,
+			GroupAggregator  aggregator,
+			ExecutionContext ctx,
+			List             objs,
+			int              chunkSize)
+    {
+
+	this.q = q;
+	this.grouper = grouper;
+	this.aggregator = aggregator;
+	this.ctx = ctx;
+	this.objs = objs;
+	this.start = 0;
+	this.end = objs.size ();
+	this.chunkSize = Math.max (1,
+				   chunkSize);
+	this.errors = new Errors ();
+	this.parts = new WorkerResults (ctx.getResults ());
+
+    }
+
+    private GroupByTask (GroupByTask parent,
+			 int         start,
+			 int         end)
+    {
+
+	this.q = parent.q;
+	this.grouper = parent.grouper;
+	this.aggregator = parent.aggregator;
+	this.ctx = parent.ctx;
+	this.objs = parent.objs;
+	this.chunkSize = parent.chunkSize;
+	this.errors = parent.errors;
+	this.parts = parent.parts;
+	this.start = start;
+	this.end = end;
+
+    }
+
+    /**
+     * Get the results of the chunks, use {@link WorkerResults#merge(org.josql.QueryResults)}
+     * once the task has completed to copy the save values they set into the results of the execution.
+     *
+     * @return The results of the chunks.
+     */
+    public WorkerResults getWorkerResults ()
+    {
+
+	return this.parts;
+
+    }
+
+    /**
+     * Get the first exception that occurred whilst grouping the objects, if any.
+     *
+     * @return The exception or <code>null</code> if the grouping succeeded.
+     */
+    public QueryExecutionException getEvaluationException ()
+    {
+
+	return this.errors.exp;
+
+    }
+
+    protected Object compute ()
+    {
+
+	if ((this.end - this.start) > this.chunkSize)
+	{
+
+	    int mid = (this.start + this.end) >>> 1;
+
+	    GroupByTask l = new GroupByTask (this,
+					     this.start,
+					     mid);
+
+	    GroupByTask r = new GroupByTask (this,
+					     mid,
+					     this.end);
+
+	    r.fork ();
+
+	    Map lm = (Map) l.compute ();
+	    Map rm = (Map) r.join ();
+
+	    if ((lm == null)
+		||
+		(rm == null)
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    if (this.aggregator != null)
+	    {
+
+		if (!this.aggregator.merge (lm,
+					    rm))
+		{
+
+		    return null;
+
+		}
+
+	    } else {
+
+		this.grouper.merge (lm,
+				    rm);
+
+	    }
+
+	    return lm;
+
+	}
+
+	if (this.errors.exp != null)
+	{
+
+	    // Another chunk has failed, no point carrying on.
+	    return null;
+
+	}
+
+	// Keep whatever context the worker thread already has, it may be in the
+	// middle of another execution.
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	ExecutionContext wctx = new ExecutionContext (this.ctx);
+
+	wctx.setResults (this.parts.create (this.start));
+
+	this.q.setExecutionContext (wctx);
+
+	try
+	{
+
+	    if (this.aggregator != null)
+	    {
+
+		return this.aggregator.aggregate (this.objs,
+						  this.start,
+						  this.end);
+
+	    }
+
+	    return this.grouper.group (this.objs,
+				       this.start,
+				       this.end);
+
+	} catch (QueryExecutionException e) {
+
+	    this.errors.set (e);
+
+	} catch (Exception e) {
+
+	    this.errors.set (new QueryExecutionException ("Unable to group objects in parallel",
+							  e));
+
+	} finally {
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+	return null;
+
+    }
+
+    private static class Errors
+    {
+
+	private volatile QueryExecutionException exp = null;
+
+	private synchronized void set (QueryExecutionException e)
+	{
+
+	    if (this.exp == null)
+	    {
+
+		this.exp = e;
+
+	    }
+
+	}
+
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The key for a group in the results of a GROUP BY, i.e. the values of the GROUP BY
+ * expressions for the objects in the group.  The key is a read-only <code>java.util.List</code>
+ * so it can be used wherever a List of the values is expected, however the values are held in an
+ * array and the hash code is calculated once (in the same way as for any other List) so it is
+ * cheap to create and to look up in a hash map.
+ */
+public class GroupKey extends AbstractList implements RandomAccess
+{
+
+    private Object[] vals = null;
+    private int hash = 1;
+
+    public GroupKey (Object[] vals)
+    {
+
+	this.vals = vals;
+
+	for (int i = 0; i < vals.length; i++)
+	{
+
+	    Object o = vals[i];
+
+	    this.hash = (31 * this.hash) + ((o == null) ? 0 : o.hashCode ());
+
+	}
+
+    }
+
+    public Object get (int i)
+    {
+
+	return this.vals[i];
+
+    }
+
+    public int size ()
+    {
+
+	return this.vals.length;
+
+    }
+
+    public int hashCode ()
+    {
+
+	return this.hash;
+
+    }
+
+    public boolean equals (Object o)
+    {
+
+	if (o == this)
+	{
+
+	    return true;
+
+	}
+
+	if (o instanceof GroupKey)
+	{
+
+	    GroupKey k = (GroupKey) o;
+
+	    return (this.hash == k.hash)
+		   &&
+		   (Arrays.equals (this.vals,
+				   k.vals));
+
+	}
+
+	return super.equals (o);
+
+    }
+
+}
@@ -17,7 +17,8 @@ package org.josql.internal;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
 
 import org.josql.Query;
 import org.josql.QueryExecutionException;
@@ -53,55 +54,93 @@ public class Grouper
 
     }
 
-    public Map group (List   objs)
-	              throws QueryExecutionException
+    /**
+     * Get the key for the group that the object belongs to, the current object of the Query
+     * should already have been set to the object.
+     *
+     * @param o The object.
+     * @return The key.
+     * @throws QueryExecutionException If one of the GROUP BY expressions cannot be evaluated.
+     */
+    public GroupKey getKey (Object o)
+	                    throws QueryExecutionException
     {
 
-	Map retVals = new HashMap ();
+	Object[] vals = new Object[this.cs];
 
-	int s = objs.size (); 
+	// Get the values...
+	for (int i = 0; i < this.cs; i++)
+	{
 
-	List l = null;
+	    Expression exp = (Expression) this.cols.get (i);
 
-	for (int j = 0; j < s; j++)
-	{
+	    try
+	    {
 
-	    Object o = objs.get (j);
+		vals[i] = exp.getValue (o,
+					this.q);
 
-	    this.q.setCurrentObject (o);
+	    } catch (Exception e) {
 
-	    l = new ArrayList ();
+		throw new QueryExecutionException ("Unable to get group by value for expression: " +
+						   exp,
+						   e);
 
-	    // Get the values...
-	    for (int i = 0; i < this.cs; i++)
-	    {
+	    }
 
-		Expression exp = (Expression) this.cols.get (i);
+	}
 
-		try
-		{
+	return new GroupKey (vals);
 
-		    l.add (exp.getValue (o,
-					 this.q));
+    }
 
-		} catch (Exception e) {
+    public Map group (List   objs)
+	              throws QueryExecutionException
+    {
 
-		    throw new QueryExecutionException ("Unable to get group by value for expression: " +
-						       exp,
-						       e);
+	return this.group (objs,
+			   0,
+			   objs.size ());
 
-		}
+    }
 
-	    }
+    /**
+     * Group the objects in the specified range of the list, the objects in each group
+     * are in the same order as in the list.
+     *
+     * @param objs The objects.
+     * @param start The index of the first object to group.
+     * @param end The index after the last object to group.
+     * @return A Map of {@link GroupKey} to the List of objects in the group, the groups are
+     *         in the order of the first object in each group.
+     * @throws QueryExecutionException If one of the GROUP BY expressions cannot be evaluated.
+     */
+    public Map group (List   objs,
+		      int    start,
+		      int    end)
+	              throws QueryExecutionException
+    {
 
-	    List v = (List) retVals.get (l);
+	// The groups are in the order of their first object.
+	Map retVals = new LinkedHashMap ();
+
+	for (int j = start; j < end; j++)
+	{
+
+	    Object o = objs.get (j);
+
+	    this.q.setCurrentObject (o);
+
+	    GroupKey k = this.getKey (o);
+
+	    List v = (List) retVals.get (k);
 
 	    if (v == null)
 	    {
 
 		v = new ArrayList ();
 
-		retVals.put (l,
+		retVals.put (k,
 			     v);
 
 	    }
@@ -114,4 +153,40 @@ public class Grouper
 
     }
 
+    /**
+     * Merge the groups of a later range of objects into the groups of an earlier range,
+     * the objects of each group in <b>from</b> are added after those in <b>into</b>.
+     *
+     * @param into The groups to merge into, as returned by {@link #group(List,int,int)}.
+     * @param from The groups to merge.
+     */
+    public void merge (Map into,
+		       Map from)
+    {
+
+	Iterator iter = from.entrySet ().iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    Map.Entry en = (Map.Entry) iter.next ();
+
+	    List v = (List) into.get (en.getKey ());
+
+	    if (v == null)
+	    {
+
+		into.put (en.getKey (),
+			  en.getValue ());
+
+	    } else {
+
+		v.addAll ((List) en.getValue ());
+
+	    }
+
+	}
+
+    }
+
 }
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import org.josql.Query;
+
+import org.josql.utils.IndexedCollection;
+
+import org.josql.expressions.Expression;
+import org.josql.expressions.AndOrExpression;
+import org.josql.expressions.EqualsExpression;
+import org.josql.expressions.GTLTExpression;
+import org.josql.expressions.BetweenExpression;
+import org.josql.expressions.InExpression;
+import org.josql.expressions.Accessor;
+import org.josql.expressions.ConstantExpression;
+import org.josql.expressions.BindVariable;
+
+/**
+ * Finds the objects in an {@link IndexedCollection} that may match a WHERE clause using
+ * the indexes of the collection.  The WHERE clause must still be evaluated against each of
+ * the candidate objects, the candidates are a superset of the matching objects.
+ * <p>
+ * The following conditions can be answered from an index, where the LHS is an accessor and
+ * the RHS is a constant or a (non-special) bind variable:
+ * <ul>
+ *   <li><code>=</code>, (not <code>!=</code> or <code>$=</code>).</li>
+ *   <li><code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code>, <code>&gt;=</code> (either way round).</li>
+ *   <li><code>BETWEEN</code>, (not <code>NOT BETWEEN</code>).</li>
+ *   <li><code>IN</code>, (not <code>NOT IN</code>, <code>$IN</code>, <code>LIKE</code> or <code>ALL</code>).</li>
+ *   <li><code>AND</code> of any of the above (and any other conditions), the smallest set
+ *       of candidates is used.</li>
+ * </ul>
+ */
+public class IndexPlanner
+{
+
+    /**
+     * Get the candidate objects for the WHERE clause.
+     *
+     * @param objs The objects.
+     * @param where The WHERE clause.
+     * @param q The Query.
+     * @return The candidate objects, in the order they are in the collection, or <code>null</code>
+     *         if the indexes cannot be used and all the objects must be checked.
+     */
+    public static List getCandidates (IndexedCollection objs,
+				      Expression        where,
+				      Query             q)
+    {
+
+	// A custom comparator may not agree with the ordering of the index.
+	if (Utilities.getObjectComparator () != null)
+	{
+
+	    return null;
+
+	}
+
+	try
+	{
+
+	    return IndexPlanner.getCandidatesForExpression (objs,
+							    where,
+							    q);
+
+	} catch (Exception e) {
+
+	    // Can't get a value, let the full evaluation report it.
+	    return null;
+
+	}
+
+    }
+
+    private static List getCandidatesForExpression (IndexedCollection objs,
+						    Expression        exp,
+						    Query             q)
+	                                            throws            Exception
+    {
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exp = ((CompiledExpression) exp).getSource ();
+
+	}
+
+	if (exp instanceof AndOrExpression)
+	{
+
+	    AndOrExpression ao = (AndOrExpression) exp;
+
+	    if (!ao.isAnd ())
+	    {
+
+		return null;
+
+	    }
+
+	    List l = IndexPlanner.getCandidatesForExpression (objs,
+							      ao.getLeft (),
+							      q);
+
+	    if ((l != null)
+		&&
+		(l.size () == 0)
+	       )
+	    {
+
+		return l;
+
+	    }
+
+	    List r = IndexPlanner.getCandidatesForExpression (objs,
+							      ao.getRight (),
+							      q);
+
+	    if (l == null)
+	    {
+
+		return r;
+
+	    }
+
+	    if ((r != null)
+		&&
+		(r.size () < l.size ())
+	       )
+	    {
+
+		return r;
+
+	    }
+
+	    return l;
+
+	}
+
+	if (exp instanceof EqualsExpression)
+	{
+
+	    EqualsExpression ee = (EqualsExpression) exp;
+
+	    if ((ee.isNot ())
+		||
+		(ee.isIgnoreCase ())
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    String acc = IndexPlanner.getAccessor (ee.getLeft ());
+	    Expression v = ee.getRight ();
+
+	    if (acc == null)
+	    {
+
+		acc = IndexPlanner.getAccessor (ee.getRight ());
+		v = ee.getLeft ();
+
+	    }
+
+	    if ((acc == null)
+		||
+		(!IndexPlanner.isValue (v))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    Object val = v.getValue (null,
+				     q);
+
+	    if (val == null)
+	    {
+
+		return null;
+
+	    }
+
+	    return objs.getObjects (acc,
+				    val);
+
+	}
+
+	if (exp instanceof GTLTExpression)
+	{
+
+	    GTLTExpression ge = (GTLTExpression) exp;
+
+	    if (ge.isIgnoreCase ())
+	    {
+
+		return null;
+
+	    }
+
+	    int t = ge.getType ();
+
+	    String acc = IndexPlanner.getAccessor (ge.getLeft ());
+	    Expression v = ge.getRight ();
+
+	    if (acc == null)
+	    {
+
+		acc = IndexPlanner.getAccessor (ge.getRight ());
+		v = ge.getLeft ();
+
+		// value < acc is the same as acc > value.
+		if (t == Utilities.GT)
+		{
+
+		    t = Utilities.LT;
+
+		} else {
+
+		    if (t == Utilities.GTE)
+		    {
+
+			t = Utilities.LTE;
+
+		    } else {
+
+			if (t == Utilities.LT)
+			{
+
+			    t = Utilities.GT;
+
+			} else {
+
+			    if (t == Utilities.LTE)
+			    {
+
+				t = Utilities.GTE;
+
+			    }
+
+			}
+
+		    }
+
+		}
+
+	    }
+
+	    if ((acc == null)
+		||
+		(!IndexPlanner.isValue (v))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    Object val = v.getValue (null,
+				     q);
+
+	    if (val == null)
+	    {
+
+		return null;
+
+	    }
+
+	    if ((t == Utilities.GT)
+		||
+		(t == Utilities.GTE)
+	       )
+	    {
+
+		return objs.getObjects (acc,
+					val,
+					t == Utilities.GTE,
+					null,
+					false);
+
+	    }
+
+	    if ((t == Utilities.LT)
+		||
+		(t == Utilities.LTE)
+	       )
+	    {
+
+		return objs.getObjects (acc,
+					null,
+					false,
+					val,
+					t == Utilities.LTE);
+
+	    }
+
+	    return null;
+
+	}
+
+	if (exp instanceof BetweenExpression)
+	{
+
+	    BetweenExpression be = (BetweenExpression) exp;
+
+	    String acc = IndexPlanner.getAccessor (be.getLeft ());
+
+	    if ((be.isNot ())
+		||
+		(acc == null)
+		||
+		(!IndexPlanner.isValue (be.getStart ()))
+		||
+		(!IndexPlanner.isValue (be.getEnd ()))
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    Object s = be.getStart ().getValue (null,
+						q);
+	    Object e = be.getEnd ().getValue (null,
+					      q);
+
+	    if ((s == null)
+		||
+		(e == null)
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    return objs.getObjects (acc,
+				    s,
+				    true,
+				    e,
+				    true);
+
+	}
+
+	if (exp instanceof InExpression)
+	{
+
+	    InExpression ie = (InExpression) exp;
+
+	    String acc = IndexPlanner.getAccessor (ie.getLeft ());
+
+	    if ((ie.isNot ())
+		||
+		(ie.isDoLike ())
+		||
+		(ie.isAll ())
+		||
+		(ie.isIgnoreCase ())
+		||
+		(acc == null)
+	       )
+	    {
+
+		return null;
+
+	    }
+
+	    List items = ie.getItems ();
+
+	    List vals = new ArrayList (items.size ());
+
+	    for (int i = 0; i < items.size (); i++)
+	    {
+
+		Expression it = (Expression) items.get (i);
+
+		if (!IndexPlanner.isValue (it))
+		{
+
+		    return null;
+
+		}
+
+		Object val = it.getValue (null,
+					  q);
+
+		if (val == null)
+		{
+
+		    return null;
+
+		}
+
+		vals.add (val);
+
+	    }
+
+	    return objs.getObjects (acc,
+				    vals);
+
+	}
+
+	return null;
+
+    }
+
+    /**
+     * Get the accessor that the expression represents, if it is a plain accessor.
+     */
+    private static String getAccessor (Expression exp)
+    {
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exp = ((CompiledExpression) exp).getSource ();
+
+	}
+
+	if (exp instanceof Accessor)
+	{
+
+	    return ((Accessor) exp).getAccessor ();
+
+	}
+
+	return null;
+
+    }
+
+    /**
+     * Return whether the expression has the same value for all the objects and can be
+     * evaluated before the objects are.
+     */
+    private static boolean isValue (Expression exp)
+    {
+
+	if (exp instanceof CompiledExpression)
+	{
+
+	    exp = ((CompiledExpression) exp).getSource ();
+
+	}
+
+	if (exp instanceof ConstantExpression)
+	{
+
+	    return true;
+
+	}
+
+	if ((exp instanceof BindVariable)
+	    &&
+	    (!((BindVariable) exp).isSpecial ())
+	   )
+	{
+
+	    return true;
+
+	}
+
+	return false;
+
+    }
+
+}
@@ -0,0 +1,551 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A LIKE pattern compiled for matching.  The pattern is split into the same parts
+ * as {@link Utilities#getLikePattern(String,String)}, a fixed prefix followed by a number
+ * of parts that may appear anywhere after the previous part, with the end either
+ * anchored to the end of the value or not.  The common forms: <code>abc</code>,
+ * <code>abc%</code>, <code>%abc</code> and <code>%abc%</code> are matched using a single
+ * equals, startsWith, endsWith or indexOf style comparison.
+ * <p>
+ * Case insensitive matching compares the characters in place (in the same way as
+ * <code>String.equalsIgnoreCase</code>) rather than creating lower case copies of the value
+ * and pattern.
+ * <p>
+ * Matchers are immutable so can be shared, use {@link #getMatcher(String,char)} to get
+ * a matcher from the shared cache when the pattern is not known until execution.
+ */
+public class LikeMatcher
+{
+
+    private static final int ANY = 0;
+    private static final int EXACT = 1;
+    private static final int PREFIX = 2;
+    private static final int SUFFIX = 3;
+    private static final int CONTAINS = 4;
+    private static final int GENERAL = 5;
+
+    /**
+     * The maximum number of matchers held in the shared cache, when this is reached
+     * the cache is cleared.
+     */
+    public static int MAX_CACHED_MATCHERS = 1024;
+
+    private static Map matchers = new ConcurrentHashMap ();
+
+    private String pattern = null;
+    private char wildcard = '%';
+    private String prefix = null;
+    private String[] parts = null;
+    private boolean anchored = false;
+    private int type = LikeMatcher.GENERAL;
+
+    /**
+     * Compile the pattern.
+     *
+     * @param pattern The pattern.
+     * @param wildcard The wildcard character.
+     */
+    public LikeMatcher (String pattern,
+			char   wildcard)
+    {
+
+	this.pattern = pattern;
+	this.wildcard = wildcard;
+
+	this.compile ();
+
+    }
+
+    /**
+     * Get a matcher for the pattern from the shared cache, if there isn't one then it is
+     * compiled and added.
+     *
+     * @param pattern The pattern.
+     * @param wildcard The wildcard character.
+     * @return The matcher.
+     */
+    public static LikeMatcher getMatcher (String pattern,
+					  char   wildcard)
+    {
+
+	LikeMatcher m = (LikeMatcher) LikeMatcher.matchers.get (pattern);
+
+	if ((m != null)
+	    &&
+	    (m.wildcard == wildcard)
+	   )
+	{
+
+	    return m;
+
+	}
+
+	m = new LikeMatcher (pattern,
+			     wildcard);
+
+	if (LikeMatcher.matchers.size () >= LikeMatcher.MAX_CACHED_MATCHERS)
+	{
+
+	    LikeMatcher.matchers.clear ();
+
+	}
+
+	LikeMatcher.matchers.put (pattern,
+				  m);
+
+	return m;
+
+    }
+
+    public String getPattern ()
+    {
+
+	return this.pattern;
+
+    }
+
+    private void compile ()
+    {
+
+	String w = String.valueOf (this.wildcard);
+
+	// Split into the wildcards and the runs of other characters.
+	List toks = new ArrayList ();
+
+	int l = this.pattern.length ();
+
+	int s = 0;
+
+	for (int i = 0; i < l; i++)
+	{
+
+	    if (this.pattern.charAt (i) == this.wildcard)
+	    {
+
+		if (i > s)
+		{
+
+		    toks.add (this.pattern.substring (s,
+						      i));
+
+		}
+
+		toks.add (w);
+
+		s = i + 1;
+
+	    }
+
+	}
+
+	if (s < l)
+	{
+
+	    toks.add (this.pattern.substring (s));
+
+	}
+
+	// A wildcard is always followed by a part to find (even if it is the wildcard
+	// itself), any other part must be at the current position so is added to the
+	// previous part.
+	StringBuffer pre = new StringBuffer ();
+	StringBuffer part = null;
+
+	List ps = new ArrayList ();
+
+	String tok = null;
+
+	int ts = toks.size ();
+
+	int i = 0;
+
+	while (i < ts)
+	{
+
+	    tok = (String) toks.get (i);
+
+	    i++;
+
+	    if (tok.equals (w))
+	    {
+
+		if (part != null)
+		{
+
+		    ps.add (part.toString ());
+
+		}
+
+		part = new StringBuffer ();
+
+		if (i < ts)
+		{
+
+		    tok = (String) toks.get (i);
+
+		    i++;
+
+		    part.append (tok);
+
+		}
+
+	    } else {
+
+		if (part == null)
+		{
+
+		    pre.append (tok);
+
+		} else {
+
+		    part.append (tok);
+
+		}
+
+	    }
+
+	}
+
+	if ((part != null)
+	    &&
+	    (part.length () > 0)
+	   )
+	{
+
+	    ps.add (part.toString ());
+
+	}
+
+	this.anchored = (tok == null) || (!tok.equals (w));
+
+	this.prefix = pre.toString ();
+	this.parts = (String[]) ps.toArray (new String[ps.size ()]);
+
+	if (this.parts.length == 0)
+	{
+
+	    if (this.anchored)
+	    {
+
+		this.type = LikeMatcher.EXACT;
+
+	    } else {
+
+		this.type = LikeMatcher.PREFIX;
+
+		if (this.prefix.length () == 0)
+		{
+
+		    this.type = LikeMatcher.ANY;
+
+		}
+
+	    }
+
+	    return;
+
+	}
+
+	if ((this.parts.length == 1)
+	    &&
+	    (this.prefix.length () == 0)
+	   )
+	{
+
+	    if (this.anchored)
+	    {
+
+		this.type = LikeMatcher.SUFFIX;
+
+	    } else {
+
+		this.type = LikeMatcher.CONTAINS;
+
+	    }
+
+	    return;
+
+	}
+
+	this.type = LikeMatcher.GENERAL;
+
+    }
+
+    /**
+     * Match the value (or if the value is a Collection each of its items) against the
+     * pattern, this has the same behaviour as:
+     * {@link Utilities#matchLikePattern(List,Object,boolean,boolean)}.
+     *
+     * @param o The value.
+     * @param not Whether the result should be negated.
+     * @param ignoreCase Whether the case should be ignored.
+     * @return <code>true</code> if the value (all the items in the Collection) matches, or
+     *         when <b>not</b> is <code>true</code>, doesn't match.
+     */
+    public boolean matches (Object  o,
+			    boolean not,
+			    boolean ignoreCase)
+    {
+
+	if (o instanceof Collection)
+	{
+
+	    Iterator iter = ((Collection) o).iterator ();
+
+	    while (iter.hasNext ())
+	    {
+
+		if (!this.matches (iter.next (),
+				   ignoreCase))
+		{
+
+		    return not;
+
+		}
+
+	    }
+
+	    return !not;
+
+	}
+
+	if (not)
+	{
+
+	    return !this.matches (o,
+				  ignoreCase);
+
+	}
+
+	return this.matches (o,
+			     ignoreCase);
+
+    }
+
+    /**
+     * Match the string value of the object against the pattern.
+     *
+     * @param o The value.
+     * @param ignoreCase Whether the case should be ignored.
+     * @return <code>true</code> if the value matches, <code>null</code> never matches.
+     */
+    public boolean matches (Object  o,
+			    boolean ignoreCase)
+    {
+
+	if (o == null)
+	{
+
+	    return false;
+
+	}
+
+	String v = o.toString ();
+
+	int vl = v.length ();
+
+	if (this.type == LikeMatcher.ANY)
+	{
+
+	    return true;
+
+	}
+
+	if (this.type == LikeMatcher.EXACT)
+	{
+
+	    if (ignoreCase)
+	    {
+
+		return v.equalsIgnoreCase (this.prefix);
+
+	    }
+
+	    return v.equals (this.prefix);
+
+	}
+
+	int pl = this.prefix.length ();
+
+	if (!v.regionMatches (ignoreCase,
+			      0,
+			      this.prefix,
+			      0,
+			      pl))
+	{
+
+	    return false;
+
+	}
+
+	if (this.type == LikeMatcher.PREFIX)
+	{
+
+	    return true;
+
+	}
+
+	int pos = pl;
+	int end = vl;
+	int n = this.parts.length;
+
+	if (this.anchored)
+	{
+
+	    // The last part must be at the end.
+	    String last = this.parts[n - 1];
+
+	    end = vl - last.length ();
+
+	    if ((end < pos)
+		||
+		(!v.regionMatches (ignoreCase,
+				   end,
+				   last,
+				   0,
+				   last.length ()))
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	    n--;
+
+	}
+
+	// Find the remaining parts in order, taking the first occurrence of each leaves
+	// the most room for those that follow.
+	for (int i = 0; i < n; i++)
+	{
+
+	    String p = this.parts[i];
+
+	    int ind = LikeMatcher.indexOf (v,
+					   p,
+					   pos,
+					   end,
+					   ignoreCase);
+
+	    if (ind < 0)
+	    {
+
+		return false;
+
+	    }
+
+	    pos = ind + p.length ();
+
+	}
+
+	return true;
+
+    }
+
+    /**
+     * Find the part in the value between the start and end positions.
+     */
+    private static int indexOf (String  v,
+				String  p,
+				int     start,
+				int     end,
+				boolean ignoreCase)
+    {
+
+	int max = end - p.length ();
+
+	if (!ignoreCase)
+	{
+
+	    int ind = v.indexOf (p,
+				 start);
+
+	    if (ind > max)
+	    {
+
+		return -1;
+
+	    }
+
+	    return ind;
+
+	}
+
+	if (p.length () == 0)
+	{
+
+	    return start;
+
+	}
+
+	// Only compare the whole part where the first character matches.
+	char f = p.charAt (0);
+	char fu = Character.toUpperCase (f);
+	char fl = Character.toLowerCase (f);
+	char ff = Character.toLowerCase (fu);
+
+	for (int i = start; i <= max; i++)
+	{
+
+	    char c = v.charAt (i);
+
+	    if ((c != fu)
+		&&
+		(c != fl)
+		&&
+		(((c < 128)
+		  &&
+		  (f < 128)
+		 )
+		 ||
+		 (Character.toLowerCase (Character.toUpperCase (c)) != ff)
+		)
+	       )
+	    {
+
+		continue;
+
+	    }
+
+	    if (v.regionMatches (true,
+				 i,
+				 p,
+				 0,
+				 p.length ()))
+	    {
+
+		return i;
+
+	    }
+
+	}
+
+	return -1;
+
+    }
+
+}
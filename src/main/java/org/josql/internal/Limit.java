@@ -82,9 +82,17 @@ public class Limit
 
     }
 
-    public List getSubList (List   objs,
-			    Query  q)
-	                    throws QueryExecutionException
+    /**
+     * Get the number of rows that the limit should return.
+     *
+     * @param q The Query object.
+     * @return The number of rows, a value less than 1 means that all rows (after the start) 
+     *         should be returned.
+     * @throws QueryExecutionException If the rows count expression cannot be evaluated or 
+     *                                 does not return a number.
+     */
+    public int getRowsCount (Query  q)
+	                     throws QueryExecutionException
     {
 
 	// Get the row count.
@@ -116,6 +124,23 @@ public class Limit
 
 	}
 
+	return rows;
+
+    }
+
+    /**
+     * Get the index of the first row that the limit should return.  Whilst for the user
+     * rows start at 1, the value returned here starts at 0.
+     *
+     * @param q The Query object.
+     * @return The start index.
+     * @throws QueryExecutionException If the start expression cannot be evaluated or 
+     *                                 does not return a number.
+     */
+    public int getStart (Query  q)
+	                 throws QueryExecutionException
+    {
+
 	int start = 0;
 
 	// Now get the start value...
@@ -153,6 +178,89 @@ public class Limit
 
 	}
 
+	return start;
+
+    }
+
+    /**
+     * Get a selection of the objects within the limit, unlike {@link #getSubList(List,Query)}
+     * the objects are not copied.  A start before the first row (i.e. <code>LIMIT 0, n</code>)
+     * is treated as the first row.
+     *
+     * @param objs The objects.
+     * @param q The Query.
+     * @return The selection of the objects.
+     * @throws QueryExecutionException If the start or rows count cannot be evaluated.
+     */
+    public Selection getSubSelection (List   objs,
+				      Query  q)
+	                              throws QueryExecutionException
+    {
+
+	Selection sel = null;
+
+	if (objs instanceof Selection)
+	{
+
+	    sel = (Selection) objs;
+
+	} else {
+
+	    sel = new Selection (objs);
+
+	}
+
+	int rows = this.getRowsCount (q);
+
+	int start = Math.max (0,
+			      this.getStart (q));
+
+	int ls = sel.size ();
+
+	if (start > (ls - 1))
+	{
+
+	    // Return nothing, outside of the range.
+	    return sel.range (0,
+			      0);
+
+	}
+
+	if ((rows > 0)
+	    &&
+	    ((start + rows) < ls)
+	   )
+	{
+
+	    return sel.range (start,
+			      start + rows);
+
+	}
+
+	return sel.range (start,
+			  ls);
+
+    }
+
+    /**
+     * Get a copy of the objects within the limit.  As for {@link #getSubSelection(List,Query)}
+     * a start before the first row is treated as the first row.
+     *
+     * @param objs The objects.
+     * @param q The Query.
+     * @return The objects.
+     * @throws QueryExecutionException If the start or rows count cannot be evaluated.
+     */
+    public List getSubList (List   objs,
+			    Query  q)
+	                    throws QueryExecutionException
+    {
+
+	int rows = this.getRowsCount (q);
+
+	int start = Math.max (0,
+			      this.getStart (q));
+
 	int ls = objs.size ();
 
 	// Now get our sub-list.
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import org.josql.expressions.Expression;
 
 import org.josql.Query;
+import org.josql.QueryExecutionException;
 
 public class ListExpressionComparator implements Comparator
 {
@@ -31,10 +32,12 @@ public class ListExpressionComparator implements Comparator
     private Query q = null;
     private int size = 0;
     private int count = 0;
-    private Exception exp = null;
     private Object nullObj = new Object ();
 
-    private Map cache = new HashMap ();
+    // The exception and cache are held per thread since the comparator is shared by
+    // all executions of the query.
+    private ThreadLocal exp = new ThreadLocal ();
+    private ThreadLocal cache = new ThreadLocal ();
     private boolean caching = false;
 
     public ListExpressionComparator (Query   q,
@@ -78,7 +81,26 @@ public class ListExpressionComparator implements Comparator
     public void clearCache ()
     {
 
-	this.cache.clear ();
+	this.cache.remove ();
+	this.exp.remove ();
+
+    }
+
+    private Map getCache ()
+    {
+
+	Map m = (Map) this.cache.get ();
+
+	if (m == null)
+	{
+
+	    m = new HashMap ();
+
+	    this.cache.set (m);
+
+	}
+
+	return m;
 
     }
 
@@ -103,8 +125,8 @@ public class ListExpressionComparator implements Comparator
 					  this.q);
 
 	    // Compare them...
-	    int c = Utilities.compare (eo1,
-				       eo2);
+	    int c = ListExpressionComparator.compareValues (eo1,
+							    eo2);
 
 	    if (c == 0)
 	    {
@@ -137,6 +159,8 @@ public class ListExpressionComparator implements Comparator
 
 	this.count++;
 
+	Map cache = this.getCache ();
+
 	Map co = null;
 	boolean get = true;
 	Item it = null;
@@ -232,8 +256,8 @@ public class ListExpressionComparator implements Comparator
 	    }
 	    
 	    // Compare them...
-	    int c = Utilities.compare (eo1,
-				       eo2);
+	    int c = ListExpressionComparator.compareValues (eo1,
+							    eo2);
 
 	    if (c == 0)
 	    {
@@ -259,6 +283,161 @@ public class ListExpressionComparator implements Comparator
 
     }
 
+    /**
+     * Evaluate each of the sort expressions against the object, the values can then be
+     * compared using: {@link #compareSortValues(Object[],Object[])}.  This allows the
+     * expressions to be evaluated once per object rather than once per comparison.
+     *
+     * @param o The object.
+     * @return The values, one for each sort item.
+     * @throws QueryExecutionException If one of the expressions cannot be evaluated.
+     */
+    public Object[] getSortValues (Object o)
+	                           throws QueryExecutionException
+    {
+
+	Object[] vals = new Object[this.size];
+
+	for (int i = 0; i < this.size; i++)
+	{
+
+	    vals[i] = this.getSortValue (o,
+					 i);
+
+	}
+
+	return vals;
+
+    }
+
+    /**
+     * Evaluate a single sort expression against the object.
+     *
+     * @param o The object.
+     * @param i The index of the sort item.
+     * @return The value.
+     * @throws QueryExecutionException If the expression cannot be evaluated.
+     */
+    public Object getSortValue (Object o,
+				int    i)
+	                        throws QueryExecutionException
+    {
+
+	Item it = (Item) this.items.get (i);
+
+	this.q.setCurrentObject (o);
+
+	return it.exp.getValue (o,
+				this.q);
+
+    }
+
+    /**
+     * Return whether the sort item at the index is sorted in descending order.
+     *
+     * @param i The index of the sort item.
+     * @return <code>true</code> if descending.
+     */
+    public boolean isDescending (int i)
+    {
+
+	// For speed reasons, 1 is used here rather than the constant.
+	return ((Item) this.items.get (i)).dir == 1;
+
+    }
+
+    public int getSortItemsCount ()
+    {
+
+	return this.size;
+
+    }
+
+    /**
+     * Compare two sets of values previously gained via: {@link #getSortValues(Object)}, 
+     * the direction of each sort item is taken into account.
+     *
+     * @param v1 The first set of values.
+     * @param v2 The second set of values.
+     * @return A negative integer, zero, or a positive integer as the first set of values is
+     *         less than, equal to, or greater than the second.
+     */
+    public int compareSortValues (Object[] v1,
+				  Object[] v2)
+    {
+
+	for (int i = 0; i < this.size; i++)
+	{
+
+	    // Compare them...
+	    int c = ListExpressionComparator.compareValues (v1[i],
+							    v2[i]);
+
+	    if (c == 0)
+	    {
+
+		// Go to the next...
+		continue;
+
+	    }
+
+	    // For speed reasons, 1 is used here rather than the constant.
+	    if (((Item) this.items.get (i)).dir == 1)
+	    {
+
+		c = -1 * c;
+
+	    }
+
+	    return c;
+
+	}
+
+	return 0;
+
+    }
+
+    /**
+     * Compare two sort values.  This is the same as {@link Utilities#compare(Object,Object)}
+     * except that <code>null</code> is ordered before any other value, so that the ordering
+     * is consistent however the values are compared (<code>Utilities.compare</code> considers
+     * <code>null</code> to be less than any value whichever side it is on).  When an object
+     * comparator has been set, see: {@link Utilities#setObjectComparator(Comparator)}, it
+     * is used for all values, including <code>null</code>.
+     *
+     * @param o1 The first value.
+     * @param o2 The second value.
+     * @return A negative integer, zero, or a positive integer as the first value is
+     *         less than, equal to, or greater than the second.
+     */
+    public static int compareValues (Object o1,
+				     Object o2)
+    {
+
+	if (Utilities.getObjectComparator () == null)
+	{
+
+	    if (o1 == null)
+	    {
+
+		return (o2 == null) ? 0 : -1;
+
+	    }
+
+	    if (o2 == null)
+	    {
+
+		return 1;
+
+	    }
+
+	}
+
+	return Utilities.compare (o1,
+				  o2);
+
+    }
+
     public int compare (Object o1,
 			Object o2)
     {
@@ -281,7 +460,7 @@ public class ListExpressionComparator implements Comparator
 
 	} catch (Exception e) {
 
-	    this.exp = e;
+	    this.exp.set (e);
 
 	    return 0;
 
@@ -292,7 +471,7 @@ public class ListExpressionComparator implements Comparator
     public Exception getException ()
     {
 
-	return this.exp;
+	return (Exception) this.exp.get ();
 
     }
 
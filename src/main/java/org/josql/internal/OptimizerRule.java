@@ -0,0 +1,42 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import org.josql.Query;
+import org.josql.QueryParseException;
+
+import org.josql.expressions.Expression;
+
+/**
+ * A rule used by the {@link ExpressionOptimizer} to rewrite an expression into one that
+ * gives the same results but is cheaper to evaluate.
+ */
+public interface OptimizerRule
+{
+
+    /**
+     * Rewrite the expression.  The expression has been inited and so have any replacements
+     * of its sub-expressions, the expression returned will be inited by the optimizer.
+     *
+     * @param exp The expression.
+     * @param q The Query.
+     * @return The expression to use in place of <b>exp</b> or <b>exp</b> if it can't be rewritten.
+     * @throws QueryParseException If the new expression cannot be created.
+     */
+    public Expression rewrite (Expression exp,
+			       Query      q)
+	                       throws QueryParseException;
+
+}
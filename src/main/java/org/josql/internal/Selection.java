@@ -0,0 +1,280 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.BitSet;
+
+/**
+ * A read-only view of some of the objects in a list, the objects are identified by their
+ * index in the list (a "selection vector") so that passing the objects that match one clause
+ * on to the next doesn't require them to be copied.  The WHERE, HAVING, ORDER BY and LIMIT
+ * clauses each produce a selection over the objects the query is executed on, a new list is
+ * only created once all the clauses have been evaluated.
+ * <p>
+ * The list the selection is over should be a {@link RandomAccess} list and must not be changed
+ * whilst the selection is in use.
+ */
+public class Selection extends AbstractList implements RandomAccess
+{
+
+    private List objs = null;
+    private int[] rows = null;
+    private int start = 0;
+    private int size = 0;
+
+    /**
+     * Create a selection of all the objects in the list.
+     *
+     * @param objs The list.
+     */
+    public Selection (List objs)
+    {
+
+	this (objs,
+	      null,
+	      0,
+	      objs.size ());
+
+    }
+
+    /**
+     * Create a selection of the objects at the first <b>size</b> indexes in <b>rows</b>.
+     * The array is not copied.
+     *
+     * @param objs The list.
+     * @param rows The indexes of the objects in the list.
+     * @param size The number of indexes to use.
+     */
+    public Selection (List  objs,
+		      int[] rows,
+		      int   size)
+    {
+
+	this (objs,
+	      rows,
+	      0,
+	      size);
+
+    }
+
+    private Selection (List  objs,
+		       int[] rows,
+		       int   start,
+		       int   size)
+    {
+
+	this.objs = objs;
+	this.rows = rows;
+	this.start = start;
+	this.size = size;
+
+    }
+
+    /**
+     * Create a selection of the objects in the list whose indexes are set in the BitSet.
+     *
+     * @param objs The list.
+     * @param sel The indexes of the objects.
+     * @return The selection.
+     */
+    public static Selection select (List   objs,
+				    BitSet sel)
+    {
+
+	int[] rows = new int[sel.cardinality ()];
+
+	int c = 0;
+
+	for (int i = sel.nextSetBit (0); i > -1; i = sel.nextSetBit (i + 1))
+	{
+
+	    rows[c++] = i;
+
+	}
+
+	return Selection.select (objs,
+				 rows,
+				 c);
+
+    }
+
+    /**
+     * Create a selection of the objects in the list at the first <b>size</b> indexes in
+     * <b>rows</b>.  If the list is itself a selection then the indexes are mapped to indexes
+     * in the list it is over so that selections don't stack up on each other, in which case
+     * <b>rows</b> is updated in place.
+     *
+     * @param objs The list.
+     * @param rows The indexes of the objects in the list.
+     * @param size The number of indexes to use.
+     * @return The selection.
+     */
+    public static Selection select (List  objs,
+				    int[] rows,
+				    int   size)
+    {
+
+	if (objs instanceof Selection)
+	{
+
+	    Selection s = (Selection) objs;
+
+	    for (int i = 0; i < size; i++)
+	    {
+
+		rows[i] = s.getRow (rows[i]);
+
+	    }
+
+	    objs = s.objs;
+
+	}
+
+	// Don't hold on to a lot of unused space.
+	if (size < (rows.length / 2))
+	{
+
+	    int[] nrows = new int[size];
+
+	    System.arraycopy (rows,
+			      0,
+			      nrows,
+			      0,
+			      size);
+
+	    rows = nrows;
+
+	}
+
+	return new Selection (objs,
+			      rows,
+			      size);
+
+    }
+
+    /**
+     * Get a selection of the objects from <b>from</b> (inclusive) to <b>to</b> (exclusive)
+     * in this selection, the indexes are not copied.
+     *
+     * @param from The start index.
+     * @param to The end index.
+     * @return The selection.
+     */
+    public Selection range (int from,
+			    int to)
+    {
+
+	if ((from < 0)
+	    ||
+	    (to > this.size)
+	    ||
+	    (from > to)
+	   )
+	{
+
+	    throw new IndexOutOfBoundsException ("Range: " + from + " to: " + to + " is not within size: " + this.size);
+
+	}
+
+	return new Selection (this.objs,
+			      this.rows,
+			      this.start + from,
+			      to - from);
+
+    }
+
+    /**
+     * Get the index, in the list the selection is over, of the object at the index in
+     * this selection.
+     *
+     * @param i The index in this selection.
+     * @return The index in the list.
+     */
+    public int getRow (int i)
+    {
+
+	if ((i < 0)
+	    ||
+	    (i >= this.size)
+	   )
+	{
+
+	    throw new IndexOutOfBoundsException ("Index: " + i + " is not within size: " + this.size);
+
+	}
+
+	if (this.rows == null)
+	{
+
+	    return this.start + i;
+
+	}
+
+	return this.rows[this.start + i];
+
+    }
+
+    /**
+     * Get the list the selection is over.
+     *
+     * @return The list.
+     */
+    public List getObjects ()
+    {
+
+	return this.objs;
+
+    }
+
+    /**
+     * Copy the selected objects to a new list.
+     *
+     * @return The new list.
+     */
+    public List toList ()
+    {
+
+	List res = new ArrayList (this.size);
+
+	for (int i = 0; i < this.size; i++)
+	{
+
+	    res.add (this.get (i));
+
+	}
+
+	return res;
+
+    }
+
+    public Object get (int i)
+    {
+
+	return this.objs.get (this.getRow (i));
+
+    }
+
+    public int size ()
+    {
+
+	return this.size;
+
+    }
+
+}
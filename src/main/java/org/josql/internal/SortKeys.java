@@ -0,0 +1,390 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.josql.QueryExecutionException;
+
+/**
+ * The values of the ORDER BY expressions for a list of objects.  Each expression is evaluated
+ * exactly once per object, when the keys are created, and the values are held a column per
+ * sort item.  Sorting then only compares the held values, the objects are sorted by sorting 
+ * their indexes.
+ * <p>
+ * A column where all the values are numbers (and there is no custom object comparator, see: 
+ * {@link Utilities#setObjectComparator(Comparator)}) is held as a <code>double[]</code>, a 
+ * column where all the values are of the same comparable class is compared directly, 
+ * otherwise the values are compared using: 
+ * {@link ListExpressionComparator#compareValues(Object,Object)}.  The ordering is the same 
+ * as that given by the {@link ListExpressionComparator} and the sort is stable.
+ */
+public class SortKeys implements Comparator
+{
+
+    private static final int OBJECT = 0;
+    private static final int DOUBLE = 1;
+    private static final int COMPARABLE = 2;
+
+    private int size = 0;
+    private int[] types = null;
+    private boolean[] desc = null;
+    private double[][] doubles = null;
+    private Object[][] objects = null;
+
+    /**
+     * Evaluate the sort expressions for each of the objects.
+     *
+     * @param comp The comparator that holds the sort expressions.
+     * @param objs The objects.
+     * @throws QueryExecutionException If one of the expressions cannot be evaluated.
+     */
+    public SortKeys (ListExpressionComparator comp,
+		     List                     objs)
+	             throws                   QueryExecutionException
+    {
+
+	this.size = objs.size ();
+
+	int c = comp.getSortItemsCount ();
+
+	this.types = new int[c];
+	this.desc = new boolean[c];
+	this.doubles = new double[c][];
+	this.objects = new Object[c][];
+
+	for (int i = 0; i < c; i++)
+	{
+
+	    this.objects[i] = new Object[this.size];
+	    this.desc[i] = comp.isDescending (i);
+
+	}
+
+	for (int j = 0; j < this.size; j++)
+	{
+
+	    Object o = objs.get (j);
+
+	    for (int i = 0; i < c; i++)
+	    {
+
+		this.objects[i][j] = comp.getSortValue (o,
+							 i);
+
+	    }
+
+	}
+
+	for (int i = 0; i < c; i++)
+	{
+
+	    this.types[i] = this.getType (this.objects[i]);
+
+	    if (this.types[i] == SortKeys.DOUBLE)
+	    {
+
+		Object[] vals = this.objects[i];
+
+		double[] ds = new double[this.size];
+
+		for (int j = 0; j < this.size; j++)
+		{
+
+		    ds[j] = Utilities.getDouble (vals[j]);
+
+		}
+
+		this.doubles[i] = ds;
+		this.objects[i] = null;
+
+	    }
+
+	}
+
+    }
+
+    /**
+     * Get how the values in the column can be compared.
+     */
+    private int getType (Object[] vals)
+    {
+
+	// A custom comparator may compare the values in any way.
+	if (Utilities.getObjectComparator () != null)
+	{
+
+	    return SortKeys.OBJECT;
+
+	}
+
+	boolean nums = true;
+
+	Class c = null;
+
+	for (int j = 0; j < vals.length; j++)
+	{
+
+	    Object v = vals[j];
+
+	    if (v == null)
+	    {
+
+		return SortKeys.OBJECT;
+
+	    }
+
+	    if (!(v instanceof Number))
+	    {
+
+		nums = false;
+
+	    }
+
+	    if (c == null)
+	    {
+
+		c = v.getClass ();
+
+	    } else {
+
+		if (c != v.getClass ())
+		{
+
+		    c = Object.class;
+
+		}
+
+	    }
+
+	}
+
+	if (nums)
+	{
+
+	    return SortKeys.DOUBLE;
+
+	}
+
+	if ((c != null)
+	    &&
+	    (c != Object.class)
+	    &&
+	    (Comparable.class.isAssignableFrom (c))
+	   )
+	{
+
+	    return SortKeys.COMPARABLE;
+
+	}
+
+	return SortKeys.OBJECT;
+
+    }
+
+    /**
+     * Get the indexes of the objects in sorted order.
+     *
+     * @param pool If not <code>null</code> then the indexes are sorted in parallel, using
+     *             {@link Arrays#parallelSort(Object[],Comparator)}, by the threads in the pool.
+     * @return The indexes.
+     */
+    public int[] sort (ForkJoinPool pool)
+    {
+
+	final Integer[] rows = new Integer[this.size];
+
+	for (int i = 0; i < this.size; i++)
+	{
+
+	    rows[i] = Integer.valueOf (i);
+
+	}
+
+	final Comparator comp = this;
+
+	if (pool != null)
+	{
+
+	    pool.invoke (new RecursiveAction ()
+			 {
+
+			     protected void compute ()
+			     {
+
+				 Arrays.parallelSort (rows,
+						      comp);
+
+			     }
+
+			 });
+
+	} else {
+
+	    Arrays.sort (rows,
+			 comp);
+
+	}
+
+	int[] res = new int[this.size];
+
+	for (int i = 0; i < this.size; i++)
+	{
+
+	    res[i] = rows[i].intValue ();
+
+	}
+
+	return res;
+
+    }
+
+    /**
+     * Compare the objects at the two indexes.
+     *
+     * @param r1 The index of the first object.
+     * @param r2 The index of the second object.
+     * @return A negative integer, zero, or a positive integer as the first object sorts before,
+     *         the same as, or after the second.
+     */
+    public int compareRows (int r1,
+			    int r2)
+    {
+
+	for (int i = 0; i < this.types.length; i++)
+	{
+
+	    int c = 0;
+
+	    switch (this.types[i])
+	    {
+
+	    case SortKeys.DOUBLE :
+	    {
+
+		c = Double.compare (this.doubles[i][r1],
+				    this.doubles[i][r2]);
+
+		break;
+
+	    }
+
+	    case SortKeys.COMPARABLE :
+	    {
+
+		c = ((Comparable) this.objects[i][r1]).compareTo (this.objects[i][r2]);
+
+		break;
+
+	    }
+
+	    default :
+	    {
+
+		c = ListExpressionComparator.compareValues (this.objects[i][r1],
+							    this.objects[i][r2]);
+
+	    }
+
+	    }
+
+	    if (c == 0)
+	    {
+
+		// Go to the next...
+		continue;
+
+	    }
+
+	    if (this.desc[i])
+	    {
+
+		c = -1 * c;
+
+	    }
+
+	    return c;
+
+	}
+
+	return 0;
+
+    }
+
+    /**
+     * Get the value of a sort item for an object, the value of a column of numbers is
+     * returned as a <code>Double</code> which compares the same as the original value.
+     *
+     * @param i The index of the sort item.
+     * @param r The index of the object.
+     * @return The value.
+     */
+    public Object getValue (int i,
+			    int r)
+    {
+
+	if (this.types[i] == SortKeys.DOUBLE)
+	{
+
+	    return Double.valueOf (this.doubles[i][r]);
+
+	}
+
+	return this.objects[i][r];
+
+    }
+
+    public int compare (Object o1,
+			Object o2)
+    {
+
+	return this.compareRows (((Integer) o1).intValue (),
+				 ((Integer) o2).intValue ());
+
+    }
+
+    /**
+     * Sort the list, in place, using the sort expressions of the comparator.
+     *
+     * @param comp The comparator that holds the sort expressions.
+     * @param objs The list to sort.
+     * @throws QueryExecutionException If one of the expressions cannot be evaluated.
+     */
+    public static void sort (ListExpressionComparator comp,
+			     List                     objs)
+	                     throws                   QueryExecutionException
+    {
+
+	int[] rows = new SortKeys (comp,
+				   objs).sort (null);
+
+	Object[] arr = objs.toArray ();
+
+	for (int i = 0; i < rows.length; i++)
+	{
+
+	    objs.set (i,
+		      arr[rows[i]]);
+
+	}
+
+    }
+
+}
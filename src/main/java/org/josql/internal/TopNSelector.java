@@ -0,0 +1,187 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.josql.QueryExecutionException;
+
+/**
+ * Selects the first N objects, according to the ORDER BY clause, from the objects
+ * added to it without sorting all of them.  A bounded heap is used that keeps the 
+ * "worst" of the current N objects at the top, a new object is only kept if it
+ * sorts before that object.  The sort values of each object are evaluated once, when the
+ * object is added, rather than on every comparison.
+ * <p>
+ * Objects with equal sort values are kept in the order they were added, this gives 
+ * the same results as a (stable) sort of all the objects followed by taking the first 
+ * N.
+ */
+public class TopNSelector
+{
+
+    private ListExpressionComparator comp = null;
+    private int n = 0;
+    private PriorityQueue heap = null;
+    private int ind = 0;
+
+    public TopNSelector (ListExpressionComparator comp,
+			 int                      n)
+    {
+
+	this.comp = comp;
+	this.n = n;
+
+	final ListExpressionComparator c = comp;
+
+	// The heap is ordered "worst" first.
+	this.heap = new PriorityQueue (n + 1,
+				       new Comparator ()
+				       {
+
+					   public int compare (Object o1,
+							       Object o2)
+					   {
+
+					       return -TopNSelector.compare (c,
+									     (Entry) o1,
+									     (Entry) o2);
+
+					   }
+
+				       });
+
+    }
+
+    /**
+     * Offer an object to the selector, it will be kept if it is one of the first N objects
+     * seen so far.
+     *
+     * @param o The object.
+     * @throws QueryExecutionException If the sort values for the object cannot be evaluated.
+     */
+    public void add (Object o)
+	             throws QueryExecutionException
+    {
+
+	if (this.n < 1)
+	{
+
+	    return;
+
+	}
+
+	Entry e = new Entry ();
+	e.obj = o;
+	e.ind = this.ind++;
+	e.vals = this.comp.getSortValues (o);
+
+	if (this.heap.size () < this.n)
+	{
+
+	    this.heap.add (e);
+
+	    return;
+
+	}
+
+	// Only keep it if it sorts before the current worst, since the index is always
+	// greater an equal object sorts after it.
+	if (TopNSelector.compare (this.comp,
+				  e,
+				  (Entry) this.heap.peek ()) < 0)
+	{
+
+	    this.heap.poll ();
+	    this.heap.add (e);
+
+	}
+
+    }
+
+    /**
+     * Get the selected objects in sorted order.
+     *
+     * @return The objects.
+     */
+    public List getResults ()
+    {
+
+	Entry[] es = (Entry[]) this.heap.toArray (new Entry[this.heap.size ()]);
+
+	final ListExpressionComparator c = this.comp;
+
+	Arrays.sort (es,
+		     new Comparator ()
+		     {
+
+			 public int compare (Object o1,
+					     Object o2)
+			 {
+
+			     return TopNSelector.compare (c,
+							  (Entry) o1,
+							  (Entry) o2);
+
+			 }
+
+		     });
+
+	List res = new ArrayList (es.length);
+
+	for (int i = 0; i < es.length; i++)
+	{
+
+	    res.add (es[i].obj);
+
+	}
+
+	return res;
+
+    }
+
+    private static int compare (ListExpressionComparator c,
+				Entry                    e1,
+				Entry                    e2)
+    {
+
+	int r = c.compareSortValues (e1.vals,
+				     e2.vals);
+
+	if (r != 0)
+	{
+
+	    return r;
+
+	}
+
+	return (e1.ind < e2.ind) ? -1 : ((e1.ind == e2.ind) ? 0 : 1);
+
+    }
+
+    private static class Entry
+    {
+
+	public Object obj = null;
+	public Object[] vals = null;
+	public int ind = 0;
+
+    }
+
+}
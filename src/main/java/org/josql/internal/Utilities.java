@@ -149,7 +149,14 @@ public class Utilities
     {
         
         Utilities.objComp = c;
-        
+
+    }
+
+    public static Comparator getObjectComparator ()
+    {
+
+	return Utilities.objComp;
+
     }
 
     public static Class getObjectClass (Class c)
@@ -610,6 +617,70 @@ public class Utilities
 
     }
 
+    /**
+     * The primitive version of: {@link #matches(Object,Object,boolean,int,boolean)}, the
+     * values are compared in the same way as two <code>java.lang.Number</code> objects would be
+     * by: {@link #compare(Object,Object)}.  Note: this ignores any object comparator, callers
+     * should check: {@link #getObjectComparator()} first.
+     *
+     * @param l The LHS value.
+     * @param r The RHS value.
+     * @param type The type of comparison to make, should be one of:
+     *             {@link Utilities#GT}, {@link Utilities#GTE}, {@link Utilities#LT}
+     *             {@link Utilities#LTE}, {@link Utilities#EQ}.
+     * @param not Whether the result should be reversed.
+     * @return <code>true</code> if <b>l</b> matches <b>r</b>.
+     */
+    public static boolean matches (double  l,
+				   double  r,
+				   int     type,
+				   boolean not)
+    {
+
+	int c = Double.compare (l,
+				r);
+
+	boolean m = false;
+
+	if (type == Utilities.GT)
+	{
+
+	    m = c > 0;
+
+	}
+
+	if (type == Utilities.GTE)
+	{
+
+	    m = c >= 0;
+
+	}
+
+	if (type == Utilities.LT)
+	{
+
+	    m = c < 0;
+
+	}
+
+	if (type == Utilities.LTE)
+	{
+
+	    m = c <= 0;
+
+	}
+
+	if (type == Utilities.EQ)
+	{
+
+	    m = c == 0;
+
+	}
+
+	return m != not;
+
+    }
+
     private static Object lowerValue (Object  o,
 				      boolean ignoreCase)
     {
@@ -780,7 +851,8 @@ public class Utilities
 	   )
 	{
 
-	    return Utilities.getDoubleObject (o1).compareTo (Utilities.getDoubleObject (o2));
+	    return Double.compare (Utilities.getDouble (o1),
+				   Utilities.getDouble (o2));
 
 	}
 
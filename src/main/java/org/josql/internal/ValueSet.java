@@ -0,0 +1,445 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.josql.Query;
+
+/**
+ * A set of values that can find whether a value is equal to any of them without comparing it
+ * to each in turn.  The values are hashed so that they match in the same way as
+ * {@link Utilities#isEquals(Object,Object)} (with the value being looked for as the first
+ * argument), that is numbers are compared by their <code>double</code> value and anything
+ * else is compared to a number or a string by its string value.
+ * <p>
+ * A value of the same class as (or a super-class of) one of the values in the set that implements
+ * <code>java.lang.Comparable</code> would be compared using <code>compareTo</code> which can't
+ * be hashed, for these {@link #canCheck(Object)} returns <code>false</code> and the caller
+ * should compare the value to each of the values itself.
+ */
+public class ValueSet
+{
+
+    /**
+     * The maximum number of sets kept for each owner for an execution, see:
+     * {@link #getExecutionSet(Query,Object,Object[],boolean)}.
+     */
+    public static final int MAX_CACHED_SETS = 100;
+
+    private static final Object SEEN = new Object ();
+
+    private boolean ignoreCase = false;
+    private boolean hasNull = false;
+    private int size = 0;
+    private Set nums = new HashSet ();
+    private Set strs = new HashSet ();
+    private Set all = new HashSet ();
+    private Set comps = new HashSet ();
+
+    /**
+     * Create a new set.
+     *
+     * @param ignoreCase When <code>true</code> the values are compared by their string values
+     *                   in the same way as <code>String.equalsIgnoreCase</code>.
+     */
+    public ValueSet (boolean ignoreCase)
+    {
+
+	this.ignoreCase = ignoreCase;
+
+    }
+
+    /**
+     * Add the value, if it is a Collection then each of its items is added instead, if it
+     * is a Map then each of its keys.
+     *
+     * @param v The value.
+     */
+    public void addAll (Object v)
+    {
+
+	if (v instanceof Map)
+	{
+
+	    v = ((Map) v).keySet ();
+
+	}
+
+	if (v instanceof Collection)
+	{
+
+	    Iterator iter = ((Collection) v).iterator ();
+
+	    while (iter.hasNext ())
+	    {
+
+		this.add (iter.next ());
+
+	    }
+
+	    return;
+
+	}
+
+	this.add (v);
+
+    }
+
+    /**
+     * Add the value.
+     *
+     * @param v The value, may be <code>null</code>.
+     */
+    public void add (Object v)
+    {
+
+	this.size++;
+
+	if (v == null)
+	{
+
+	    this.hasNull = true;
+
+	    return;
+
+	}
+
+	if (this.ignoreCase)
+	{
+
+	    this.all.add (ValueSet.fold (v.toString ()));
+
+	    return;
+
+	}
+
+	if (v instanceof Number)
+	{
+
+	    this.nums.add (Double.valueOf (((Number) v).doubleValue ()));
+
+	} else {
+
+	    if ((v instanceof Comparable)
+		&&
+		(!(v instanceof String))
+	       )
+	    {
+
+		this.comps.add (v.getClass ());
+
+	    }
+
+	    this.strs.add (v.toString ());
+
+	}
+
+	this.all.add (v.toString ());
+
+    }
+
+    public boolean isEmpty ()
+    {
+
+	return this.size == 0;
+
+    }
+
+    /**
+     * Return whether {@link #contains(Object)} can be used for the value.
+     *
+     * @param v The value.
+     * @return <code>false</code> if the value would be compared to one of the values in the set
+     *         using <code>compareTo</code>.
+     */
+    public boolean canCheck (Object v)
+    {
+
+	if ((v == null)
+	    ||
+	    (this.ignoreCase)
+	    ||
+	    (v instanceof Number)
+	    ||
+	    (v instanceof String)
+	    ||
+	    (!(v instanceof Comparable))
+	    ||
+	    (this.comps.size () == 0)
+	   )
+	{
+
+	    return true;
+
+	}
+
+	Class c = v.getClass ();
+
+	Iterator iter = this.comps.iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    if (c.isAssignableFrom ((Class) iter.next ()))
+	    {
+
+		return false;
+
+	    }
+
+	}
+
+	return true;
+
+    }
+
+    /**
+     * Return whether the value is equal to any of the values in the set, {@link #canCheck(Object)}
+     * should be called first.
+     *
+     * @param v The value.
+     * @return <code>true</code> if the value is in the set.
+     */
+    public boolean contains (Object v)
+    {
+
+	if (v == null)
+	{
+
+	    return this.hasNull;
+
+	}
+
+	if (this.ignoreCase)
+	{
+
+	    return this.all.contains (ValueSet.fold (v.toString ()));
+
+	}
+
+	if (v instanceof Number)
+	{
+
+	    // Numbers only match other values by their string value.
+	    return (this.nums.contains (Double.valueOf (((Number) v).doubleValue ())))
+		   ||
+		   (this.strs.contains (v.toString ()));
+
+	}
+
+	return this.all.contains (v.toString ());
+
+    }
+
+    /**
+     * Get a set of the values for the current execution of the query.  The sets are kept
+     * for the execution keyed by the values (by identity), so when the same values, such as the
+     * results of a sub-query, are used again the same set is returned.  Since creating the set
+     * is more work than comparing a value to each of the values it is only created the second
+     * time the values are seen.
+     *
+     * @param q The Query.
+     * @param owner The key for the sets in the execution, generally the expression using them.
+     * @param vals The values, see: {@link #addAll(Object)}.
+     * @param ignoreCase Whether the set should ignore case.
+     * @return The set or <code>null</code> if the values haven't been seen before or the query
+     *         isn't being executed.
+     */
+    public static ValueSet getExecutionSet (Query    q,
+					    Object   owner,
+					    Object[] vals,
+					    boolean  ignoreCase)
+    {
+
+	ExecutionContext ctx = q.getExecutionContext ();
+
+	if (ctx.getResults () == null)
+	{
+
+	    return null;
+
+	}
+
+	Map sets = (Map) ctx.getExecutionValue (owner);
+
+	if (sets == null)
+	{
+
+	    // Another thread evaluating for the same execution may be creating it too.
+	    sets = new LinkedHashMap (16,
+				      0.75f,
+				      true)
+	    {
+
+		protected boolean removeEldestEntry (Map.Entry eldest)
+		{
+
+		    return this.size () > ValueSet.MAX_CACHED_SETS;
+
+		}
+
+	    };
+
+	    sets = (Map) ctx.setExecutionValueIfAbsent (owner,
+							sets);
+
+	}
+
+	Key k = new Key (vals);
+
+	synchronized (sets)
+	{
+
+	    Object s = sets.get (k);
+
+	    if (s == null)
+	    {
+
+		sets.put (k,
+			  ValueSet.SEEN);
+
+		return null;
+
+	    }
+
+	    if (s != ValueSet.SEEN)
+	    {
+
+		return (ValueSet) s;
+
+	    }
+
+	}
+
+	ValueSet set = new ValueSet (ignoreCase);
+
+	for (int i = 0; i < vals.length; i++)
+	{
+
+	    set.addAll (vals[i]);
+
+	}
+
+	synchronized (sets)
+	{
+
+	    sets.put (k,
+		      set);
+
+	}
+
+	return set;
+
+    }
+
+    /**
+     * Fold the case of the string in the same way as <code>String.equalsIgnoreCase</code>.
+     */
+    private static String fold (String s)
+    {
+
+	int l = s.length ();
+
+	char[] cs = new char[l];
+
+	for (int i = 0; i < l; i++)
+	{
+
+	    cs[i] = Character.toLowerCase (Character.toUpperCase (s.charAt (i)));
+
+	}
+
+	return new String (cs);
+
+    }
+
+    /**
+     * Values compared by identity.
+     */
+    private static class Key
+    {
+
+	private Object[] vals = null;
+	private int hash = 0;
+
+	private Key (Object[] vals)
+	{
+
+	    this.vals = vals;
+
+	    int h = 1;
+
+	    for (int i = 0; i < vals.length; i++)
+	    {
+
+		h = (31 * h) + System.identityHashCode (vals[i]);
+
+	    }
+
+	    this.hash = h;
+
+	}
+
+	public int hashCode ()
+	{
+
+	    return this.hash;
+
+	}
+
+	public boolean equals (Object o)
+	{
+
+	    if (!(o instanceof Key))
+	    {
+
+		return false;
+
+	    }
+
+	    Object[] ovals = ((Key) o).vals;
+
+	    if (ovals.length != this.vals.length)
+	    {
+
+		return false;
+
+	    }
+
+	    for (int i = 0; i < this.vals.length; i++)
+	    {
+
+		if (this.vals[i] != ovals[i])
+		{
+
+		    return false;
+
+		}
+
+	    }
+
+	    return true;
+
+	}
+
+    }
+
+}
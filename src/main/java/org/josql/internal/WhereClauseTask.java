@@ -0,0 +1,289 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.List;
+
+import java.util.concurrent.RecursiveAction;
+
+import org.josql.Query;
+import org.josql.QueryExecutionException;
+
+import org.josql.expressions.Expression;
+
+/**
+ * A fork/join task that evaluates an expression (generally the WHERE clause) against
+ * a range of the objects in a list.  The range is split in half until it is no larger
+ * than the chunk size, each chunk is then evaluated by a worker thread using its own
+ * {@link ExecutionContext} (copied from the context of the executing thread) so that
+ * the "current object" is never shared.  Each chunk also has its own results, and so its
+ * own save values, see: {@link WorkerResults}.
+ * <p>
+ * The results are recorded in a <code>boolean</code> array indexed by the position of the
+ * object in the list, this allows the matches to be collected in the original order.
+ */
+public class WhereClauseTask extends RecursiveAction
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private Query q = null;
+    private Expression exp = null;
+    private ExecutionContext ctx = null;
+    private List objs = null;
+    private boolean[] matches = null;
+    private int start = 0;
+    private int end = 0;
+    private int chunkSize = 0;
+    private Errors errors = null;
+    private WorkerResults parts = null;
+
+    /**
+     * Create a new task that evaluates the expression against all the objects in the list.
+     *
+     * @param q The Query.
+     * @param exp The expression to evaluate.
+     * @param ctx The context of the thread that is executing the query.
+     * @param objs The objects.
+     * @param chunkSize The maximum number of objects that a single task should evaluate.
+     */
+    public WhereClauseTask (Query            q,
+			    Expression       exp,
+			    ExecutionContext ctx,
+			    List             objs,
+			    int              chunkSize)
+    {
+
+	this.q = q;
+	this.exp = exp;
+	this.ctx = ctx;
+	this.objs = objs;
+	this.start = 0;
+	this.end = objs.size ();
+	this.chunkSize = Math.max (1,
+				   chunkSize);
+	this.matches = new boolean[this.end];
+	this.errors = new Errors ();
+	this.parts = new WorkerResults (ctx.getResults ());
+
+    }
+
+    private WhereClauseTask (WhereClauseTask parent,
+			     int             start,
+			     int             end)
+    {
+
+	this.q = parent.q;
+	this.exp = parent.exp;
+	this.ctx = parent.ctx;
+	this.objs = parent.objs;
+	this.matches = parent.matches;
+	this.chunkSize = parent.chunkSize;
+	this.errors = parent.errors;
+	this.parts = parent.parts;
+	this.start = start;
+	this.end = end;
+
+    }
+
+    /**
+     * Get whether the object at the specified index matched, only valid once the task
+     * has completed.
+     *
+     * @return The matches.
+     */
+    public boolean[] getMatches ()
+    {
+
+	return this.matches;
+
+    }
+
+    /**
+     * Get the results of the chunks, use {@link WorkerResults#merge(org.josql.QueryResults)}
+     * once the task has completed to copy the save values they set into the results of the execution.
+     *
+     * @return The results of the chunks.
+     */
+    public WorkerResults getWorkerResults ()
+    {
+
+	return this.parts;
+
+    }
+
+    /**
+     * Get the first exception that occurred whilst evaluating the expression, if any.
+     *
+     * @return The exception or <code>null</code> if the evaluation succeeded.
+     */
+    public QueryExecutionException getEvaluationException ()
+    {
+
+	return this.errors.exp;
+
+    }
+
+    protected void compute ()
+    {
+
+	if ((this.end - this.start) > this.chunkSize)
+	{
+
+	    int mid = (this.start + this.end) >>> 1;
+
+	    invokeAll (new WhereClauseTask (this,
+					    this.start,
+					    mid),
+		       new WhereClauseTask (this,
+					    mid,
+					    this.end));
+
+	    return;
+
+	}
+
+	// Keep whatever context the worker thread already has, it may be in the
+	// middle of another execution.
+	ExecutionContext prev = this.q.peekExecutionContext ();
+
+	ExecutionContext wctx = new ExecutionContext (this.ctx);
+
+	wctx.setResults (this.parts.create (this.start));
+
+	this.q.setExecutionContext (wctx);
+
+	try
+	{
+
+	    if (this.q.isWantBatchEvaluation ())
+	    {
+
+		this.selectBatches ();
+
+		return;
+
+	    }
+
+	    for (int i = this.start; i < this.end; i++)
+	    {
+
+		if (this.errors.exp != null)
+		{
+
+		    // Another chunk has failed, no point carrying on.
+		    return;
+
+		}
+
+		Object o = this.objs.get (i);
+
+		wctx.setCurrentObject (o);
+
+		this.matches[i] = this.exp.isTrue (o,
+						   this.q);
+
+	    }
+
+	} catch (QueryExecutionException e) {
+
+	    this.errors.set (e);
+
+	} catch (Exception e) {
+
+	    this.errors.set (new QueryExecutionException ("Unable to evaluate expression: " +
+							  this.exp +
+							  " in parallel",
+							  e));
+
+	} finally {
+
+	    this.q.setExecutionContext (prev);
+
+	}
+
+    }
+
+    /**
+     * Evaluate the expression against the objects of this chunk a batch at a time, see:
+     * {@link Expression#select(Object[],int[],int,int[],Query)}.
+     */
+    private void selectBatches ()
+	                        throws QueryExecutionException
+    {
+
+	Object[] arr = this.objs.subList (this.start,
+					  this.end).toArray ();
+
+	int[] sel = new int[Expression.BATCH_SIZE];
+	int[] res = new int[Expression.BATCH_SIZE];
+
+	for (int b = 0; b < arr.length; b += Expression.BATCH_SIZE)
+	{
+
+	    if (this.errors.exp != null)
+	    {
+
+		return;
+
+	    }
+
+	    int n = Math.min (Expression.BATCH_SIZE,
+			      arr.length - b);
+
+	    for (int i = 0; i < n; i++)
+	    {
+
+		sel[i] = b + i;
+
+	    }
+
+	    int c = this.exp.select (arr,
+				     sel,
+				     n,
+				     res,
+				     this.q);
+
+	    for (int i = 0; i < c; i++)
+	    {
+
+		this.matches[this.start + res[i]] = true;
+
+	    }
+
+	}
+
+    }
+
+    private static class Errors
+    {
+
+	private volatile QueryExecutionException exp = null;
+
+	private synchronized void set (QueryExecutionException e)
+	{
+
+	    if (this.exp == null)
+	    {
+
+		this.exp = e;
+
+	    }
+
+	}
+
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.internal;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.Iterator;
+
+import org.josql.QueryResults;
+
+/**
+ * The results of the worker threads of a parallel execution.  Each chunk of the objects is
+ * given its own {@link QueryResults}, starting with a copy of the save values of the execution,
+ * so that functions that set save values never share a map between threads.  Once all the
+ * chunks have been evaluated the save values that each chunk changed are copied back in
+ * the order of the chunks, so the final values are those that evaluating the objects in
+ * order would have left.
+ */
+public class WorkerResults
+{
+
+    private boolean none = false;
+    private Map base = null;
+    private Map parts = new TreeMap ();
+
+    /**
+     * Create the results for the workers of an execution.
+     *
+     * @param qr The results of the execution, if <code>null</code> the workers have none either.
+     */
+    public WorkerResults (QueryResults qr)
+    {
+
+	if (qr == null)
+	{
+
+	    this.none = true;
+
+	    return;
+
+	}
+
+	Map svs = qr.getSaveValues ();
+
+	if (svs != null)
+	{
+
+	    this.base = new HashMap (svs);
+
+	}
+
+    }
+
+    /**
+     * Create the results for the chunk of objects that starts at the specified index.
+     *
+     * @param start The index of the first object in the chunk.
+     * @return The results for the chunk.
+     */
+    public synchronized QueryResults create (int start)
+    {
+
+	if (this.none)
+	{
+
+	    return null;
+
+	}
+
+	QueryResults r = new QueryResults ();
+
+	if (this.base != null)
+	{
+
+	    r.getSaveValues ().putAll (this.base);
+
+	}
+
+	this.parts.put (Integer.valueOf (start),
+			r);
+
+	return r;
+
+    }
+
+    /**
+     * Copy the save values changed by the chunks into the results of the execution.
+     *
+     * @param qr The results of the execution.
+     */
+    public synchronized void merge (QueryResults qr)
+    {
+
+	if (qr == null)
+	{
+
+	    return;
+
+	}
+
+	Map svs = qr.getSaveValues ();
+
+	if (svs == null)
+	{
+
+	    return;
+
+	}
+
+	Iterator iter = this.parts.values ().iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    Iterator eiter = ((QueryResults) iter.next ()).getSaveValues ().entrySet ().iterator ();
+
+	    while (eiter.hasNext ())
+	    {
+
+		Map.Entry e = (Map.Entry) eiter.next ();
+
+		Object k = e.getKey ();
+		Object v = e.getValue ();
+
+		if ((this.base == null)
+		    ||
+		    (!this.base.containsKey (k))
+		    ||
+		    (this.base.get (k) != v)
+		   )
+		{
+
+		    svs.put (k,
+			     v);
+
+		}
+
+	    }
+
+	}
+
+    }
+
+}
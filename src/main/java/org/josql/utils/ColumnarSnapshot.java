@@ -0,0 +1,985 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.utils;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.BitSet;
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.gentlyweb.utils.Getter;
+
+import org.josql.internal.Utilities;
+
+/**
+ * A read-only List of objects of a single class whose accessor values have been read once
+ * and held in columns.  When a Query is executed against a ColumnarSnapshot the accessors
+ * held in the snapshot are read from the columns rather than from the objects, and the parts
+ * of the WHERE clause that compare an accessor to a constant (or bind variable) are evaluated
+ * by scanning the columns rather than object by object.  The results of the query are still
+ * the original objects.
+ * <p>
+ * The values are held in one of three ways, depending upon what the accessor returns:
+ * <ul>
+ *   <li>Numbers, when all the (non-null) values are of the same class (and a <code>long</code>
+ *       can be held exactly as a <code>double</code>), are held as primitive <code>double</code>s.</li>
+ *   <li>Strings, Booleans and Characters are held as an index into a sorted dictionary of
+ *       the distinct values.</li>
+ *   <li>Anything else is held as an object, this still saves the value being read from the
+ *       object each time.</li>
+ * </ul>
+ * The snapshot is not updated when the objects change, create a new snapshot instead.
+ * Accessors not in the snapshot are read from the objects as usual.
+ * <p>
+ * Usage:
+ * <pre>
+ *   List accs = new ArrayList ();
+ *   accs.add ("department");
+ *   accs.add ("salary");
+ *
+ *   ColumnarSnapshot objs = new ColumnarSnapshot (Employee.class,
+ *                                                 employees,
+ *                                                 accs);
+ *
+ *   Query q = new Query ();
+ *   q.parse ("SELECT * FROM Employee WHERE department = 'Sales' AND salary > 50000");
+ *
+ *   QueryResults qr = q.execute (objs);
+ * </pre>
+ */
+public class ColumnarSnapshot extends AbstractList implements RandomAccess
+{
+
+    private Class c = null;
+    private Object[] objs = null;
+    private int[] rows = null;
+    private Map columns = new LinkedHashMap ();
+
+    /**
+     * Create a new snapshot, the values of the accessors are read from each of the objects.
+     *
+     * @param c The class of the objects.
+     * @param objs The objects.
+     * @param accessors The accessors to hold, as they would appear in a Query, for example:
+     *                  <code>name</code> or <code>file.length</code>.
+     * @throws IllegalArgumentException If an accessor is not valid for the class or a value
+     *                                  cannot be read from one of the objects.
+     */
+    public ColumnarSnapshot (Class      c,
+			     List       objs,
+			     Collection accessors)
+	                     throws     IllegalArgumentException
+    {
+
+	this.c = c;
+	this.objs = objs.toArray ();
+
+	this.initRows ();
+
+	Object[] accs = accessors.toArray ();
+
+	for (int i = 0; i < accs.length; i++)
+	{
+
+	    String acc = (String) accs[i];
+
+	    if (this.columns.containsKey (acc))
+	    {
+
+		continue;
+
+	    }
+
+	    this.columns.put (acc,
+			      this.createColumn (new Getter (acc,
+							     c)));
+
+	}
+
+    }
+
+    /**
+     * Get the class of the objects in the snapshot.
+     *
+     * @return The class.
+     */
+    public Class getObjectClass ()
+    {
+
+	return this.c;
+
+    }
+
+    /**
+     * Get the column for the accessor.
+     *
+     * @param accessor The accessor.
+     * @return The column or <code>null</code> if the accessor is not held.
+     */
+    public Column getColumn (String accessor)
+    {
+
+	return (Column) this.columns.get (accessor);
+
+    }
+
+    /**
+     * Get the accessors held by the snapshot.
+     *
+     * @return The accessors, in the order they were passed to the constructor.
+     */
+    public List getAccessors ()
+    {
+
+	return new ArrayList (this.columns.keySet ());
+
+    }
+
+    /**
+     * Get the row of the object, i.e. its index in the list.
+     *
+     * @param o The object.
+     * @return The row or -1 if the object is not in the snapshot.  If the object is in
+     *         the snapshot more than once then any of its rows may be returned.
+     */
+    public int getRow (Object o)
+    {
+
+	if (o == null)
+	{
+
+	    return -1;
+
+	}
+
+	int m = this.rows.length - 1;
+
+	int i = System.identityHashCode (o) & m;
+
+	while (true)
+	{
+
+	    int r = this.rows[i];
+
+	    if (r == 0)
+	    {
+
+		return -1;
+
+	    }
+
+	    if (this.objs[r - 1] == o)
+	    {
+
+		return r - 1;
+
+	    }
+
+	    i = (i + 1) & m;
+
+	}
+
+    }
+
+    /**
+     * Get the objects in the rows.
+     *
+     * @param rows The rows.
+     * @return The objects, in row order.
+     */
+    public List getObjects (BitSet rows)
+    {
+
+	List res = new ArrayList (rows.cardinality ());
+
+	for (int i = rows.nextSetBit (0); i > -1; i = rows.nextSetBit (i + 1))
+	{
+
+	    res.add (this.objs[i]);
+
+	}
+
+	return res;
+
+    }
+
+    public Object get (int i)
+    {
+
+	return this.objs[i];
+
+    }
+
+    public int size ()
+    {
+
+	return this.objs.length;
+
+    }
+
+    /**
+     * Build the open addressing table used to find the row of an object, keyed on the
+     * identity hash code of the object.  Entries are the row plus one so that zero means empty.
+     */
+    private void initRows ()
+    {
+
+	int s = 2;
+
+	while (s < this.objs.length * 2)
+	{
+
+	    s = s << 1;
+
+	}
+
+	this.rows = new int[s];
+
+	int m = s - 1;
+
+	for (int r = 0; r < this.objs.length; r++)
+	{
+
+	    Object o = this.objs[r];
+
+	    if (o == null)
+	    {
+
+		continue;
+
+	    }
+
+	    int i = System.identityHashCode (o) & m;
+
+	    while (this.rows[i] != 0)
+	    {
+
+		if (this.objs[this.rows[i] - 1] == o)
+		{
+
+		    // Already have a row for the object.
+		    break;
+
+		}
+
+		i = (i + 1) & m;
+
+	    }
+
+	    if (this.rows[i] == 0)
+	    {
+
+		this.rows[i] = r + 1;
+
+	    }
+
+	}
+
+    }
+
+    private Column createColumn (Getter get)
+	                         throws IllegalArgumentException
+    {
+
+	Object[] vals = new Object[this.objs.length];
+
+	Class vc = null;
+	boolean same = true;
+
+	for (int i = 0; i < vals.length; i++)
+	{
+
+	    Object o = this.objs[i];
+
+	    if (o == null)
+	    {
+
+		continue;
+
+	    }
+
+	    try
+	    {
+
+		vals[i] = get.getValue (o);
+
+	    } catch (Exception e) {
+
+		throw new IllegalArgumentException ("Unable to get value for column: " +
+						    get.getAccessor () +
+						    " from object: " +
+						    o +
+						    ", reason: " +
+						    e.getMessage ());
+
+	    }
+
+	    if (vals[i] == null)
+	    {
+
+		continue;
+
+	    }
+
+	    if (vc == null)
+	    {
+
+		vc = vals[i].getClass ();
+
+	    } else {
+
+		if (vals[i].getClass () != vc)
+		{
+
+		    same = false;
+
+		}
+
+	    }
+
+	}
+
+	if ((same)
+	    &&
+	    (vc != null)
+	   )
+	{
+
+	    if (NumberColumn.isSupported (vc,
+					  vals))
+	    {
+
+		return new NumberColumn (vc,
+					 vals);
+
+	    }
+
+	    if ((vc == String.class)
+		||
+		(vc == Boolean.class)
+		||
+		(vc == Character.class)
+	       )
+	    {
+
+		return new DictionaryColumn (vals);
+
+	    }
+
+	}
+
+	return new Column (vals,
+			   vals.length);
+
+    }
+
+    /**
+     * The values of an accessor for each row of the snapshot.  The selection methods set
+     * the bits of the rows whose value matches in the same way that
+     * {@link Utilities#compare(Object,Object)} would (when there is no object comparator),
+     * they return <code>false</code> if the column can't compare its values to the value
+     * passed in, the caller should then compare the values itself.  Rows with a
+     * <code>null</code> value never match.
+     */
+    public static class Column
+    {
+
+	private Object[] values = null;
+	private int size = 0;
+
+	private Column (Object[] values,
+			int      size)
+	{
+
+	    this.values = values;
+	    this.size = size;
+
+	}
+
+	/**
+	 * Get the value of the row, this is the same value that was read from the object.
+	 *
+	 * @param row The row.
+	 * @return The value.
+	 */
+	public Object getValue (int row)
+	{
+
+	    return this.values[row];
+
+	}
+
+	/**
+	 * Get the value of the row as a double, the value must be a number.
+	 *
+	 * @param row The row.
+	 * @return The value.
+	 */
+	public double getDouble (int row)
+	{
+
+	    return ((Number) this.getValue (row)).doubleValue ();
+
+	}
+
+	public boolean isNull (int row)
+	{
+
+	    return this.values[row] == null;
+
+	}
+
+	/**
+	 * Select the rows whose value has the relationship given by the type to the value.
+	 *
+	 * @param type One of: {@link Utilities#EQ}, {@link Utilities#GT}, {@link Utilities#GTE},
+	 *             {@link Utilities#LT} or {@link Utilities#LTE}.
+	 * @param v The value, must not be <code>null</code>.
+	 * @param res The bits of the matching rows are set.
+	 * @return <code>true</code> if the rows could be selected.
+	 */
+	public boolean select (int    type,
+			       Object v,
+			       BitSet res)
+	{
+
+	    return false;
+
+	}
+
+	/**
+	 * Select the rows whose value is equal to one of the values.
+	 *
+	 * @param vs The values, none may be <code>null</code>.
+	 * @param res The bits of the matching rows are set.
+	 * @return <code>true</code> if the rows could be selected.
+	 */
+	public boolean selectIn (List   vs,
+				 BitSet res)
+	{
+
+	    return false;
+
+	}
+
+	/**
+	 * Select the rows whose value is <code>null</code>.
+	 *
+	 * @param res The bits of the matching rows are set.
+	 */
+	public void selectNull (BitSet res)
+	{
+
+	    for (int i = 0; i < this.size; i++)
+	    {
+
+		if (this.isNull (i))
+		{
+
+		    res.set (i);
+
+		}
+
+	    }
+
+	}
+
+    }
+
+    /**
+     * Numbers of a single class held as doubles, they are compared as doubles by
+     * {@link Utilities#compare(Object,Object)} anyway.
+     */
+    private static class NumberColumn extends Column
+    {
+
+	private double[] vals = null;
+	private BitSet nulls = new BitSet ();
+	private Class c = null;
+
+	private NumberColumn (Class    c,
+			      Object[] vals)
+	{
+
+	    super (null,
+		   vals.length);
+
+	    this.c = c;
+	    this.vals = new double[vals.length];
+
+	    for (int i = 0; i < vals.length; i++)
+	    {
+
+		if (vals[i] == null)
+		{
+
+		    this.nulls.set (i);
+
+		    continue;
+
+		}
+
+		this.vals[i] = ((Number) vals[i]).doubleValue ();
+
+	    }
+
+	}
+
+	/**
+	 * Return whether the values can be held as doubles and recreated exactly.
+	 */
+	private static boolean isSupported (Class    c,
+					    Object[] vals)
+	{
+
+	    if ((c == Integer.class)
+		||
+		(c == Short.class)
+		||
+		(c == Byte.class)
+		||
+		(c == Double.class)
+		||
+		(c == Float.class)
+	       )
+	    {
+
+		return true;
+
+	    }
+
+	    if (c != Long.class)
+	    {
+
+		return false;
+
+	    }
+
+	    for (int i = 0; i < vals.length; i++)
+	    {
+
+		if ((vals[i] != null)
+		    &&
+		    ((long) ((Long) vals[i]).doubleValue () != ((Long) vals[i]).longValue ())
+		   )
+		{
+
+		    return false;
+
+		}
+
+	    }
+
+	    return true;
+
+	}
+
+	public Object getValue (int row)
+	{
+
+	    if (this.nulls.get (row))
+	    {
+
+		return null;
+
+	    }
+
+	    double d = this.vals[row];
+
+	    if (this.c == Integer.class)
+	    {
+
+		return Integer.valueOf ((int) d);
+
+	    }
+
+	    if (this.c == Long.class)
+	    {
+
+		return Long.valueOf ((long) d);
+
+	    }
+
+	    if (this.c == Double.class)
+	    {
+
+		return Double.valueOf (d);
+
+	    }
+
+	    if (this.c == Float.class)
+	    {
+
+		return Float.valueOf ((float) d);
+
+	    }
+
+	    if (this.c == Short.class)
+	    {
+
+		return Short.valueOf ((short) d);
+
+	    }
+
+	    return Byte.valueOf ((byte) d);
+
+	}
+
+	public double getDouble (int row)
+	{
+
+	    return this.vals[row];
+
+	}
+
+	public boolean isNull (int row)
+	{
+
+	    return this.nulls.get (row);
+
+	}
+
+	public boolean select (int    type,
+			       Object v,
+			       BitSet res)
+	{
+
+	    if (!(v instanceof Number))
+	    {
+
+		return false;
+
+	    }
+
+	    double d = ((Number) v).doubleValue ();
+
+	    for (int i = 0; i < this.vals.length; i++)
+	    {
+
+		if (Utilities.matches (this.vals[i],
+				       d,
+				       type,
+				       false))
+		{
+
+		    res.set (i);
+
+		}
+
+	    }
+
+	    // The nulls were held as zero.
+	    res.andNot (this.nulls);
+
+	    return true;
+
+	}
+
+	public boolean selectIn (List   vs,
+				 BitSet res)
+	{
+
+	    double[] ds = new double[vs.size ()];
+
+	    for (int i = 0; i < ds.length; i++)
+	    {
+
+		Object v = vs.get (i);
+
+		if (!(v instanceof Number))
+		{
+
+		    return false;
+
+		}
+
+		ds[i] = ((Number) v).doubleValue ();
+
+	    }
+
+	    // Sorted in the same order as Double.compare.
+	    Arrays.sort (ds);
+
+	    for (int i = 0; i < this.vals.length; i++)
+	    {
+
+		if (Arrays.binarySearch (ds,
+					 this.vals[i]) > -1)
+		{
+
+		    res.set (i);
+
+		}
+
+	    }
+
+	    res.andNot (this.nulls);
+
+	    return true;
+
+	}
+
+    }
+
+    /**
+     * Values held as indexes into a sorted dictionary of the distinct values, since the
+     * dictionary is sorted the indexes are in the same order as the values.
+     */
+    private static class DictionaryColumn extends Column
+    {
+
+	private int[] codes = null;
+	private Object[] dict = null;
+
+	private DictionaryColumn (Object[] vals)
+	{
+
+	    super (null,
+		   vals.length);
+
+	    Map m = new HashMap ();
+
+	    for (int i = 0; i < vals.length; i++)
+	    {
+
+		if (vals[i] != null)
+		{
+
+		    m.put (vals[i],
+			   vals[i]);
+
+		}
+
+	    }
+
+	    this.dict = m.keySet ().toArray ();
+
+	    Arrays.sort (this.dict);
+
+	    for (int i = 0; i < this.dict.length; i++)
+	    {
+
+		m.put (this.dict[i],
+		       Integer.valueOf (i));
+
+	    }
+
+	    this.codes = new int[vals.length];
+
+	    for (int i = 0; i < vals.length; i++)
+	    {
+
+		if (vals[i] == null)
+		{
+
+		    this.codes[i] = -1;
+
+		    continue;
+
+		}
+
+		this.codes[i] = ((Integer) m.get (vals[i])).intValue ();
+
+	    }
+
+	}
+
+	public Object getValue (int row)
+	{
+
+	    int c = this.codes[row];
+
+	    if (c < 0)
+	    {
+
+		return null;
+
+	    }
+
+	    return this.dict[c];
+
+	}
+
+	public boolean isNull (int row)
+	{
+
+	    return this.codes[row] < 0;
+
+	}
+
+	public boolean select (int    type,
+			       Object v,
+			       BitSet res)
+	{
+
+	    if ((this.dict.length == 0)
+		||
+		(v.getClass () != this.dict[0].getClass ())
+	       )
+	    {
+
+		return false;
+
+	    }
+
+	    int i = Arrays.binarySearch (this.dict,
+					 v);
+
+	    boolean found = i > -1;
+
+	    // The index of the first value >= v.
+	    int ge = found ? i : -(i + 1);
+
+	    // The range of matching codes.
+	    int lo = 0;
+	    int hi = this.dict.length - 1;
+
+	    if (type == Utilities.EQ)
+	    {
+
+		if (!found)
+		{
+
+		    return true;
+
+		}
+
+		lo = i;
+		hi = i;
+
+	    }
+
+	    if (type == Utilities.GT)
+	    {
+
+		lo = found ? i + 1 : ge;
+
+	    }
+
+	    if (type == Utilities.GTE)
+	    {
+
+		lo = ge;
+
+	    }
+
+	    if (type == Utilities.LT)
+	    {
+
+		hi = ge - 1;
+
+	    }
+
+	    if (type == Utilities.LTE)
+	    {
+
+		hi = found ? i : ge - 1;
+
+	    }
+
+	    if (lo > hi)
+	    {
+
+		return true;
+
+	    }
+
+	    for (int j = 0; j < this.codes.length; j++)
+	    {
+
+		int c = this.codes[j];
+
+		// Nulls are -1 and lo is never less than 0.
+		if ((c >= lo)
+		    &&
+		    (c <= hi)
+		   )
+		{
+
+		    res.set (j);
+
+		}
+
+	    }
+
+	    return true;
+
+	}
+
+	public boolean selectIn (List   vs,
+				 BitSet res)
+	{
+
+	    boolean[] in = new boolean[this.dict.length];
+
+	    int s = vs.size ();
+
+	    for (int i = 0; i < s; i++)
+	    {
+
+		Object v = vs.get (i);
+
+		if ((this.dict.length == 0)
+		    ||
+		    (v.getClass () != this.dict[0].getClass ())
+		   )
+		{
+
+		    return false;
+
+		}
+
+		int c = Arrays.binarySearch (this.dict,
+					     v);
+
+		if (c > -1)
+		{
+
+		    in[c] = true;
+
+		}
+
+	    }
+
+	    for (int j = 0; j < this.codes.length; j++)
+	    {
+
+		int c = this.codes[j];
+
+		if ((c > -1)
+		    &&
+		    (in[c])
+		   )
+		{
+
+		    res.set (j);
+
+		}
+
+	    }
+
+	    return true;
+
+	}
+
+    }
+
+}
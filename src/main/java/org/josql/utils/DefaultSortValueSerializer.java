@@ -0,0 +1,325 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Date;
+
+/**
+ * The default {@link SortValueSerializer}.  Strings, the primitive wrappers and 
+ * <code>java.util.Date</code> are written directly, any other value must be 
+ * <code>Serializable</code> and is written using Java serialization.
+ */
+public class DefaultSortValueSerializer implements SortValueSerializer
+{
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int FLOAT = 5;
+    private static final int SHORT = 6;
+    private static final int BYTE = 7;
+    private static final int BOOLEAN = 8;
+    private static final int CHARACTER = 9;
+    private static final int DATE = 10;
+    private static final int SERIALIZED = 11;
+
+    public void write (Object     v,
+		       DataOutput out)
+	               throws     IOException
+    {
+
+	if (v == null)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.NULL);
+
+	    return;
+
+	}
+
+	// Exact classes only, a subclass may hold more state.
+	Class c = v.getClass ();
+
+	if (c == String.class)
+	{
+
+	    // writeUTF is limited to 64K.
+	    byte[] b = ((String) v).getBytes (StandardCharsets.UTF_8);
+
+	    out.writeByte (DefaultSortValueSerializer.STRING);
+	    out.writeInt (b.length);
+	    out.write (b);
+
+	    return;
+
+	}
+
+	if (c == Integer.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.INTEGER);
+	    out.writeInt (((Integer) v).intValue ());
+
+	    return;
+
+	}
+
+	if (c == Long.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.LONG);
+	    out.writeLong (((Long) v).longValue ());
+
+	    return;
+
+	}
+
+	if (c == Double.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.DOUBLE);
+	    out.writeDouble (((Double) v).doubleValue ());
+
+	    return;
+
+	}
+
+	if (c == Float.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.FLOAT);
+	    out.writeFloat (((Float) v).floatValue ());
+
+	    return;
+
+	}
+
+	if (c == Short.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.SHORT);
+	    out.writeShort (((Short) v).shortValue ());
+
+	    return;
+
+	}
+
+	if (c == Byte.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.BYTE);
+	    out.writeByte (((Byte) v).byteValue ());
+
+	    return;
+
+	}
+
+	if (c == Boolean.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.BOOLEAN);
+	    out.writeBoolean (((Boolean) v).booleanValue ());
+
+	    return;
+
+	}
+
+	if (c == Character.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.CHARACTER);
+	    out.writeChar (((Character) v).charValue ());
+
+	    return;
+
+	}
+
+	if (c == Date.class)
+	{
+
+	    out.writeByte (DefaultSortValueSerializer.DATE);
+	    out.writeLong (((Date) v).getTime ());
+
+	    return;
+
+	}
+
+	if (!(v instanceof Serializable))
+	{
+
+	    throw new IOException ("Unable to write sort value of class: " +
+				   c.getName () + 
+				   ", it is not serializable.");
+
+	}
+
+	ByteArrayOutputStream bout = new ByteArrayOutputStream ();
+
+	ObjectOutputStream oout = new ObjectOutputStream (bout);
+
+	oout.writeObject (v);
+	oout.close ();
+
+	byte[] b = bout.toByteArray ();
+
+	out.writeByte (DefaultSortValueSerializer.SERIALIZED);
+	out.writeInt (b.length);
+	out.write (b);
+
+    }
+
+    public Object read (DataInput in)
+	                throws    IOException
+    {
+
+	int t = in.readByte ();
+
+	switch (t)
+	{
+
+	case DefaultSortValueSerializer.NULL :
+	{
+
+	    return null;
+
+	}
+
+	case DefaultSortValueSerializer.STRING :
+	{
+
+	    byte[] b = new byte[in.readInt ()];
+
+	    in.readFully (b);
+
+	    return new String (b,
+			       StandardCharsets.UTF_8);
+
+	}
+
+	case DefaultSortValueSerializer.INTEGER :
+	{
+
+	    return Integer.valueOf (in.readInt ());
+
+	}
+
+	case DefaultSortValueSerializer.LONG :
+	{
+
+	    return Long.valueOf (in.readLong ());
+
+	}
+
+	case DefaultSortValueSerializer.DOUBLE :
+	{
+
+	    return Double.valueOf (in.readDouble ());
+
+	}
+
+	case DefaultSortValueSerializer.FLOAT :
+	{
+
+	    return Float.valueOf (in.readFloat ());
+
+	}
+
+	case DefaultSortValueSerializer.SHORT :
+	{
+
+	    return Short.valueOf (in.readShort ());
+
+	}
+
+	case DefaultSortValueSerializer.BYTE :
+	{
+
+	    return Byte.valueOf (in.readByte ());
+
+	}
+
+	case DefaultSortValueSerializer.BOOLEAN :
+	{
+
+	    return Boolean.valueOf (in.readBoolean ());
+
+	}
+
+	case DefaultSortValueSerializer.CHARACTER :
+	{
+
+	    return Character.valueOf (in.readChar ());
+
+	}
+
+	case DefaultSortValueSerializer.DATE :
+	{
+
+	    return new Date (in.readLong ());
+
+	}
+
+	case DefaultSortValueSerializer.SERIALIZED :
+	{
+
+	    byte[] b = new byte[in.readInt ()];
+
+	    in.readFully (b);
+
+	    ObjectInputStream oin = new ObjectInputStream (new ByteArrayInputStream (b));
+
+	    try
+	    {
+
+		return oin.readObject ();
+
+	    } catch (ClassNotFoundException e) {
+
+		throw new IOException ("Unable to read sort value",
+				       e);
+
+	    } finally {
+
+		oin.close ();
+
+	    }
+
+	}
+
+	default :
+	{
+
+	    throw new IOException ("Unknown sort value type: " + t);
+
+	}
+
+	}
+
+    }
+
+}
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import org.josql.Query;
 import org.josql.QueryParseException;
 import org.josql.QueryExecutionException;
+import org.josql.QueryPlanCache;
+import org.josql.CachedQuery;
 
 import org.josql.expressions.Expression;
 
@@ -36,6 +38,9 @@ import org.josql.expressions.Expression;
  * <p>
  * String exp = "path + ', size: ' + formatNumber(length) + ', last modified: ' + formatDate(lastModified)<br />
  * String details = ExpressionEvaluator.getValue (exp, new File ('/home/me/myfile.txt'));
+ * <p>
+ * The static methods hold the parsed expression in the {@link QueryPlanCache#getDefault() shared cache}
+ * so evaluating the same expression many times only parses it once.
  */
 public class ExpressionEvaluator
 {
@@ -100,6 +105,21 @@ public class ExpressionEvaluator
         
     }
 
+    /**
+     * Get the query for the expression held in the
+     * {@link QueryPlanCache#getDefault() shared cache}.
+     */
+    private static CachedQuery getCached (String exp,
+                                          Class  cl)
+                                          throws QueryParseException
+    {
+
+        return QueryPlanCache.getDefault ().getQuery ("SELECT * FROM " + cl.getName () + " WHERE " + exp,
+                                                      cl,
+                                                      Thread.currentThread ().getContextClassLoader ());
+
+    }
+
     /**
      * Get the query associated with the expression, use this to setup
      * bind variables, function handlers and so on, which of course must
@@ -213,10 +233,10 @@ public class ExpressionEvaluator
         
        }
        
-       ExpressionEvaluator ee = new ExpressionEvaluator (exp,
-                                                         o.getClass ());
+       CachedQuery cq = ExpressionEvaluator.getCached (exp,
+                                                       o.getClass ());
        
-       return ee.isTrue (o);
+       return cq.isWhereTrue (o);
         
     }
     
@@ -281,10 +301,19 @@ public class ExpressionEvaluator
             
         }
         
-        ExpressionEvaluator ee = new ExpressionEvaluator (exp,
-                                                          c);
+        CachedQuery cq = ExpressionEvaluator.getCached (exp,
+                                                        c);
         
-        return ee.getValues (l);
+        List ret = new ArrayList (l.size ());
+        
+        for (int i = 0; i < l.size (); i++)
+        {
+            
+            ret.add (cq.getWhereValue (l.get (i)));
+            
+        }
+        
+        return ret;
         
     }
     
@@ -312,10 +341,10 @@ public class ExpressionEvaluator
         
        }
         
-        ExpressionEvaluator ee = new ExpressionEvaluator (exp,
-                                                          o.getClass ());
+        CachedQuery cq = ExpressionEvaluator.getCached (exp,
+                                                        o.getClass ());
         
-        return ee.getValue (o);
+        return cq.getWhereValue (o);
         
     }
     
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.utils;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.gentlyweb.utils.Getter;
+
+import org.josql.QueryExecutionException;
+
+import org.josql.internal.Utilities;
+
+/**
+ * Joins two lists of objects on the values of an accessor of each, producing a List of
+ * {@link JoinRow} objects that can then be queried, the objects of the pair are available
+ * in the Query as <code>left</code> and <code>right</code>.  So the equivalent of:
+ * <pre>
+ *   SELECT e.name, d.name FROM Employee e JOIN Department d ON e.deptId = d.id WHERE d.budget &gt; 1000
+ * </pre>
+ * is:
+ * <pre>
+ *   HashJoin j = new HashJoin (Employee.class,
+ *                              "deptId",
+ *                              Department.class,
+ *                              "id");
+ *
+ *   Query q = new Query ();
+ *   q.parse ("SELECT left.name, right.name FROM org.josql.utils.JoinRow WHERE right.budget &gt; 1000");
+ *
+ *   QueryResults qr = q.execute (j.join (employees,
+ *                                        departments));
+ * </pre>
+ * The join is a hash join, the right objects are placed into a hash table keyed on their
+ * value and then each left object is looked up, so it takes time proportional to the number of
+ * objects in the lists (plus the number of rows produced) rather than the product of them.
+ * <p>
+ * Values are matched in the same way as the JoSQL <code>=</code> operator (see:
+ * {@link Utilities#isEquals(Object,Object)}), numbers are matched by their <code>double</code>
+ * value so that, for instance, an <code>Integer</code> matches a <code>Double</code> or a
+ * <code>Long</code> and other values are matched when they are equal.  If an object comparator
+ * has been set (see: {@link Utilities#setObjectComparator(java.util.Comparator)}) then every
+ * pair of values is compared with it instead of using a hash table.  Unlike <code>=</code>, a
+ * <code>null</code> value never matches, as in an SQL join.  The rows are in the order of
+ * the left objects and for each left object in the order of the right objects.
+ * <p>
+ * For a {@link #LEFT} join a left object that has no match produces a single row with a
+ * <code>null</code> right object.
+ * <p>
+ * The result of a join can itself be joined, using accessors such as: <code>left.deptId</code>.
+ */
+public class HashJoin
+{
+
+    /**
+     * An inner join, only left objects with a matching right object produce rows.
+     */
+    public static final int INNER = 0;
+
+    /**
+     * A left outer join, every left object produces at least one row.
+     */
+    public static final int LEFT = 1;
+
+    private Getter leftGet = null;
+    private Getter rightGet = null;
+    private int type = HashJoin.INNER;
+
+    /**
+     * Create a new inner join.
+     *
+     * @param leftClass The class of the left objects.
+     * @param leftAccessor The accessor for the value of the left objects, as it would appear
+     *                     in a Query.
+     * @param rightClass The class of the right objects.
+     * @param rightAccessor The accessor for the value of the right objects.
+     * @throws IllegalArgumentException If either accessor is not valid for its class.
+     */
+    public HashJoin (Class  leftClass,
+		     String leftAccessor,
+		     Class  rightClass,
+		     String rightAccessor)
+	             throws IllegalArgumentException
+    {
+
+	this (leftClass,
+	      leftAccessor,
+	      rightClass,
+	      rightAccessor,
+	      HashJoin.INNER);
+
+    }
+
+    /**
+     * Create a new join.
+     *
+     * @param leftClass The class of the left objects.
+     * @param leftAccessor The accessor for the value of the left objects, as it would appear
+     *                     in a Query.
+     * @param rightClass The class of the right objects.
+     * @param rightAccessor The accessor for the value of the right objects.
+     * @param type The type of join, either: {@link #INNER} or {@link #LEFT}.
+     * @throws IllegalArgumentException If either accessor is not valid for its class or the
+     *                                  type is not known.
+     */
+    public HashJoin (Class  leftClass,
+		     String leftAccessor,
+		     Class  rightClass,
+		     String rightAccessor,
+		     int    type)
+	             throws IllegalArgumentException
+    {
+
+	if ((type != HashJoin.INNER)
+	    &&
+	    (type != HashJoin.LEFT)
+	   )
+	{
+
+	    throw new IllegalArgumentException ("Join type: " +
+						type +
+						" is not known.");
+
+	}
+
+	this.leftGet = new Getter (leftAccessor,
+				   leftClass);
+	this.rightGet = new Getter (rightAccessor,
+				    rightClass);
+	this.type = type;
+
+    }
+
+    /**
+     * Get the type of the join.
+     *
+     * @return Either: {@link #INNER} or {@link #LEFT}.
+     */
+    public int getType ()
+    {
+
+	return this.type;
+
+    }
+
+    /**
+     * Join the objects.
+     *
+     * @param left The left objects.
+     * @param right The right objects.
+     * @return A List of {@link JoinRow} objects.
+     * @throws QueryExecutionException If the value cannot be got for one of the objects.
+     */
+    public List join (List left,
+		      List right)
+	              throws QueryExecutionException
+    {
+
+	// Build.
+	Object[] robjs = right.toArray ();
+
+	if (Utilities.getObjectComparator () != null)
+	{
+
+	    // Values that the comparator considers equal needn't have the same hash code.
+	    return this.compareJoin (left,
+				     robjs);
+
+	}
+
+	Map heads = new HashMap ();
+	int[] next = new int[robjs.length];
+
+	// Add in reverse so that the objects with the same value are chained in the
+	// same order as the list.
+	for (int i = robjs.length - 1; i > -1; i--)
+	{
+
+	    next[i] = -1;
+
+	    Object k = this.getKey (this.rightGet,
+				    robjs[i]);
+
+	    if (k == null)
+	    {
+
+		continue;
+
+	    }
+
+	    Integer h = (Integer) heads.put (k,
+					     Integer.valueOf (i));
+
+	    if (h != null)
+	    {
+
+		next[i] = h.intValue ();
+
+	    }
+
+	}
+
+	// Probe.
+	List rows = new ArrayList (left.size ());
+
+	Iterator iter = left.iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    Object l = iter.next ();
+
+	    Object k = this.getKey (this.leftGet,
+				    l);
+
+	    Integer h = null;
+
+	    if (k != null)
+	    {
+
+		h = (Integer) heads.get (k);
+
+	    }
+
+	    if (h == null)
+	    {
+
+		if (this.type == HashJoin.LEFT)
+		{
+
+		    rows.add (new JoinRow (l,
+					   null));
+
+		}
+
+		continue;
+
+	    }
+
+	    for (int j = h.intValue (); j != -1; j = next[j])
+	    {
+
+		rows.add (new JoinRow (l,
+				       robjs[j]));
+
+	    }
+
+	}
+
+	return rows;
+
+    }
+
+    /**
+     * Join the objects by comparing the value of every left object with the value of every
+     * right object.
+     */
+    private List compareJoin (List     left,
+			      Object[] robjs)
+	                      throws   QueryExecutionException
+    {
+
+	Object[] rvals = new Object[robjs.length];
+
+	for (int i = 0; i < robjs.length; i++)
+	{
+
+	    rvals[i] = this.getValue (this.rightGet,
+				      robjs[i]);
+
+	}
+
+	List rows = new ArrayList (left.size ());
+
+	Iterator iter = left.iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    Object l = iter.next ();
+
+	    Object k = this.getValue (this.leftGet,
+				      l);
+
+	    boolean matched = false;
+
+	    for (int j = 0; (k != null) && (j < rvals.length); j++)
+	    {
+
+		if ((rvals[j] != null)
+		    &&
+		    (Utilities.isEquals (k,
+					 rvals[j]))
+		   )
+		{
+
+		    rows.add (new JoinRow (l,
+					   robjs[j]));
+
+		    matched = true;
+
+		}
+
+	    }
+
+	    if ((!matched)
+		&&
+		(this.type == HashJoin.LEFT)
+	       )
+	    {
+
+		rows.add (new JoinRow (l,
+				       null));
+
+	    }
+
+	}
+
+	return rows;
+
+    }
+
+    private Object getKey (Getter get,
+			   Object o)
+	                   throws QueryExecutionException
+    {
+
+	Object v = this.getValue (get,
+				  o);
+
+	if (v instanceof Number)
+	{
+
+	    // Double.equals matches the Double.compare used by =, so -0.0 and 0.0 are
+	    // different values and NaN matches NaN.
+	    return Double.valueOf (((Number) v).doubleValue ());
+
+	}
+
+	return v;
+
+    }
+
+    private Object getValue (Getter get,
+			     Object o)
+	                     throws QueryExecutionException
+    {
+
+	try
+	{
+
+	    return get.getValue (o);
+
+	} catch (Exception e) {
+
+	    throw new QueryExecutionException ("Unable to get value for accessor: " +
+					       get.getAccessor () +
+					       " from object: " +
+					       o,
+					       e);
+
+	}
+
+    }
+
+}
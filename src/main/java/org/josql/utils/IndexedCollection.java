@@ -0,0 +1,1076 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.utils;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.SortedMap;
+import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+
+import com.gentlyweb.utils.Getter;
+
+/**
+ * A List of objects of a single class that maintains indexes on the values of
+ * accessors of the objects.  When a Query is executed against an IndexedCollection
+ * the WHERE clause is examined and if it contains an equality, range, BETWEEN or IN
+ * condition on an indexed accessor (ANDed with any other conditions) then only the objects
+ * found using the index are evaluated rather than every object in the collection.
+ * <p>
+ * Two kinds of index are available:
+ * <ul>
+ *   <li>A hash index, see: {@link #addHashIndex(String)}, this can be used for
+ *       <code>=</code> and <code>IN</code> conditions.</li>
+ *   <li>A sorted index, see: {@link #addSortedIndex(String)}, this can also be used for
+ *       <code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code>, <code>&gt;=</code> and
+ *       <code>BETWEEN</code> conditions.</li>
+ * </ul>
+ * The indexes are updated as objects are added, set and removed, an object must <b>not</b>
+ * be changed in a way that changes an indexed value whilst it is in the collection (or
+ * {@link #reindex()} must be called afterwards).
+ * <p>
+ * An index is only used when it gives the same result as evaluating the condition, i.e.
+ * when all the (non-null) values of the accessor are numbers, all are strings or all are
+ * of the same Comparable class, and the value being compared is of the same kind.  The objects
+ * found using an index are always in the same order as they are in the collection.
+ * <p>
+ * Like <code>java.util.ArrayList</code> this class is not synchronized.
+ * <p>
+ * Usage:
+ * <pre>
+ *   IndexedCollection objs = new IndexedCollection (Employee.class);
+ *   objs.addHashIndex ("department");
+ *   objs.addSortedIndex ("salary");
+ *   objs.addAll (employees);
+ *
+ *   Query q = new Query ();
+ *   q.parse ("SELECT * FROM Employee WHERE department = 'Sales' AND salary > 50000");
+ *
+ *   QueryResults qr = q.execute (objs);
+ * </pre>
+ */
+public class IndexedCollection extends AbstractList implements RandomAccess
+{
+
+    private static final int NONE = 0;
+    private static final int NUMBER = 1;
+    private static final int STRING = 2;
+    private static final int CLASS = 3;
+    private static final int MIXED = 4;
+
+    private Class c = null;
+    private List entries = new ArrayList ();
+    private Map hashIndexes = new HashMap ();
+    private Map sortedIndexes = new HashMap ();
+    private List indexes = new ArrayList ();
+    private long nextSeq = 0;
+
+    /**
+     * Create a new collection for objects of the specified class.
+     *
+     * @param c The class of the objects.
+     */
+    public IndexedCollection (Class c)
+    {
+
+	this.c = c;
+
+    }
+
+    /**
+     * Get the class of the objects in the collection.
+     *
+     * @return The class.
+     */
+    public Class getObjectClass ()
+    {
+
+	return this.c;
+
+    }
+
+    /**
+     * Add a hash index on the accessor, if there is already a hash index for the
+     * accessor then this does nothing.
+     *
+     * @param accessor The accessor, as it would appear in a Query, for example: <code>name</code>
+     *                 or <code>file.length</code>.
+     * @throws IllegalArgumentException If the accessor is not valid for the class.
+     */
+    public void addHashIndex (String accessor)
+	                      throws IllegalArgumentException
+    {
+
+	this.addIndex (accessor,
+		       this.hashIndexes,
+		       false);
+
+    }
+
+    /**
+     * Add a sorted index on the accessor, if there is already a sorted index for the
+     * accessor then this does nothing.
+     *
+     * @param accessor The accessor, as it would appear in a Query.
+     * @throws IllegalArgumentException If the accessor is not valid for the class.
+     */
+    public void addSortedIndex (String accessor)
+	                        throws IllegalArgumentException
+    {
+
+	this.addIndex (accessor,
+		       this.sortedIndexes,
+		       true);
+
+    }
+
+    private void addIndex (String  accessor,
+			   Map     m,
+			   boolean sorted)
+	                   throws  IllegalArgumentException
+    {
+
+	if (m.containsKey (accessor))
+	{
+
+	    return;
+
+	}
+
+	Index ind = new Index (new Getter (accessor,
+					   this.c),
+			       sorted,
+			       this.indexes.size ());
+
+	int s = this.entries.size ();
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    Entry e = (Entry) this.entries.get (i);
+
+	    e.setKey (ind,
+		      ind.getKey (e.obj));
+
+	    ind.add (e);
+
+	}
+
+	this.indexes.add (ind);
+
+	m.put (accessor,
+	       ind);
+
+    }
+
+    /**
+     * Remove the indexes on the accessor.
+     *
+     * @param accessor The accessor.
+     */
+    public void removeIndexes (String accessor)
+    {
+
+	Index h = (Index) this.hashIndexes.remove (accessor);
+	Index s = (Index) this.sortedIndexes.remove (accessor);
+
+	// Keep the slots of the other indexes.
+	if (h != null)
+	{
+
+	    this.indexes.set (h.slot,
+			      null);
+
+	}
+
+	if (s != null)
+	{
+
+	    this.indexes.set (s.slot,
+			      null);
+
+	}
+
+    }
+
+    public boolean hasIndex (String accessor)
+    {
+
+	return (this.hashIndexes.containsKey (accessor))
+	       ||
+	       (this.sortedIndexes.containsKey (accessor));
+
+    }
+
+    /**
+     * Rebuild all the indexes, use this if the objects have been changed in a way that
+     * changes the indexed values.
+     */
+    public void reindex ()
+    {
+
+	for (int i = 0; i < this.indexes.size (); i++)
+	{
+
+	    Index ind = (Index) this.indexes.get (i);
+
+	    if (ind == null)
+	    {
+
+		continue;
+
+	    }
+
+	    ind.clear ();
+
+	    for (int j = 0; j < this.entries.size (); j++)
+	    {
+
+		Entry e = (Entry) this.entries.get (j);
+
+		e.setKey (ind,
+			  ind.getKey (e.obj));
+
+		ind.add (e);
+
+	    }
+
+	}
+
+    }
+
+    public Object get (int i)
+    {
+
+	return ((Entry) this.entries.get (i)).obj;
+
+    }
+
+    public int size ()
+    {
+
+	return this.entries.size ();
+
+    }
+
+    public void add (int    i,
+		     Object o)
+    {
+
+	Entry e = this.createEntry (o);
+
+	boolean end = (i == this.entries.size ());
+
+	this.entries.add (i,
+			  e);
+
+	if (end)
+	{
+
+	    e.seq = this.nextSeq++;
+
+	} else {
+
+	    // Renumber so that the order of the sequence numbers is the order in the list,
+	    // the relative order of the existing objects is unchanged so the indexes are
+	    // still in order.
+	    for (int j = 0; j < this.entries.size (); j++)
+	    {
+
+		((Entry) this.entries.get (j)).seq = j;
+
+	    }
+
+	    this.nextSeq = this.entries.size ();
+
+	}
+
+	this.addToIndexes (e);
+
+	this.modCount++;
+
+    }
+
+    public Object set (int    i,
+		       Object o)
+    {
+
+	Entry old = (Entry) this.entries.get (i);
+
+	Entry e = this.createEntry (o);
+
+	e.seq = old.seq;
+
+	this.removeFromIndexes (old);
+
+	this.entries.set (i,
+			  e);
+
+	this.addToIndexes (e);
+
+	return old.obj;
+
+    }
+
+    public Object remove (int i)
+    {
+
+	Entry e = (Entry) this.entries.remove (i);
+
+	this.removeFromIndexes (e);
+
+	this.modCount++;
+
+	return e.obj;
+
+    }
+
+    public void clear ()
+    {
+
+	this.entries.clear ();
+
+	for (int i = 0; i < this.indexes.size (); i++)
+	{
+
+	    Index ind = (Index) this.indexes.get (i);
+
+	    if (ind != null)
+	    {
+
+		ind.clear ();
+
+	    }
+
+	}
+
+	this.nextSeq = 0;
+
+	this.modCount++;
+
+    }
+
+    private Entry createEntry (Object o)
+    {
+
+	Entry e = new Entry (o);
+
+	// Get the keys first so that a failure leaves the indexes unchanged.
+	for (int i = 0; i < this.indexes.size (); i++)
+	{
+
+	    Index ind = (Index) this.indexes.get (i);
+
+	    if (ind != null)
+	    {
+
+		e.setKey (ind,
+			  ind.getKey (o));
+
+	    }
+
+	}
+
+	return e;
+
+    }
+
+    private void addToIndexes (Entry e)
+    {
+
+	for (int i = 0; i < this.indexes.size (); i++)
+	{
+
+	    Index ind = (Index) this.indexes.get (i);
+
+	    if (ind != null)
+	    {
+
+		ind.add (e);
+
+	    }
+
+	}
+
+    }
+
+    private void removeFromIndexes (Entry e)
+    {
+
+	for (int i = 0; i < this.indexes.size (); i++)
+	{
+
+	    Index ind = (Index) this.indexes.get (i);
+
+	    if (ind != null)
+	    {
+
+		ind.remove (e);
+
+	    }
+
+	}
+
+    }
+
+    /**
+     * Get the objects where the value of the accessor is equal to the value (as
+     * determined by: {@link org.josql.internal.Utilities#isEquals(Object,Object)}).
+     *
+     * @param accessor The accessor.
+     * @param value The value.
+     * @return The objects, in the order they are in the collection, or <code>null</code> if
+     *         there is no index that can be used to find the objects.
+     */
+    public List getObjects (String accessor,
+			    Object value)
+    {
+
+	List vals = new ArrayList (1);
+
+	vals.add (value);
+
+	return this.getObjects (accessor,
+				vals);
+
+    }
+
+    /**
+     * Get the objects where the value of the accessor is equal to any of the values.
+     *
+     * @param accessor The accessor.
+     * @param values The values.
+     * @return The objects, in the order they are in the collection, or <code>null</code> if
+     *         there is no index that can be used to find the objects.
+     */
+    public List getObjects (String     accessor,
+			    Collection values)
+    {
+
+	Index ind = (Index) this.hashIndexes.get (accessor);
+
+	// Only numbers and strings are equal when their hash keys are.
+	if ((ind != null)
+	    &&
+	    (ind.kind == IndexedCollection.CLASS)
+	   )
+	{
+
+	    ind = null;
+
+	}
+
+	if (ind == null)
+	{
+
+	    ind = (Index) this.sortedIndexes.get (accessor);
+
+	}
+
+	if (ind == null)
+	{
+
+	    return null;
+
+	}
+
+	Iterator iter = values.iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    if (!ind.canCompare (iter.next ()))
+	    {
+
+		return null;
+
+	    }
+
+	}
+
+	List buckets = new ArrayList ();
+
+	iter = values.iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    List b = (List) ind.map.get (Index.normalize (iter.next ()));
+
+	    if ((b != null)
+		&&
+		(!buckets.contains (b))
+	       )
+	    {
+
+		buckets.add (b);
+
+	    }
+
+	}
+
+	return IndexedCollection.getObjects (buckets);
+
+    }
+
+    /**
+     * Get the objects where the value of the accessor is in the range, <code>null</code> values
+     * are never included.
+     *
+     * @param accessor The accessor.
+     * @param from The lower bound, can be <code>null</code> for no lower bound.
+     * @param fromInclusive Whether values equal to the lower bound are included.
+     * @param to The upper bound, can be <code>null</code> for no upper bound.
+     * @param toInclusive Whether values equal to the upper bound are included.
+     * @return The objects, in the order they are in the collection, or <code>null</code> if
+     *         there is no sorted index that can be used to find the objects.
+     */
+    public List getObjects (String  accessor,
+			    Object  from,
+			    boolean fromInclusive,
+			    Object  to,
+			    boolean toInclusive)
+    {
+
+	Index ind = (Index) this.sortedIndexes.get (accessor);
+
+	if ((ind == null)
+	    ||
+	    ((from == null)
+	     &&
+	     (to == null)
+	    )
+	    ||
+	    ((from != null)
+	     &&
+	     (!ind.canCompare (from))
+	    )
+	    ||
+	    ((to != null)
+	     &&
+	     (!ind.canCompare (to))
+	    )
+	   )
+	{
+
+	    return null;
+
+	}
+
+	SortedMap m = (SortedMap) ind.map;
+
+	from = Index.normalize (from);
+	to = Index.normalize (to);
+
+	if ((from != null)
+	    &&
+	    (to != null)
+	   )
+	{
+
+	    int c = Index.KEY_COMPARATOR.compare (from,
+						  to);
+
+	    if ((c > 0)
+		||
+		((c == 0)
+		 &&
+		 ((!fromInclusive)
+		  ||
+		  (!toInclusive)
+		 )
+		)
+	       )
+	    {
+
+		return new ArrayList ();
+
+	    }
+
+	}
+
+	if (from != null)
+	{
+
+	    m = m.tailMap (from);
+
+	}
+
+	if (to != null)
+	{
+
+	    m = m.headMap (to);
+
+	}
+
+	List buckets = new ArrayList (m.values ());
+
+	// The sub-maps include the lower bound and exclude the upper.
+	if ((from != null)
+	    &&
+	    (!fromInclusive)
+	    &&
+	    (m.containsKey (from))
+	   )
+	{
+
+	    buckets.remove (0);
+
+	}
+
+	if ((to != null)
+	    &&
+	    (toInclusive)
+	   )
+	{
+
+	    List b = (List) ind.map.get (to);
+
+	    if (b != null)
+	    {
+
+		buckets.add (b);
+
+	    }
+
+	}
+
+	return IndexedCollection.getObjects (buckets);
+
+    }
+
+    /**
+     * Get the objects from the buckets in the order they are in the collection.
+     */
+    private static List getObjects (List buckets)
+    {
+
+	List es = null;
+
+	if (buckets.size () == 1)
+	{
+
+	    es = (List) buckets.get (0);
+
+	} else {
+
+	    es = new ArrayList ();
+
+	    for (int i = 0; i < buckets.size (); i++)
+	    {
+
+		es.addAll ((List) buckets.get (i));
+
+	    }
+
+	    Collections.sort (es,
+			      Entry.SEQ_COMPARATOR);
+
+	}
+
+	int s = es.size ();
+
+	List res = new ArrayList (s);
+
+	for (int i = 0; i < s; i++)
+	{
+
+	    res.add (((Entry) es.get (i)).obj);
+
+	}
+
+	return res;
+
+    }
+
+    private static class Entry
+    {
+
+	private static final Comparator SEQ_COMPARATOR = new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		long s1 = ((Entry) o1).seq;
+		long s2 = ((Entry) o2).seq;
+
+		return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+
+	    }
+
+	};
+
+	private Object obj = null;
+	private long seq = 0;
+	private Object[] keys = new Object[0];
+
+	private Entry (Object o)
+	{
+
+	    this.obj = o;
+
+	}
+
+	private void setKey (Index  ind,
+			     Object k)
+	{
+
+	    if (ind.slot >= this.keys.length)
+	    {
+
+		Object[] nk = new Object[ind.slot + 1];
+
+		System.arraycopy (this.keys,
+				  0,
+				  nk,
+				  0,
+				  this.keys.length);
+
+		this.keys = nk;
+
+	    }
+
+	    this.keys[ind.slot] = k;
+
+	}
+
+	private Object getKey (Index ind)
+	{
+
+	    return this.keys[ind.slot];
+
+	}
+
+    }
+
+    private static class Index
+    {
+
+	/**
+	 * Orders the keys in the same way as {@link org.josql.internal.Utilities#compare(Object,Object)}
+	 * for keys of the same kind, keys of different kinds are ordered by class name so that
+	 * they can still be held (but the index can't be used).
+	 */
+	private static final Comparator KEY_COMPARATOR = new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		if ((o1.getClass () == o2.getClass ())
+		    &&
+		    (o1 instanceof Comparable)
+		   )
+		{
+
+		    return ((Comparable) o1).compareTo (o2);
+
+		}
+
+		int c = o1.getClass ().getName ().compareTo (o2.getClass ().getName ());
+
+		if (c != 0)
+		{
+
+		    return c;
+
+		}
+
+		return o1.toString ().compareTo (o2.toString ());
+
+	    }
+
+	};
+
+	private Getter get = null;
+	private int slot = 0;
+	private Map map = null;
+	private List nulls = new ArrayList ();
+	private int kind = IndexedCollection.NONE;
+	private Class kindClass = null;
+
+	private Index (Getter  get,
+		       boolean sorted,
+		       int     slot)
+	{
+
+	    this.get = get;
+	    this.slot = slot;
+
+	    if (sorted)
+	    {
+
+		this.map = new TreeMap (Index.KEY_COMPARATOR);
+
+	    } else {
+
+		this.map = new HashMap ();
+
+	    }
+
+	}
+
+	private static Object normalize (Object v)
+	{
+
+	    if (v instanceof Number)
+	    {
+
+		return Double.valueOf (((Number) v).doubleValue ());
+
+	    }
+
+	    return v;
+
+	}
+
+	private Object getKey (Object o)
+	                       throws IllegalArgumentException
+	{
+
+	    try
+	    {
+
+		return Index.normalize (this.get.getValue (o));
+
+	    } catch (Exception e) {
+
+		throw new IllegalArgumentException ("Unable to get value for index: " +
+						    this.get.getAccessor () +
+						    " from object: " +
+						    o +
+						    ", reason: " +
+						    e.getMessage ());
+
+	    }
+
+	}
+
+	private static int getKind (Object k)
+	{
+
+	    if (k instanceof Double)
+	    {
+
+		return IndexedCollection.NUMBER;
+
+	    }
+
+	    if (k instanceof String)
+	    {
+
+		return IndexedCollection.STRING;
+
+	    }
+
+	    if (k instanceof Comparable)
+	    {
+
+		return IndexedCollection.CLASS;
+
+	    }
+
+	    return IndexedCollection.MIXED;
+
+	}
+
+	/**
+	 * Return whether comparing the value to the keys using the index gives the same
+	 * result as comparing them using {@link org.josql.internal.Utilities#compare(Object,Object)}.
+	 */
+	private boolean canCompare (Object v)
+	{
+
+	    if (v == null)
+	    {
+
+		return false;
+
+	    }
+
+	    if (this.kind == IndexedCollection.NONE)
+	    {
+
+		// Only nulls, which never match.
+		return true;
+
+	    }
+
+	    if (this.kind == IndexedCollection.MIXED)
+	    {
+
+		return false;
+
+	    }
+
+	    v = Index.normalize (v);
+
+	    if (Index.getKind (v) != this.kind)
+	    {
+
+		return false;
+
+	    }
+
+	    if (this.kind == IndexedCollection.CLASS)
+	    {
+
+		return v.getClass () == this.kindClass;
+
+	    }
+
+	    return true;
+
+	}
+
+	private void add (Entry e)
+	{
+
+	    Object k = e.getKey (this);
+
+	    List b = this.nulls;
+
+	    if (k != null)
+	    {
+
+		int kd = Index.getKind (k);
+
+		if (this.kind == IndexedCollection.NONE)
+		{
+
+		    this.kind = kd;
+		    this.kindClass = k.getClass ();
+
+		} else {
+
+		    if ((kd != this.kind)
+			||
+			((kd == IndexedCollection.CLASS)
+			 &&
+			 (k.getClass () != this.kindClass)
+			)
+		       )
+		    {
+
+			this.kind = IndexedCollection.MIXED;
+
+		    }
+
+		}
+
+		b = (List) this.map.get (k);
+
+		if (b == null)
+		{
+
+		    b = new ArrayList ();
+
+		    this.map.put (k,
+				  b);
+
+		}
+
+	    }
+
+	    int s = b.size ();
+
+	    if ((s == 0)
+		||
+		(((Entry) b.get (s - 1)).seq < e.seq)
+	       )
+	    {
+
+		b.add (e);
+
+		return;
+
+	    }
+
+	    int i = Collections.binarySearch (b,
+					      e,
+					      Entry.SEQ_COMPARATOR);
+
+	    b.add (-(i + 1),
+		   e);
+
+	}
+
+	private void remove (Entry e)
+	{
+
+	    Object k = e.getKey (this);
+
+	    List b = this.nulls;
+
+	    if (k != null)
+	    {
+
+		b = (List) this.map.get (k);
+
+	    }
+
+	    if (b == null)
+	    {
+
+		return;
+
+	    }
+
+	    int i = Collections.binarySearch (b,
+					      e,
+					      Entry.SEQ_COMPARATOR);
+
+	    if (i > -1)
+	    {
+
+		b.remove (i);
+
+	    }
+
+	    if ((b.size () == 0)
+		&&
+		(k != null)
+	       )
+	    {
+
+		this.map.remove (k);
+
+	    }
+
+	}
+
+	private void clear ()
+	{
+
+	    this.map.clear ();
+	    this.nulls.clear ();
+	    this.kind = IndexedCollection.NONE;
+	    this.kindClass = null;
+
+	}
+
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.utils;
+
+/**
+ * A row produced by a {@link HashJoin}, the pair of objects that were joined.  The objects can
+ * be referred to in a Query using the accessors: <code>left</code> and <code>right</code>, for
+ * example: <code>SELECT left.name, right.name FROM org.josql.utils.JoinRow</code>.  For a left
+ * join the right object is <code>null</code> when there was no match for the left object.
+ */
+public class JoinRow
+{
+
+    private Object left = null;
+    private Object right = null;
+
+    public JoinRow (Object left,
+		    Object right)
+    {
+
+	this.left = left;
+	this.right = right;
+
+    }
+
+    public Object getLeft ()
+    {
+
+	return this.left;
+
+    }
+
+    public Object getRight ()
+    {
+
+	return this.right;
+
+    }
+
+    public String toString ()
+    {
+
+	return "[" + this.left + ", " + this.right + "]";
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2004-2007 Gary Bentley 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may 
+ * not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ *    http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package org.josql.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the values of the ORDER BY expressions when a Query orders its results
+ * using temporary files, see: {@link org.josql.Query#setOrderByMemoryLimit(long)}.  A value 
+ * that is read must compare the same as the value that was written, the default, 
+ * {@link DefaultSortValueSerializer}, handles the common value types and falls back to
+ * Java serialization for others.  Provide your own if the values are not serializable or
+ * can be written more compactly.
+ * <p>
+ * Implementations must be safe to use by multiple threads since a Query may be executed by
+ * many threads at once.
+ */
+public interface SortValueSerializer
+{
+
+    /**
+     * Write the value.
+     *
+     * @param v The value, may be <code>null</code>.
+     * @param out Where to write it.
+     * @throws IOException If the value cannot be written.
+     */
+    public void write (Object     v,
+		       DataOutput out)
+	               throws     IOException;
+
+    /**
+     * Read a value previously written by: {@link #write(Object,DataOutput)}.
+     *
+     * @param in Where to read it from.
+     * @return The value.
+     * @throws IOException If the value cannot be read.
+     */
+    public Object read (DataInput in)
+	                throws    IOException;
+
+}
@@ -0,0 +1,350 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+import org.josql.QueryResults;
+
+import org.josql.utils.ColumnarSnapshot;
+
+/**
+ * Checks that evaluating the WHERE and HAVING clauses in batches gives the same results as
+ * evaluating them object by object, for lists spanning several batches.
+ */
+public class BatchEvaluationTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.BatchEvaluationTest$Item";
+
+    private static final String[] WHERES = { "size > 50",
+					     "size >= 10 AND size < 20 OR size = 99",
+					     "size BETWEEN 5 AND 7.5",
+					     "size NOT BETWEEN 5 AND 95",
+					     "size * 2 + 1 > weight * 100",
+					     "(size - 50) / 2 > 10",
+					     "size % 7 = 3",
+					     "size / (size % 5) > 4",
+					     "weight > 0.5 OR weight IS NULL",
+					     "weight IS NOT NULL AND weight * size < 10",
+					     "weight + 1 > 1.5",
+					     "weight = 0",
+					     "name = 'n3'",
+					     "name != 'n3' AND size < 30",
+					     "name > 'n4'",
+					     "name = null",
+					     "name IS NULL OR size > 90",
+					     "name $= 'N2' AND (size < 10 OR size > 80)",
+					     "name LIKE 'n1%' OR size IN (1, 2, 3)",
+					     "code = 3 OR code = 'c3'",
+					     "code > 5",
+					     "count = size % 10",
+					     "count + 1 = 5",
+					     "id % 2 = 0 AND (name = 'n1' OR weight > 0.9) AND size != 4" };
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private int size = 0;
+	private Double weight = null;
+	private Object code = null;
+	private Number count = null;
+
+	public Item (int    id,
+		     String name,
+		     int    size,
+		     Double weight,
+		     Object code,
+		     Number count)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+	    this.weight = weight;
+	    this.code = code;
+	    this.count = count;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public Double getWeight ()
+	{
+
+	    return this.weight;
+
+	}
+
+	public Object getCode ()
+	{
+
+	    return this.code;
+
+	}
+
+	public Number getCount ()
+	{
+
+	    return this.count;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size + ":" + this.weight + ":" + this.code + ":" + this.count;
+
+	}
+
+    }
+
+    public BatchEvaluationTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BatchEvaluationTest.class );
+    }
+
+    public void testWhere()
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	for (int i = 0; i < WHERES.length; i++)
+	{
+
+	    this.check ("SELECT * FROM " + ITEM + " WHERE " + WHERES[i],
+			objs,
+			null,
+			false);
+
+	}
+
+    }
+
+    public void testBindVariables()
+	throws Exception
+    {
+
+	Map bv = new HashMap ();
+	bv.put ("min",
+		Integer.valueOf (25));
+	bv.put ("max",
+		Double.valueOf (60.5d));
+	bv.put ("name",
+		null);
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size BETWEEN :min AND :max AND name != :name",
+		    this.createItems (),
+		    bv,
+		    false);
+
+    }
+
+    public void testHaving()
+	throws Exception
+    {
+
+	this.check ("SELECT name, count(:_allobjs) FROM " + ITEM + " WHERE size > 10 GROUP BY name HAVING count(:_allobjs) > 100 ORDER BY 1",
+		    this.createItems (),
+		    null,
+		    false);
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size % 3 = 0 HAVING size > avg(:_allobjs, size)",
+		    this.createItems (),
+		    null,
+		    false);
+
+    }
+
+    public void testSnapshot()
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	ColumnarSnapshot snap = new ColumnarSnapshot (Item.class,
+						      objs,
+						      Arrays.asList (new String[] { "size", "weight", "name", "code", "count" }));
+
+	for (int i = 0; i < WHERES.length; i++)
+	{
+
+	    this.check ("SELECT * FROM " + ITEM + " WHERE " + WHERES[i],
+			snap,
+			null,
+			false);
+
+	}
+
+    }
+
+    public void testParallel()
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	for (int i = 0; i < WHERES.length; i++)
+	{
+
+	    this.check ("SELECT * FROM " + ITEM + " WHERE " + WHERES[i],
+			objs,
+			null,
+			true);
+
+	}
+
+    }
+
+    private void check (String  sql,
+			List    objs,
+			Map     bindVars,
+			boolean parallel)
+	throws Exception
+    {
+
+	Query rq = this.createQuery (false,
+				     false);
+	rq.parse (sql);
+
+	Query bq = this.createQuery (true,
+				     parallel);
+	bq.parse (sql);
+
+	QueryResults exp = rq.execute (objs,
+				       bindVars);
+
+	// More than once to check nothing is kept between executions.
+	for (int i = 0; i < 2; i++)
+	{
+
+	    QueryResults res = bq.execute (objs,
+					   bindVars);
+
+	    assertEquals (sql,
+			  exp.getResults (),
+			  res.getResults ());
+	    assertEquals (sql,
+			  exp.getWhereResults (),
+			  res.getWhereResults ());
+
+	}
+
+    }
+
+    private Query createQuery (boolean batch,
+			       boolean parallel)
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (BatchEvaluationTest.class.getClassLoader ());
+	q.setWantBatchEvaluation (batch);
+	q.setWantParallelExecution (parallel);
+	q.setParallelChunkSize (500);
+
+	return q;
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (12);
+
+	for (int i = 0; i < 3000; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (6) != 0)
+	    {
+
+		n = "n" + r.nextInt (8);
+
+	    }
+
+	    Double w = null;
+
+	    if (r.nextInt (5) != 0)
+	    {
+
+		w = Double.valueOf ((r.nextInt (5) == 0) ? 0 : r.nextDouble ());
+
+	    }
+
+	    Object c = Integer.valueOf (r.nextInt (10));
+
+	    if (r.nextBoolean ())
+	    {
+
+		c = "c" + r.nextInt (10);
+
+	    }
+
+	    Number cn = null;
+
+	    switch (r.nextInt (3))
+	    {
+
+	    case 0 :
+		cn = Integer.valueOf (r.nextInt (10));
+		break;
+
+	    case 1 :
+		cn = Double.valueOf (r.nextInt (10));
+		break;
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				r.nextInt (100),
+				w,
+				c,
+				cn));
+
+	}
+
+	return objs;
+
+    }
+
+}
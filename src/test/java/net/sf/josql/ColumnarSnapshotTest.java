@@ -0,0 +1,351 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+import org.josql.QueryResults;
+
+import org.josql.utils.ColumnarSnapshot;
+
+/**
+ * Checks that executing a query against a {@link ColumnarSnapshot} gives the same results
+ * as executing it against the objects themselves, for numbers, strings, booleans and values
+ * of mixed types, with and without <code>null</code>s.
+ */
+public class ColumnarSnapshotTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.ColumnarSnapshotTest$Item";
+
+    private static final String[] ACCESSORS = { "id", "name", "size", "weight", "flag", "code", "count" };
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private int size = 0;
+	private Double weight = null;
+	private Boolean flag = null;
+	private Object code = null;
+	private Number count = null;
+
+	public Item (int     id,
+		     String  name,
+		     int     size,
+		     Double  weight,
+		     Boolean flag,
+		     Object  code,
+		     Number  count)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+	    this.weight = weight;
+	    this.flag = flag;
+	    this.code = code;
+	    this.count = count;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public Double getWeight ()
+	{
+
+	    return this.weight;
+
+	}
+
+	public Boolean getFlag ()
+	{
+
+	    return this.flag;
+
+	}
+
+	public Object getCode ()
+	{
+
+	    return this.code;
+
+	}
+
+	public Number getCount ()
+	{
+
+	    return this.count;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size + ":" + this.weight + ":" + this.flag + ":" + this.code + ":" + this.count;
+
+	}
+
+    }
+
+    public ColumnarSnapshotTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ColumnarSnapshotTest.class );
+    }
+
+    public void testNumbers()
+	throws Exception
+    {
+
+	this.check ("size = 5");
+	this.check ("size != 5");
+	this.check ("size > 20 AND size <= 40");
+	this.check ("size BETWEEN 10 AND 12.5");
+	this.check ("size NOT BETWEEN 10 AND 90");
+	this.check ("size IN (1, 2.0, 3, '4')");
+	this.check ("size NOT IN (1, 2, 3)");
+	this.check ("weight > 0.5");
+	this.check ("weight = 0 OR weight = null");
+	this.check ("weight IS NULL");
+	this.check ("weight IS NOT NULL AND weight < 0.25");
+	this.check ("weight < size");
+
+    }
+
+    public void testStrings()
+	throws Exception
+    {
+
+	this.check ("name = 'n3'");
+	this.check ("name != 'n3'");
+	this.check ("name > 'n2' AND name < 'n5'");
+	this.check ("name IN ('n1', null, 'x')");
+	this.check ("name NOT IN ('n1', 'n2')");
+	this.check ("name IS NULL OR size < 5");
+	this.check ("name $= 'N4'");
+	this.check ("name LIKE 'n1%'");
+	this.check ("name = 1");
+
+    }
+
+    public void testBooleans()
+	throws Exception
+    {
+
+	this.check ("flag = true");
+	this.check ("flag != false");
+	this.check ("flag IS NULL");
+
+    }
+
+    public void testMixedValues()
+	throws Exception
+    {
+
+	// Codes are a mix of numbers and strings, counts a mix of number classes.
+	this.check ("code = 3");
+	this.check ("code = 'c3'");
+	this.check ("code > 5");
+	this.check ("code IN (1, 'c1', null)");
+	this.check ("count = 7");
+	this.check ("count BETWEEN 2 AND 6");
+	this.check ("count IN (1, 2.0, 3)");
+
+    }
+
+    public void testBindVariables()
+	throws Exception
+    {
+
+	Map bv = new HashMap ();
+	bv.put ("min",
+		Integer.valueOf (30));
+	bv.put ("name",
+		"n2");
+	bv.put ("vals",
+		Arrays.asList (new Object[] { Long.valueOf (4), null, Double.valueOf (8.0d) }));
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size >= :min AND name != :name",
+		    bv);
+	this.check ("SELECT * FROM " + ITEM + " WHERE size IN (:vals) OR weight IN (:vals)",
+		    bv);
+
+    }
+
+    public void testOrderByGroupBy()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size > 50 ORDER BY name, weight DESC, id",
+		    null);
+	this.check ("SELECT name, count(:_allobjs), sum(:_allobjs, size) FROM " + ITEM + " GROUP BY name ORDER BY 1",
+		    null);
+	this.check ("SELECT id, size * 2, upper(name) FROM " + ITEM + " WHERE flag = true AND weight > 0.5 LIMIT 5, 10",
+		    null);
+
+    }
+
+    private void check (String where)
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE " + where,
+		    null);
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE (" + where + ") OR size < 10",
+		    null);
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE (" + where + ") AND id % 3 = 0",
+		    null);
+
+    }
+
+    private void check (String sql,
+			Map    bindVars)
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	ColumnarSnapshot snap = new ColumnarSnapshot (Item.class,
+						      objs,
+						      Arrays.asList (ACCESSORS));
+
+	assertEquals (objs,
+		      snap);
+
+	Query q = new Query ();
+	q.setClassLoader (ColumnarSnapshotTest.class.getClassLoader ());
+	q.parse (sql);
+
+	QueryResults exp = q.execute (objs,
+				      bindVars);
+
+	// More than once since the snapshot is planned once per execution.
+	for (int i = 0; i < 2; i++)
+	{
+
+	    QueryResults res = q.execute (snap,
+					  bindVars);
+
+	    assertEquals (sql,
+			  exp.getResults (),
+			  res.getResults ());
+	    assertEquals (sql,
+			  exp.getSaveValues (),
+			  res.getSaveValues ());
+
+	}
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (8);
+
+	for (int i = 0; i < 500; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (6) != 0)
+	    {
+
+		n = "n" + r.nextInt (8);
+
+	    }
+
+	    Double w = null;
+
+	    if (r.nextInt (5) != 0)
+	    {
+
+		w = Double.valueOf ((r.nextInt (5) == 0) ? 0 : r.nextDouble ());
+
+	    }
+
+	    Boolean f = null;
+
+	    if (r.nextInt (4) != 0)
+	    {
+
+		f = Boolean.valueOf (r.nextBoolean ());
+
+	    }
+
+	    Object c = Integer.valueOf (r.nextInt (10));
+
+	    if (r.nextBoolean ())
+	    {
+
+		c = "c" + r.nextInt (10);
+
+	    }
+
+	    Number cn = null;
+
+	    switch (r.nextInt (3))
+	    {
+
+	    case 0 :
+		cn = Integer.valueOf (r.nextInt (10));
+		break;
+
+	    case 1 :
+		cn = Long.valueOf (r.nextInt (10));
+		break;
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				r.nextInt (100),
+				w,
+				f,
+				c,
+				cn));
+
+	}
+
+	return objs;
+
+    }
+
+}
@@ -0,0 +1,225 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+
+/**
+ * Checks that a single parsed Query can be executed by several threads at once, each with
+ * its own bind variables, and that using a query outside of an execution doesn't leave
+ * state behind for the thread.
+ */
+public class ConcurrentExecutionTest
+    extends TestCase
+{
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private int size = 0;
+
+	public Item (int id,
+		     int size)
+	{
+
+	    this.id = id;
+	    this.size = size;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.size;
+
+	}
+
+    }
+
+    public ConcurrentExecutionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ConcurrentExecutionTest.class );
+    }
+
+    public void testBindVariables()
+	throws Exception
+    {
+
+	final List objs = new ArrayList ();
+
+	for (int i = 0; i < 2000; i++)
+	{
+
+	    objs.add (new Item (i,
+				(i * 31) % 97));
+
+	}
+
+	final Query q = new Query ();
+	q.setClassLoader (ConcurrentExecutionTest.class.getClassLoader ());
+	q.parse ("SELECT * FROM net.sf.josql.ConcurrentExecutionTest$Item WHERE size >= :min AND size < :min + 10 ORDER BY size DESC, id");
+
+	final List errors = Collections.synchronizedList (new ArrayList ());
+
+	Thread[] ts = new Thread[8];
+
+	for (int i = 0; i < ts.length; i++)
+	{
+
+	    final int min = i * 10;
+
+	    ts[i] = new Thread ()
+	    {
+
+		public void run ()
+		{
+
+		    List exp = ConcurrentExecutionTest.expected (objs,
+								 min);
+
+		    Map bv = new HashMap ();
+		    bv.put ("min",
+			    new Integer (min));
+
+		    try
+		    {
+
+			for (int j = 0; j < 50; j++)
+			{
+
+			    List res = q.execute (objs,
+						  bv).getResults ();
+
+			    if (!exp.equals (res))
+			    {
+
+				errors.add ("min " + min + ", expected: " + exp + ", got: " + res);
+
+				return;
+
+			    }
+
+			}
+
+		    } catch (Exception e) {
+
+			errors.add (e);
+
+		    }
+
+		}
+
+	    };
+
+	}
+
+	for (int i = 0; i < ts.length; i++)
+	{
+
+	    ts[i].start ();
+
+	}
+
+	for (int i = 0; i < ts.length; i++)
+	{
+
+	    ts[i].join ();
+
+	}
+
+	assertEquals (Collections.EMPTY_LIST,
+		      errors);
+
+	assertNull (q.peekExecutionContext ());
+
+    }
+
+    public void testNoThreadContext()
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (ConcurrentExecutionTest.class.getClassLoader ());
+	q.parse ("SELECT * FROM net.sf.josql.ConcurrentExecutionTest$Item WHERE size > 1");
+
+	Item it = new Item (1,
+			    2);
+
+	// Used outside of an execution, as a comparator or filter would.
+	q.setCurrentObject (it);
+
+	assertSame (it,
+		    q.getCurrentObject ());
+	assertTrue (q.getWhereClause ().isTrue (it,
+						q));
+
+	assertNull (q.peekExecutionContext ());
+
+	List objs = new ArrayList ();
+	objs.add (it);
+
+	assertEquals (objs,
+		      q.execute (objs).getResults ());
+
+	assertNull (q.peekExecutionContext ());
+
+    }
+
+    private static List expected (List objs,
+				  int  min)
+    {
+
+	List res = new ArrayList ();
+
+	for (int s = min + 9; s >= min; s--)
+	{
+
+	    for (int i = 0; i < objs.size (); i++)
+	    {
+
+		Item it = (Item) objs.get (i);
+
+		if (it.getSize () == s)
+		{
+
+		    res.add (it);
+
+		}
+
+	    }
+
+	}
+
+	return res;
+
+    }
+
+}
@@ -0,0 +1,188 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+
+/**
+ * Checks that compiled AND/OR chains, whose operands are reordered as the query is executed,
+ * give the same results and call functions exactly as often as the written expressions.
+ */
+public class ExpressionCompilerTest 
+    extends TestCase
+{
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private int size = 0;
+
+	public Item (int    id,
+		     String name,
+		     int    size)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name;
+
+	}
+
+    }
+
+    /**
+     * A function handler that counts its calls and throws for a <code>null</code> value.
+     */
+    public static class Counter
+    {
+
+	public int calls = 0;
+
+	public boolean check (String v)
+	{
+
+	    this.calls++;
+
+	    return v.length () > 3;
+
+	}
+
+    }
+
+    public ExpressionCompilerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExpressionCompilerTest.class );
+    }
+
+    public void testGuardedAnd()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.ExpressionCompilerTest$Item WHERE name != null AND check(name) AND size > 90");
+
+    }
+
+    public void testGuardedOr()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.ExpressionCompilerTest$Item WHERE name = null OR check(name) OR size < 5");
+
+    }
+
+    public void testMixed()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.ExpressionCompilerTest$Item WHERE id > 10 AND size > 50 AND (name = null OR check(name)) AND id % 7 != 0");
+
+    }
+
+    private void check (String sql)
+	throws Exception
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (3);
+
+	for (int i = 0; i < 1000; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (4) != 0)
+	    {
+
+		n = "n" + r.nextInt (2000);
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				r.nextInt (100)));
+
+	}
+
+	Counter exp = new Counter ();
+	Counter comp = new Counter ();
+
+	Query q = this.createQuery (sql,
+				    exp,
+				    false);
+	Query cq = this.createQuery (sql,
+				     comp,
+				     true);
+
+	// Execute enough times for the operands to be sampled and reordered.
+	for (int i = 0; i < 20; i++)
+	{
+
+	    assertEquals (q.execute (objs).getResults (),
+			  cq.execute (objs).getResults ());
+
+	    assertEquals (exp.calls,
+			  comp.calls);
+
+	}
+
+    }
+
+    private Query createQuery (String  sql,
+			       Counter c,
+			       boolean compiled)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (ExpressionCompilerTest.class.getClassLoader ());
+	q.addFunctionHandler (c);
+	q.setWantCompiledExpressions (compiled);
+	q.parse (sql);
+
+	return q;
+
+    }
+
+}
@@ -0,0 +1,303 @@
+package net.sf.josql;
+
+import java.io.File;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+import org.josql.QueryResults;
+import org.josql.QueryExecutionException;
+
+/**
+ * Checks that ordering results using temporary files gives the same results as 
+ * ordering them in memory and that the temporary files are removed.
+ */
+public class ExternalSorterTest 
+    extends TestCase
+{
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private Integer opt = null;
+	private String name = null;
+	private Key key = null;
+
+	public Item (int     id,
+		     Integer opt,
+		     String  name)
+	{
+
+	    this.id = id;
+	    this.opt = opt;
+	    this.name = name;
+	    this.key = new Key (id % 10);
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public Integer getOpt ()
+	{
+
+	    return this.opt;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public Key getKey ()
+	{
+
+	    return this.key;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.opt + ":" + this.name;
+
+	}
+
+    }
+
+    /**
+     * Comparable but not serializable, so can't be written by the default serializer.
+     */
+    public static class Key
+	implements Comparable
+    {
+
+	private int v = 0;
+
+	public Key (int v)
+	{
+
+	    this.v = v;
+
+	}
+
+	public int compareTo (Object o)
+	{
+
+	    return this.v - ((Key) o).v;
+
+	}
+
+    }
+
+    private File dir = null;
+
+    public ExternalSorterTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExternalSorterTest.class );
+    }
+
+    protected void setUp ()
+	throws Exception
+    {
+
+	this.dir = File.createTempFile ("josql-sort-test",
+					"");
+	this.dir.delete ();
+	this.dir.mkdir ();
+
+    }
+
+    protected void tearDown ()
+	throws Exception
+    {
+
+	File[] fs = this.dir.listFiles ();
+
+	for (int i = 0; i < fs.length; i++)
+	{
+
+	    fs[i].delete ();
+
+	}
+
+	this.dir.delete ();
+
+    }
+
+    public void testOrderBy()
+	throws Exception
+    {
+
+	// Lots of ties so the order of equal objects must be kept.
+	this.check ("SELECT * FROM net.sf.josql.ExternalSorterTest$Item ORDER BY opt",
+		    false);
+
+    }
+
+    public void testOrderByDesc()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.ExternalSorterTest$Item WHERE id % 4 != 0 ORDER BY opt DESC, name",
+		    false);
+
+    }
+
+    public void testSelectColumns()
+	throws Exception
+    {
+
+	this.check ("SELECT id, opt FROM net.sf.josql.ExternalSorterTest$Item ORDER BY name DESC, opt",
+		    false);
+
+    }
+
+    public void testOrderByNulls()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.ExternalSorterTest$Item ORDER BY opt DESC, name",
+		    true);
+
+    }
+
+    public void testNotSerializable()
+	throws Exception
+    {
+
+	Query q = this.createQuery ("SELECT * FROM net.sf.josql.ExternalSorterTest$Item ORDER BY key, id");
+
+	// Fine in memory.
+	q.execute (this.createItems (false));
+
+	q.setOrderByMemoryLimit (1);
+	q.setSortDirectory (this.dir);
+
+	try
+	{
+
+	    q.execute (this.createItems (false));
+
+	    fail ("Expected the values to not be written");
+
+	} catch (QueryExecutionException e) {
+
+	    // Expected.
+
+	}
+
+	assertEquals (0,
+		      this.dir.listFiles ().length);
+
+    }
+
+    private void check (String  sql,
+			boolean nulls)
+	throws Exception
+    {
+
+	Query q = this.createQuery (sql);
+
+	List objs = this.createItems (nulls);
+
+	QueryResults exp = q.execute (new ArrayList (objs));
+
+	q.setOrderByMemoryLimit (1);
+	q.setSortDirectory (this.dir);
+	q.setWantTimings (true);
+
+	QueryResults qr = q.execute (new ArrayList (objs));
+
+	assertEquals (exp.getResults (),
+		      qr.getResults ());
+
+	boolean spilled = false;
+
+	Iterator iter = qr.getTimings ().keySet ().iterator ();
+
+	while (iter.hasNext ())
+	{
+
+	    if (iter.next ().toString ().indexOf ("temporary files") != -1)
+	    {
+
+		spilled = true;
+
+	    }
+
+	}
+
+	assertTrue ("Expected temporary files to be used",
+		    spilled);
+
+	assertEquals (0,
+		      this.dir.listFiles ().length);
+
+    }
+
+    private Query createQuery (String sql)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (ExternalSorterTest.class.getClassLoader ());
+	q.parse (sql);
+
+	return q;
+
+    }
+
+    private List createItems (boolean nulls)
+    {
+
+	Random r = new Random (11);
+
+	List objs = new ArrayList ();
+
+	for (int i = 0; i < 5000; i++)
+	{
+
+	    Integer opt = null;
+
+	    if ((!nulls)
+		||
+		(r.nextInt (5) != 0)
+	       )
+	    {
+
+		opt = Integer.valueOf (r.nextInt (20));
+
+	    }
+
+	    objs.add (new Item (i,
+				opt,
+				"n" + r.nextInt (50)));
+
+	}
+
+	return objs;
+
+    }
+
+}
@@ -0,0 +1,296 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.internal.Utilities;
+
+import org.josql.utils.HashJoin;
+import org.josql.utils.JoinRow;
+
+/**
+ * Checks that a hash join produces the same rows as comparing every pair of values the way
+ * the JoSQL <code>=</code> operator does, for keys of mixed types and <code>null</code> keys.
+ */
+public class HashJoinTest
+    extends TestCase
+{
+
+    public static class Node
+    {
+
+	private String name = null;
+	private Object key = null;
+
+	public Node (String name,
+		     Object key)
+	{
+
+	    this.name = name;
+	    this.key = key;
+
+	}
+
+	public Object getKey ()
+	{
+
+	    return this.key;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.name + "=" + this.key;
+
+	}
+
+    }
+
+    public HashJoinTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( HashJoinTest.class );
+    }
+
+    public void testMixedNumericKeys()
+	throws Exception
+    {
+
+	List left = this.createNodes ("l",
+				      new Object[] { Integer.valueOf (1), Double.valueOf (2.0d), Long.valueOf (3), Integer.valueOf (4),
+						     Double.valueOf (1.5d), Short.valueOf ((short) 2), Double.valueOf (-0.0d), Integer.valueOf (7) });
+	List right = this.createNodes ("r",
+				       new Object[] { Double.valueOf (1.0d), Integer.valueOf (2), Integer.valueOf (3), Long.valueOf (4),
+						      Double.valueOf (1.5d), Float.valueOf (1.0f), Integer.valueOf (0), Double.valueOf (-0.0d),
+						      Long.valueOf (1) });
+
+	this.check (left,
+		    right,
+		    HashJoin.INNER);
+	this.check (left,
+		    right,
+		    HashJoin.LEFT);
+
+	// Integer 1 matches the Double, Float and Long 1s, in the order of the right objects.
+	List rows = this.join (left,
+			       right,
+			       HashJoin.INNER);
+
+	JoinRow r = (JoinRow) rows.get (0);
+
+	assertSame (left.get (0),
+		    r.getLeft ());
+	assertSame (right.get (0),
+		    r.getRight ());
+	assertSame (right.get (5),
+		    ((JoinRow) rows.get (1)).getRight ());
+	assertSame (right.get (8),
+		    ((JoinRow) rows.get (2)).getRight ());
+
+    }
+
+    public void testNullKeys()
+	throws Exception
+    {
+
+	List left = this.createNodes ("l",
+				      new Object[] { null, "a", Integer.valueOf (1), null, "b" });
+	List right = this.createNodes ("r",
+				       new Object[] { "a", null, Double.valueOf (1.0d), null, "a" });
+
+	this.check (left,
+		    right,
+		    HashJoin.INNER);
+	this.check (left,
+		    right,
+		    HashJoin.LEFT);
+
+	List rows = this.join (left,
+			       right,
+			       HashJoin.LEFT);
+
+	// The null keys never match, with a left join they produce a row without a right object.
+	assertEquals (6,
+		      rows.size ());
+	assertSame (left.get (0),
+		    ((JoinRow) rows.get (0)).getLeft ());
+	assertNull (((JoinRow) rows.get (0)).getRight ());
+
+	assertEquals (3,
+		      this.join (left,
+				 right,
+				 HashJoin.INNER).size ());
+
+    }
+
+    public void testObjectComparator()
+	throws Exception
+    {
+
+	List left = this.createNodes ("l",
+				      new Object[] { "A", "b", null, "c", Integer.valueOf (1) });
+	List right = this.createNodes ("r",
+				       new Object[] { "a", "B", "b", null, "d", Double.valueOf (1.0d) });
+
+	Utilities.setObjectComparator (new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		return String.valueOf (o1).toLowerCase ().compareTo (String.valueOf (o2).toLowerCase ());
+
+	    }
+
+	});
+
+	try
+	{
+
+	    this.check (left,
+			right,
+			HashJoin.INNER);
+	    this.check (left,
+			right,
+			HashJoin.LEFT);
+
+	    // The comparator makes the values case-insensitive, the number strings differ.
+	    assertEquals (3,
+			  this.join (left,
+				     right,
+				     HashJoin.INNER).size ());
+
+	} finally {
+
+	    Utilities.setObjectComparator (null);
+
+	}
+
+    }
+
+    /**
+     * Check the join against comparing every pair of values.
+     */
+    private void check (List left,
+			List right,
+			int  type)
+	throws Exception
+    {
+
+	List exp = new ArrayList ();
+
+	for (int i = 0; i < left.size (); i++)
+	{
+
+	    Node l = (Node) left.get (i);
+
+	    boolean matched = false;
+
+	    for (int j = 0; j < right.size (); j++)
+	    {
+
+		Node r = (Node) right.get (j);
+
+		if ((l.getKey () != null)
+		    &&
+		    (r.getKey () != null)
+		    &&
+		    (Utilities.isEquals (l.getKey (),
+					 r.getKey ()))
+		   )
+		{
+
+		    exp.add (l + "/" + r);
+
+		    matched = true;
+
+		}
+
+	    }
+
+	    if ((!matched)
+		&&
+		(type == HashJoin.LEFT)
+	       )
+	    {
+
+		exp.add (l + "/null");
+
+	    }
+
+	}
+
+	List rows = this.join (left,
+			       right,
+			       type);
+
+	List res = new ArrayList ();
+
+	for (int i = 0; i < rows.size (); i++)
+	{
+
+	    JoinRow r = (JoinRow) rows.get (i);
+
+	    res.add (r.getLeft () + "/" + r.getRight ());
+
+	}
+
+	assertEquals (exp,
+		      res);
+
+    }
+
+    private List join (List left,
+		       List right,
+		       int  type)
+	throws Exception
+    {
+
+	HashJoin j = new HashJoin (Node.class,
+				   "key",
+				   Node.class,
+				   "key",
+				   type);
+
+	return j.join (left,
+		       right);
+
+    }
+
+    private List createNodes (String   prefix,
+			      Object[] keys)
+    {
+
+	List nodes = new ArrayList ();
+
+	for (int i = 0; i < keys.length; i++)
+	{
+
+	    nodes.add (new Node (prefix + i,
+				 keys[i]));
+
+	}
+
+	return nodes;
+
+    }
+
+}
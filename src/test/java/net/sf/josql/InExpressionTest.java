@@ -0,0 +1,334 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+
+/**
+ * Checks that IN lists, which are checked using a hash set of their values, give the same
+ * results as the equivalent chain of <code>=</code> comparisons, including lists with a
+ * <code>null</code> item and lists given by bind variables.
+ */
+public class InExpressionTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.InExpressionTest$Item";
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private Object size = null;
+
+	public Item (int    id,
+		     String name,
+		     Object size)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public Object getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size;
+
+	}
+
+    }
+
+    public InExpressionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( InExpressionTest.class );
+    }
+
+    public void testConstants()
+	throws Exception
+    {
+
+	this.check ("name IN ('n1', 'n3', 'n5')",
+		    "name = 'n1' OR name = 'n3' OR name = 'n5'",
+		    null);
+
+	this.check ("size IN (1, 2.0, 3)",
+		    "size = 1 OR size = 2.0 OR size = 3",
+		    null);
+
+    }
+
+    public void testNullItem()
+	throws Exception
+    {
+
+	this.check ("name IN ('n1', null, 'n2')",
+		    "name = 'n1' OR name = null OR name = 'n2'",
+		    null);
+
+	this.check ("size IN (null, 4)",
+		    "size = null OR size = 4",
+		    null);
+
+    }
+
+    public void testNotIn()
+	throws Exception
+    {
+
+	this.check ("name NOT IN ('n1', 'n2')",
+		    "name != 'n1' AND name != 'n2'",
+		    null);
+
+	this.check ("name NOT IN ('n1', null)",
+		    "name != 'n1' AND name != null",
+		    null);
+
+    }
+
+    public void testIgnoreCase()
+	throws Exception
+    {
+
+	this.check ("name $IN ('N1', 'n2')",
+		    "name $= 'N1' OR name $= 'n2'",
+		    null);
+
+    }
+
+    public void testBindVariables()
+	throws Exception
+    {
+
+	Map bv = new HashMap ();
+	bv.put ("a",
+		Integer.valueOf (2));
+	bv.put ("b",
+		Double.valueOf (5.0d));
+	bv.put ("c",
+		null);
+
+	this.check ("size IN (:a, :b, :c)",
+		    "size = :a OR size = :b OR size = :c",
+		    bv);
+
+	// The same parsed query with different values for each execution.
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE size IN (:a, :b, 7)");
+	Query eq = this.parse ("SELECT * FROM " + ITEM + " WHERE size = :a OR size = :b OR size = 7");
+
+	List objs = this.createItems ();
+
+	for (int i = 0; i < 10; i++)
+	{
+
+	    bv.put ("a",
+		    Integer.valueOf (i));
+	    bv.put ("b",
+		    ((i % 2) == 0) ? (Object) Long.valueOf (i + 1) : null);
+
+	    assertEquals (eq.execute (objs,
+				      bv).getResults (),
+			  q.execute (objs,
+				     bv).getResults ());
+
+	}
+
+    }
+
+    public void testBindVariableCollection()
+	throws Exception
+    {
+
+	// A collection item matches when any of its values does.
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE size IN (:vals)");
+
+	List objs = this.createItems ();
+
+	Object[][] vals = { { Integer.valueOf (1), Double.valueOf (3.0d) },
+			    { Long.valueOf (4), null, Integer.valueOf (8) },
+			    { },
+			    { Integer.valueOf (1), Double.valueOf (3.0d) } };
+
+	for (int i = 0; i < vals.length; i++)
+	{
+
+	    Map bv = new HashMap ();
+	    bv.put ("vals",
+		    Arrays.asList (vals[i]));
+
+	    List res = q.execute (objs,
+				  bv).getResults ();
+
+	    List exp = new ArrayList ();
+
+	    for (int j = 0; j < objs.size (); j++)
+	    {
+
+		Item it = (Item) objs.get (j);
+
+		for (int k = 0; k < vals[i].length; k++)
+		{
+
+		    if (this.isEqual (it.getSize (),
+				      vals[i][k]))
+		    {
+
+			exp.add (it);
+
+			break;
+
+		    }
+
+		}
+
+	    }
+
+	    assertEquals (exp,
+			  res);
+
+	}
+
+    }
+
+    private boolean isEqual (Object s,
+			     Object v)
+    {
+
+	if ((s == null)
+	    ||
+	    (v == null)
+	   )
+	{
+
+	    return s == v;
+
+	}
+
+	return ((Number) s).doubleValue () == ((Number) v).doubleValue ();
+
+    }
+
+    private void check (String in,
+			String eq,
+			Map    bindVars)
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	List exp = this.parse ("SELECT * FROM " + ITEM + " WHERE " + eq).execute (objs,
+										  bindVars).getResults ();
+
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE " + in);
+
+	// Executed more than once since the sets of values are cached.
+	for (int i = 0; i < 3; i++)
+	{
+
+	    assertEquals (exp,
+			  q.execute (objs,
+				     bindVars).getResults ());
+
+	}
+
+    }
+
+    private Query parse (String sql)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (InExpressionTest.class.getClassLoader ());
+	q.parse (sql);
+
+	return q;
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (5);
+
+	for (int i = 0; i < 300; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (5) != 0)
+	    {
+
+		n = ((r.nextInt (2) == 0) ? "n" : "N") + r.nextInt (8);
+
+	    }
+
+	    Object s = null;
+
+	    switch (r.nextInt (4))
+	    {
+
+	    case 0 :
+		s = Integer.valueOf (r.nextInt (10));
+		break;
+
+	    case 1 :
+		s = Double.valueOf (r.nextInt (10));
+		break;
+
+	    case 2 :
+		s = Long.valueOf (r.nextInt (10));
+		break;
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				s));
+
+	}
+
+	return objs;
+
+    }
+
+}
@@ -0,0 +1,388 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+
+import org.josql.utils.IndexedCollection;
+
+/**
+ * Checks that queries against an {@link IndexedCollection} give the same results as a full
+ * scan of a plain list holding the same objects, as objects are added, set and removed.
+ */
+public class IndexedCollectionTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.IndexedCollectionTest$Item";
+
+    private static final String[] WHERES = { "name = 'n3'",
+					     "name = null",
+					     "size > 50 AND name = 'n2'",
+					     "size BETWEEN 10 AND 20",
+					     "size >= 95",
+					     "size < 5.5",
+					     "size <= 3 AND id > 100",
+					     "name IN ('n1', 'n4', 'x')",
+					     "size >= 90 OR name = 'n1'",
+					     "code = 3",
+					     "code = 'c3'",
+					     "code > 5" };
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private int size = 0;
+	private Object code = null;
+
+	public Item (int    id,
+		     String name,
+		     int    size,
+		     Object code)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+	    this.code = code;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public void setSize (int s)
+	{
+
+	    this.size = s;
+
+	}
+
+	public Object getCode ()
+	{
+
+	    return this.code;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size + ":" + this.code;
+
+	}
+
+    }
+
+    public IndexedCollectionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( IndexedCollectionTest.class );
+    }
+
+    public void testAddRemove()
+	throws Exception
+    {
+
+	Random r = new Random (9);
+
+	IndexedCollection ic = this.createCollection ();
+	List l = new ArrayList ();
+
+	for (int i = 0; i < 500; i++)
+	{
+
+	    Item it = this.createItem (r,
+				       i,
+				       false);
+
+	    ic.add (it);
+	    l.add (it);
+
+	}
+
+	this.check (ic,
+		    l);
+
+	int id = 500;
+
+	for (int round = 0; round < 20; round++)
+	{
+
+	    for (int i = 0; i < 30; i++)
+	    {
+
+		switch (r.nextInt (4))
+		{
+
+		case 0 :
+		{
+
+		    Item it = this.createItem (r,
+					       id++,
+					       false);
+
+		    ic.add (it);
+		    l.add (it);
+
+		    break;
+
+		}
+
+		case 1 :
+		{
+
+		    int p = r.nextInt (l.size () + 1);
+
+		    Item it = this.createItem (r,
+					       id++,
+					       false);
+
+		    ic.add (p,
+			    it);
+		    l.add (p,
+			   it);
+
+		    break;
+
+		}
+
+		case 2 :
+		{
+
+		    int p = r.nextInt (l.size ());
+
+		    assertSame (l.remove (p),
+				ic.remove (p));
+
+		    break;
+
+		}
+
+		case 3 :
+		{
+
+		    int p = r.nextInt (l.size ());
+
+		    Item it = this.createItem (r,
+					       id++,
+					       false);
+
+		    assertSame (l.set (p,
+				       it),
+				ic.set (p,
+					it));
+
+		    break;
+
+		}
+
+		}
+
+	    }
+
+	    this.check (ic,
+			l);
+
+	}
+
+	// Removing via the list methods.
+	Object o = l.get (10);
+
+	assertTrue (ic.remove (o));
+	assertTrue (l.remove (o));
+
+	ic.subList (20,
+		    40).clear ();
+	l.subList (20,
+		   40).clear ();
+
+	this.check (ic,
+		    l);
+
+	ic.clear ();
+	l.clear ();
+
+	this.check (ic,
+		    l);
+
+    }
+
+    public void testMixedValues()
+	throws Exception
+    {
+
+	Random r = new Random (4);
+
+	IndexedCollection ic = this.createCollection ();
+	List l = new ArrayList ();
+
+	for (int i = 0; i < 300; i++)
+	{
+
+	    // The codes are a mix of numbers and strings, so the index can't be used for them.
+	    Item it = this.createItem (r,
+				       i,
+				       true);
+
+	    ic.add (it);
+	    l.add (it);
+
+	}
+
+	this.check (ic,
+		    l);
+
+	// Once the strings are removed the index can be used again.
+	for (int i = l.size () - 1; i > -1; i--)
+	{
+
+	    if (((Item) l.get (i)).getCode () instanceof String)
+	    {
+
+		l.remove (i);
+		ic.remove (i);
+
+	    }
+
+	}
+
+	this.check (ic,
+		    l);
+
+    }
+
+    public void testReindex()
+	throws Exception
+    {
+
+	Random r = new Random (2);
+
+	IndexedCollection ic = this.createCollection ();
+	List l = new ArrayList ();
+
+	for (int i = 0; i < 200; i++)
+	{
+
+	    Item it = this.createItem (r,
+				       i,
+				       false);
+
+	    ic.add (it);
+	    l.add (it);
+
+	}
+
+	for (int i = 0; i < l.size (); i += 3)
+	{
+
+	    ((Item) l.get (i)).setSize (r.nextInt (100));
+
+	}
+
+	ic.reindex ();
+
+	this.check (ic,
+		    l);
+
+    }
+
+    private void check (IndexedCollection ic,
+			List              l)
+	throws Exception
+    {
+
+	assertEquals (l,
+		      ic);
+
+	for (int i = 0; i < WHERES.length; i++)
+	{
+
+	    Query q = new Query ();
+	    q.setClassLoader (IndexedCollectionTest.class.getClassLoader ());
+	    q.parse ("SELECT * FROM " + ITEM + " WHERE " + WHERES[i]);
+
+	    assertEquals (WHERES[i],
+			  q.execute (l).getResults (),
+			  q.execute (ic).getResults ());
+
+	}
+
+    }
+
+    private IndexedCollection createCollection ()
+    {
+
+	IndexedCollection ic = new IndexedCollection (Item.class);
+	ic.addHashIndex ("name");
+	ic.addSortedIndex ("size");
+	ic.addSortedIndex ("code");
+
+	return ic;
+
+    }
+
+    private Item createItem (Random  r,
+			     int     id,
+			     boolean mixed)
+    {
+
+	String n = null;
+
+	if (r.nextInt (8) != 0)
+	{
+
+	    n = "n" + r.nextInt (6);
+
+	}
+
+	Object c = Integer.valueOf (r.nextInt (10));
+
+	if ((mixed)
+	    &&
+	    (r.nextBoolean ())
+	   )
+	{
+
+	    c = "c" + r.nextInt (10);
+
+	}
+
+	return new Item (id,
+			 n,
+			 r.nextInt (100),
+			 c);
+
+    }
+
+}
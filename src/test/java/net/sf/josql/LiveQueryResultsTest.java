@@ -0,0 +1,243 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+import org.josql.QueryResults;
+import org.josql.LiveQueryResults;
+
+/**
+ * Checks that live results match the results of executing the query again after
+ * objects are added, removed and changed.
+ */
+public class LiveQueryResultsTest 
+    extends TestCase
+{
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private Integer opt = null;
+	private String grp = null;
+
+	public Item (int     id,
+		     Integer opt,
+		     String  grp)
+	{
+
+	    this.id = id;
+	    this.opt = opt;
+	    this.grp = grp;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public Integer getOpt ()
+	{
+
+	    return this.opt;
+
+	}
+
+	public String getGrp ()
+	{
+
+	    return this.grp;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.opt;
+
+	}
+
+    }
+
+    public LiveQueryResultsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LiveQueryResultsTest.class );
+    }
+
+    public void testOrderBy()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.LiveQueryResultsTest$Item ORDER BY opt DESC",
+		    false);
+
+    }
+
+    public void testOrderByWhere()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.LiveQueryResultsTest$Item WHERE id % 3 != 0 ORDER BY opt, grp DESC",
+		    false);
+
+    }
+
+    public void testLimit()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.LiveQueryResultsTest$Item ORDER BY opt DESC LIMIT 3, 10",
+		    false);
+
+    }
+
+    public void testOrderByNullsDesc()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.LiveQueryResultsTest$Item ORDER BY opt DESC",
+		    true);
+
+    }
+
+    public void testOrderByNulls()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.LiveQueryResultsTest$Item WHERE id % 3 != 0 ORDER BY opt, grp DESC",
+		    true);
+
+    }
+
+    public void testLimitNulls()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM net.sf.josql.LiveQueryResultsTest$Item ORDER BY opt DESC LIMIT 3, 10",
+		    true);
+
+    }
+
+    public void testLimitZeroStart()
+	throws Exception
+    {
+
+	this.check ("SELECT id FROM net.sf.josql.LiveQueryResultsTest$Item ORDER BY opt LIMIT 0, 7",
+		    true);
+
+    }
+
+    public void testGroupBy()
+	throws Exception
+    {
+
+	this.check ("SELECT grp, count(:_allobjs), max(:_allobjs, id) FROM net.sf.josql.LiveQueryResultsTest$Item GROUP BY grp",
+		    true);
+
+    }
+
+    private void check (String  sql,
+			boolean nulls)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (LiveQueryResultsTest.class.getClassLoader ());
+	q.parse (sql);
+
+	Random r = new Random (7);
+
+	// The objects in the order they were added.
+	List objs = new ArrayList ();
+
+	LiveQueryResults lqr = new LiveQueryResults (q);
+
+	for (int i = 0; i < 400; i++)
+	{
+
+	    int op = r.nextInt (10);
+
+	    if ((op < 5)
+		||
+		(objs.size () == 0)
+	       )
+	    {
+
+		Item it = new Item (i,
+				    this.randomOpt (r,
+						    nulls),
+				    "g" + r.nextInt (6));
+
+		objs.add (it);
+		lqr.add (it);
+
+	    } else if (op < 7) {
+
+		Object o = objs.remove (r.nextInt (objs.size ()));
+
+		assertTrue (lqr.remove (o));
+
+	    } else {
+
+		Item it = (Item) objs.get (r.nextInt (objs.size ()));
+
+		it.opt = this.randomOpt (r,
+					 nulls);
+		it.grp = "g" + r.nextInt (6);
+
+		assertTrue (lqr.changed (it));
+
+	    }
+
+	    QueryResults qr = q.execute (new ArrayList (objs));
+
+	    assertEquals ("After operation: " + i,
+			  qr.getResults (),
+			  lqr.getResults ());
+
+	    if (qr.getGroupByResults () != null)
+	    {
+
+		assertEquals ("After operation: " + i,
+			      new ArrayList (qr.getGroupByResults ().keySet ()),
+			      new ArrayList (lqr.getGroupByResults ().keySet ()));
+
+	    }
+
+	}
+
+    }
+
+    private Integer randomOpt (Random  r,
+			       boolean nulls)
+    {
+
+	if ((nulls)
+	    &&
+	    (r.nextInt (3) == 0)
+	   )
+	{
+
+	    return null;
+
+	}
+
+	return Integer.valueOf (r.nextInt (10));
+
+    }
+
+}
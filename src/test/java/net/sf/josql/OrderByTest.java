@@ -0,0 +1,544 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+
+import org.josql.internal.ListExpressionComparator;
+import org.josql.internal.Utilities;
+
+/**
+ * Checks that ORDER BY, whose values are evaluated once per object and held in columns,
+ * orders the objects in the same way as comparing the values of each pair of objects, for
+ * columns with <code>null</code>s and values of mixed types.
+ */
+public class OrderByTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.OrderByTest$Item";
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private int size = 0;
+	private Double weight = null;
+	private Object code = null;
+	private Number count = null;
+
+	public Item (int    id,
+		     String name,
+		     int    size,
+		     Double weight,
+		     Object code,
+		     Number count)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+	    this.weight = weight;
+	    this.code = code;
+	    this.count = count;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public Double getWeight ()
+	{
+
+	    return this.weight;
+
+	}
+
+	public Object getCode ()
+	{
+
+	    return this.code;
+
+	}
+
+	public Number getCount ()
+	{
+
+	    return this.count;
+
+	}
+
+	/**
+	 * Get the value for the accessor.
+	 */
+	public Object get (String acc)
+	{
+
+	    if (acc.equals ("name"))
+	    {
+
+		return this.name;
+
+	    }
+
+	    if (acc.equals ("size"))
+	    {
+
+		return Integer.valueOf (this.size);
+
+	    }
+
+	    if (acc.equals ("weight"))
+	    {
+
+		return this.weight;
+
+	    }
+
+	    if (acc.equals ("code"))
+	    {
+
+		return this.code;
+
+	    }
+
+	    if (acc.equals ("count"))
+	    {
+
+		return this.count;
+
+	    }
+
+	    return Integer.valueOf (this.id);
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size + ":" + this.weight + ":" + this.code + ":" + this.count;
+
+	}
+
+    }
+
+    public OrderByTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( OrderByTest.class );
+    }
+
+    public void testNumbers()
+	throws Exception
+    {
+
+	this.check (new String[] { "size" },
+		    new boolean[] { false });
+	this.check (new String[] { "size", "id" },
+		    new boolean[] { true, true });
+	this.check (new String[] { "weight" },
+		    new boolean[] { false });
+	this.check (new String[] { "weight", "size" },
+		    new boolean[] { true, false });
+
+    }
+
+    public void testStrings()
+	throws Exception
+    {
+
+	this.check (new String[] { "name" },
+		    new boolean[] { false });
+	this.check (new String[] { "name", "weight" },
+		    new boolean[] { true, true });
+
+    }
+
+    public void testMixedTypes()
+	throws Exception
+    {
+
+	// Codes are numbers and strings, counts are numbers of different classes.
+	this.check (new String[] { "code" },
+		    new boolean[] { false });
+	this.check (new String[] { "code", "name" },
+		    new boolean[] { true, false });
+	this.check (new String[] { "count" },
+		    new boolean[] { false });
+	this.check (new String[] { "count", "code", "size" },
+		    new boolean[] { true, false, true });
+
+    }
+
+    public void testObjectComparator()
+	throws Exception
+    {
+
+	Utilities.setObjectComparator (new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		return String.valueOf (o1).compareTo (String.valueOf (o2));
+
+	    }
+
+	});
+
+	try
+	{
+
+	    this.check (new String[] { "size", "name" },
+			new boolean[] { false, true });
+	    this.check (new String[] { "count", "weight" },
+			new boolean[] { false, false });
+
+	} finally {
+
+	    Utilities.setObjectComparator (null);
+
+	}
+
+    }
+
+    public void testExpressions()
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	Query q = this.createQuery (false);
+	q.parse ("SELECT id, size % 7, name FROM " + ITEM + " WHERE size > 10 ORDER BY 2 DESC, 3, id LIMIT 3, 50");
+
+	List res = q.execute (objs).getResults ();
+
+	List exp = new ArrayList ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    Item it = (Item) objs.get (i);
+
+	    if (it.getSize () > 10)
+	    {
+
+		List row = new ArrayList ();
+		row.add (Integer.valueOf (it.getId ()));
+		row.add (Double.valueOf (it.getSize () % 7));
+		row.add (it.getName ());
+
+		exp.add (row);
+
+	    }
+
+	}
+
+	Collections.sort (exp,
+			  new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		List r1 = (List) o1;
+		List r2 = (List) o2;
+
+		int c = -ListExpressionComparator.compareValues (r1.get (1),
+								  r2.get (1));
+
+		if (c == 0)
+		{
+
+		    c = ListExpressionComparator.compareValues (r1.get (2),
+								r2.get (2));
+
+		}
+
+		if (c == 0)
+		{
+
+		    c = ListExpressionComparator.compareValues (r1.get (0),
+								r2.get (0));
+
+		}
+
+		return c;
+
+	    }
+
+	});
+
+	exp = exp.subList (2,
+			   52);
+
+	assertEquals (exp.size (),
+		      res.size ());
+
+	for (int i = 0; i < exp.size (); i++)
+	{
+
+	    List e = (List) exp.get (i);
+	    List r = (List) res.get (i);
+
+	    assertEquals (e.get (0),
+			  r.get (0));
+	    assertEquals (((Number) e.get (1)).doubleValue (),
+			  ((Number) r.get (1)).doubleValue (),
+			  0);
+	    assertEquals (e.get (2),
+			  r.get (2));
+
+	}
+
+    }
+
+    public void testGroupBy()
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	Query q = this.createQuery (false);
+	q.parse ("SELECT name FROM " + ITEM + " GROUP BY name GROUP BY ORDER 1 DESC");
+
+	List res = q.execute (objs).getResults ();
+
+	List names = new ArrayList ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    String n = ((Item) objs.get (i)).getName ();
+
+	    if (!names.contains (n))
+	    {
+
+		names.add (n);
+
+	    }
+
+	}
+
+	assertEquals (names.size (),
+		      res.size ());
+
+	// Nulls are first in ascending order so last here.
+	for (int i = 1; i < res.size (); i++)
+	{
+
+	    assertTrue (ListExpressionComparator.compareValues (((List) res.get (i - 1)).get (0),
+								((List) res.get (i)).get (0)) > 0);
+
+	}
+
+	assertNull (((List) res.get (res.size () - 1)).get (0));
+
+    }
+
+    /**
+     * Check the order against sorting the objects, using a stable sort, by comparing the
+     * values of each pair of objects.
+     */
+    private void check (final String[]  accs,
+			final boolean[] desc)
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	StringBuffer b = new StringBuffer ();
+
+	for (int i = 0; i < accs.length; i++)
+	{
+
+	    if (i > 0)
+	    {
+
+		b.append (", ");
+
+	    }
+
+	    b.append (accs[i]);
+
+	    if (desc[i])
+	    {
+
+		b.append (" DESC");
+
+	    }
+
+	}
+
+	List exp = new ArrayList (objs);
+
+	Collections.sort (exp,
+			  new Comparator ()
+	{
+
+	    public int compare (Object o1,
+				Object o2)
+	    {
+
+		for (int i = 0; i < accs.length; i++)
+		{
+
+		    int c = ListExpressionComparator.compareValues (((Item) o1).get (accs[i]),
+								    ((Item) o2).get (accs[i]));
+
+		    if (c != 0)
+		    {
+
+			return desc[i] ? -c : c;
+
+		    }
+
+		}
+
+		return 0;
+
+	    }
+
+	});
+
+	for (int i = 0; i < 2; i++)
+	{
+
+	    Query q = this.createQuery (i == 1);
+	    q.parse ("SELECT * FROM " + ITEM + " ORDER BY " + b);
+
+	    assertEquals (b.toString (),
+			  exp,
+			  q.execute (objs).getResults ());
+
+	}
+
+    }
+
+    private Query createQuery (boolean parallel)
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (OrderByTest.class.getClassLoader ());
+	q.setWantParallelExecution (parallel);
+	q.setParallelChunkSize (100);
+
+	return q;
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (10);
+
+	for (int i = 0; i < 2000; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (6) != 0)
+	    {
+
+		n = "n" + r.nextInt (8);
+
+	    }
+
+	    Double w = null;
+
+	    if (r.nextInt (5) != 0)
+	    {
+
+		w = Double.valueOf (r.nextInt (20) / 4.0d);
+
+	    }
+
+	    // Single digits so that comparing with the strings, by string value, is consistent
+	    // with comparing the numbers.
+	    Object c = null;
+
+	    switch (r.nextInt (4))
+	    {
+
+	    case 0 :
+		c = Integer.valueOf (r.nextInt (10));
+		break;
+
+	    case 1 :
+		c = Double.valueOf (r.nextInt (10) / 2.0d);
+		break;
+
+	    case 2 :
+		c = "c" + r.nextInt (10);
+		break;
+
+	    }
+
+	    Number cn = null;
+
+	    switch (r.nextInt (4))
+	    {
+
+	    case 0 :
+		cn = Integer.valueOf (r.nextInt (10));
+		break;
+
+	    case 1 :
+		cn = Long.valueOf (r.nextInt (10));
+		break;
+
+	    case 2 :
+		cn = Double.valueOf (r.nextInt (20) / 2.0d);
+		break;
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				r.nextInt (100),
+				w,
+				c,
+				cn));
+
+	}
+
+	return objs;
+
+    }
+
+}
@@ -0,0 +1,252 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Collections;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+import org.josql.QueryResults;
+
+/**
+ * Checks that executing a query in parallel gives the same results and save values as
+ * executing it sequentially, for lists large enough to be split into many chunks.
+ */
+public class ParallelExecutionTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.ParallelExecutionTest$Item";
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private int size = 0;
+
+	public Item (int    id,
+		     String name,
+		     int    size)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size;
+
+	}
+
+    }
+
+    /**
+     * A function handler that records the threads it is called from.
+     */
+    public static class Recorder
+    {
+
+	public Set threads = Collections.synchronizedSet (new HashSet ());
+
+	public boolean check (Number n)
+	{
+
+	    this.threads.add (Thread.currentThread ());
+
+	    return (n.intValue () % 3) == 0;
+
+	}
+
+    }
+
+    public ParallelExecutionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ParallelExecutionTest.class );
+    }
+
+    public void testWhere()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size > 50 AND name != null");
+
+    }
+
+    public void testWhereOrderBy()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE name LIKE 'n1%' ORDER BY size DESC, id");
+
+    }
+
+    public void testWhereSaveValues()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size > least(:_allobjs, size, 'min') + 10 AND size >= sum(:_allobjs, size, 'total') / 5000");
+
+    }
+
+    public void testGroupBy()
+	throws Exception
+    {
+
+	this.check ("SELECT name, count(:_allobjs) FROM " + ITEM + " WHERE size > 10 GROUP BY name ORDER BY name");
+
+    }
+
+    public void testGroupByAggregates()
+	throws Exception
+    {
+
+	this.check ("SELECT size % 7, sum(:_allobjs, size), count(:_allobjs) FROM " + ITEM + " GROUP BY size % 7");
+
+    }
+
+    public void testGroupBySaveValues()
+	throws Exception
+    {
+
+	this.check ("SELECT size % 5 FROM " + ITEM + " GROUP BY size % 5, least(:_allobjs, id, 'first') ORDER BY 1");
+
+    }
+
+    public void testFunctionHandler()
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	String sql = "SELECT * FROM " + ITEM + " WHERE check(size)";
+
+	Recorder r = new Recorder ();
+
+	Query pq = this.createQuery (true);
+	pq.addFunctionHandler (r);
+	pq.parse (sql);
+
+	Query sq = this.createQuery (false);
+	sq.addFunctionHandler (new Recorder ());
+	sq.parse (sql);
+
+	assertEquals (sq.execute (objs).getResults (),
+		      pq.execute (objs).getResults ());
+
+	// The handler may keep state so it is only called by the executing thread.
+	assertEquals (Collections.singleton (Thread.currentThread ()),
+		      r.threads);
+
+    }
+
+    private void check (String sql)
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	Query sq = this.createQuery (false);
+	sq.parse (sql);
+
+	Query pq = this.createQuery (true);
+	pq.parse (sql);
+
+	QueryResults sr = sq.execute (objs);
+
+	for (int i = 0; i < 5; i++)
+	{
+
+	    QueryResults pr = pq.execute (objs);
+
+	    assertEquals (sr.getResults (),
+			  pr.getResults ());
+	    assertEquals (sr.getWhereResults (),
+			  pr.getWhereResults ());
+	    assertEquals (sr.getGroupByResults (),
+			  pr.getGroupByResults ());
+	    assertEquals (sr.getSaveValues (),
+			  pr.getSaveValues ());
+
+	}
+
+    }
+
+    private Query createQuery (boolean parallel)
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (ParallelExecutionTest.class.getClassLoader ());
+	q.setWantParallelExecution (parallel);
+	q.setParallelChunkSize (100);
+
+	return q;
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (7);
+
+	for (int i = 0; i < 5000; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (5) != 0)
+	    {
+
+		n = "n" + r.nextInt (300);
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				r.nextInt (100)));
+
+	}
+
+	return objs;
+
+    }
+
+}
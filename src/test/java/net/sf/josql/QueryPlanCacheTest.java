@@ -0,0 +1,355 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.lang.ref.WeakReference;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+import org.josql.QueryPlanCache;
+import org.josql.CachedQuery;
+import org.josql.QueryParseException;
+
+import org.josql.utils.ExpressionEvaluator;
+
+/**
+ * Checks the hits, misses and evictions of the query cache, that it doesn't keep
+ * ClassLoaders alive and that the shared queries give the same results as a Query
+ * parsed for each call.
+ */
+public class QueryPlanCacheTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.QueryPlanCacheTest$Item";
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private int size = 0;
+
+	public Item (int id,
+		     int size)
+	{
+
+	    this.id = id;
+	    this.size = size;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.size;
+
+	}
+
+    }
+
+    public QueryPlanCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryPlanCacheTest.class );
+    }
+
+    public void testHits()
+	throws Exception
+    {
+
+	QueryPlanCache c = new QueryPlanCache (10);
+
+	String sql = "SELECT * FROM " + ITEM + " WHERE size > 5 ORDER BY id DESC";
+
+	CachedQuery q1 = c.getQuery (sql);
+	CachedQuery q2 = c.getQuery (sql);
+
+	assertSame (q1,
+		    q2);
+	assertEquals (1,
+		      c.getHits ());
+	assertEquals (1,
+		      c.getMisses ());
+	assertEquals (1,
+		      c.getSize ());
+
+	List objs = this.createItems ();
+
+	assertEquals (this.parse (sql).execute (objs).getResults (),
+		      q2.execute (objs).getResults ());
+
+	// The same text against a different class (or ClassLoader) is a different entry.
+	c.getQuery (sql,
+		    Item.class,
+		    null);
+
+	assertEquals (2,
+		      c.getMisses ());
+	assertEquals (2,
+		      c.getSize ());
+
+    }
+
+    public void testBindVariables()
+	throws Exception
+    {
+
+	QueryPlanCache c = new QueryPlanCache (10);
+
+	String sql = "SELECT * FROM " + ITEM + " WHERE size > :min";
+
+	List objs = this.createItems ();
+
+	for (int i = 0; i < 10; i++)
+	{
+
+	    Map bv = new HashMap ();
+	    bv.put ("min",
+		    new Integer (i));
+
+	    Query q = this.parse (sql);
+	    q.setVariables (bv);
+
+	    assertEquals (q.execute (objs).getResults (),
+			  c.getQuery (sql).execute (objs,
+						    bv).getResults ());
+
+	}
+
+	assertEquals (9,
+		      c.getHits ());
+
+    }
+
+    public void testEviction()
+	throws Exception
+    {
+
+	QueryPlanCache c = new QueryPlanCache (2);
+
+	String a = "SELECT * FROM " + ITEM + " WHERE size > 1";
+	String b = "SELECT * FROM " + ITEM + " WHERE size > 2";
+	String d = "SELECT * FROM " + ITEM + " WHERE size > 3";
+
+	CachedQuery qa = c.getQuery (a);
+	CachedQuery qb = c.getQuery (b);
+
+	// Make b the least recently used.
+	assertSame (qa,
+		    c.getQuery (a));
+
+	c.getQuery (d);
+
+	assertEquals (1,
+		      c.getEvictions ());
+	assertEquals (2,
+		      c.getSize ());
+
+	assertSame (qa,
+		    c.getQuery (a));
+
+	long m = c.getMisses ();
+
+	assertNotSame (qb,
+		       c.getQuery (b));
+	assertEquals (m + 1,
+		      c.getMisses ());
+
+	c.setMaxSize (1);
+
+	assertEquals (1,
+		      c.getSize ());
+	assertEquals (3,
+		      c.getEvictions ());
+
+	c.setMaxSize (0);
+
+	c.getQuery (a);
+	c.getQuery (a);
+
+	assertEquals (0,
+		      c.getSize ());
+
+    }
+
+    public void testParseFailure()
+	throws Exception
+    {
+
+	QueryPlanCache c = new QueryPlanCache (10);
+
+	try
+	{
+
+	    c.getQuery ("SELECT * FROM " + ITEM + " WHERE");
+
+	    fail ("Expected a parse exception.");
+
+	} catch (QueryParseException e) {
+
+	}
+
+	assertEquals (0,
+		      c.getSize ());
+
+    }
+
+    public void testClassLoaderRelease()
+	throws Exception
+    {
+
+	QueryPlanCache c = new QueryPlanCache (10);
+
+	WeakReference l = this.useLoader (c);
+
+	// The cached queries are softly referenced, these are cleared before the heap runs out.
+	List fill = new ArrayList ();
+
+	try
+	{
+
+	    for (int i = 0; (i < 100000) && (l.get () != null); i++)
+	    {
+
+		fill.add (new long[1024 * 1024]);
+
+		System.gc ();
+
+	    }
+
+	} catch (OutOfMemoryError e) {
+
+	}
+
+	fill = null;
+
+	// The collected entries are removed once their references have been queued.
+	for (int i = 0; (i < 20) && ((l.get () != null) || (c.getSize () > 0)); i++)
+	{
+
+	    System.gc ();
+
+	    Thread.sleep (50);
+
+	}
+
+	assertNull (l.get ());
+	assertEquals (0,
+		      c.getSize ());
+
+    }
+
+    public void testExpressionEvaluator()
+	throws Exception
+    {
+
+	QueryPlanCache.getDefault ().clear ();
+
+	List objs = this.createItems ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    Item it = (Item) objs.get (i);
+
+	    assertEquals (it.getSize () > 5,
+			  ExpressionEvaluator.isTrue ("size > 5",
+						      it));
+
+	    assertEquals (new Integer (it.getId () + it.getSize ()),
+			  new Integer (((Number) ExpressionEvaluator.getValue ("id + size",
+									       it)).intValue ()));
+
+	}
+
+	assertEquals (2,
+		      QueryPlanCache.getDefault ().getMisses ());
+	assertEquals ((objs.size () * 2) - 2,
+		      QueryPlanCache.getDefault ().getHits ());
+
+    }
+
+    private WeakReference useLoader (QueryPlanCache c)
+	throws Exception
+    {
+
+	ClassLoader cl = new URLClassLoader (new URL[0],
+					     QueryPlanCacheTest.class.getClassLoader ());
+
+	String sql = "SELECT * FROM " + ITEM + " WHERE size > 5";
+
+	c.getQuery (sql,
+		    Item.class,
+		    cl);
+
+	List objs = this.createItems ();
+
+	assertEquals (this.parse (sql).execute (objs).getResults (),
+		      c.getQuery (sql,
+				  Item.class,
+				  cl).execute (objs).getResults ());
+
+	assertEquals (1,
+		      c.getHits ());
+
+	return new WeakReference (cl);
+
+    }
+
+    private Query parse (String sql)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (QueryPlanCacheTest.class.getClassLoader ());
+	q.parse (sql);
+
+	return q;
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	for (int i = 0; i < 20; i++)
+	{
+
+	    objs.add (new Item (i,
+				(i * 7) % 11));
+
+	}
+
+	return objs;
+
+    }
+
+}
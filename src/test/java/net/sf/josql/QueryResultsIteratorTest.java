@@ -0,0 +1,335 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+import org.josql.QueryExecutionException;
+import org.josql.QueryResultsIterator;
+
+/**
+ * Checks that streaming a query with {@link Query#iterate(Iterator,Map)} gives the same
+ * results as executing it and that objects are only taken from the source when needed.
+ */
+public class QueryResultsIteratorTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.QueryResultsIteratorTest$Item";
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private int size = 0;
+
+	public Item (int    id,
+		     String name,
+		     int    size)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public int getNameLength ()
+	{
+
+	    return this.name.length ();
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size;
+
+	}
+
+    }
+
+    /**
+     * An endless source of items that counts the items taken.
+     */
+    public static class Source
+	implements Iterator
+    {
+
+	public int taken = 0;
+
+	public boolean hasNext ()
+	{
+
+	    return true;
+
+	}
+
+	public Object next ()
+	{
+
+	    Item it = new Item (this.taken,
+				"n" + (this.taken % 7),
+				this.taken % 10);
+
+	    this.taken++;
+
+	    return it;
+
+	}
+
+	public void remove ()
+	{
+
+	    throw new UnsupportedOperationException ();
+
+	}
+
+    }
+
+    public QueryResultsIteratorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryResultsIteratorTest.class );
+    }
+
+    public void testWhere()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size > 40 AND name != null",
+		    null);
+
+    }
+
+    public void testColumns()
+	throws Exception
+    {
+
+	this.check ("SELECT id, name, size * 2 FROM " + ITEM + " WHERE name LIKE 'n1%'",
+		    null);
+
+    }
+
+    public void testLimit()
+	throws Exception
+    {
+
+	this.check ("SELECT * FROM " + ITEM + " WHERE size < 50 LIMIT 3, 10",
+		    null);
+	this.check ("SELECT * FROM " + ITEM + " LIMIT 1000, 10",
+		    null);
+	this.check ("SELECT name FROM " + ITEM + " LIMIT 0",
+		    null);
+
+    }
+
+    public void testBindVariables()
+	throws Exception
+    {
+
+	Map bv = new HashMap ();
+	bv.put ("min",
+		Integer.valueOf (30));
+	bv.put ("name",
+		"n3");
+
+	this.check ("SELECT id FROM " + ITEM + " WHERE size >= :min OR name = :name LIMIT 2, 5",
+		    bv);
+
+    }
+
+    public void testOnlyTakesWhatIsNeeded()
+	throws Exception
+    {
+
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE size = 3 LIMIT 2, 4");
+
+	Source s = new Source ();
+
+	QueryResultsIterator iter = q.iterate (s);
+
+	List res = new ArrayList ();
+
+	while (iter.hasNext ())
+	{
+
+	    res.add (iter.next ());
+
+	}
+
+	assertEquals (4,
+		      res.size ());
+	assertEquals (43,
+		      ((Item) res.get (3)).getId ());
+
+	// The last row is item 43, nothing after it is needed.
+	assertEquals (44,
+		      s.taken);
+
+    }
+
+    public void testNotStreamable()
+	throws Exception
+    {
+
+	Query q = this.parse ("SELECT * FROM " + ITEM + " ORDER BY size");
+
+	assertFalse (q.isStreamable ());
+
+	try
+	{
+
+	    q.iterate (this.createItems ().iterator ());
+
+	    fail ("Expected the query not to be streamable.");
+
+	} catch (QueryExecutionException e) {
+
+	}
+
+    }
+
+    public void testException()
+	throws Exception
+    {
+
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE nameLength > 1");
+
+	List objs = new ArrayList ();
+	objs.add (new Item (1,
+			    "abc",
+			    1));
+	objs.add (new Item (2,
+			    null,
+			    2));
+
+	QueryResultsIterator iter = q.iterate (objs.iterator ());
+
+	assertTrue (iter.hasNext ());
+	assertSame (objs.get (0),
+		    iter.next ());
+
+	try
+	{
+
+	    iter.hasNext ();
+
+	    fail ("Expected the WHERE clause to fail for the null name.");
+
+	} catch (IllegalStateException e) {
+
+	}
+
+	assertNotNull (iter.getException ());
+	assertFalse (iter.hasNext ());
+
+    }
+
+    private void check (String sql,
+			Map    bindVars)
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	Query q = this.parse (sql);
+
+	List exp = q.execute (objs,
+			      bindVars).getResults ();
+
+	QueryResultsIterator iter = q.iterate (objs.iterator (),
+					       bindVars);
+
+	List res = new ArrayList ();
+
+	while (iter.hasNext ())
+	{
+
+	    res.add (iter.next ());
+
+	}
+
+	assertNull (iter.getException ());
+	assertEquals (exp,
+		      res);
+
+    }
+
+    private Query parse (String sql)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (QueryResultsIteratorTest.class.getClassLoader ());
+	q.parse (sql);
+
+	return q;
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (11);
+
+	for (int i = 0; i < 500; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (6) != 0)
+	    {
+
+		n = "n" + r.nextInt (40);
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				r.nextInt (100)));
+
+	}
+
+	return objs;
+
+    }
+
+}
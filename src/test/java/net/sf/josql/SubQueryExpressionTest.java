@@ -0,0 +1,420 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+
+/**
+ * Checks that sub-queries, whose results are kept for each distinct set of outer values
+ * they use, give the same results as executing them for every outer object and that they
+ * are only executed once per distinct set of values.
+ */
+public class SubQueryExpressionTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.SubQueryExpressionTest$Item";
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private int grp = 0;
+	private int size = 0;
+	private List children = null;
+
+	public Item (int  id,
+		     int  grp,
+		     int  size,
+		     List children)
+	{
+
+	    this.id = id;
+	    this.grp = grp;
+	    this.size = size;
+	    this.children = children;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public int getGrp ()
+	{
+
+	    return this.grp;
+
+	}
+
+	public int getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public List getChildren ()
+	{
+
+	    return this.children;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.grp + ":" + this.size;
+
+	}
+
+    }
+
+    /**
+     * A function handler that counts the objects the sub-queries are evaluated against and
+     * checks the sizes of the items they return.
+     */
+    public static class Counter
+    {
+
+	public int count = 0;
+
+	public boolean tick (Object o)
+	{
+
+	    this.count++;
+
+	    return true;
+
+	}
+
+	public boolean hasSize (List   items,
+				Number size)
+	{
+
+	    for (int i = 0; i < items.size (); i++)
+	    {
+
+		if (((Item) items.get (i)).getSize () == size.intValue ())
+		{
+
+		    return true;
+
+		}
+
+	    }
+
+	    return false;
+
+	}
+
+    }
+
+    public SubQueryExpressionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SubQueryExpressionTest.class );
+    }
+
+    public void testUncorrelated()
+	throws Exception
+    {
+
+	List objs = this.createItems (new Random (1));
+	List others = this.createItems (new Random (2));
+
+	Counter c = new Counter ();
+
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE hasSize((SELECT * FROM :others WHERE tick(id) AND grp = 2), size)",
+			      c);
+
+	Map bv = new HashMap ();
+	bv.put ("others",
+		others);
+
+	List res = q.execute (objs,
+			      bv).getResults ();
+
+	Set sizes = new HashSet ();
+
+	for (int i = 0; i < others.size (); i++)
+	{
+
+	    Item it = (Item) others.get (i);
+
+	    if (it.getGrp () == 2)
+	    {
+
+		sizes.add (Integer.valueOf (it.getSize ()));
+
+	    }
+
+	}
+
+	assertEquals (this.filter (objs,
+				   sizes),
+		      res);
+
+	// The sub-query doesn't depend on the outer object so it is executed once.
+	assertEquals (others.size (),
+		      c.count);
+
+	// And once again for the next execution, which may have other values.
+	others = this.createItems (new Random (3));
+	bv.put ("others",
+		others);
+
+	c.count = 0;
+
+	q.execute (objs,
+		   bv);
+
+	assertEquals (others.size (),
+		      c.count);
+
+    }
+
+    public void testCorrelated()
+	throws Exception
+    {
+
+	List objs = this.createItems (new Random (4));
+	List others = this.createItems (new Random (5));
+
+	Counter c = new Counter ();
+
+	Query q = this.parse ("SELECT id, (SELECT id FROM :others WHERE tick(id) AND grp = :_parent.currentObject.grp AND size > :_parent.currentObject.size) FROM " + ITEM,
+			      c);
+
+	Map bv = new HashMap ();
+	bv.put ("others",
+		others);
+
+	List res = q.execute (objs,
+			      bv).getResults ();
+
+	assertEquals (objs.size (),
+		      res.size ());
+
+	Set keys = new HashSet ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    Item it = (Item) objs.get (i);
+
+	    List exp = new ArrayList ();
+
+	    for (int j = 0; j < others.size (); j++)
+	    {
+
+		Item o = (Item) others.get (j);
+
+		if ((o.getGrp () == it.getGrp ())
+		    &&
+		    (o.getSize () > it.getSize ())
+		   )
+		{
+
+		    exp.add (Integer.valueOf (o.getId ()));
+
+		}
+
+	    }
+
+	    List row = (List) res.get (i);
+
+	    assertEquals (Integer.valueOf (it.getId ()),
+			  row.get (0));
+	    assertEquals (String.valueOf (it),
+			  exp,
+			  this.flatten ((List) row.get (1)));
+
+	    keys.add (it.getGrp () + ":" + it.getSize ());
+
+	}
+
+	// Executed once for each distinct group and size.
+	assertTrue (keys.size () < objs.size ());
+	assertEquals (keys.size () * others.size (),
+		      c.count);
+
+    }
+
+    public void testFromAccessor()
+	throws Exception
+    {
+
+	Random r = new Random (6);
+
+	// Some of the items share the same list of children.
+	List shared = this.createItems (r);
+
+	List objs = new ArrayList ();
+
+	for (int i = 0; i < 50; i++)
+	{
+
+	    List ch = shared;
+
+	    if ((i % 5) == 0)
+	    {
+
+		ch = this.createItems (r);
+
+	    }
+
+	    objs.add (new Item (i,
+				0,
+				r.nextInt (20),
+				ch));
+
+	}
+
+	Counter c = new Counter ();
+
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE hasSize((SELECT * FROM children WHERE tick(id) AND grp < 2), size)",
+			      c);
+
+	List res = q.execute (objs).getResults ();
+
+	List exp = new ArrayList ();
+
+	int count = shared.size ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    Item it = (Item) objs.get (i);
+
+	    if (it.getChildren () != shared)
+	    {
+
+		count += it.getChildren ().size ();
+
+	    }
+
+	    for (int j = 0; j < it.getChildren ().size (); j++)
+	    {
+
+		Item ch = (Item) it.getChildren ().get (j);
+
+		if ((ch.getGrp () < 2)
+		    &&
+		    (ch.getSize () == it.getSize ())
+		   )
+		{
+
+		    exp.add (it);
+
+		    break;
+
+		}
+
+	    }
+
+	}
+
+	assertEquals (exp,
+		      res);
+
+	// Each list of children is only queried once.
+	assertEquals (count,
+		      c.count);
+
+    }
+
+    private List filter (List objs,
+			 Set  sizes)
+    {
+
+	List exp = new ArrayList ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    Item it = (Item) objs.get (i);
+
+	    if (sizes.contains (Integer.valueOf (it.getSize ())))
+	    {
+
+		exp.add (it);
+
+	    }
+
+	}
+
+	return exp;
+
+    }
+
+    /**
+     * Get the values of a single column sub-query, each row is a list of the column values.
+     */
+    private List flatten (List rows)
+    {
+
+	List vals = new ArrayList ();
+
+	for (int i = 0; i < rows.size (); i++)
+	{
+
+	    vals.add (((List) rows.get (i)).get (0));
+
+	}
+
+	return vals;
+
+    }
+
+    private Query parse (String  sql,
+			 Counter c)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (SubQueryExpressionTest.class.getClassLoader ());
+	q.addFunctionHandler (c);
+	q.parse (sql);
+
+	return q;
+
+    }
+
+    private List createItems (Random r)
+    {
+
+	List objs = new ArrayList ();
+
+	for (int i = 0; i < 200; i++)
+	{
+
+	    objs.add (new Item (i,
+				r.nextInt (5),
+				r.nextInt (20),
+				null));
+
+	}
+
+	return objs;
+
+    }
+
+}
@@ -0,0 +1,333 @@
+package net.sf.josql;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.josql.Query;
+
+/**
+ * Checks that IN, NOT IN and != comparisons against the results of a sub-query, which are
+ * hashed once the same results are seen again, give the same results as comparing against
+ * results that are different for each object (and so are compared one by one), including
+ * results and values that are <code>null</code>.
+ */
+public class ValueSetTest
+    extends TestCase
+{
+
+    private static final String ITEM = "net.sf.josql.ValueSetTest$Item";
+
+    // A sub-query over the values, the first is executed once and its results are
+    // hashed, the second is executed for each object so its results are compared in turn.
+    private static final String HASHED = "(SELECT * FROM :vals)";
+    private static final String SCANNED = "(SELECT * FROM :vals WHERE :_parent.currentObject.id >= 0)";
+
+    public static class Item
+    {
+
+	private int id = 0;
+	private String name = null;
+	private Object size = null;
+
+	public Item (int    id,
+		     String name,
+		     Object size)
+	{
+
+	    this.id = id;
+	    this.name = name;
+	    this.size = size;
+
+	}
+
+	public int getId ()
+	{
+
+	    return this.id;
+
+	}
+
+	public String getName ()
+	{
+
+	    return this.name;
+
+	}
+
+	public Object getSize ()
+	{
+
+	    return this.size;
+
+	}
+
+	public String toString ()
+	{
+
+	    return this.id + ":" + this.name + ":" + this.size;
+
+	}
+
+    }
+
+    public ValueSetTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ValueSetTest.class );
+    }
+
+    public void testIn()
+	throws Exception
+    {
+
+	this.check ("size IN (%)",
+		    new Object[] { Integer.valueOf (1), Double.valueOf (3.0d), Long.valueOf (5) });
+
+	this.check ("size IN (%)",
+		    new Object[] { Integer.valueOf (2), null, Double.valueOf (7.0d) });
+
+	this.check ("name IN (%)",
+		    new Object[] { "n1", null, "n4" });
+
+    }
+
+    public void testNotIn()
+	throws Exception
+    {
+
+	this.check ("size NOT IN (%)",
+		    new Object[] { Integer.valueOf (1), Double.valueOf (3.0d), Long.valueOf (5) });
+
+	this.check ("size NOT IN (%)",
+		    new Object[] { null, Integer.valueOf (4) });
+
+	this.check ("size NOT IN (%)",
+		    new Object[] { null, Double.valueOf (8.0d), null });
+
+	this.check ("name NOT IN (%)",
+		    new Object[] { "n1", null, "n2", "n3" });
+
+	this.check ("name NOT IN (%, 'n5')",
+		    new Object[] { "n1", "n2" });
+
+    }
+
+    public void testNotInNulls()
+	throws Exception
+    {
+
+	// Unlike SQL a null value is not in a list without a null and a null in the list
+	// doesn't stop other values from being not in it.
+	List objs = this.createItems ();
+
+	Map bv = new HashMap ();
+	bv.put ("vals",
+		Arrays.asList (new Object[] { "n1", null }));
+
+	List res = this.parse ("SELECT * FROM " + ITEM + " WHERE name NOT IN (" + HASHED + ")").execute (objs,
+													   bv).getResults ();
+
+	List exp = new ArrayList ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    Item it = (Item) objs.get (i);
+
+	    if ((it.getName () != null)
+		&&
+		(!it.getName ().equals ("n1"))
+	       )
+	    {
+
+		exp.add (it);
+
+	    }
+
+	}
+
+	assertEquals (exp,
+		      res);
+
+	bv.put ("vals",
+		Arrays.asList (new Object[] { "n1" }));
+
+	res = this.parse ("SELECT * FROM " + ITEM + " WHERE name NOT IN (" + HASHED + ")").execute (objs,
+												      bv).getResults ();
+
+	for (int i = 0; i < objs.size (); i++)
+	{
+
+	    Item it = (Item) objs.get (i);
+
+	    if (it.getName () == null)
+	    {
+
+		assertTrue (res.contains (it));
+
+	    }
+
+	}
+
+    }
+
+    public void testNotEquals()
+	throws Exception
+    {
+
+	this.check ("size != %",
+		    new Object[] { Integer.valueOf (1), Double.valueOf (3.0d), Long.valueOf (5) });
+
+	this.check ("size != %",
+		    new Object[] { Integer.valueOf (6), null });
+
+	this.check ("name != %",
+		    new Object[] { "n1", "n2" });
+
+    }
+
+    /**
+     * Check the comparison, with the % replaced by the sub-query, against the sub-query whose
+     * results are compared one by one and against the values as constants.
+     */
+    private void check (String   where,
+			Object[] vals)
+	throws Exception
+    {
+
+	List objs = this.createItems ();
+
+	Map bv = new HashMap ();
+	bv.put ("vals",
+		Arrays.asList (vals));
+
+	List exp = this.parse ("SELECT * FROM " + ITEM + " WHERE " + where.replace ("%",
+										  SCANNED)).execute (objs,
+													bv).getResults ();
+
+	Query q = this.parse ("SELECT * FROM " + ITEM + " WHERE " + where.replace ("%",
+										HASHED));
+
+	// Executed more than once since the sets are kept per execution.
+	for (int i = 0; i < 3; i++)
+	{
+
+	    assertEquals (where,
+			  exp,
+			  q.execute (objs,
+				     bv).getResults ());
+
+	}
+
+	if (where.indexOf ("IN") == -1)
+	{
+
+	    return;
+
+	}
+
+	StringBuffer b = new StringBuffer ();
+
+	for (int i = 0; i < vals.length; i++)
+	{
+
+	    if (i > 0)
+	    {
+
+		b.append (", ");
+
+	    }
+
+	    if (vals[i] instanceof String)
+	    {
+
+		b.append ("'" + vals[i] + "'");
+
+	    } else {
+
+		b.append (vals[i]);
+
+	    }
+
+	}
+
+	assertEquals (where,
+		      exp,
+		      this.parse ("SELECT * FROM " + ITEM + " WHERE " + where.replace ("%",
+										       b.toString ())).execute (objs).getResults ());
+
+    }
+
+    private Query parse (String sql)
+	throws Exception
+    {
+
+	Query q = new Query ();
+	q.setClassLoader (ValueSetTest.class.getClassLoader ());
+	q.parse (sql);
+
+	return q;
+
+    }
+
+    private List createItems ()
+    {
+
+	List objs = new ArrayList ();
+
+	Random r = new Random (3);
+
+	for (int i = 0; i < 300; i++)
+	{
+
+	    String n = null;
+
+	    if (r.nextInt (5) != 0)
+	    {
+
+		n = "n" + r.nextInt (6);
+
+	    }
+
+	    Object s = null;
+
+	    switch (r.nextInt (4))
+	    {
+
+	    case 0 :
+		s = Integer.valueOf (r.nextInt (10));
+		break;
+
+	    case 1 :
+		s = Double.valueOf (r.nextInt (10));
+		break;
+
+	    case 2 :
+		s = Long.valueOf (r.nextInt (10));
+		break;
+
+	    }
+
+	    objs.add (new Item (i,
+				n,
+				s));
+
+	}
+
+	return objs;
+
+    }
+
+}